@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sf.picard.reference;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gets at the line layout of the contigs in a fasta index, which Picard keeps in package-private entries.
+ */
+public class FastaSequenceIndexUtils {
+    /**
+     * Private constructor only.  Do not instantiate.
+     */
+    private FastaSequenceIndexUtils() {}
+
+    /**
+     * @return the names of the contigs in the index, in the order of the fasta
+     */
+    public static List<String> getContigs(final FastaSequenceIndex index) {
+        final List<String> contigs = new ArrayList<String>(index.size());
+        for ( final FastaSequenceIndexEntry entry : index )
+            contigs.add(entry.getContig());
+        return contigs;
+    }
+
+    /**
+     * @return the index of the contig in the fasta
+     */
+    public static int getSequenceIndex(final FastaSequenceIndex index, final String contig) {
+        return index.getIndexEntry(contig).getSequenceIndex();
+    }
+
+    /**
+     * @return the number of bases in the contig
+     */
+    public static long getSize(final FastaSequenceIndex index, final String contig) {
+        return index.getIndexEntry(contig).getSize();
+    }
+
+    /**
+     * @return the offset in the fasta of the first base of the contig
+     */
+    public static long getLocation(final FastaSequenceIndex index, final String contig) {
+        return index.getIndexEntry(contig).getLocation();
+    }
+
+    /**
+     * @return the number of bases on each full line of the contig
+     */
+    public static int getBasesPerLine(final FastaSequenceIndex index, final String contig) {
+        return index.getIndexEntry(contig).getBasesPerLine();
+    }
+
+    /**
+     * @return the number of bytes in each full line of the contig, line terminator included
+     */
+    public static int getBytesPerLine(final FastaSequenceIndex index, final String contig) {
+        return index.getIndexEntry(contig).getBytesPerLine();
+    }
+}
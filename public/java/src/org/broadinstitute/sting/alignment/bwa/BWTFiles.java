@@ -207,14 +207,15 @@ public class BWTFiles {
                                                File suffixArrayFile) throws IOException {
         PackUtils.writeReferenceSequence(pacFile,referenceSequence);
 
-        BWT bwt = BWT.createFromReferenceSequence(referenceSequence);
+        // Sort the suffixes once, and write both the BWT and the suffix array straight from them.
+        int[] suffixArray = SuffixArraySorter.sort(referenceSequence);
+
         BWTWriter bwtWriter = new BWTWriter(bwtFile);
-        bwtWriter.write(bwt);
+        bwtWriter.write(referenceSequence,suffixArray);
         bwtWriter.close();
 
-        SuffixArray suffixArray = SuffixArray.createFromReferenceSequence(referenceSequence);
         SuffixArrayWriter suffixArrayWriter = new SuffixArrayWriter(suffixArrayFile);
-        suffixArrayWriter.write(suffixArray);
+        suffixArrayWriter.write(referenceSequence,suffixArray);
         suffixArrayWriter.close();
     }
 
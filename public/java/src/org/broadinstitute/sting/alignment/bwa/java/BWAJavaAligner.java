@@ -78,10 +78,23 @@ public class BWAJavaAligner extends BWAAligner {
 
     public BWAJavaAligner( File forwardBWTFile, File reverseBWTFile, File forwardSuffixArrayFile, File reverseSuffixArrayFile ) {
         super(null,null);
-        forwardBWT = new BWTReader(forwardBWTFile).read();
-        reverseBWT = new BWTReader(reverseBWTFile).read();
-        forwardSuffixArray = new SuffixArrayReader(forwardSuffixArrayFile,forwardBWT).read();
-        reverseSuffixArray = new SuffixArrayReader(reverseSuffixArrayFile,reverseBWT).read();
+        // Map the index files rather than reading them in, so that the aligner starts without loading
+        // the whole index and concurrent aligners on one machine share its pages.
+        BWTReader forwardBWTReader = new BWTReader(forwardBWTFile);
+        forwardBWT = forwardBWTReader.map();
+        forwardBWTReader.close();
+
+        BWTReader reverseBWTReader = new BWTReader(reverseBWTFile);
+        reverseBWT = reverseBWTReader.map();
+        reverseBWTReader.close();
+
+        SuffixArrayReader forwardSuffixArrayReader = new SuffixArrayReader(forwardSuffixArrayFile,forwardBWT);
+        forwardSuffixArray = forwardSuffixArrayReader.map();
+        forwardSuffixArrayReader.close();
+
+        SuffixArrayReader reverseSuffixArrayReader = new SuffixArrayReader(reverseSuffixArrayFile,reverseBWT);
+        reverseSuffixArray = reverseSuffixArrayReader.map();
+        reverseSuffixArrayReader.close();
     }
 
     /**
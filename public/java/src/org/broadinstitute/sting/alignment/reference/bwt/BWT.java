@@ -53,6 +53,15 @@ public class BWT {
         this(inverseSA0,counts,generateSequenceBlocks(sequence));
     }
 
+    /**
+     * Creates a new BWT whose sequence is stored elsewhere, for subclasses which look up the sequence themselves.
+     * @param inverseSA0 Inverse SA entry for the first element.  Will be missing from the BWT sequence.
+     * @param counts Cumulative count of bases, in A,C,G,T order.
+     */
+    protected BWT( long inverseSA0, Counts counts ) {
+        this(inverseSA0,counts,(SequenceBlock[])null);
+    }
+
     /**
      * Extract the full sequence from the list of block.
      * @return The full BWT string as a byte array.
@@ -104,17 +113,16 @@ public class BWT {
      * @return reference sequence-derived BWT.
      */
     public static BWT createFromReferenceSequence(byte[] referenceSequence) {
-        SuffixArray suffixArray = SuffixArray.createFromReferenceSequence(referenceSequence);
+        int[] suffixArray = SuffixArraySorter.sort(referenceSequence);
 
-        byte[] bwt = new byte[(int)suffixArray.length()-1];
+        byte[] bwt = new byte[referenceSequence.length];
         int bwtIndex = 0;
-        for(long suffixArrayIndex = 0; suffixArrayIndex < suffixArray.length(); suffixArrayIndex++) {
-            if(suffixArray.get(suffixArrayIndex) == 0)
-                continue;
-            bwt[bwtIndex++] = referenceSequence[(int)suffixArray.get(suffixArrayIndex)-1];
+        for( int suffix: suffixArray ) {
+            if( suffix != 0 )
+                bwt[bwtIndex++] = referenceSequence[suffix-1];
         }
 
-        return new BWT(suffixArray.inverseSA0,suffixArray.occurrences,bwt);
+        return new BWT(SuffixArray.findInverseSA0(suffixArray),Counts.countOccurrences(referenceSequence),bwt);
     }
 
     /**
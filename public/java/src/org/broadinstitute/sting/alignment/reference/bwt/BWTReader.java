@@ -3,6 +3,7 @@ package org.broadinstitute.sting.alignment.reference.bwt;
 import org.broadinstitute.sting.alignment.reference.packing.BasePackedInputStream;
 import org.broadinstitute.sting.alignment.reference.packing.PackUtils;
 import org.broadinstitute.sting.alignment.reference.packing.UnsignedIntPackedInputStream;
+import org.broadinstitute.sting.alignment.reference.packing.UnsignedIntPackedMappedArray;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
 import java.io.File;
@@ -10,6 +11,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 /**
  * Reads a BWT from a given file.
  *
@@ -75,6 +77,35 @@ public class BWTReader {
         return new BWT(inverseSA0, new Counts(count,true), sequenceBlocks);
     }
 
+    /**
+     * Map the BWT in the input file into memory.  Bases and occurrences are then read straight from
+     * the file as they're looked up, rather than all being loaded up front, and the pages are shared
+     * with any other process mapping the same file.
+     * @return The BWT stored in the input file.
+     */
+    public BWT map() {
+        UnsignedIntPackedInputStream uintPackedInputStream = new UnsignedIntPackedInputStream(inputStream, ByteOrder.LITTLE_ENDIAN);
+
+        long inverseSA0;
+        long[] count;
+        UnsignedIntPackedMappedArray sequenceBlocks;
+
+        try {
+            inverseSA0 = uintPackedInputStream.read();
+            count = new long[PackUtils.ALPHABET_SIZE];
+            uintPackedInputStream.read(count);
+
+            long bwtSize = count[PackUtils.ALPHABET_SIZE-1];
+            FileChannel channel = inputStream.getChannel();
+            sequenceBlocks = new UnsignedIntPackedMappedArray(channel, channel.position(), MappedBWT.blocksLength(bwtSize), ByteOrder.LITTLE_ENDIAN);
+        }
+        catch( IOException ex ) {
+            throw new ReviewedStingException("Unable to map BWT from input file.", ex);
+        }
+
+        return new MappedBWT(inverseSA0, new Counts(count,true), sequenceBlocks);
+    }
+
     /**
      * Close the input stream.
      */
@@ -1,6 +1,7 @@
 package org.broadinstitute.sting.alignment.reference.bwt;
 
 import org.broadinstitute.sting.alignment.reference.packing.BasePackedOutputStream;
+import org.broadinstitute.sting.alignment.reference.packing.PackUtils;
 import org.broadinstitute.sting.alignment.reference.packing.UnsignedIntPackedOutputStream;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
@@ -37,8 +38,11 @@ public class BWTWriter {
      * @param bwt Transform to be written to the output stream.
      */
     public void write( BWT bwt ) {
+        if( bwt instanceof MappedBWT )
+            throw new ReviewedStingException("A mapped BWT has no sequence blocks in memory to write; copy its file instead.");
+
         UnsignedIntPackedOutputStream intPackedOutputStream = new UnsignedIntPackedOutputStream(outputStream, ByteOrder.LITTLE_ENDIAN);
-        BasePackedOutputStream basePackedOutputStream = new BasePackedOutputStream<Integer>(Integer.class, outputStream, ByteOrder.LITTLE_ENDIAN);
+        BasePackedOutputStream<Integer> basePackedOutputStream = new BasePackedOutputStream<Integer>(Integer.class, outputStream, ByteOrder.LITTLE_ENDIAN);
 
         try {
             intPackedOutputStream.write(bwt.inverseSA0);
@@ -57,6 +61,58 @@ public class BWTWriter {
         }
     }
 
+    /**
+     * Write the BWT of a reference sequence to the output stream, given its suffix array.  The BWT is
+     * written a block at a time as it's read off of the suffix array, rather than built in memory first.
+     * @param referenceSequence Sequence from which to derive the BWT.
+     * @param suffixArray The full suffix array of the reference sequence, as from SuffixArraySorter.
+     */
+    public void write( byte[] referenceSequence, int[] suffixArray ) {
+        UnsignedIntPackedOutputStream intPackedOutputStream = new UnsignedIntPackedOutputStream(outputStream, ByteOrder.LITTLE_ENDIAN);
+        BasePackedOutputStream<Integer> basePackedOutputStream = new BasePackedOutputStream<Integer>(Integer.class, outputStream, ByteOrder.LITTLE_ENDIAN);
+
+        Counts counts = Counts.countOccurrences(referenceSequence);
+        long[] occurrences = new long[PackUtils.ALPHABET_SIZE];
+        byte[] block = new byte[BWT.SEQUENCE_BLOCK_SIZE];
+        int blockLength = 0;
+
+        try {
+            intPackedOutputStream.write(SuffixArray.findInverseSA0(suffixArray));
+            intPackedOutputStream.write(counts.toArray(true));
+
+            for( int suffix: suffixArray ) {
+                // The suffix covering the whole sequence ('$') is left out of the BWT sequence.
+                if( suffix == 0 )
+                    continue;
+                block[blockLength++] = referenceSequence[suffix-1];
+                if( blockLength == block.length ) {
+                    writeSequenceBlock(intPackedOutputStream,basePackedOutputStream,occurrences,block,blockLength);
+                    blockLength = 0;
+                }
+            }
+            if( blockLength > 0 )
+                writeSequenceBlock(intPackedOutputStream,basePackedOutputStream,occurrences,block,blockLength);
+
+            // The last block is the last set of counts in the structure.
+            intPackedOutputStream.write(counts.toArray(false));
+        }
+        catch( IOException ex ) {
+            throw new ReviewedStingException("Unable to write BWT to output stream.", ex);
+        }
+    }
+
+    /**
+     * Write a block of the BWT sequence, preceded by the occurrences of each base before the block.
+     * @param occurrences Occurrences of each base before the block, in A,C,G,T order; updated to include the block.
+     */
+    private void writeSequenceBlock( UnsignedIntPackedOutputStream intPackedOutputStream, BasePackedOutputStream<Integer> basePackedOutputStream,
+                                     long[] occurrences, byte[] block, int blockLength ) throws IOException {
+        intPackedOutputStream.write(occurrences);
+        basePackedOutputStream.write(block,0,blockLength);
+        for( int i = 0; i < blockLength; i++ )
+            occurrences[PackUtils.packBase(block[i])]++;
+    }
+
     /**
      * Close the input stream.
      */
@@ -1,5 +1,6 @@
 package org.broadinstitute.sting.alignment.reference.bwt;
 
+import org.broadinstitute.sting.alignment.reference.packing.PackUtils;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
 import java.util.HashMap;
@@ -59,6 +60,18 @@ public class Counts implements Cloneable {
         }
     }
 
+    /**
+     * Count the bases in the given sequence.
+     * @param sequence Sequence of A,C,G,T.
+     * @return Counts of the bases in the sequence.
+     */
+    public static Counts countOccurrences(byte[] sequence) {
+        long[] data = new long[PackUtils.ALPHABET_SIZE];
+        for( byte base: sequence )
+            data[PackUtils.packBase(base)]++;
+        return new Counts(data,false);
+    }
+
     /**
      * Convert to an array for persistence.
      * @param cumulative Use a cumulative representation.
@@ -55,39 +55,6 @@ public class CreateBWTFromReference {
         return sequence.getBases();
     }
 
-    private Counts countOccurrences( byte[] sequence ) {
-        Counts occurrences = new Counts();
-        for( byte base: sequence )
-            occurrences.increment(base);
-        return occurrences;
-    }
-
-    private long[] createSuffixArray( byte[] sequence ) {
-        return SuffixArray.createFromReferenceSequence(sequence).sequence;
-    }
-
-    private long[] invertSuffixArray( long[] suffixArray ) {
-        long[] inverseSuffixArray = new long[suffixArray.length];
-        for( int i = 0; i < suffixArray.length; i++ )
-            inverseSuffixArray[(int)suffixArray[i]] = i;
-        return inverseSuffixArray;
-    }
-
-    private long[] createCompressedSuffixArray( int[] suffixArray, int[] inverseSuffixArray ) {
-        long[] compressedSuffixArray = new long[suffixArray.length];
-        compressedSuffixArray[0] = inverseSuffixArray[0];
-        for( int i = 1; i < suffixArray.length; i++ )
-            compressedSuffixArray[i] = inverseSuffixArray[suffixArray[i]+1];
-        return compressedSuffixArray;
-    }
-
-    private long[] createInversedCompressedSuffixArray( int[] compressedSuffixArray ) {
-        long[] inverseCompressedSuffixArray = new long[compressedSuffixArray.length];
-        for( int i = 0; i < compressedSuffixArray.length; i++ )
-            inverseCompressedSuffixArray[compressedSuffixArray[i]] = i;
-        return inverseCompressedSuffixArray;
-    }
-
     public static void main( String argv[] ) throws IOException {
         if( argv.length != 5 ) {
             System.out.println("USAGE: CreateBWTFromReference <input>.fasta <output bwt> <output rbwt> <output sa> <output rsa>");
@@ -115,67 +82,28 @@ public class CreateBWTFromReference {
         byte[] reverseSequence = creator.loadReverseReference(inputFile);
 
         // Count the occurences of each given base.
-        Counts occurrences = creator.countOccurrences(sequence);
+        Counts occurrences = Counts.countOccurrences(sequence);
         System.out.printf("Occurrences: a=%d, c=%d, g=%d, t=%d%n",occurrences.getCumulative(Bases.A),
                                                                   occurrences.getCumulative(Bases.C),
                                                                   occurrences.getCumulative(Bases.G),
                                                                   occurrences.getCumulative(Bases.T));
 
-        // Generate the suffix array and print diagnostics.
-        long[] suffixArrayData = creator.createSuffixArray(sequence);
-        long[] reverseSuffixArrayData = creator.createSuffixArray(reverseSequence);
-
-        // Invert the suffix array and print diagnostics.
-        long[] inverseSuffixArray = creator.invertSuffixArray(suffixArrayData);
-        long[] reverseInverseSuffixArray = creator.invertSuffixArray(reverseSuffixArrayData);
-
-        SuffixArray suffixArray = new SuffixArray( inverseSuffixArray[0], occurrences, suffixArrayData );
-        SuffixArray reverseSuffixArray = new SuffixArray( reverseInverseSuffixArray[0], occurrences, reverseSuffixArrayData );
+        // Sort each strand once, and write its BWT and suffix array straight from the sorted suffixes.
+        // The reverse strand goes first so that only the forward suffix array is kept for validation.
+        creator.writeIndex(reverseSequence,rbwtFile,rsaFile);
+        int[] suffixArray = creator.writeIndex(sequence,bwtFile,saFile);
 
-        /*
-        // Create the data structure for the compressed suffix array and print diagnostics.
-        int[] compressedSuffixArray = creator.createCompressedSuffixArray(suffixArray.sequence,inverseSuffixArray);
-        int reconstructedInverseSA = compressedSuffixArray[0];
-        for( int i = 0; i < 8; i++ ) {
-            System.out.printf("compressedSuffixArray[%d] = %d (SA-1[%d] = %d)%n", i, compressedSuffixArray[i], i, reconstructedInverseSA);
-            reconstructedInverseSA = compressedSuffixArray[reconstructedInverseSA];
-        }
-
-        // Create the data structure for the inverse compressed suffix array and print diagnostics.
-        int[] inverseCompressedSuffixArray = creator.createInversedCompressedSuffixArray(compressedSuffixArray);
-        for( int i = 0; i < 8; i++ ) {
-            System.out.printf("inverseCompressedSuffixArray[%d] = %d%n", i, inverseCompressedSuffixArray[i]);
-        }
-        */
-
-        // Create the BWT.
-        BWT bwt = BWT.createFromReferenceSequence(sequence);
-        BWT reverseBWT = BWT.createFromReferenceSequence(reverseSequence);
+        BWTReader bwtReader = new BWTReader(bwtFile);
+        BWT bwt = bwtReader.map();
+        bwtReader.close();
 
         byte[] bwtSequence = bwt.getSequence();
         System.out.printf("BWT: %s... (length = %d)%n", new String(bwtSequence,0,80),bwt.length());
 
-        BWTWriter bwtWriter = new BWTWriter(bwtFile);
-        bwtWriter.write(bwt);
-        bwtWriter.close();
-
-        BWTWriter reverseBWTWriter = new BWTWriter(rbwtFile);
-        reverseBWTWriter.write(reverseBWT);
-        reverseBWTWriter.close();
-
-        /*
-        SuffixArrayWriter saWriter = new SuffixArrayWriter(saFile);
-        saWriter.write(suffixArray);
-        saWriter.close();
-
-        SuffixArrayWriter reverseSAWriter = new SuffixArrayWriter(rsaFile);
-        reverseSAWriter.write(reverseSuffixArray);
-        reverseSAWriter.close();
-        */
-
         File existingBWTFile = new File(inputFileName+".bwt");
         BWTReader existingBWTReader = new BWTReader(existingBWTFile);
-        BWT existingBWT = existingBWTReader.read();
+        BWT existingBWT = existingBWTReader.map();
+        existingBWTReader.close();
 
         byte[] existingBWTSequence = existingBWT.getSequence();
         System.out.printf("Existing BWT: %s... (length = %d)%n",new String(existingBWTSequence,0,80),existingBWT.length());
@@ -187,14 +115,36 @@ public class CreateBWTFromReference {
 
         File existingSAFile = new File(inputFileName+".sa");
         SuffixArrayReader existingSuffixArrayReader = new SuffixArrayReader(existingSAFile,existingBWT);
-        SuffixArray existingSuffixArray = existingSuffixArrayReader.read();
+        SuffixArray existingSuffixArray = existingSuffixArrayReader.map();
+        existingSuffixArrayReader.close();
 
-        for(int i = 0; i < suffixArray.length(); i++) {
+        for(int i = 0; i < suffixArray.length; i++) {
             if( i % 10000 == 0 )
                 System.out.printf("Validating suffix array entry %d%n", i);
-            if( suffixArray.get(i) != existingSuffixArray.get(i) )
-                throw new ReviewedStingException(String.format("Suffix array mismatch at %d; SA is %d; should be %d",i,existingSuffixArray.get(i),suffixArray.get(i)));
+            if( suffixArray[i] != existingSuffixArray.get(i) )
+                throw new ReviewedStingException(String.format("Suffix array mismatch at %d; SA is %d; should be %d",i,existingSuffixArray.get(i),suffixArray[i]));
         }
     }
 
+    /**
+     * Sort the suffixes of the given sequence and write its BWT and suffix array from them.
+     * @param sequence The sequence to index.
+     * @param bwtFile Target for the BWT.
+     * @param suffixArrayFile Target for the suffix array.
+     * @return The suffix array of the sequence.
+     */
+    private int[] writeIndex( byte[] sequence, File bwtFile, File suffixArrayFile ) {
+        int[] suffixArray = SuffixArraySorter.sort(sequence);
+
+        BWTWriter bwtWriter = new BWTWriter(bwtFile);
+        bwtWriter.write(sequence,suffixArray);
+        bwtWriter.close();
+
+        SuffixArrayWriter suffixArrayWriter = new SuffixArrayWriter(suffixArrayFile);
+        suffixArrayWriter.write(sequence,suffixArray);
+        suffixArrayWriter.close();
+
+        return suffixArray;
+    }
+
 }
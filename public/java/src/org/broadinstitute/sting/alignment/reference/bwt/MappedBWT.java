@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2012 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.bwt;
+
+import org.broadinstitute.sting.alignment.reference.packing.PackUtils;
+import org.broadinstitute.sting.alignment.reference.packing.UnsignedIntPackedMappedArray;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+
+/**
+ * A BWT whose sequence blocks are read in place from a memory-mapped .bwt file, as laid out by BWTWriter,
+ * rather than loaded onto the heap.
+ */
+class MappedBWT extends BWT {
+    /**
+     * Number of bases packed into each int of the file.
+     */
+    private static final int BASES_PER_WORD = PackUtils.bitsInType(Integer.class)/PackUtils.BITS_PER_BASE;
+
+    /**
+     * Number of ints taken by each full sequence block: the occurrences before the block, then the packed bases.
+     */
+    static final int INTS_PER_BLOCK = PackUtils.ALPHABET_SIZE + SEQUENCE_BLOCK_SIZE/BASES_PER_WORD;
+
+    /**
+     * The sequence blocks, as packed in the file.
+     */
+    private final UnsignedIntPackedMappedArray blocks;
+
+    /**
+     * Creates a new BWT over the mapped sequence blocks.
+     * @param inverseSA0 Inverse SA entry for the first element.  Will be missing from the BWT sequence.
+     * @param counts Cumulative count of bases, in A,C,G,T order.
+     * @param blocks The sequence blocks of the BWT file.
+     */
+    MappedBWT( long inverseSA0, Counts counts, UnsignedIntPackedMappedArray blocks ) {
+        super(inverseSA0,counts);
+        this.blocks = blocks;
+    }
+
+    /**
+     * Number of ints the sequence blocks of a BWT of the given length take in the file.
+     * @param length Number of bases in the BWT.
+     * @return Number of ints in the sequence blocks.
+     */
+    static long blocksLength( long length ) {
+        long fullBlocks = length/SEQUENCE_BLOCK_SIZE;
+        int remainder = (int)(length%SEQUENCE_BLOCK_SIZE);
+        long ints = fullBlocks*INTS_PER_BLOCK;
+        if( remainder > 0 )
+            ints += PackUtils.ALPHABET_SIZE + PackUtils.numberOfPartitions(remainder,BASES_PER_WORD);
+        return ints;
+    }
+
+    @Override
+    public byte[] getSequence() {
+        byte[] sequence = new byte[(int)length()];
+        for( int i = 0; i < sequence.length; i++ )
+            sequence[i] = getPackedBase(i);
+        return sequence;
+    }
+
+    @Override
+    public long occurrences(byte base,long index) {
+        // If the index is above the SA-1[0], remap it to the appropriate coordinate space.
+        if(index > inverseSA0) index--;
+        long blockStart = (index/SEQUENCE_BLOCK_SIZE)*INTS_PER_BLOCK;
+        int position = (int)(index%SEQUENCE_BLOCK_SIZE);
+        int pack = PackUtils.packBase(base);
+
+        long accumulator = blocks.get(blockStart+pack);
+
+        // Count the bases in the block up to and including the position a word at a time: xor each word with
+        // the base repeated, and count the pairs of bits which come out zero.
+        int repeated = pack*0x55555555;
+        long wordStart = blockStart+PackUtils.ALPHABET_SIZE;
+        for( int word = 0; word <= position/BASES_PER_WORD; word++ ) {
+            int basesInWord = Math.min(BASES_PER_WORD,position+1-word*BASES_PER_WORD);
+            int mismatches = blocks.getInt(wordStart+word) ^ repeated;
+            mismatches = (mismatches | (mismatches >>> 1)) & 0x55555555;
+            // Bases are packed from the most significant bits down; ignore those past the position.
+            if( basesInWord < BASES_PER_WORD )
+                mismatches &= ~(-1 >>> (basesInWord*PackUtils.BITS_PER_BASE));
+            accumulator += basesInWord - Integer.bitCount(mismatches);
+        }
+        return accumulator;
+    }
+
+    @Override
+    protected byte getBase(long index) {
+        if(index == inverseSA0)
+            throw new ReviewedStingException(String.format("Base at index %d does not have a text representation",index));
+
+        // If the index is above the SA-1[0], remap it to the appropriate coordinate space.
+        if(index > inverseSA0) index--;
+        return getPackedBase(index);
+    }
+
+    /**
+     * Gets the base at the given position in the BWT sequence, sans the '$'.
+     */
+    private byte getPackedBase(long sequenceIndex) {
+        long blockStart = (sequenceIndex/SEQUENCE_BLOCK_SIZE)*INTS_PER_BLOCK;
+        int position = (int)(sequenceIndex%SEQUENCE_BLOCK_SIZE);
+        int word = blocks.getInt(blockStart+PackUtils.ALPHABET_SIZE+position/BASES_PER_WORD);
+        int shift = (BASES_PER_WORD-position%BASES_PER_WORD-1)*PackUtils.BITS_PER_BASE;
+        return PackUtils.unpackBase((byte)((word >>> shift) & 0x3));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2012 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.bwt;
+
+import org.broadinstitute.sting.alignment.reference.packing.UnsignedIntPackedMappedArray;
+
+/**
+ * A suffix array whose stored entries are read in place from a memory-mapped .sa file rather than loaded onto the heap.
+ */
+class MappedSuffixArray extends SuffixArray {
+    /**
+     * The stored entries of the suffix array, as packed in the file.
+     */
+    private final UnsignedIntPackedMappedArray entries;
+
+    /**
+     * Creates a new suffix array over the mapped entries.
+     * @param inverseSA0 Inverse SA entry for the first element.
+     * @param occurrences Cumulative number of occurrences of A,C,G,T, in order.
+     * @param entries The stored entries of the suffix array file.
+     * @param sequenceInterval How frequently is the sequence interval stored.
+     * @param bwt bwt used to infer the remaining entries in the BWT.
+     */
+    MappedSuffixArray(long inverseSA0, Counts occurrences, UnsignedIntPackedMappedArray entries, int sequenceInterval, BWT bwt) {
+        super(inverseSA0,occurrences,null,sequenceInterval,bwt);
+        this.entries = entries;
+    }
+
+    @Override
+    public long length() {
+        if( bwt != null )
+            return bwt.length()+1;
+        else
+            return entries.length();
+    }
+
+    @Override
+    protected long getStoredEntry(long storedIndex) {
+        return entries.get(storedIndex);
+    }
+}
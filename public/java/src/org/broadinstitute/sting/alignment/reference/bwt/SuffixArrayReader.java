@@ -2,6 +2,7 @@ package org.broadinstitute.sting.alignment.reference.bwt;
 
 import org.broadinstitute.sting.alignment.reference.packing.PackUtils;
 import org.broadinstitute.sting.alignment.reference.packing.UnsignedIntPackedInputStream;
+import org.broadinstitute.sting.alignment.reference.packing.UnsignedIntPackedMappedArray;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
 import java.io.File;
@@ -9,6 +10,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 /**
  * A reader for suffix arrays in permanent storage.
@@ -70,6 +72,35 @@ public class SuffixArrayReader {
         return new SuffixArray(inverseSA0, new Counts(occurrences,true), suffixArray, suffixArrayInterval, bwt);
     }
 
+    /**
+     * Map the suffix array in the input file into memory.  Entries are then read straight from the
+     * file as they're looked up, rather than all being loaded up front.
+     * @return The suffix array stored in the input file.
+     */
+    public SuffixArray map() {
+        UnsignedIntPackedInputStream uintPackedInputStream = new UnsignedIntPackedInputStream(inputStream, ByteOrder.LITTLE_ENDIAN);
+
+        long inverseSA0;
+        long[] occurrences;
+        UnsignedIntPackedMappedArray suffixArray;
+        int suffixArrayInterval;
+
+        try {
+            inverseSA0 = uintPackedInputStream.read();
+            occurrences = new long[PackUtils.ALPHABET_SIZE];
+            uintPackedInputStream.read(occurrences);
+            // Map the entries as read() reads them: the first entry stored is the suffix array size.
+            suffixArrayInterval = (int)uintPackedInputStream.read();
+            FileChannel channel = inputStream.getChannel();
+            long length = (occurrences[occurrences.length-1]+suffixArrayInterval-1)/suffixArrayInterval;
+            suffixArray = new UnsignedIntPackedMappedArray(channel, channel.position(), length, ByteOrder.LITTLE_ENDIAN);
+        }
+        catch( IOException ex ) {
+            throw new ReviewedStingException("Unable to map suffix array from input file.", ex);
+        }
+
+        return new MappedSuffixArray(inverseSA0, new Counts(occurrences,true), suffixArray, suffixArrayInterval, bwt);
+    }
 
     /**
      * Close the input stream.
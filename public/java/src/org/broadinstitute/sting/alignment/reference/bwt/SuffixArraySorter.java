@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2012 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.bwt;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Sorts the suffixes of a reference sequence by induced sorting (SA-IS, Nong, Zhang and Chan 2009),
+ * in time linear in the length of the sequence.
+ *
+ * Apart from the suffix array itself, sorting takes one bit per base for the suffix types and a
+ * bucket table per level of recursion; the reduced problem at each level is solved in place in the
+ * suffix array.
+ */
+public class SuffixArraySorter {
+    /**
+     * Number of distinct characters in the top level text: every byte value, plus the sentinel.
+     */
+    private static final int ALPHABET_SIZE = 257;
+
+    private SuffixArraySorter() {}
+
+    /**
+     * Sort the suffixes of the given sequence, including the empty suffix at sequence.length,
+     * which sorts before all of the others.  Bases are compared as unsigned bytes.
+     * @param sequence The reference sequence.
+     * @return The suffix array, of length sequence.length+1.
+     */
+    public static int[] sort(byte[] sequence) {
+        int[] suffixArray = new int[sequence.length+1];
+        sort(new ByteText(sequence),suffixArray,sequence.length+1,ALPHABET_SIZE);
+        return suffixArray;
+    }
+
+    /**
+     * A text to be sorted, ending with a unique character smaller than all of the others.
+     */
+    private static abstract class Text {
+        abstract int get(int i);
+    }
+
+    /**
+     * The reference sequence, with each base shifted up by one to make room for the sentinel.
+     */
+    private static class ByteText extends Text {
+        private final byte[] sequence;
+
+        ByteText(byte[] sequence) {
+            this.sequence = sequence;
+        }
+
+        int get(int i) {
+            return i == sequence.length ? 0 : (sequence[i] & 0xff) + 1;
+        }
+    }
+
+    /**
+     * A reduced text, stored at an offset within the suffix array of the level above.
+     */
+    private static class IntText extends Text {
+        private final int[] data;
+        private final int offset;
+
+        IntText(int[] data, int offset) {
+            this.data = data;
+            this.offset = offset;
+        }
+
+        int get(int i) {
+            return data[offset+i];
+        }
+    }
+
+    /**
+     * Sort the suffixes of the text into sa[0,length).
+     * @param text Text to sort, ending with a unique smallest character.
+     * @param sa Target for the suffix array; only the first length entries are used.
+     * @param length Length of the text, including the sentinel.
+     * @param alphabetSize Upper bound on the characters in the text.
+     */
+    private static void sort(Text text, int[] sa, int length, int alphabetSize) {
+        if( length == 1 ) {
+            sa[0] = 0;
+            return;
+        }
+
+        // Classify the suffixes: a suffix is S-type if it's smaller than the one after it, L-type otherwise.
+        BitSet sType = new BitSet(length);
+        sType.set(length-1);
+        for( int i = length-2; i >= 0; i-- ) {
+            int c = text.get(i), next = text.get(i+1);
+            if( c < next || (c == next && sType.get(i+1)) )
+                sType.set(i);
+        }
+
+        int[] bucketSizes = new int[alphabetSize];
+        for( int i = 0; i < length; i++ )
+            bucketSizes[text.get(i)]++;
+        int[] buckets = new int[alphabetSize];
+
+        // Put the leftmost S-type (LMS) suffixes at the ends of their buckets, and induce an order on LMS substrings.
+        Arrays.fill(sa,0,length,-1);
+        getBucketEnds(bucketSizes,buckets);
+        for( int i = 1; i < length; i++ ) {
+            if( isLMS(sType,i) )
+                sa[--buckets[text.get(i)]] = i;
+        }
+        induce(text,sa,length,sType,bucketSizes,buckets);
+
+        // Gather the sorted LMS substrings at the front of the suffix array.
+        int lmsCount = 0;
+        for( int i = 0; i < length; i++ ) {
+            if( isLMS(sType,sa[i]) )
+                sa[lmsCount++] = sa[i];
+        }
+
+        // Name the LMS substrings by rank.  No two LMS positions are adjacent, so the names can be
+        // stored at pos/2 in the back of the suffix array.
+        Arrays.fill(sa,lmsCount,length,-1);
+        int name = 0;
+        int previous = -1;
+        for( int i = 0; i < lmsCount; i++ ) {
+            int position = sa[i];
+            if( previous < 0 || !equalLMSSubstrings(text,sType,previous,position) ) {
+                name++;
+                previous = position;
+            }
+            sa[lmsCount+position/2] = name-1;
+        }
+        for( int i = length-1, j = length-1; i >= lmsCount; i-- ) {
+            if( sa[i] >= 0 )
+                sa[j--] = sa[i];
+        }
+
+        // Sort the LMS suffixes, recursing on the reduced text if the substrings alone didn't order them.
+        int reducedOffset = length-lmsCount;
+        if( name < lmsCount )
+            sort(new IntText(sa,reducedOffset),sa,lmsCount,name);
+        else {
+            for( int i = 0; i < lmsCount; i++ )
+                sa[sa[reducedOffset+i]] = i;
+        }
+
+        // Map the order of the reduced text back onto the LMS positions, and induce the full suffix array from them.
+        for( int i = 1, j = reducedOffset; i < length; i++ ) {
+            if( isLMS(sType,i) )
+                sa[j++] = i;
+        }
+        for( int i = 0; i < lmsCount; i++ )
+            sa[i] = sa[reducedOffset+sa[i]];
+        Arrays.fill(sa,lmsCount,length,-1);
+        getBucketEnds(bucketSizes,buckets);
+        for( int i = lmsCount-1; i >= 0; i-- ) {
+            int position = sa[i];
+            sa[i] = -1;
+            sa[--buckets[text.get(position)]] = position;
+        }
+        induce(text,sa,length,sType,bucketSizes,buckets);
+    }
+
+    /**
+     * Induce the order of the L-type suffixes from the LMS suffixes in the array, then of the S-type suffixes from the L-type ones.
+     */
+    private static void induce(Text text, int[] sa, int length, BitSet sType, int[] bucketSizes, int[] buckets) {
+        getBucketStarts(bucketSizes,buckets);
+        for( int i = 0; i < length; i++ ) {
+            int j = sa[i]-1;
+            if( j >= 0 && !sType.get(j) )
+                sa[buckets[text.get(j)]++] = j;
+        }
+        getBucketEnds(bucketSizes,buckets);
+        for( int i = length-1; i >= 0; i-- ) {
+            int j = sa[i]-1;
+            if( j >= 0 && sType.get(j) )
+                sa[--buckets[text.get(j)]] = j;
+        }
+    }
+
+    private static boolean isLMS(BitSet sType, int i) {
+        return i > 0 && sType.get(i) && !sType.get(i-1);
+    }
+
+    /**
+     * Are the LMS substrings (the text from one LMS position up to and including the next) at the two positions equal?
+     * The sentinel is unique, so neither comparison can run off the end of the text.
+     */
+    private static boolean equalLMSSubstrings(Text text, BitSet sType, int lhs, int rhs) {
+        for( int d = 0; ; d++ ) {
+            if( text.get(lhs+d) != text.get(rhs+d) || sType.get(lhs+d) != sType.get(rhs+d) )
+                return false;
+            if( d > 0 && (isLMS(sType,lhs+d) || isLMS(sType,rhs+d)) )
+                return true;
+        }
+    }
+
+    private static void getBucketStarts(int[] bucketSizes, int[] buckets) {
+        int sum = 0;
+        for( int c = 0; c < bucketSizes.length; c++ ) {
+            buckets[c] = sum;
+            sum += bucketSizes[c];
+        }
+    }
+
+    private static void getBucketEnds(int[] bucketSizes, int[] buckets) {
+        int sum = 0;
+        for( int c = 0; c < bucketSizes.length; c++ ) {
+            sum += bucketSizes[c];
+            buckets[c] = sum;
+        }
+    }
+}
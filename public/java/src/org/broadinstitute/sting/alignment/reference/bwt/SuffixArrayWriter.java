@@ -36,6 +36,9 @@ public class SuffixArrayWriter {
      * @param suffixArray suffix array to write.
      */
     public void write(SuffixArray suffixArray) {
+        if( suffixArray instanceof MappedSuffixArray )
+            throw new ReviewedStingException("A mapped suffix array has no entries in memory to write; copy its file instead.");
+
         UnsignedIntPackedOutputStream uintPackedOutputStream = new UnsignedIntPackedOutputStream(outputStream, ByteOrder.LITTLE_ENDIAN);
 
         try {
@@ -52,6 +55,27 @@ public class SuffixArrayWriter {
         }
     }
 
+    /**
+     * Write the suffix array of a reference sequence to the output stream.
+     * @param referenceSequence The reference sequence from which the suffix array was built.
+     * @param suffixArray The full suffix array of the reference sequence, as from SuffixArraySorter.
+     */
+    public void write(byte[] referenceSequence, int[] suffixArray) {
+        UnsignedIntPackedOutputStream uintPackedOutputStream = new UnsignedIntPackedOutputStream(outputStream, ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            uintPackedOutputStream.write(SuffixArray.findInverseSA0(suffixArray));
+            uintPackedOutputStream.write(Counts.countOccurrences(referenceSequence).toArray(true));
+            // How frequently the suffix array entry is placed.
+            uintPackedOutputStream.write(1);
+            // Length of the suffix array.
+            uintPackedOutputStream.write(suffixArray.length-1);
+            uintPackedOutputStream.write(suffixArray,1,suffixArray.length-1);
+        }
+        catch( IOException ex ) {
+            throw new ReviewedStingException("Unable to write suffix array to output stream.", ex);
+        }
+    }
 
     /**
      * Close the input stream.
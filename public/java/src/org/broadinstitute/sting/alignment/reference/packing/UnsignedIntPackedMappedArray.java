@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2012 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.packing;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A run of packed ints in a file, as written by UnsignedIntPackedOutputStream, read in place
+ * through a memory mapping rather than copied onto the heap.
+ *
+ * A single mapping can cover at most 2GB, so the ints are mapped in chunks.
+ */
+public class UnsignedIntPackedMappedArray {
+    /**
+     * log2 of the number of ints in each mapped chunk; 2^28 ints is 1GB.
+     */
+    private static final int CHUNK_SHIFT = 28;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    /**
+     * The mapped chunks, in file order.
+     */
+    private final IntBuffer[] chunks;
+
+    /**
+     * Number of ints in the array.
+     */
+    private final long length;
+
+    /**
+     * Map the given ints of the file.  The mapping remains valid after the channel is closed.
+     * @param channel Channel of the file containing the ints.
+     * @param position Position in the file, in bytes, of the first int.
+     * @param length Number of ints to map.
+     * @param byteOrder Endianness of the ints in the file.
+     * @throws IOException if the file can't be mapped.
+     */
+    public UnsignedIntPackedMappedArray(FileChannel channel, long position, long length, ByteOrder byteOrder) throws IOException {
+        final int bytesPerInteger = PackUtils.bitsInType(Integer.class)/PackUtils.BITS_PER_BYTE;
+        this.length = length;
+        this.chunks = new IntBuffer[PackUtils.numberOfPartitions(length,1L << CHUNK_SHIFT)];
+        for( int chunk = 0; chunk < chunks.length; chunk++ ) {
+            long chunkStart = (long)chunk << CHUNK_SHIFT;
+            long chunkLength = Math.min(1L << CHUNK_SHIFT, length-chunkStart);
+            chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY,position+chunkStart*bytesPerInteger,chunkLength*bytesPerInteger)
+                    .order(byteOrder).asIntBuffer();
+        }
+    }
+
+    /**
+     * @return the number of ints in the array.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Get the int at the given index, as an unsigned value.
+     * @param index Index of the int.
+     * @return The unsigned value of the int.
+     */
+    public long get(long index) {
+        return getInt(index) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Get the raw bits of the int at the given index, as for a word of packed bases.
+     * @param index Index of the int.
+     * @return The int at that index.
+     */
+    public int getInt(long index) {
+        return chunks[(int)(index >>> CHUNK_SHIFT)].get((int)(index & CHUNK_MASK));
+    }
+}
@@ -102,6 +102,18 @@ public class UnsignedIntPackedOutputStream {
             write(data[i]);
     }
 
+    /**
+     * Write the given chunk of data to the input stream.
+     * @param data data to write.
+     * @param offset position at which to start.
+     * @param length number of ints to write.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void write( int[] data, int offset, int length ) throws IOException {
+        for( int i = offset; i < offset+length; i++ )
+            write(data[i]);
+    }
+
     /**
      * Flush the contents of the OutputStream to disk.
      * @throws IOException if an I/O error occurs.
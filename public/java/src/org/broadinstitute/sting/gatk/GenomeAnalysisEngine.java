@@ -480,9 +480,9 @@ public class GenomeAnalysisEngine {
                 }
 
                 if(intervals == null)
-                    return readsDataSource.createShardIteratorOverAllReads(new ReadShardBalancer());
+                    return readsDataSource.createShardIteratorOverAllReads(new ReadShardBalancer(argCollection.numberOfPrefetchedReadShards));
                 else
-                    return readsDataSource.createShardIteratorOverIntervals(intervals,new ReadShardBalancer());
+                    return readsDataSource.createShardIteratorOverIntervals(intervals,new ReadShardBalancer(argCollection.numberOfPrefetchedReadShards));
             }
             else
                 throw new ReviewedStingException("Unable to determine walker type for walker " + walker.getClass().getName());
@@ -767,6 +767,7 @@ public class GenomeAnalysisEngine {
                 getWalkerBAQApplicationTime() == BAQ.ApplicationTime.ON_INPUT ? argCollection.BAQMode : BAQ.CalculationMode.OFF,
                 getWalkerBAQQualityMode(),
                 refReader,
+                argCollection.numberOfBAQThreads,
                 getBaseRecalibration(),
                 argCollection.defaultBaseQualities);
     }
@@ -65,6 +65,14 @@ public class GATKArgumentCollection {
     @Argument(fullName = "read_buffer_size", shortName = "rbs", doc="Number of reads per SAM file to buffer in memory", required = false)
     public Integer readBufferSize = null;
 
+    /**
+     * When traversing reads, fill read shards on a thread of their own ahead of the traversal, keeping up to this
+     * many shards' worth of reads (as given by read_buffer_size) in memory.  By default, each shard is filled
+     * when the traversal asks for it.
+     */
+    @Argument(fullName = "num_prefetched_read_shards", shortName = "nprs", doc="Number of read shards to fill ahead of the traversal", required = false)
+    public int numberOfPrefetchedReadShards = 0;
+
     @Argument(fullName = "phone_home", shortName = "et", doc="What kind of GATK run report should we generate? STANDARD is the default, can be NO_ET so nothing is posted to the run repository. Please see http://www.broadinstitute.org/gsa/wiki/index.php/Phone_home for details.", required = false)
     public GATKRunReport.PhoneHomeOption phoneHomeType = GATKRunReport.PhoneHomeOption.STANDARD;
 
@@ -164,6 +172,13 @@ public class GATKArgumentCollection {
     @Argument(fullName = "baqGapOpenPenalty", shortName="baqGOP", doc="BAQ gap open penalty (Phred Scaled).  Default value is 40.  30 is perhaps better for whole genome call sets", required = false)
     public double BAQGOP = BAQ.DEFAULT_GOP;
 
+    /**
+     * When BAQ is calculated on the fly as the reads come in, calculate it on this many threads of its own, ahead of
+     * the traversal.  By default, BAQ is calculated on the traversal's thread as it reads each read.
+     */
+    @Argument(fullName = "num_baq_threads", shortName = "nbaqt", doc = "How many threads should calculate BAQ on the fly ahead of the traversal", required = false)
+    public int numberOfBAQThreads = 0;
+
     // --------------------------------------------------------------------------------------------------------------
     //
     // performance log arguments
@@ -230,6 +245,14 @@ public class GATKArgumentCollection {
     @Argument(fullName = "num_bam_file_handles", shortName = "bfh", doc="The total number of BAM file handles to keep open simultaneously", required=false)
     public Integer numberOfBAMFileHandles = null;
 
+    /**
+     * When running with more than one thread, start shard traversals, tree reduces and output merges as soon as
+     * their inputs are complete rather than scheduling them from a single polling loop.
+     */
+    @Argument(fullName = "dependency_driven_scheduling", shortName = "dds", doc="Schedule parallel traversals, reduces and output merges as soon as their inputs are ready", required=false)
+    @Hidden
+    public boolean dependencyDrivenScheduling = false;
+
     @Input(fullName = "read_group_black_list", shortName="rgbl", doc="Filters out read groups matching <TAG>:<STRING> or a .txt file containing the filter strings one per line.", required = false)
     public List<String> readGroupBlackList = null;
 
@@ -369,6 +392,9 @@ public class GATKArgumentCollection {
             if(!other.readBufferSize.equals(this.readBufferSize))
                 return false;
         }
+        if (other.numberOfPrefetchedReadShards != this.numberOfPrefetchedReadShards) {
+            return false;
+        }
         if (!(other.readBufferSize == null && this.readBufferSize == null) && (other.readBufferSize == null || this.readBufferSize == null)) {
             return false;
         }
@@ -410,6 +436,9 @@ public class GATKArgumentCollection {
                 (other.numberOfBAMFileHandles != null && !other.numberOfBAMFileHandles.equals(this.numberOfBAMFileHandles))) {
             return false;
         }
+        if (other.dependencyDrivenScheduling != this.dependencyDrivenScheduling) {
+            return false;
+        }
         if (other.intervalMerging != this.intervalMerging) {
             return false;
         }
@@ -423,6 +452,7 @@ public class GATKArgumentCollection {
 
         if ( BAQMode != other.BAQMode ) return false;
         if ( BAQGOP != other.BAQGOP ) return false;
+        if ( numberOfBAQThreads != other.numberOfBAQThreads ) return false;
 
         if ((other.performanceLog == null && this.performanceLog != null) ||
                 (other.performanceLog != null && !other.performanceLog.equals(this.performanceLog)))
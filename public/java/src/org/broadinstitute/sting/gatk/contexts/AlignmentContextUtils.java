@@ -88,12 +88,10 @@ public class AlignmentContextUtils {
         GenomeLoc loc = context.getLocation();
         HashMap<String, AlignmentContext> contexts = new HashMap<String, AlignmentContext>();
 
-        for(String sample: context.getPileup().getSamples()) {
-            ReadBackedPileup pileupBySample = context.getPileup().getPileupForSample(sample);
-
-            // Don't add empty pileups to the split context.
-            if(pileupBySample.getNumberOfElements() == 0)
-                continue;
+        // split in a single pass, rather than filtering the whole pileup once per sample
+        for(Map.Entry<String, ReadBackedPileup> entry: context.getPileup().getPileupsBySample().entrySet()) {
+            String sample = entry.getKey();
+            ReadBackedPileup pileupBySample = entry.getValue();
 
             if(sample != null)
                 contexts.put(sample, new AlignmentContext(loc, pileupBySample));
@@ -5,9 +5,11 @@ import org.broadinstitute.sting.gatk.datasources.rmd.ReferenceOrderedDataSource;
 import org.broadinstitute.sting.gatk.refdata.RefMetaDataTracker;
 import org.broadinstitute.sting.gatk.refdata.utils.LocationAwareSeekableRODIterator;
 import org.broadinstitute.sting.gatk.refdata.utils.RODRecordList;
+import org.broadinstitute.sting.gatk.refdata.utils.RODTrackSlots;
 import org.broadinstitute.sting.utils.GenomeLoc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -33,13 +35,33 @@ public class ManagingReferenceOrderedView implements ReferenceOrderedView {
      */
     private List<ReferenceOrderedDataState> states = new ArrayList<ReferenceOrderedDataState>();
 
+    /**
+     * The slots of the data sources' tracks, and the slot of each state's track.
+     */
+    private final RODTrackSlots slots;
+    private final int[] stateSlots;
+
+    /**
+     * The tracks at the current locus by slot, refilled at each locus.
+     */
+    private final RODRecordList[] tracks;
+
     /**
      * Create a new view of reference-ordered data.
      * @param provider
      */
     public ManagingReferenceOrderedView( LocusShardDataProvider provider ) {
-        for( ReferenceOrderedDataSource dataSource: provider.getReferenceOrderedData() )
+        List<String> names = new ArrayList<String>();
+        for( ReferenceOrderedDataSource dataSource: provider.getReferenceOrderedData() ) {
             states.add(new ReferenceOrderedDataState(dataSource, dataSource.seek(provider.getLocus())));
+            names.add(dataSource.getName());
+        }
+
+        slots = new RODTrackSlots(names);
+        stateSlots = new int[states.size()];
+        for( int i = 0; i < states.size(); i++ )
+            stateSlots[i] = slots.getSlot(names.get(i));
+        tracks = new RODRecordList[slots.size()];
 
         provider.register(this);
     }
@@ -52,13 +74,14 @@ public class ManagingReferenceOrderedView implements ReferenceOrderedView {
      * @return A tracker containing information about this locus.
      */
     public RefMetaDataTracker getReferenceOrderedDataAtLocus( GenomeLoc loc, ReferenceContext referenceContext ) {
-        List<RODRecordList> bindings = states.isEmpty() ? Collections.<RODRecordList>emptyList() : new ArrayList<RODRecordList>(states.size());
-
-        for ( ReferenceOrderedDataState state: states )
-            // todo -- warning, I removed the reference to the name from states
-            bindings.add( state.iterator.seekForward(loc) );
+        Arrays.fill(tracks, null);
+        for ( int i = 0; i < states.size(); i++ ) {
+            RODRecordList rod = states.get(i).iterator.seekForward(loc);
+            if ( rod != null && ! rod.isEmpty() )
+                tracks[stateSlots[i]] = rod;
+        }
 
-        return new RefMetaDataTracker(bindings, referenceContext);
+        return new RefMetaDataTracker(slots, tracks, referenceContext);
     }
 
     /**
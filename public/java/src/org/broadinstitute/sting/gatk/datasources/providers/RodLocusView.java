@@ -31,8 +31,10 @@ import org.broadinstitute.sting.gatk.datasources.rmd.ReferenceOrderedDataSource;
 import org.broadinstitute.sting.gatk.refdata.RefMetaDataTracker;
 import org.broadinstitute.sting.gatk.refdata.utils.LocationAwareSeekableRODIterator;
 import org.broadinstitute.sting.gatk.refdata.utils.RODRecordList;
+import org.broadinstitute.sting.gatk.refdata.utils.RODTrackSlots;
 import org.broadinstitute.sting.utils.GenomeLoc;
 import org.broadinstitute.sting.utils.collections.RODMergingIterator;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.pileup.ReadBackedPileupImpl;
 
 import java.util.*;
@@ -56,6 +58,12 @@ public class RodLocusView extends LocusView implements ReferenceOrderedView {
      */
     private List<ReferenceOrderedDataState> states = new ArrayList<ReferenceOrderedDataState>();    
 
+    /**
+     * The slots of the data sources' tracks, and the tracks at the current locus by slot, refilled at each locus.
+     */
+    private final RODTrackSlots slots;
+    private final RODRecordList[] tracks;
+
     /**
      * Enable debugging output -- todo remove me
      */
@@ -74,7 +82,9 @@ public class RodLocusView extends LocusView implements ReferenceOrderedView {
         GenomeLoc loc = provider.getLocus();
 
         List< Iterator<RODRecordList> > iterators = new LinkedList< Iterator<RODRecordList> >();
+        List<String> names = new ArrayList<String>();
         for( ReferenceOrderedDataSource dataSource: provider.getReferenceOrderedData() ) {
+            names.add(dataSource.getName());
             if ( DEBUG ) System.out.printf("Shard is %s%n", provider.getLocus());
 
             // grab the ROD iterator from the data source, and compute the first location in this shard, forwarding
@@ -96,12 +106,24 @@ public class RodLocusView extends LocusView implements ReferenceOrderedView {
         }
 
         rodQueue = new RODMergingIterator(iterators);
+        slots = new RODTrackSlots(names);
+        tracks = new RODRecordList[slots.size()];
     }
 
     public RefMetaDataTracker getReferenceOrderedDataAtLocus( GenomeLoc loc, ReferenceContext referenceContext ) {
         // special case the interval again -- add it into the ROD
         if ( interval != null ) { allTracksHere.add(interval); }
-        return new RefMetaDataTracker(allTracksHere, referenceContext);
+
+        Arrays.fill(tracks, null);
+        for ( RODRecordList rod : allTracksHere ) {
+            if ( rod == null || rod.isEmpty() )
+                continue;
+            int slot = slots.getSlot(rod.getName());
+            if ( slot == RODTrackSlots.NO_SLOT )
+                throw new ReviewedStingException("BUG: found a track named " + rod.getName() + " which isn't one of the tracks of this view");
+            tracks[slot] = rod;
+        }
+        return new RefMetaDataTracker(slots, tracks, referenceContext);
     }
 
     public boolean hasNext() {
@@ -52,6 +52,11 @@ class BAMAccessPlan {
      */
     private long nextBlockAddress;
 
+    /**
+     * How many blocks to load in the next batch requested for this plan.
+     */
+    private int blocksToLoad = 1;
+
 
     BAMAccessPlan(final SAMReaderID reader, final BlockInputStream inputStream, GATKBAMFileSpan fileSpan) {
         this.reader = reader;
@@ -77,6 +82,21 @@ class BAMAccessPlan {
         return nextBlockAddress;
     }
 
+    /**
+     * @return How many blocks should be loaded in the next batch requested for this plan.
+     */
+    public int getBlocksToLoad() {
+        return blocksToLoad;
+    }
+
+    /**
+     * Sets how many blocks should be loaded in the next batch requested for this plan.
+     * @param blocksToLoad the number of blocks.
+     */
+    public void setBlocksToLoad(final int blocksToLoad) {
+        this.blocksToLoad = blocksToLoad;
+    }
+
     /**
      * Retrieves the first offset of interest in the block returned by getBlockAddress().
      * @return First block of interest in this segment.
@@ -24,19 +24,37 @@
 
 package org.broadinstitute.sting.gatk.datasources.reads;
 
+import org.apache.log4j.Logger;
+import org.broad.tribble.util.BlockCompressedStreamConstants;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
  * Preloads BGZF blocks in preparation for unzipping and data processing.
+ *
+ * Each of the dispatcher's threads runs a BlockLoader.  A request to load data for an input stream is claimed by
+ * a single loader, which reads the next several compressed blocks of the stream's access plan from disk and then
+ * queues them up for inflation.  Any idle loader can inflate a queued block, so the blocks of a single stream are
+ * decompressed in parallel, while the loader which read them hands them back to the stream in order.
+ *
  * TODO: Right now, the block loader has all threads blocked waiting for a work request.  Ultimately this should
  * TODO: be replaced with a central thread management strategy.
  */
 public class BGZFBlockLoadingDispatcher {
+    private static final Logger logger = Logger.getLogger(BGZFBlockLoadingDispatcher.class);
+
+    /**
+     * How many blocks to read ahead of the reader in each input stream, by default.
+     */
+    public static final int DEFAULT_BLOCKS_TO_READ_AHEAD = 8;
+
     /**
      * The file handle cache, used when allocating blocks from the dispatcher.
      */
@@ -46,12 +64,57 @@ public class BGZFBlockLoadingDispatcher {
 
     private final Queue<BAMAccessPlan> inputQueue;
 
+    /**
+     * Blocks which have been read from disk and are waiting to be inflated by the first free loader.
+     */
+    private final Queue<Runnable> inflationQueue;
+
+    /**
+     * How many blocks a loader should read at a time for a single input stream.
+     */
+    private final int blocksToReadAhead;
+
+    /**
+     * Buffers big enough to hold any BGZF block, compressed or uncompressed, ready for reuse.
+     */
+    private final Queue<byte[]> bufferPool = new ConcurrentLinkedQueue<byte[]>();
+
+    /**
+     * Decompression statistics for each file, in the order the files were first read.
+     */
+    private final Map<SAMReaderID,DecompressionStatistics> statistics = new LinkedHashMap<SAMReaderID,DecompressionStatistics>();
+
     public BGZFBlockLoadingDispatcher(final int numThreads, final int numFileHandles) {
+        this(numThreads,numFileHandles,DEFAULT_BLOCKS_TO_READ_AHEAD);
+    }
+
+    /**
+     * Create a new dispatcher, with its own thread pool of block loaders.
+     * @param numThreads Number of block loaders to run.
+     * @param numFileHandles Number of file handles which can be open at once.
+     * @param blocksToReadAhead How many blocks of each input stream a block loader should read at a time.
+     */
+    public BGZFBlockLoadingDispatcher(final int numThreads, final int numFileHandles, final int blocksToReadAhead) {
+        if(numThreads < 1)
+            throw new ReviewedStingException("BGZFBlockLoadingDispatcher requires at least one thread, but was given " + numThreads);
+        if(blocksToReadAhead < 1)
+            throw new ReviewedStingException("BGZFBlockLoadingDispatcher must read ahead at least one block, but was asked to read " + blocksToReadAhead);
+
         threadPool = Executors.newFixedThreadPool(numThreads);
         fileHandleCache = new FileHandleCache(numFileHandles);
         inputQueue = new LinkedList<BAMAccessPlan>();
+        inflationQueue = new LinkedList<Runnable>();
+        this.blocksToReadAhead = blocksToReadAhead;
 
-        threadPool.execute(new BlockLoader(this,fileHandleCache,true));
+        for(int i = 0; i < numThreads; i++)
+            threadPool.execute(new BlockLoader(this,fileHandleCache,true));
+    }
+
+    /**
+     * @return How many blocks of each input stream a block loader should read at a time.
+     */
+    int getBlocksToReadAhead() {
+        return blocksToReadAhead;
     }
 
     /**
@@ -66,12 +129,26 @@ public class BGZFBlockLoadingDispatcher {
     }
 
     /**
-     * Claims the next work request from the queue.
-     * @return The next work request, or null if none is available.
+     * Queues up a block to be inflated by the first free block loader.
+     * @param inflation the inflation of the block.  Must be safe to run more than once, as the loader
+     *                  which queued it may run it itself rather than waiting.
+     */
+    void queueInflation(final Runnable inflation) {
+        synchronized(inputQueue) {
+            inflationQueue.add(inflation);
+            inputQueue.notify();
+        }
+    }
+
+    /**
+     * Claims the next work request from the queue.  Inflation of blocks takes precedence over reading new
+     * blocks, as a reader may already be waiting for them; any queued inflation is run by the calling thread.
+     * @return The next work request, or null if an inflation was run instead.
      */
     BAMAccessPlan claimNextWorkRequest() {
+        final Runnable inflation;
         synchronized(inputQueue) {
-            while(inputQueue.isEmpty()) {
+            while(inputQueue.isEmpty() && inflationQueue.isEmpty()) {
                 try {
                     inputQueue.wait();
                 }
@@ -79,7 +156,92 @@ public class BGZFBlockLoadingDispatcher {
                     throw new ReviewedStingException("Interrupt occurred waiting for next block reader work item");
                 }
             }
-            return inputQueue.poll();
+            inflation = inflationQueue.poll();
+            if(inflation == null)
+                return inputQueue.poll();
+        }
+        inflation.run();
+        return null;
+    }
+
+    /**
+     * Claims a buffer from the pool, allocating a new one if none is free.
+     * @return A buffer big enough to hold any compressed or uncompressed BGZF block.
+     */
+    byte[] claimBuffer() {
+        final byte[] buffer = bufferPool.poll();
+        return buffer != null ? buffer : new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
+    }
+
+    /**
+     * Returns a buffer claimed with claimBuffer() to the pool.
+     * @param buffer The buffer, which must no longer be used by the caller.
+     */
+    void releaseBuffer(final byte[] buffer) {
+        bufferPool.add(buffer);
+    }
+
+    /**
+     * Gets the decompression statistics of the given file, creating them if need be.
+     * @param reader The file.
+     * @return Statistics for the file, which may be updated concurrently.
+     */
+    DecompressionStatistics getStatistics(final SAMReaderID reader) {
+        synchronized(statistics) {
+            DecompressionStatistics readerStatistics = statistics.get(reader);
+            if(readerStatistics == null) {
+                readerStatistics = new DecompressionStatistics();
+                statistics.put(reader,readerStatistics);
+            }
+            return readerStatistics;
+        }
+    }
+
+    /**
+     * Logs the amount of data decompressed from each file so far, and how quickly it was decompressed.
+     */
+    public void printDecompressionStatistics() {
+        synchronized(statistics) {
+            for(Map.Entry<SAMReaderID,DecompressionStatistics> entry: statistics.entrySet())
+                logger.info(String.format("Decompressed %s: %s",entry.getKey().getSamFilePath(),entry.getValue()));
+        }
+    }
+
+    /**
+     * Tracks the blocks decompressed from a single file, and the time spent inflating them.
+     */
+    static class DecompressionStatistics {
+        private long numBlocks = 0;
+        private long compressedBytes = 0;
+        private long uncompressedBytes = 0;
+        private long inflationTimeNanos = 0;
+
+        synchronized void addBlock(final int compressedSize, final int uncompressedSize, final long elapsedNanos) {
+            numBlocks++;
+            compressedBytes += compressedSize;
+            uncompressedBytes += uncompressedSize;
+            inflationTimeNanos += elapsedNanos;
+        }
+
+        synchronized long getNumBlocks() {
+            return numBlocks;
+        }
+
+        synchronized long getUncompressedBytes() {
+            return uncompressedBytes;
+        }
+
+        /**
+         * @return The rate at which a single thread inflated data, in uncompressed MB per second.
+         */
+        synchronized double getThroughput() {
+            return inflationTimeNanos == 0 ? 0.0 : (uncompressedBytes / 1e6) / (inflationTimeNanos / 1e9);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d blocks, %.2f MB compressed to %.2f MB uncompressed, in %.2f s of inflation (%.2f MB/s per thread)",
+                    numBlocks,compressedBytes/1e6,uncompressedBytes/1e6,inflationTimeNanos/1e9,getThroughput());
         }
     }
 }
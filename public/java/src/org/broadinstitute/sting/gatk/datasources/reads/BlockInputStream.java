@@ -34,11 +34,18 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Presents decompressed blocks to the SAMFileReader.
+ *
+ * Blocks are loaded a few at a time by the dispatcher, and wait in a queue of pending blocks until the reader
+ * needs them.  As soon as one batch of blocks has arrived, the next is requested, so that decompression runs
+ * ahead of the reader rather than one block behind it.  When a new access plan is submitted, the blocks loaded
+ * but not used for the last one are kept, as the next plan usually picks up where the last left off.
  */
 public class BlockInputStream extends InputStream {
     /**
@@ -81,6 +88,37 @@ public class BlockInputStream extends InputStream {
      */
     private LinkedList<Long> blockPositions = new LinkedList<Long>();
 
+    /**
+     * Blocks which have been loaded for the current access plan, but not yet copied into the buffer, in order.
+     */
+    private final LinkedList<PendingBlock> pendingBlocks = new LinkedList<PendingBlock>();
+
+    /**
+     * The block most recently copied into the buffer.
+     */
+    private LoadedBlock currentBlock = null;
+
+    /**
+     * Blocks loaded for previous access plans which were never used, or may be needed again, by block address.
+     */
+    private final Map<Long,LoadedBlock> recentBlocks = new HashMap<Long,LoadedBlock>();
+
+    /**
+     * Whether the dispatcher is currently loading blocks for the current access plan.
+     */
+    private boolean loadInProgress = false;
+
+    /**
+     * Whether all blocks of the current access plan have been requested from the dispatcher.
+     */
+    private boolean accessPlanExhausted = false;
+
+    /**
+     * How many blocks to request in the next batch.  Starts at one for each access plan, and doubles with each
+     * batch up to the dispatcher's limit, so that shards which are abandoned early don't load blocks for nothing.
+     */
+    private int blocksToLoad = 1;
+
     /**
      * Provides a lock to wait for more data to arrive.
      */
@@ -159,6 +197,20 @@ public class BlockInputStream extends InputStream {
     private void clearBuffers() {
         this.accessPlan.reset();
 
+        // Keep the blocks loaded for the previous access plan, in case the next one needs them.  Any blocks
+        // still to be loaded for the previous plan will be kept as they arrive.
+        for(LoadedBlock recentBlock: recentBlocks.values())
+            dispatcher.releaseBuffer(recentBlock.contents.array());
+        recentBlocks.clear();
+        if(currentBlock != null)
+            addRecentBlock(currentBlock);
+        currentBlock = null;
+        for(PendingBlock pendingBlock: pendingBlocks)
+            addRecentBlock(pendingBlock.block);
+        pendingBlocks.clear();
+        loadInProgress = false;
+        blocksToLoad = 1;
+
         // Buffer semantics say that outside of a lock, buffer should always be prepared for reading.
         // Indicate no data to be read.
         buffer.clear();
@@ -171,35 +223,47 @@ public class BlockInputStream extends InputStream {
             blockPositions.removeFirst();
     }
 
+    /**
+     * @return true if no more data will be loaded into the buffer for the current access plan.
+     */
     public boolean eof() {
         synchronized(lock) {
             // TODO: Handle multiple empty BGZF blocks at end of the file.
-            return accessPlan != null && (accessPlan.getBlockAddress() < 0 || accessPlan.getBlockAddress() >= length);
+            return accessPlanExhausted && !loadInProgress && pendingBlocks.isEmpty();
         }
     }
 
+    private boolean isExhausted(final BAMAccessPlan accessPlan) {
+        return accessPlan.getBlockAddress() < 0 || accessPlan.getBlockAddress() >= length;
+    }
+
     /**
      * Submits a new access plan for the given dataset and seeks to the given point.
      * @param accessPlan The next seek point for BAM data in this reader.
      */
     public void submitAccessPlan(final BAMAccessPlan accessPlan) {
         //System.out.printf("Thread %s: submitting access plan for block at position: %d%n",Thread.currentThread().getId(),position.getBlockAddress());
-        this.accessPlan = accessPlan;
-        accessPlan.reset();
+        final long startingBlockAddress;
+        synchronized(lock) {
+            this.accessPlan = accessPlan;
+            accessPlan.reset();
 
-        clearBuffers();
+            clearBuffers();
 
-        // Pull the iterator past any oddball chunks at the beginning of the shard (chunkEnd < chunkStart, empty chunks, etc).
-        // TODO: Don't pass these empty chunks in.
-        accessPlan.advancePosition(makeFilePointer(accessPlan.getBlockAddress(),0));
+            // Pull the iterator past any oddball chunks at the beginning of the shard (chunkEnd < chunkStart, empty chunks, etc).
+            // TODO: Don't pass these empty chunks in.
+            accessPlan.advancePosition(makeFilePointer(accessPlan.getBlockAddress(),0));
+            accessPlanExhausted = isExhausted(accessPlan);
+            startingBlockAddress = accessPlan.getBlockAddress();
 
-        if(accessPlan.getBlockAddress() >= 0) {
-            waitForBufferFill();
+            if(startingBlockAddress >= 0) {
+                waitForBufferFill();
+            }
         }
 
         if(validatingInputStream != null) {
             try {
-                validatingInputStream.seek(makeFilePointer(accessPlan.getBlockAddress(),0));
+                validatingInputStream.seek(makeFilePointer(startingBlockAddress,0));
             }
             catch(IOException ex) {
                 throw new ReviewedStingException("Unable to validate against Picard input stream",ex);
@@ -244,84 +308,123 @@ public class BlockInputStream extends InputStream {
     }
 
     /**
-     * Push contents of incomingBuffer into the end of this buffer.
+     * Hands over the next block loaded for the given access plan.
      * MUST be called from a thread that is NOT the reader thread.
-     * @param incomingBuffer The data being pushed into this input stream.
-     * @param accessPlan target access plan for the data.
-     * @param filePosition the current position of the file pointer
+     * @param accessPlan target access plan for the data.  If it's no longer the current plan, the block is kept for reuse.
+     * @param block the block, whose contents are in a buffer claimed from the dispatcher.
+     * @param spans the spans of the access plan overlapping the block.
      */
-    public void copyIntoBuffer(final ByteBuffer incomingBuffer, final BAMAccessPlan accessPlan, final long filePosition) {
+    void deliverBlock(final BAMAccessPlan accessPlan, final LoadedBlock block, final List<GATKChunk> spans) {
         synchronized(lock) {
-            try {
-                if(validatingInputStream != null) {
-                    byte[] validBytes = new byte[incomingBuffer.remaining()];
+            if(accessPlan != this.accessPlan)
+                addRecentBlock(block);
+            else {
+                pendingBlocks.add(new PendingBlock(block,spans));
+                lock.notifyAll();
+            }
+        }
+    }
 
-                    byte[] currentBytes = new byte[incomingBuffer.remaining()];
-                    int pos = incomingBuffer.position();
-                    int lim = incomingBuffer.limit();
-                    incomingBuffer.get(currentBytes);
+    /**
+     * Takes a block loaded for a previous access plan, so that it needn't be loaded again.
+     * @param blockAddress the address of the block in the file.
+     * @return the block, which now belongs to the caller, or null if it isn't available.
+     */
+    LoadedBlock claimRecentBlock(final long blockAddress) {
+        synchronized(lock) {
+            return recentBlocks.remove(blockAddress);
+        }
+    }
 
-                    incomingBuffer.limit(lim);
-                    incomingBuffer.position(pos);
+    private void addRecentBlock(final LoadedBlock block) {
+        final LoadedBlock replaced = recentBlocks.put(block.blockAddress,block);
+        if(replaced != null)
+            dispatcher.releaseBuffer(replaced.contents.array());
+    }
 
-                    long currentFilePointer = validatingInputStream.getFilePointer();
-                    validatingInputStream.seek(makeFilePointer(accessPlan.getBlockAddress(), 0));
-                    validatingInputStream.read(validBytes);
-                    validatingInputStream.seek(currentFilePointer);
+    /**
+     * Indicates that the dispatcher is done loading a batch of blocks for the given access plan.
+     * @param accessPlan the access plan for which blocks were loaded.
+     * @param exhausted whether every block of the access plan has now been loaded.
+     */
+    void completeLoad(final BAMAccessPlan accessPlan, final boolean exhausted) {
+        synchronized(lock) {
+            if(accessPlan != this.accessPlan)
+                return;
+            loadInProgress = false;
+            accessPlanExhausted = exhausted;
+            lock.notifyAll();
+        }
+    }
 
-                    if(!Arrays.equals(validBytes,currentBytes))
-                        throw new ReviewedStingException(String.format("Bytes being inserted into BlockInputStream %s are incorrect",this));
-                }
+    /**
+     * Push contents of the next pending block into the end of this buffer, which must be empty.
+     * @param block The block being pushed into this input stream.
+     */
+    private void copyIntoBuffer(final PendingBlock pendingBlock) {
+        final LoadedBlock block = pendingBlock.block;
+        final ByteBuffer incomingBuffer = block.contents.duplicate();
 
-                compactBuffer();
-                // Open up the buffer for more reading.
-                buffer.limit(buffer.capacity());
+        if(validatingInputStream != null) {
+            try {
+                byte[] validBytes = new byte[incomingBuffer.remaining()];
 
-                // Get the spans overlapping this particular block...
-                List<GATKChunk> spansOverlapping = accessPlan.getSpansOverlappingBlock(accessPlan.getBlockAddress(),filePosition);
+                byte[] currentBytes = new byte[incomingBuffer.remaining()];
+                int pos = incomingBuffer.position();
+                int lim = incomingBuffer.limit();
+                incomingBuffer.get(currentBytes);
 
-                // ...and advance the block
-                this.accessPlan = accessPlan;
-                accessPlan.advancePosition(makeFilePointer(filePosition, 0));
+                incomingBuffer.limit(lim);
+                incomingBuffer.position(pos);
 
-                if(buffer.remaining() < incomingBuffer.remaining())
-                    lock.wait();
+                long currentFilePointer = validatingInputStream.getFilePointer();
+                validatingInputStream.seek(makeFilePointer(block.blockAddress, 0));
+                validatingInputStream.read(validBytes);
+                validatingInputStream.seek(currentFilePointer);
 
-                final int bytesInIncomingBuffer = incomingBuffer.limit();
+                if(!Arrays.equals(validBytes,currentBytes))
+                    throw new ReviewedStingException(String.format("Bytes being inserted into BlockInputStream %s are incorrect",this));
+            }
+            catch(IOException ex) {
+                throw new ReviewedStingException("Unable to validate against Picard input stream",ex);
+            }
+        }
 
-                for(GATKChunk spanOverlapping: spansOverlapping) {
-                    // Clear out the endcap tracking state and add in the starting position for this transfer.
-                    blockOffsets.removeLast();
-                    blockOffsets.add(buffer.position());
-                    blockPositions.removeLast();
-                    blockPositions.add(spanOverlapping.getChunkStart());
+        compactBuffer();
+        // Open up the buffer for more reading.
+        buffer.limit(buffer.capacity());
 
-                    // Stream the buffer into the data stream.
-                    incomingBuffer.limit((spanOverlapping.getBlockEnd() > spanOverlapping.getBlockStart()) ? bytesInIncomingBuffer : spanOverlapping.getBlockOffsetEnd());
-                    incomingBuffer.position(spanOverlapping.getBlockOffsetStart());
-                    buffer.put(incomingBuffer);
+        final int bytesInIncomingBuffer = incomingBuffer.limit();
 
-                    // Add the endcap for this transfer.
-                    blockOffsets.add(buffer.position());
-                    blockPositions.add(spanOverlapping.getChunkEnd());
-                }
+        for(GATKChunk spanOverlapping: pendingBlock.spans) {
+            // Clear out the endcap tracking state and add in the starting position for this transfer.
+            blockOffsets.removeLast();
+            blockOffsets.add(buffer.position());
+            blockPositions.removeLast();
+            blockPositions.add(spanOverlapping.getChunkStart());
 
-                // Set up the buffer for reading.
-                buffer.flip();
+            // Stream the buffer into the data stream.
+            incomingBuffer.limit((spanOverlapping.getBlockEnd() > spanOverlapping.getBlockStart()) ? bytesInIncomingBuffer : spanOverlapping.getBlockOffsetEnd());
+            incomingBuffer.position(spanOverlapping.getBlockOffsetStart());
+            buffer.put(incomingBuffer);
 
-                lock.notify();
-            }
-            catch(Exception ex) {
-                reportException(ex);
-                lock.notify();
-            }
+            // Add the endcap for this transfer.
+            blockOffsets.add(buffer.position());
+            blockPositions.add(spanOverlapping.getChunkEnd());
         }
+
+        // Set up the buffer for reading.
+        buffer.flip();
+
+        if(currentBlock != null)
+            dispatcher.releaseBuffer(currentBlock.contents.array());
+        currentBlock = block;
     }
 
     void reportException(Throwable t) {
         synchronized(lock) {
             this.error = t;
-            lock.notify();
+            lock.notifyAll();
         }
     }
 
@@ -380,9 +483,6 @@ public class BlockInputStream extends InputStream {
                 // TODO: Assert that we don't copy across a block boundary
             }
 
-            // Notify any waiting threads that some of the contents of the buffer were removed.
-            if(length-remaining > 0)
-                lock.notify();
         }
 
 //        if(validatingInputStream != null) {
@@ -422,18 +522,45 @@ public class BlockInputStream extends InputStream {
         return reader.getSamFilePath();
     }
 
+    /**
+     * If the buffer is empty, fills it with the next pending block, waiting for one to be loaded if need be.
+     * Then, if no blocks are being loaded and few are pending, requests the next batch, so they'll be ready
+     * when the reader is.
+     */
     private void waitForBufferFill() {
         synchronized(lock) {
-            if(buffer.remaining() == 0 && !eof()) {
-                //System.out.printf("Thread %s is waiting for a buffer fill from position %d to buffer %s%n",Thread.currentThread().getId(),position.getBlockAddress(),this);
-                dispatcher.queueBlockLoad(accessPlan);
-                try {
-                    lock.wait();
-                }
-                catch(InterruptedException ex) {
-                    throw new ReviewedStingException("Interrupt occurred waiting for buffer to fill",ex);
+            while(buffer.remaining() == 0 && error == null) {
+                if(!pendingBlocks.isEmpty())
+                    copyIntoBuffer(pendingBlocks.removeFirst());
+                else if(!loadInProgress && accessPlanExhausted)
+                    break;
+                else {
+                    //System.out.printf("Thread %s is waiting for a buffer fill from position %d to buffer %s%n",Thread.currentThread().getId(),position.getBlockAddress(),this);
+                    requestLoad();
+                    try {
+                        lock.wait();
+                    }
+                    catch(InterruptedException ex) {
+                        throw new ReviewedStingException("Interrupt occurred waiting for buffer to fill",ex);
+                    }
                 }
             }
+
+            checkForErrors();
+            if(pendingBlocks.size() < blocksToLoad)
+                requestLoad();
+        }
+    }
+
+    /**
+     * Asks the dispatcher to load the next batch of blocks, unless it's already loading them or there are none left.
+     */
+    private void requestLoad() {
+        if(!loadInProgress && !accessPlanExhausted) {
+            loadInProgress = true;
+            accessPlan.setBlocksToLoad(blocksToLoad);
+            blocksToLoad = Math.min(2*blocksToLoad,dispatcher.getBlocksToReadAhead());
+            dispatcher.queueBlockLoad(accessPlan);
         }
     }
 
@@ -446,4 +573,43 @@ public class BlockInputStream extends InputStream {
     public static long makeFilePointer(final long blockAddress, final int blockOffset) {
         return blockAddress << 16 | blockOffset;
     }
+
+    /**
+     * A block loaded by the dispatcher.
+     */
+    static class LoadedBlock {
+        /**
+         * The address of the block in the file.
+         */
+        final long blockAddress;
+
+        /**
+         * The address of the block following this one in the file.
+         */
+        final long nextBlockAddress;
+
+        /**
+         * The contents of the block, in a buffer claimed from the dispatcher.
+         */
+        final ByteBuffer contents;
+
+        LoadedBlock(final long blockAddress, final long nextBlockAddress, final ByteBuffer contents) {
+            this.blockAddress = blockAddress;
+            this.nextBlockAddress = nextBlockAddress;
+            this.contents = contents;
+        }
+    }
+
+    /**
+     * A block loaded for the current access plan, with the spans of the plan it contains.
+     */
+    private static class PendingBlock {
+        final LoadedBlock block;
+        final List<GATKChunk> spans;
+
+        PendingBlock(final LoadedBlock block, final List<GATKChunk> spans) {
+            this.block = block;
+            this.spans = spans;
+        }
+    }
 }
@@ -24,6 +24,7 @@
 
 package org.broadinstitute.sting.gatk.datasources.reads;
 
+import net.sf.samtools.GATKChunk;
 import org.broad.tribble.util.BlockCompressedStreamConstants;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
@@ -32,6 +33,10 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
@@ -39,6 +44,15 @@ import java.util.zip.Inflater;
  * An engine for loading blocks.
  */
 class BlockLoader implements Runnable {
+    /**
+     * Each thread keeps an inflater of its own, as they're expensive to create.
+     */
+    private static final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>() {
+        @Override protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
     /**
      * Coordinates the input queue.
      */
@@ -73,31 +87,100 @@ class BlockLoader implements Runnable {
             BAMAccessPlan accessPlan = null;
             try {
                 accessPlan = dispatcher.claimNextWorkRequest();
-                FileInputStream inputStream = fileHandleCache.claimFileInputStream(accessPlan.getReader());
+                if(accessPlan != null)
+                    load(accessPlan);
+            }
+            catch(Throwable error) {
+                if(accessPlan != null && accessPlan.getInputStream() != null)
+                    accessPlan.getInputStream().reportException(error);
+            }
+        }
+
+    }
 
+    /**
+     * Reads the next few blocks of the access plan, advancing the plan past them, and hands them to the
+     * plan's input stream in order as soon as each is inflated.  Blocks the input stream still holds from
+     * previous access plans are reused rather than read again.
+     * @param accessPlan The access plan whose blocks should be loaded.
+     * @throws Exception if the blocks can't be read or inflated.
+     */
+    private void load(final BAMAccessPlan accessPlan) throws Exception {
+        final BlockInputStream bamInputStream = accessPlan.getInputStream();
+        final BGZFBlockLoadingDispatcher.DecompressionStatistics statistics = dispatcher.getStatistics(accessPlan.getReader());
+
+        final List<Long> blockAddresses = new ArrayList<Long>();
+        final List<Long> nextBlockAddresses = new ArrayList<Long>();
+        final List<List<GATKChunk>> spans = new ArrayList<List<GATKChunk>>();
+        final List<FutureTask<ByteBuffer>> blocks = new ArrayList<FutureTask<ByteBuffer>>();
+
+        FileInputStream inputStream = null;
+        try {
+            while(blocks.size() < accessPlan.getBlocksToLoad() && !isExhausted(accessPlan)) {
                 //long blockAddress = readerPosition.getBlockAddress();
                 //System.out.printf("Thread %s: BlockLoader: copying bytes from %s at position %d into %s%n",Thread.currentThread().getId(),inputStream,blockAddress,readerPosition.getInputStream());
 
-                ByteBuffer compressedBlock = readBGZFBlock(inputStream,accessPlan.getBlockAddress());
-                long nextBlockAddress = position(inputStream);
+                final long blockAddress = accessPlan.getBlockAddress();
+                final long nextBlockAddress;
+                final FutureTask<ByteBuffer> block;
+
+                final BlockInputStream.LoadedBlock recentBlock = bamInputStream.claimRecentBlock(blockAddress);
+                if(recentBlock != null) {
+                    nextBlockAddress = recentBlock.nextBlockAddress;
+                    block = new FutureTask<ByteBuffer>(new Callable<ByteBuffer>() {
+                        public ByteBuffer call() {
+                            return recentBlock.contents;
+                        }
+                    });
+                }
+                else {
+                    if(inputStream == null)
+                        inputStream = fileHandleCache.claimFileInputStream(accessPlan.getReader());
+                    final ByteBuffer compressedBlock = readBGZFBlock(inputStream,blockAddress);
+                    nextBlockAddress = position(inputStream);
+
+                    block = new FutureTask<ByteBuffer>(new Callable<ByteBuffer>() {
+                        public ByteBuffer call() throws DataFormatException {
+                            return decompress ? decompressBGZFBlock(compressedBlock,statistics) : compressedBlock;
+                        }
+                    });
+                    if(decompress)
+                        dispatcher.queueInflation(block);
+                }
+
+                // Get the spans overlapping this particular block, and advance the plan past it.
+                spans.add(accessPlan.getSpansOverlappingBlock(blockAddress,nextBlockAddress));
+                accessPlan.advancePosition(BlockInputStream.makeFilePointer(nextBlockAddress,0));
+
+                blockAddresses.add(blockAddress);
+                nextBlockAddresses.add(nextBlockAddress);
+                blocks.add(block);
+            }
+        }
+        finally {
+            if(inputStream != null)
                 fileHandleCache.releaseFileInputStream(accessPlan.getReader(),inputStream);
+        }
 
-                ByteBuffer block = decompress ? decompressBGZFBlock(compressedBlock) : compressedBlock;
-                int bytesCopied = block.remaining();
-
-                BlockInputStream bamInputStream = accessPlan.getInputStream();
-                bamInputStream.copyIntoBuffer(block,accessPlan,nextBlockAddress);
+        // Hand the blocks over in order, inflating any which no other loader has gotten to yet.
+        for(int i = 0; i < blocks.size(); i++) {
+            final FutureTask<ByteBuffer> block = blocks.get(i);
+            block.run();
+            bamInputStream.deliverBlock(accessPlan,new BlockInputStream.LoadedBlock(blockAddresses.get(i),nextBlockAddresses.get(i),block.get()),spans.get(i));
 
-                //System.out.printf("Thread %s: BlockLoader: copied %d bytes from %s at position %d into %s%n",Thread.currentThread().getId(),bytesCopied,inputStream,blockAddress,readerPosition.getInputStream());
-            }
-            catch(Throwable error) {
-                if(accessPlan != null && accessPlan.getInputStream() != null)
-                    accessPlan.getInputStream().reportException(error);
-            }
+            //System.out.printf("Thread %s: BlockLoader: copied %d bytes from %s at position %d into %s%n",Thread.currentThread().getId(),bytesCopied,inputStream,blockAddress,readerPosition.getInputStream());
         }
+        bamInputStream.completeLoad(accessPlan,isExhausted(accessPlan));
+    }
 
+    private boolean isExhausted(final BAMAccessPlan accessPlan) {
+        return accessPlan.getBlockAddress() < 0 || accessPlan.getBlockAddress() >= accessPlan.getInputStream().length();
     }
 
+    /**
+     * Reads the BGZF block at the given address, skipping over any empty blocks.
+     * @return A buffer from the dispatcher's pool, holding the complete block.
+     */
     private ByteBuffer readBGZFBlock(final FileInputStream inputStream, final long blockAddress) throws IOException {
         FileChannel channel = inputStream.getChannel();
 
@@ -142,34 +225,42 @@ class BlockLoader implements Runnable {
         }
         while(uncompressedDataSize == 0 && channel.position() < channel.size());
 
-        // Prepare the buffer for reading.
+        // Copy the block out of the direct buffer, so this loader can go on to read the next one.
         inputBuffer.flip();
+        final ByteBuffer block = ByteBuffer.wrap(dispatcher.claimBuffer());
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        block.put(inputBuffer);
+        block.flip();
 
-        return inputBuffer;
+        return block;
     }
 
-    private ByteBuffer decompressBGZFBlock(final ByteBuffer bgzfBlock) throws DataFormatException {
+    /**
+     * Inflates the given block, and returns its buffer to the dispatcher's pool.
+     * @return A buffer from the dispatcher's pool, holding the uncompressed contents of the block.
+     */
+    private ByteBuffer decompressBGZFBlock(final ByteBuffer bgzfBlock, final BGZFBlockLoadingDispatcher.DecompressionStatistics statistics) throws DataFormatException {
+        final long startTime = System.nanoTime();
         final int compressedBufferSize = bgzfBlock.remaining();
 
         // Determine the uncompressed buffer size (
         bgzfBlock.position(bgzfBlock.limit()-4);
         int uncompressedBufferSize = bgzfBlock.getInt();
-        byte[] uncompressedContent = new byte[uncompressedBufferSize];
-
-        // Bound the CDATA section of the buffer.
-        bgzfBlock.limit(compressedBufferSize-BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH);
-        bgzfBlock.position(BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
-        byte[] compressedContent = new byte[bgzfBlock.remaining()];
-        ByteBuffer.wrap(compressedContent).put(bgzfBlock);
-
-        // Decompress the buffer.
-        final Inflater inflater = new Inflater(true);
-        inflater.setInput(compressedContent);
-        int bytesUncompressed = inflater.inflate(uncompressedContent);
+        byte[] uncompressedContent = dispatcher.claimBuffer();
+
+        // Decompress the CDATA section of the buffer.
+        final Inflater inflater = BlockLoader.inflater.get();
+        inflater.reset();
+        inflater.setInput(bgzfBlock.array(),BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH,
+                compressedBufferSize-BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH-BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH);
+        int bytesUncompressed = inflater.inflate(uncompressedContent,0,uncompressedBufferSize);
         if(bytesUncompressed != uncompressedBufferSize)
             throw new ReviewedStingException("Error decompressing block");
 
-        return ByteBuffer.wrap(uncompressedContent);
+        dispatcher.releaseBuffer(bgzfBlock.array());
+        statistics.addBlock(compressedBufferSize,uncompressedBufferSize,System.nanoTime()-startTime);
+
+        return ByteBuffer.wrap(uncompressedContent,0,uncompressedBufferSize);
     }
 
     private long position(final FileInputStream inputStream) throws IOException {
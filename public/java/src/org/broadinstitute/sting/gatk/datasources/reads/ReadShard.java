@@ -83,6 +83,14 @@ public class ReadShard extends Shard {
         return reads.size() > ReadShard.MAX_READS;
     }
 
+    /**
+     * Returns the number of reads in the read buffer.
+     * @return The number of reads buffered by this shard.
+     */
+    public int size() {
+        return reads.size();
+    }
+
     /**
      * Adds a read to the read buffer.
      * @param read Add a read to the internal shard buffer.
@@ -26,21 +26,56 @@ package org.broadinstitute.sting.gatk.datasources.reads;
 
 import net.sf.samtools.GATKBAMFileSpan;
 import net.sf.samtools.SAMFileSpan;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.*;
 
 /**
  * Divide up large file pointers containing reads into more manageable subcomponents.
+ *
+ * Optionally, the shards can be filled on a thread of their own ahead of the traversal, so that the reads of the
+ * next shards are decoded while the traversal works through the current one.
  */
 public class ReadShardBalancer extends ShardBalancer {
+    /**
+     * How many shards' worth of reads to fill ahead of the traversal, or 0 to fill each shard when it's asked for.
+     */
+    private final int numPrefetchedShards;
+
+    /**
+     * Create a balancer which fills each shard as the traversal asks for it.
+     */
+    public ReadShardBalancer() {
+        this(0);
+    }
+
+    /**
+     * Create a balancer which fills shards ahead of the traversal.
+     * @param numPrefetchedShards How many shards' worth of reads to keep filled ahead of the traversal, or 0 to
+     *                            fill each shard as the traversal asks for it.
+     */
+    public ReadShardBalancer(final int numPrefetchedShards) {
+        if(numPrefetchedShards < 0)
+            throw new ReviewedStingException("Unable to prefetch a negative number of shards: " + numPrefetchedShards);
+        this.numPrefetchedShards = numPrefetchedShards;
+    }
+
     /**
      * Convert iterators of file pointers into balanced iterators of shards.
      * @return An iterator over balanced shards.
      */
     public Iterator<Shard> iterator() {
+        if(numPrefetchedShards > 0)
+            return new PrefetchingShardIterator(numPrefetchedShards*ReadShard.MAX_READS);
+        return createFillingIterator();
+    }
+
+    /**
+     * Create an iterator which fills each shard from the reads data source as it's reached.  Shards must be
+     * filled one after another, as each starts where the last one left off.
+     * @return An iterator over filled shards.
+     */
+    private Iterator<Shard> createFillingIterator() {
         return new Iterator<Shard>() {
             /**
              * The cached shard to be returned next.  Prefetched in the peekable iterator style.
@@ -124,4 +159,109 @@ public class ReadShardBalancer extends ShardBalancer {
         };
     }
 
+    /**
+     * Fills shards on a thread of its own, keeping them in memory until the traversal asks for them.  The filler
+     * stops filling whenever the waiting shards hold maxBufferedReads reads or more.
+     */
+    private class PrefetchingShardIterator implements Iterator<Shard>, Runnable {
+        /**
+         * How many reads the waiting shards may hold before the filler waits for the traversal to catch up.
+         */
+        private final int maxBufferedReads;
+
+        /**
+         * The filled shards waiting for the traversal, in order.
+         */
+        private final Queue<ReadShard> filledShards = new LinkedList<ReadShard>();
+
+        /**
+         * The total number of reads in the waiting shards.
+         */
+        private int bufferedReads = 0;
+
+        /**
+         * Whether the filler has run out of shards.
+         */
+        private boolean isDone = false;
+
+        /**
+         * The exception the filler died with, if any, to be rethrown once the traversal reaches it.
+         */
+        private Throwable error = null;
+
+        public PrefetchingShardIterator(final int maxBufferedReads) {
+            this.maxBufferedReads = maxBufferedReads;
+            // don't let an abandoned filler keep the JVM alive
+            Thread filler = new Thread(this,"ReadShardFiller");
+            filler.setDaemon(true);
+            filler.start();
+        }
+
+        public void run() {
+            try {
+                Iterator<Shard> shards = createFillingIterator();
+                while(shards.hasNext()) {
+                    ReadShard shard = (ReadShard)shards.next();
+                    synchronized(this) {
+                        while(bufferedReads >= maxBufferedReads && !filledShards.isEmpty())
+                            wait();
+                        filledShards.add(shard);
+                        bufferedReads += shard.size();
+                        notifyAll();
+                    }
+                }
+            }
+            catch(Throwable t) {
+                synchronized(this) {
+                    error = t;
+                }
+            }
+            finally {
+                synchronized(this) {
+                    isDone = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        public synchronized boolean hasNext() {
+            waitForShard();
+            return !filledShards.isEmpty();
+        }
+
+        public synchronized Shard next() {
+            waitForShard();
+            if(filledShards.isEmpty())
+                throw new NoSuchElementException("No next read shard available");
+            ReadShard shard = filledShards.remove();
+            bufferedReads -= shard.size();
+            notifyAll();
+            return shard;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Unable to remove from shard balancing iterator");
+        }
+
+        /**
+         * Waits until there's a filled shard to return or the filler is done, rethrowing whatever the filler died of
+         * once all of the shards it filled first have been returned.
+         */
+        private void waitForShard() {
+            try {
+                while(filledShards.isEmpty() && !isDone)
+                    wait();
+            }
+            catch(InterruptedException e) {
+                throw new ReviewedStingException("Interrupted while waiting for a read shard to be filled",e);
+            }
+            if(filledShards.isEmpty() && error != null) {
+                if(error instanceof RuntimeException)
+                    throw (RuntimeException)error;
+                if(error instanceof Error)
+                    throw (Error)error;
+                throw new ReviewedStingException("Unable to fill read shard",error);
+            }
+        }
+    }
 }
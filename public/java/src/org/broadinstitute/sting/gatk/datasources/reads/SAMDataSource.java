@@ -48,6 +48,7 @@ import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.recalibration.BQSRSamIterator;
 import org.broadinstitute.sting.utils.recalibration.BaseRecalibration;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 import org.broadinstitute.sting.utils.sam.GATKSamRecordFactory;
 
 import java.io.File;
@@ -55,6 +56,9 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * User: aaron
@@ -133,6 +137,12 @@ public class SAMDataSource {
      */
     private final Map<SAMReaderID,ReadGroupMapping> originalToMergedReadGroupMappings = new HashMap<SAMReaderID,ReadGroupMapping>();
 
+    /**
+     * Maps the merged read group ids to the index of their sample among the samples of the merged header, in
+     * sorted order.  Reads are given the index of their sample as they're read.
+     */
+    private final Map<String,Integer> sampleIndicesByReadGroup = new HashMap<String,Integer>();
+
     /** our log, which we want to capture anything from this class */
     private static Logger logger = Logger.getLogger(SAMDataSource.class);
 
@@ -146,6 +156,13 @@ public class SAMDataSource {
      */
     private final BGZFBlockLoadingDispatcher dispatcher;
 
+    /**
+     * The threads calculating BAQ ahead of the traversal, shared by the iterators over all shards; null if BAQ is
+     * calculated inline.
+     */
+    private final ExecutorService baqExecutor;
+    private final int numBAQThreads;
+
     /**
      * How are threads allocated.
      */
@@ -199,6 +216,7 @@ public class SAMDataSource {
                 BAQ.CalculationMode.OFF,
                 BAQ.QualityMode.DONT_MODIFY,
                 null, // no BAQ
+                0,
                 null, // no BQSR
                 (byte) -1);
     }
@@ -215,6 +233,7 @@ public class SAMDataSource {
      * @param includeReadsWithDeletionAtLoci if 'true', the base pileups sent to the walker's map() method
      *         will explicitly list reads with deletion over the current reference base; otherwise, only observed
      *        bases will be seen in the pileups, and the deletions will be skipped silently.
+     * @param numBAQThreads number of threads to calculate BAQ on ahead of the traversal, or 0 to calculate it inline.
      * @param defaultBaseQualities if the reads have incomplete quality scores, set them all to defaultBaseQuality.
      */
     public SAMDataSource(
@@ -232,6 +251,7 @@ public class SAMDataSource {
             BAQ.CalculationMode cmode,
             BAQ.QualityMode qmode,
             IndexedFastaSequenceFile refReader,
+            int numBAQThreads,
             BaseRecalibration bqsrApplier,
             byte defaultBaseQualities) {
         this.readMetrics = new ReadMetrics();
@@ -248,6 +268,23 @@ public class SAMDataSource {
         else
             dispatcher = null;
 
+        if(cmode != BAQ.CalculationMode.OFF && numBAQThreads > 0) {
+            logger.info("Calculating BAQ on the fly on its own threads; number of threads = " + numBAQThreads);
+            this.numBAQThreads = numBAQThreads;
+            baqExecutor = Executors.newFixedThreadPool(numBAQThreads, new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    // BAQ threads only ever work for a traversal, so they mustn't keep the JVM alive after it's done
+                    final Thread thread = new Thread(runnable, "BAQ");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        else {
+            this.numBAQThreads = 0;
+            baqExecutor = null;
+        }
+
         validationStringency = strictness;
         if(readBufferSize != null)
             ReadShard.setReadBufferSize(readBufferSize);
@@ -327,6 +364,18 @@ public class SAMDataSource {
             originalToMergedReadGroupMappings.put(id,mappingToMerged);
         }
 
+        // number the samples of the merged read groups
+        SortedSet<String> sampleNames = new TreeSet<String>();
+        for(SAMReadGroupRecord readGroup: mergedHeader.getReadGroups()) {
+            if(readGroup.getSample() != null)
+                sampleNames.add(readGroup.getSample());
+        }
+        List<String> sampleList = new ArrayList<String>(sampleNames);
+        for(SAMReadGroupRecord readGroup: mergedHeader.getReadGroups()) {
+            if(readGroup.getSample() != null)
+                sampleIndicesByReadGroup.put(readGroup.getReadGroupId(),Collections.binarySearch(sampleList,readGroup.getSample()));
+        }
+
         for(SAMReaderID id: readerIDs) {
             File indexFile = findIndexFile(id.samFile);
             if(indexFile != null)
@@ -442,6 +491,22 @@ public class SAMDataSource {
         return sortOrder;
     }
 
+    /**
+     * Logs how much data was decompressed from each BAM, and how quickly, when running in asynchronous I/O mode.
+     */
+    public void printDecompressionStatistics() {
+        if(dispatcher != null)
+            dispatcher.printDecompressionStatistics();
+    }
+
+    /**
+     * Stops the threads calculating BAQ, once no more reads will be drawn from this data source.
+     */
+    public void close() {
+        if(baqExecutor != null)
+            baqExecutor.shutdownNow();
+    }
+
     /**
      * Gets the cumulative read metrics for shards already processed.
      * @return Cumulative read metrics.
@@ -585,7 +650,7 @@ public class SAMDataSource {
         return applyDecoratingIterators(shard.getReadMetrics(),
                 enableVerification,
                 readProperties.useOriginalBaseQualities(),
-                new ReleasingIterator(readers,StingSAMIteratorAdapter.adapt(mergingIterator)),
+                new ReleasingIterator(readers,new SampleIndexingIterator(StingSAMIteratorAdapter.adapt(mergingIterator))),
                 readProperties.getDownsamplingMethod().toFraction,
                 readProperties.getValidationExclusionList().contains(ValidationExclusion.TYPE.NO_READ_ORDER_VERIFICATION),
                 readProperties.getSupplementalFilters(),
@@ -682,7 +747,8 @@ public class SAMDataSource {
             wrappedIterator = new BQSRSamIterator(wrappedIterator, bqsrApplier);
 
         if (cmode != BAQ.CalculationMode.OFF)
-            wrappedIterator = new BAQSamIterator(refReader, wrappedIterator, cmode, qmode);
+            // keep each BAQ thread busy with a couple of batches of reads
+            wrappedIterator = new BAQSamIterator(refReader, wrappedIterator, cmode, qmode, baqExecutor, 2 * numBAQThreads);
 
         wrappedIterator = StingSAMIteratorAdapter.adapt(new CountingFilteringIterator(readMetrics,wrappedIterator,supplementalFilters));
 
@@ -975,6 +1041,44 @@ public class SAMDataSource {
         }
     }
 
+    /**
+     * Gives each read the index of its sample, so that reads can be partitioned by sample without looking up
+     * their sample names over and over.
+     */
+    private class SampleIndexingIterator implements StingSAMIterator {
+        private final StingSAMIterator wrappedIterator;
+
+        public SampleIndexingIterator(StingSAMIterator wrapped) {
+            this.wrappedIterator = wrapped;
+        }
+
+        public SampleIndexingIterator iterator() {
+            return this;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Can't remove from a StingSAMIterator");
+        }
+
+        public void close() {
+            wrappedIterator.close();
+        }
+
+        public boolean hasNext() {
+            return wrappedIterator.hasNext();
+        }
+
+        public SAMRecord next() {
+            SAMRecord read = wrappedIterator.next();
+            if(read instanceof GATKSAMRecord) {
+                Integer sampleIndex = sampleIndicesByReadGroup.get((String)read.getAttribute(SAMTag.RG.name()));
+                if(sampleIndex != null)
+                    ((GATKSAMRecord)read).setSampleIndex(sampleIndex);
+            }
+            return read;
+        }
+    }
+
     /**
      * Maps read groups in the original SAMFileReaders to read groups in
      */
@@ -0,0 +1,378 @@
+package org.broadinstitute.sting.gatk.executive;
+
+import net.sf.picard.reference.IndexedFastaSequenceFile;
+import org.broad.tribble.TribbleException;
+import org.broadinstitute.sting.gatk.GenomeAnalysisEngine;
+import org.broadinstitute.sting.gatk.datasources.reads.SAMDataSource;
+import org.broadinstitute.sting.gatk.datasources.reads.Shard;
+import org.broadinstitute.sting.gatk.datasources.rmd.ReferenceOrderedDataSource;
+import org.broadinstitute.sting.gatk.walkers.TreeReducible;
+import org.broadinstitute.sting.gatk.walkers.Walker;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A hierarchical microscheduler which never polls.  Shard traversals, tree reduces and output merges
+ * are all handed to the shared thread pool the moment their inputs are available: a completed traversal
+ * immediately schedules a reduce against any already-completed neighbor and an in-order merge of its
+ * output, and a completed reduce does the same with its own neighbors.  The driver thread only feeds
+ * shards into the pool, sleeping until a worker signals that a slot has opened up.
+ *
+ * Exposes the same HierarchicalMicroSchedulerMBean counters as the polling HierarchicalMicroScheduler.
+ * Requires a special walker tagged with a 'TreeReducible' interface.
+ */
+public class DependencyDrivenMicroScheduler extends HierarchicalMicroScheduler {
+    /**
+     * How many shard traversals can be queued or running at once.
+     */
+    private final int maxShardsInFlight;
+
+    /**
+     * Guards all of the scheduling state below.  Workers notify on this lock whenever
+     * the state changes so that the driver thread can wake up.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Results which are complete but not yet reduced with their neighbors, keyed by the index of the
+     * first shard they cover.  Ranges in this map are never adjacent to each other unless one of their
+     * other neighbors is currently being reduced.
+     */
+    private final TreeMap<Integer,ReducedRange> completedRanges = new TreeMap<Integer,ReducedRange>();
+
+    /** Output of completed traversals waiting to be merged, keyed by shard index.  Values may be null. */
+    private final Map<Integer,OutputMergeTask> pendingMerges = new HashMap<Integer,OutputMergeTask>();
+
+    /** Index of the next shard whose output should be merged into the target streams. */
+    private int nextShardToMerge = 0;
+
+    /** Is a merge task currently draining pendingMerges? */
+    private boolean mergeInFlight = false;
+
+    /** How many traversals have been submitted but not yet completed? */
+    private int shardsInFlight = 0;
+
+    /** How many tree reduces have been submitted but not yet completed? */
+    private int reducesInFlight = 0;
+
+    /**
+     * The first failure seen by any worker thread, or null if all is well.  The thread pool is shut down
+     * under the lock as soon as this is set, so work must only be submitted with the lock held and no failure.
+     */
+    private Throwable failure = null;
+
+    /**
+     * Create a new dependency-driven microscheduler to process the given reads and reference.
+     *
+     * @param walker        the walker used to process the dataset.
+     * @param reads         Reads file(s) to process.
+     * @param reference     Reference for driving the traversal.
+     * @param nThreadsToUse maximum number of threads to use to do the work
+     */
+    protected DependencyDrivenMicroScheduler(GenomeAnalysisEngine engine, Walker<?,?> walker, SAMDataSource reads, IndexedFastaSequenceFile reference, Collection<ReferenceOrderedDataSource> rods, int nThreadsToUse ) {
+        super(engine, walker, reads, reference, rods, nThreadsToUse);
+        this.maxShardsInFlight = nThreadsToUse;
+    }
+
+    @Override
+    public Object execute( Walker<?,?> walker, Iterable<Shard> shardStrategy ) {
+        // Fast fail for walkers not supporting TreeReducible interface.
+        if (!( walker instanceof TreeReducible ))
+            throw new IllegalArgumentException("The GATK can currently run in parallel only with TreeReducible walkers");
+
+        initializeWalker(walker);
+
+        int totalShards = 0;
+        for( Shard shard: shardStrategy ) {
+            synchronized(lock) {
+                // Keep at most one traversal per thread outstanding, so that reduces and merges queued
+                // behind them get picked up promptly, and don't let unmerged output pile up on disk.
+                while( failure == null && (shardsInFlight >= maxShardsInFlight || pendingMerges.size() >= MAX_OUTSTANDING_OUTPUT_MERGES) )
+                    waitForStateChange();
+                if( failure != null )
+                    break;
+                shardsInFlight++;
+                submit(new TraverseTask(walker,shard,totalShards++));
+            }
+        }
+
+        Object result = null;
+        synchronized(lock) {
+            while( failure == null && !isComplete(totalShards) )
+                waitForStateChange();
+            if( !completedRanges.isEmpty() )
+                result = completedRanges.firstEntry().getValue().result;
+        }
+
+        threadPool.shutdown();
+        rethrowFailure();
+
+        notifyTraversalDone(walker,result);
+
+        // do final cleanup operations
+        outputTracker.close();
+        cleanup();
+
+        return result;
+    }
+
+    /**
+     * Is all scheduled work finished?  Must be called with the lock held.
+     * @param totalShards Total number of shards submitted.
+     * @return True if every traversal, reduce and merge has completed.
+     */
+    private boolean isComplete( int totalShards ) {
+        return shardsInFlight == 0 && reducesInFlight == 0 && !mergeInFlight && nextShardToMerge == totalShards && completedRanges.size() <= 1;
+    }
+
+    /**
+     * Sleep the driver thread until a worker reports progress.  Must be called with the lock held.
+     */
+    private void waitForStateChange() {
+        try {
+            lock.wait();
+        }
+        catch( InterruptedException ex ) {
+            handleException(ex);
+        }
+    }
+
+    /**
+     * Record a failure in a worker thread and wake the driver so that it can be rethrown.
+     * @param t The failure.
+     */
+    private void fail( Throwable t ) {
+        synchronized(lock) {
+            if( failure == null ) {
+                failure = t;
+                threadPool.shutdownNow();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Hand a task to the thread pool, unless a failure has already shut the pool down, in which case
+     * the task is dropped; the driver is about to rethrow the failure anyway.  Must be called with the
+     * lock held, so that the check and the submission can't race with a failing worker.
+     * @param task The task to run.
+     */
+    private void submit( Runnable task ) {
+        if( failure == null )
+            threadPool.execute(task);
+    }
+
+    /**
+     * Rethrow any failure recorded by a worker thread on the driver thread.  As with the
+     * HierarchicalMicroScheduler, runtime exceptions are sent up the stack as-is.
+     */
+    private void rethrowFailure() {
+        final Throwable t;
+        synchronized(lock) {
+            t = failure;
+        }
+        if( t == null )
+            return;
+        if( t instanceof RuntimeException )
+            throw (RuntimeException)t;
+        if( t instanceof Error )
+            throw (Error)t;
+        throw new ExecutionFailure("Dependency-driven traversal failed", t);
+    }
+
+    /**
+     * Add a newly completed range to the set of completed ranges, and if it borders another completed
+     * range, reduce the two immediately.  Must be called with the lock held.
+     * @param range The newly completed range.
+     * @param walker Walker to use for the reduce.
+     */
+    private void scheduleReduce( ReducedRange range, TreeReducible<?> walker ) {
+        Map.Entry<Integer,ReducedRange> lowerEntry = completedRanges.lowerEntry(range.start);
+        ReducedRange lhs = (lowerEntry != null && lowerEntry.getValue().end == range.start) ? lowerEntry.getValue() : null;
+        ReducedRange rhs = completedRanges.get(range.end);
+
+        if( lhs != null ) {
+            completedRanges.remove(lhs.start);
+            submitReduce(lhs,range,walker);
+        }
+        else if( rhs != null ) {
+            completedRanges.remove(rhs.start);
+            submitReduce(range,rhs,walker);
+        }
+        else
+            completedRanges.put(range.start,range);
+    }
+
+    private void submitReduce( ReducedRange lhs, ReducedRange rhs, TreeReducible<?> walker ) {
+        reducesInFlight++;
+        submit(new ReduceTask(lhs,rhs,walker));
+    }
+
+    /**
+     * Reduce two results with the walker.  Both came out of the walker's own traversals and reduces,
+     * so they're of its reduce type.
+     */
+    @SuppressWarnings("unchecked")
+    private static <ReduceType> Object treeReduce( TreeReducible<ReduceType> walker, Object lhs, Object rhs ) {
+        return walker.treeReduce((ReduceType)lhs,(ReduceType)rhs);
+    }
+
+    /**
+     * Make the output of the given shard available for merging, and start a merger if the output
+     * is next in line.  Must be called with the lock held.
+     * @param shardIndex Index of the shard.
+     * @param mergeTask Output to merge.  Can be null if the shard produced no output.
+     */
+    private void scheduleMerge( int shardIndex, OutputMergeTask mergeTask ) {
+        pendingMerges.put(shardIndex,mergeTask);
+        if( !mergeInFlight && pendingMerges.containsKey(nextShardToMerge) ) {
+            mergeInFlight = true;
+            submit(new MergeTask());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getNumberOfTasksInReduceQueue() {
+        synchronized(lock) {
+            return reducesInFlight;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getNumberOfTasksInIOQueue() {
+        synchronized(lock) {
+            return pendingMerges.size();
+        }
+    }
+
+    /**
+     * The reduced result of the contiguous run of shards [start,end).
+     */
+    private static class ReducedRange {
+        public final int start;
+        public final int end;
+        public final Object result;
+
+        public ReducedRange( int start, int end, Object result ) {
+            this.start = start;
+            this.end = end;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Traverses a single shard, then hands its result to the reduce tree and its output to the merger.
+     */
+    private class TraverseTask implements Runnable {
+        private final Walker<?,?> walker;
+        private final Shard shard;
+        private final int shardIndex;
+
+        public TraverseTask( Walker<?,?> walker, Shard shard, int shardIndex ) {
+            this.walker = walker;
+            this.shard = shard;
+            this.shardIndex = shardIndex;
+        }
+
+        public void run() {
+            try {
+                ShardTraverser traverser = new ShardTraverser(DependencyDrivenMicroScheduler.this,
+                        traversalEngine,
+                        walker,
+                        shard,
+                        outputTracker);
+                Object result = traverser.call();
+
+                synchronized(lock) {
+                    shardsInFlight--;
+                    scheduleMerge(shardIndex,traverser.getOutputMergeTask());
+                    scheduleReduce(new ReducedRange(shardIndex,shardIndex+1,result),(TreeReducible<?>)walker);
+                    lock.notifyAll();
+                }
+            }
+            catch( Throwable t ) {
+                fail(t);
+            }
+        }
+    }
+
+    /**
+     * Reduces two adjacent ranges, then offers the combined range back for further reduction.
+     */
+    private class ReduceTask implements Runnable {
+        private final ReducedRange lhs;
+        private final ReducedRange rhs;
+        private final TreeReducible<?> walker;
+
+        public ReduceTask( ReducedRange lhs, ReducedRange rhs, TreeReducible<?> walker ) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+            this.walker = walker;
+        }
+
+        public void run() {
+            try {
+                final long startTime = System.currentTimeMillis();
+                Object result = treeReduce(walker,lhs.result,rhs.result);
+                final long endTime = System.currentTimeMillis();
+
+                reportTreeReduceTime(endTime - startTime);
+
+                synchronized(lock) {
+                    reducesInFlight--;
+                    scheduleReduce(new ReducedRange(lhs.start,rhs.end,result),walker);
+                    lock.notifyAll();
+                }
+            }
+            catch( Throwable t ) {
+                fail(t);
+            }
+        }
+    }
+
+    /**
+     * Merges every shard's output which is ready, in shard order, then exits.  Only one merge task
+     * runs at a time; a new one is started when the next shard in line completes.
+     */
+    private class MergeTask implements Runnable {
+        public void run() {
+            try {
+                while( true ) {
+                    OutputMergeTask mergeTask;
+                    synchronized(lock) {
+                        if( !pendingMerges.containsKey(nextShardToMerge) ) {
+                            mergeInFlight = false;
+                            lock.notifyAll();
+                            return;
+                        }
+                        mergeTask = pendingMerges.remove(nextShardToMerge++);
+                        lock.notifyAll();
+                    }
+
+                    if( mergeTask != null ) {
+                        final long startTime = System.currentTimeMillis();
+                        try {
+                            mergeTask.merge();
+                        }
+                        catch(TribbleException ex) {
+                            // As in the HierarchicalMicroScheduler, we created the Tribble output file mere moments ago
+                            // and expect it to be completely valid.
+                            throw new ReviewedStingException("Unable to merge temporary Tribble output file.",ex);
+                        }
+                        final long endTime = System.currentTimeMillis();
+                        reportOutputMergeTime(endTime - startTime);
+                    }
+                }
+            }
+            catch( Throwable t ) {
+                fail(t);
+            }
+        }
+    }
+}
@@ -29,15 +29,15 @@ public class HierarchicalMicroScheduler extends MicroScheduler implements Hierar
      * How many outstanding output merges are allowed before the scheduler stops
      * allowing new processes and starts merging flat-out.
      */
-    private static final int MAX_OUTSTANDING_OUTPUT_MERGES = 50;
+    protected static final int MAX_OUTSTANDING_OUTPUT_MERGES = 50;
 
     /** Manage currently running threads. */
-    private ExecutorService threadPool;
+    protected final ExecutorService threadPool;
 
     /**
      * A thread local output tracker for managing output per-thread.
      */
-    private ThreadLocalOutputTracker outputTracker = new ThreadLocalOutputTracker();
+    protected final ThreadLocalOutputTracker outputTracker = new ThreadLocalOutputTracker();
 
     private final Queue<TreeReduceTask> reduceTasks = new LinkedList<TreeReduceTask>();
 
@@ -81,7 +81,7 @@ public class HierarchicalMicroScheduler extends MicroScheduler implements Hierar
         this.threadPool = Executors.newFixedThreadPool(nThreadsToUse);
     }
 
-    public Object execute( Walker walker, Iterable<Shard> shardStrategy ) {
+    public Object execute( Walker<?,?> walker, Iterable<Shard> shardStrategy ) {
         // Fast fail for walkers not supporting TreeReducible interface.
         if (!( walker instanceof TreeReducible ))
             throw new IllegalArgumentException("The GATK can currently run in parallel only with TreeReducible walkers");
@@ -263,7 +263,7 @@ public class HierarchicalMicroScheduler extends MicroScheduler implements Hierar
 
         long endTime = System.currentTimeMillis();
 
-        totalOutputMergeTime += ( endTime - startTime );
+        reportOutputMergeTime( endTime - startTime );
     }
 
     /**
@@ -413,6 +413,15 @@ public class HierarchicalMicroScheduler extends MicroScheduler implements Hierar
 
     }
 
+    /**
+     * Used by the output mergers to report time consumed merging output back into the target streams.
+     *
+     * @param outputMergeTime Elapsed time merging output.
+     */
+    synchronized void reportOutputMergeTime( long outputMergeTime ) {
+        totalOutputMergeTime += outputMergeTime;
+    }
+
     /** {@inheritDoc} */
     public int getNumberOfTasksInReduceQueue() {
         return reduceTasks.size();
@@ -38,13 +38,27 @@ public class LinearMicroScheduler extends MicroScheduler {
         super(engine, walker, reads, reference, rods);
     }
 
+    /**
+     * Create a new linear microscheduler which maps active regions on several threads.
+     *
+     * @param walker    Walker for the traversal; must be an ActiveRegionWalker.
+     * @param reads     Reads file(s) to process.
+     * @param reference Reference for driving the traversal.
+     * @param rods      Reference-ordered data.
+     * @param nMapThreads Number of threads on which to map active regions.
+     */
+    protected LinearMicroScheduler(GenomeAnalysisEngine engine, Walker<?,?> walker, SAMDataSource reads, IndexedFastaSequenceFile reference, Collection<ReferenceOrderedDataSource> rods, int nMapThreads ) {
+        super(engine, walker, reads, reference, rods);
+        ((TraverseActiveRegions<?,?>)traversalEngine).mapInParallel(nMapThreads);
+    }
+
     /**
      * Run this traversal over the specified subsection of the dataset.
      *
      * @param walker    Computation to perform over dataset.
      * @param shardStrategy A strategy for sharding the data.
      */
-    public Object execute(Walker walker, Iterable<Shard> shardStrategy) {
+    public Object execute(Walker<?,?> walker, Iterable<Shard> shardStrategy) {
         walker.initialize();
         Accumulator accumulator = Accumulator.create(engine,walker);
 
@@ -92,12 +92,18 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
      * @return The best-fit microscheduler.
      */
     public static MicroScheduler create(GenomeAnalysisEngine engine, Walker walker, SAMDataSource reads, IndexedFastaSequenceFile reference, Collection<ReferenceOrderedDataSource> rods, ThreadAllocation threadAllocation) {
-        if (walker instanceof TreeReducible && threadAllocation.getNumCPUThreads() > 1) {
+        if (walker instanceof ActiveRegionWalker && ((ActiveRegionWalker<?,?>)walker).isMapThreadSafe() && threadAllocation.getNumCPUThreads() > 1) {
+            logger.info(String.format("Running the GATK with %d threads mapping active regions in parallel",threadAllocation.getNumCPUThreads()));
+            return new LinearMicroScheduler(engine, walker, reads, reference, rods, threadAllocation.getNumCPUThreads());
+        }
+        else if (walker instanceof TreeReducible && threadAllocation.getNumCPUThreads() > 1) {
             if(walker.isReduceByInterval())
                 throw new UserException.BadArgumentValue("nt", String.format("The analysis %s aggregates results by interval.  Due to a current limitation of the GATK, analyses of this type do not currently support parallel execution.  Please run your analysis without the -nt option.", engine.getWalkerName(walker.getClass())));
             if(walker instanceof ReadWalker)
                 throw new UserException.BadArgumentValue("nt", String.format("The analysis %s is a read walker.  Due to a current limitation of the GATK, analyses of this type do not currently support parallel execution.  Please run your analysis without the -nt option.", engine.getWalkerName(walker.getClass())));
             logger.info(String.format("Running the GATK in parallel mode with %d concurrent threads",threadAllocation.getNumCPUThreads()));
+            if(engine.getArguments().dependencyDrivenScheduling)
+                return new DependencyDrivenMicroScheduler(engine, walker, reads, reference, rods, threadAllocation.getNumCPUThreads());
             return new HierarchicalMicroScheduler(engine, walker, reads, reference, rods, threadAllocation.getNumCPUThreads());
         } else {
             if(threadAllocation.getNumCPUThreads() > 1)
@@ -158,7 +164,7 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
      *
      * @return the return type of the walker
      */
-    public abstract Object execute(Walker walker, Iterable<Shard> shardStrategy);
+    public abstract Object execute(Walker<?,?> walker, Iterable<Shard> shardStrategy);
 
     /**
      * Retrieves the object responsible for tracking and managing output.
@@ -181,6 +187,8 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
      */
     protected void printOnTraversalDone(Object sum) {
         traversalEngine.printOnTraversalDone();
+        if ( reads != null )
+            reads.printDecompressionStatistics();
     }
 
     /**
@@ -234,6 +242,8 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
     }
 
     protected void cleanup() {
+        if ( reads != null )
+            reads.close();
         try {
             mBeanServer.unregisterMBean(mBeanName);
         }
@@ -0,0 +1,215 @@
+package org.broadinstitute.sting.gatk.io.storage;
+
+import org.broadinstitute.sting.utils.exceptions.UserException;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Temporary holding area for output records which have already been encoded into their final
+ * on-disk representation.  Records are written through the OutputStream interface and delimited
+ * with markRecordEnd().  Bytes accumulate in memory; once the buffer grows past a threshold,
+ * the buffered block is spilled verbatim to a temporary file.  Blocks can then be replayed in
+ * the order in which they were written, without ever decoding the records they contain.
+ *
+ * Not thread-safe; each instance is meant to be owned by a single thread's storage.
+ */
+public class EncodedRecordBuffer extends OutputStream {
+    /**
+     * Default size, in bytes, past which buffered records are spilled to disk.
+     */
+    public static final int DEFAULT_SPILL_THRESHOLD = 4*1024*1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 64*1024;
+    private static final int INITIAL_RECORD_CAPACITY = 1024;
+
+    /**
+     * File into which full blocks are spilled.
+     */
+    private final File spillFile;
+
+    /**
+     * Size, in bytes, past which the buffer is spilled to disk.
+     */
+    private final int spillThreshold;
+
+    /**
+     * Stream into the spill file.  Null until the first block is spilled.
+     */
+    private OutputStream spillStream = null;
+
+    /**
+     * Encoded data which has not yet been spilled.
+     */
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int bufferSize = 0;
+
+    /**
+     * Offset of the end of each complete record in the buffer.
+     */
+    private int[] recordEnds = new int[INITIAL_RECORD_CAPACITY];
+    private int numRecords = 0;
+
+    /**
+     * Blocks which have been written to the spill file, in order.
+     */
+    private final List<SpilledBlock> spilledBlocks = new ArrayList<SpilledBlock>();
+
+    /**
+     * Callback which receives the encoded data, one block at a time.
+     */
+    public interface BlockHandler {
+        /**
+         * Handle a single block of encoded records.
+         * @param block Buffer holding the records.  Only valid for the duration of the call.
+         * @param length Number of valid bytes in the block.
+         * @param recordEnds Offset of the end of each record in the block.
+         * @param numRecords Number of valid entries in recordEnds.
+         */
+        public void handleBlock( byte[] block, int length, int[] recordEnds, int numRecords );
+    }
+
+    /**
+     * Create a new buffer which spills to the given file past the default threshold.
+     * @param spillFile File into which to spill.  Will be overwritten.
+     */
+    public EncodedRecordBuffer( File spillFile ) {
+        this(spillFile, DEFAULT_SPILL_THRESHOLD);
+    }
+
+    /**
+     * Create a new buffer which spills to the given file.
+     * @param spillFile File into which to spill.  Will be overwritten.
+     * @param spillThreshold Size of the in-memory buffer, in bytes, past which data is spilled.
+     */
+    public EncodedRecordBuffer( File spillFile, int spillThreshold ) {
+        this.spillFile = spillFile;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public void write( int b ) {
+        ensureCapacity(bufferSize + 1);
+        buffer[bufferSize++] = (byte)b;
+    }
+
+    @Override
+    public void write( byte[] b, int off, int len ) {
+        ensureCapacity(bufferSize + len);
+        System.arraycopy(b, off, buffer, bufferSize, len);
+        bufferSize += len;
+    }
+
+    /**
+     * Indicate that everything written since the last call completes a single record.
+     * Spills to disk if the buffer has grown past its threshold.
+     */
+    public void markRecordEnd() {
+        if( numRecords == recordEnds.length )
+            recordEnds = Arrays.copyOf(recordEnds, recordEnds.length * 2);
+        recordEnds[numRecords++] = bufferSize;
+        if( bufferSize >= spillThreshold )
+            spill();
+    }
+
+    /**
+     * Throw away everything written since the last spill.  Used to drop headers
+     * which are already present in the target.
+     */
+    public void clear() {
+        bufferSize = 0;
+        numRecords = 0;
+    }
+
+    /**
+     * Gets the total number of records stored, both in memory and on disk.
+     * @return Number of complete records.
+     */
+    public long getNumRecords() {
+        long total = numRecords;
+        for( SpilledBlock block: spilledBlocks )
+            total += block.recordEnds.length;
+        return total;
+    }
+
+    /**
+     * Writing is complete.  Close down the spill file, if one exists.
+     */
+    @Override
+    public void close() {
+        if( spillStream == null )
+            return;
+        try {
+            spillStream.close();
+        }
+        catch( IOException ex ) {
+            throw new UserException.CouldNotCreateOutputFile(spillFile, "Unable to close temporary output", ex);
+        }
+    }
+
+    /**
+     * Hand every stored block to the given handler, in the order in which they were written, then
+     * delete the spill file.
+     * @param handler Recipient of the blocks.
+     */
+    public void replay( BlockHandler handler ) {
+        if( !spilledBlocks.isEmpty() ) {
+            DataInputStream spillInput = null;
+            try {
+                spillInput = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+                byte[] block = new byte[spillThreshold];
+                for( SpilledBlock spilledBlock: spilledBlocks ) {
+                    if( block.length < spilledBlock.length )
+                        block = new byte[spilledBlock.length];
+                    spillInput.readFully(block, 0, spilledBlock.length);
+                    handler.handleBlock(block, spilledBlock.length, spilledBlock.recordEnds, spilledBlock.recordEnds.length);
+                }
+                spillInput.close();
+            }
+            catch( IOException ex ) {
+                throw new UserException.CouldNotReadInputFile(spillFile, "Unable to read temporary output", ex);
+            }
+        }
+
+        if( bufferSize > 0 )
+            handler.handleBlock(buffer, bufferSize, recordEnds, numRecords);
+
+        spillFile.delete();
+    }
+
+    /**
+     * Write the contents of the in-memory buffer verbatim to the spill file.
+     */
+    private void spill() {
+        try {
+            if( spillStream == null )
+                spillStream = new BufferedOutputStream(new FileOutputStream(spillFile));
+            spillStream.write(buffer, 0, bufferSize);
+        }
+        catch( IOException ex ) {
+            throw new UserException.CouldNotCreateOutputFile(spillFile, "Unable to write temporary output", ex);
+        }
+        spilledBlocks.add(new SpilledBlock(bufferSize, Arrays.copyOf(recordEnds, numRecords)));
+        clear();
+    }
+
+    private void ensureCapacity( int capacity ) {
+        if( capacity > buffer.length )
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+    }
+
+    /**
+     * A block of records which has been written to the spill file.
+     */
+    private static class SpilledBlock {
+        public final int length;
+        public final int[] recordEnds;
+
+        public SpilledBlock( int length, int[] recordEnds ) {
+            this.length = length;
+            this.recordEnds = recordEnds;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.broadinstitute.sting.gatk.io.storage;
+
+import net.sf.samtools.BAMRecordCodec;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMFileWriter;
+import net.sf.samtools.SAMRecord;
+import org.apache.log4j.Logger;
+import org.broadinstitute.sting.gatk.io.stubs.SAMFileWriterStub;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+/**
+ * Provides temporary storage for SAMFileWriters as uncompressed BAM records.  Records are held in an
+ * in-memory buffer which spills to disk in raw blocks, skipping the BGZF compression and decompression
+ * round trip of a temporary BAM file.  The target writer may need to sort or index its input, so
+ * merging still hands it individual records, lazily decoded from the buffered bytes.
+ */
+public class EncodedSAMFileWriterStorage implements SAMFileWriter, Storage<SAMFileWriter> {
+    private static Logger logger = Logger.getLogger(EncodedSAMFileWriterStorage.class);
+
+    private final SAMFileHeader header;
+    private final EncodedRecordBuffer records;
+    private final BAMRecordCodec encoder;
+
+    public EncodedSAMFileWriterStorage( SAMFileWriterStub stub, File file ) {
+        logger.debug("Buffering encoded BAM records, spilling to " + file.getAbsolutePath());
+        this.header = stub.getFileHeader();
+        this.records = new EncodedRecordBuffer(file);
+        this.encoder = new BAMRecordCodec(header);
+        encoder.setOutputStream(records);
+    }
+
+    public SAMFileHeader getFileHeader() {
+        return header;
+    }
+
+    public void addAlignment( SAMRecord read ) {
+        encoder.encode(read);
+        records.markRecordEnd();
+    }
+
+    public void close() {
+        records.close();
+    }
+
+    public void mergeInto( final SAMFileWriter targetStream ) {
+        final BAMRecordCodec decoder = new BAMRecordCodec(header);
+        records.replay(new EncodedRecordBuffer.BlockHandler() {
+            public void handleBlock( byte[] block, int length, int[] recordEnds, int numRecords ) {
+                decoder.setInputStream(new ByteArrayInputStream(block, 0, length));
+                for( int i = 0; i < numRecords; i++ )
+                    targetStream.addAlignment(decoder.decode());
+            }
+        });
+    }
+}
@@ -0,0 +1,164 @@
+package org.broadinstitute.sting.gatk.io.storage;
+
+import org.apache.log4j.Logger;
+import org.broad.tribble.Feature;
+import org.broadinstitute.sting.gatk.io.stubs.VCFWriterStub;
+import org.broadinstitute.sting.utils.codecs.vcf.StandardVCFWriter;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFHeader;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFWriter;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.variantcontext.VariantContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Provides temporary storage for VCF output as already-encoded VCF text.  Records are encoded once,
+ * by a writer sharing the target's header, into an in-memory buffer which spills to disk in raw blocks.
+ * Merging simply appends those bytes to the target, with no re-parsing into VariantContexts.
+ *
+ * Each record is preceded in the buffer by its extent (contig, start and stop), so that a target indexing
+ * on the fly can be given it without the storage holding every record's extent in memory.
+ */
+public class EncodedVCFWriterStorage implements Storage<VCFWriterStorage>, VCFWriter {
+    /**
+     * our log, which we want to capture anything from this class
+     */
+    private static Logger logger = Logger.getLogger(EncodedVCFWriterStorage.class);
+
+    /**
+     * Encoded records, spilling into the temporary file.
+     */
+    private final EncodedRecordBuffer records;
+
+    /**
+     * Writer which encodes records into the buffer.
+     */
+    private final StandardVCFWriter writer;
+
+    /**
+     * Writes the extent of each record into the buffer, ahead of the record itself.
+     */
+    private final DataOutputStream recordLocations;
+
+    /**
+     * Constructs an object which will encode records into memory, spilling into the given temp file.
+     * @param stub Stub to use when synthesizing file / header info.
+     * @param tempFile File into which to spill the output data.
+     */
+    public EncodedVCFWriterStorage(VCFWriterStub stub, File tempFile) {
+        this(stub, tempFile, EncodedRecordBuffer.DEFAULT_SPILL_THRESHOLD);
+    }
+
+    /**
+     * Constructs an object which will encode records into memory, spilling into the given temp file.
+     * @param stub Stub to use when synthesizing file / header info.
+     * @param tempFile File into which to spill the output data.
+     * @param spillThreshold Size of the in-memory buffer, in bytes, past which data is spilled.
+     */
+    EncodedVCFWriterStorage(VCFWriterStub stub, File tempFile, int spillThreshold) {
+        logger.debug("Buffering encoded VCF output, spilling to " + tempFile.getAbsolutePath());
+        this.records = new EncodedRecordBuffer(tempFile, spillThreshold);
+        this.recordLocations = new DataOutputStream(records);
+        this.writer = new StandardVCFWriter(records, stub.getMasterSequenceDictionary(), stub.doNotWriteGenotypes()) {
+            /**
+             * The writer offers each record for indexing after padding its indels, and before writing any of
+             * it, so these are the extents the target would index the records at if it had written them itself.
+             */
+            @Override
+            protected void addToIndex(final Feature feature) {
+                try {
+                    recordLocations.writeUTF(feature.getChr());
+                    recordLocations.writeInt(feature.getStart());
+                    recordLocations.writeInt(feature.getEnd());
+                } catch ( IOException e ) {
+                    throw new ReviewedStingException("Unable to buffer the location of a VCF record", e);
+                }
+            }
+        };
+
+        // The header sets up the writer's encoding, but the target already has one; drop the bytes.
+        writer.writeHeader(stub.getVCFHeader());
+        records.clear();
+    }
+
+    public void add(VariantContext vc) {
+        writer.add(vc);
+        records.markRecordEnd();
+    }
+
+    /**
+     * The header was already written on construction, and must match the target's.
+     *
+     * @param header  the header
+     */
+    public void writeHeader(VCFHeader header) {
+        throw new ReviewedStingException("Unable to write a new header into temporary VCF storage; the header must be written before traversal begins.");
+    }
+
+    /**
+     * Close the VCF storage object.
+     */
+    public void close() {
+        writer.close();
+    }
+
+    public void mergeInto(final VCFWriterStorage target) {
+        logger.debug(String.format("Merging %d encoded VCF records into %s", records.getNumRecords(), target.writer.getStreamName()));
+        records.replay(new EncodedRecordBuffer.BlockHandler() {
+            private final boolean indexing = target.writer.isIndexingOnTheFly();
+            private byte[] unindexedRecords = new byte[0];
+
+            public void handleBlock(byte[] block, int length, int[] recordEnds, int numRecords) {
+                final ByteArrayInputStream blockStream = new ByteArrayInputStream(block, 0, length);
+                final DataInputStream locations = new DataInputStream(blockStream);
+                if ( !indexing && unindexedRecords.length < length )
+                    unindexedRecords = new byte[length];
+
+                // without an index to feed, the records are copied out from between their locations and written at once
+                int unindexedLength = 0;
+                try {
+                    for ( int i = 0; i < numRecords; i++ ) {
+                        final RecordLocation location = new RecordLocation(locations.readUTF(), locations.readInt(), locations.readInt());
+                        final int recordStart = length - blockStream.available();
+                        final int recordLength = recordEnds[i] - recordStart;
+                        if ( indexing ) {
+                            target.writer.addEncoded(location, block, recordStart, recordLength);
+                        } else {
+                            System.arraycopy(block, recordStart, unindexedRecords, unindexedLength, recordLength);
+                            unindexedLength += recordLength;
+                        }
+                        blockStream.skip(recordLength);
+                    }
+                } catch ( IOException e ) {
+                    throw new ReviewedStingException("Unable to read the location of a buffered VCF record", e);
+                }
+
+                if ( !indexing )
+                    target.writer.addEncoded(null, unindexedRecords, 0, unindexedLength);
+            }
+        });
+    }
+
+    /**
+     * The genomic extent of an encoded record.
+     */
+    private static class RecordLocation implements Feature {
+        private final String chr;
+        private final int start;
+        private final int end;
+
+        public RecordLocation(String chr, int start, int end) {
+            this.chr = chr;
+            this.start = start;
+            this.end = end;
+        }
+
+        public String getChr() { return chr; }
+        public int getStart() { return start; }
+        public int getEnd() { return end; }
+    }
+}
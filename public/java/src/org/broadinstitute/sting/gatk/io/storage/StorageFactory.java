@@ -56,7 +56,8 @@ public class StorageFactory {
     }
 
     /**
-     * Gets the output storage associated with a given stub.
+     * Gets the output storage associated with a given stub.  When given a temporary file, SAM and VCF
+     * output is kept in its encoded form, to be appended to the target without re-parsing.
      * @param stub The stub for which to find / create the right output stream.
      * @param file The filename to which to write the file.
      * @param <T> Type of the stream to create.
@@ -73,14 +74,14 @@ public class StorageFactory {
         }
         else if(stub instanceof SAMFileWriterStub) {
             if( file != null )
-                storage = new SAMFileWriterStorage((SAMFileWriterStub)stub,file);
+                storage = new EncodedSAMFileWriterStorage((SAMFileWriterStub)stub,file);
             else
                 storage = new SAMFileWriterStorage((SAMFileWriterStub)stub);
         }
         else if(stub instanceof VCFWriterStub) {
             VCFWriterStub vcfWriterStub = (VCFWriterStub)stub;
             if( file != null )
-                storage = new VCFWriterStorage(vcfWriterStub,file);
+                storage = new EncodedVCFWriterStorage(vcfWriterStub,file);
             else
                 storage = new VCFWriterStorage(vcfWriterStub);
         }
@@ -31,7 +31,7 @@ public class VCFWriterStorage implements Storage<VCFWriterStorage>, VCFWriter {
 
     protected final File file;
     protected OutputStream stream;
-    protected final VCFWriter writer;
+    protected final StandardVCFWriter writer;
 
     /**
      * Constructs an object which will write directly into the output file provided by the stub.
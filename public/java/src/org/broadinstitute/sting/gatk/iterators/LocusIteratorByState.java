@@ -40,8 +40,8 @@ import org.broadinstitute.sting.utils.GenomeLocParser;
 import org.broadinstitute.sting.utils.MathUtils;
 import org.broadinstitute.sting.utils.ReservoirDownsampler;
 import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.pileup.CompactPileupElementList;
 import org.broadinstitute.sting.utils.pileup.ExtendedEventPileupElement;
-import org.broadinstitute.sting.utils.pileup.PileupElement;
 import org.broadinstitute.sting.utils.pileup.ReadBackedExtendedEventPileupImpl;
 import org.broadinstitute.sting.utils.pileup.ReadBackedPileupImpl;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
@@ -72,7 +72,7 @@ public class LocusIteratorByState extends LocusIterator {
     private final ArrayList<String> samples;
     private final ReadStateManager readStates;
 
-    static private class SAMRecordState {
+    static class SAMRecordState {
         SAMRecord read;
         int readOffset = -1;                    // how far are we offset from the start of the read bases?
         int genomeOffset = -1;                  // how far are we offset from the alignment start on the genome?
@@ -304,6 +304,10 @@ public class LocusIteratorByState extends LocusIterator {
     private ReadProperties readInfo;
     private AlignmentContext nextAlignmentContext;
 
+    // scratch space for building pileups, reused from one locus to the next
+    private final CompactPileupElementList.Builder pileupBuilder = new CompactPileupElementList.Builder();
+    private final Map<String, ReadBackedPileupImpl> fullPileup = new HashMap<String, ReadBackedPileupImpl>();
+
     // -----------------------------------------------------------------------------------------------------------------
     //
     // constructors and other basic operations
@@ -393,10 +397,13 @@ public class LocusIteratorByState extends LocusIterator {
                 GenomeLoc loc = genomeLocParser.incPos(getLocation(), -1);
 
                 boolean hasBeenSampled = false;
-                for (final String sample : samples) {
+                for (int sample = 0; sample < samples.size(); sample++) {
+                    hasBeenSampled |= loc.getStart() <= readStates.getDownsamplingExtent(sample);
+                    if (readStates.size(sample) == 0)
+                        continue;
+
                     Iterator<SAMRecordState> iterator = readStates.iterator(sample);
                     List<ExtendedEventPileupElement> indelPile = new ArrayList<ExtendedEventPileupElement>(readStates.size(sample));
-                    hasBeenSampled |= loc.getStart() <= readStates.getDownsamplingExtent(sample);
 
                     size = 0;
                     nDeletions = 0;
@@ -445,19 +452,21 @@ public class LocusIteratorByState extends LocusIterator {
                     }
 
                     if (indelPile.size() != 0)
-                        fullExtendedEventPileup.put(sample, new ReadBackedExtendedEventPileupImpl(loc, indelPile, size, maxDeletionLength, nInsertions, nDeletions, nMQ0Reads));
+                        fullExtendedEventPileup.put(samples.get(sample), new ReadBackedExtendedEventPileupImpl(loc, indelPile, size, maxDeletionLength, nInsertions, nDeletions, nMQ0Reads));
                 }
                 hasExtendedEvents = false;                                              // we are done with extended events prior to current ref base
                 nextAlignmentContext = new AlignmentContext(loc, new ReadBackedExtendedEventPileupImpl(loc, fullExtendedEventPileup), hasBeenSampled);
             }
             else {                                                                      // this is a regular event pileup (not extended)
                 GenomeLoc location = getLocation();
-                Map<String, ReadBackedPileupImpl> fullPileup = new HashMap<String, ReadBackedPileupImpl>();
+                fullPileup.clear();                                                     // the pileup constructor copies the map, so we can reuse it
                 boolean hasBeenSampled = false;
-                for (final String sample : samples) {
-                    Iterator<SAMRecordState> iterator = readStates.iterator(sample);
-                    List<PileupElement> pile = new ArrayList<PileupElement>(readStates.size(sample));
+                for (int sample = 0; sample < samples.size(); sample++) {
                     hasBeenSampled |= location.getStart() <= readStates.getDownsamplingExtent(sample);
+                    if (readStates.size(sample) == 0)
+                        continue;
+
+                    Iterator<SAMRecordState> iterator = readStates.iterator(sample);
 
                     size = 0;                                                           // number of elements in this sample's pileup
                     nDeletions = 0;                                                     // number of deletions in this sample's pileup
@@ -486,7 +495,7 @@ public class LocusIteratorByState extends LocusIterator {
 
                         if (op == CigarOperator.D) {
                             if (readInfo.includeReadsWithDeletionAtLoci()) {            // only add deletions to the pileup if we are authorized to do so
-                                pile.add(new PileupElement(read, readOffset, true, isBeforeDeletion, isAfterDeletion, isBeforeInsertion, isAfterInsertion, isNextToSoftClip, null, nextOp == CigarOperator.D ? nextElementLength : -1));
+                                pileupBuilder.add(read, readOffset, true, isBeforeDeletion, isAfterDeletion, isBeforeInsertion, isAfterInsertion, isNextToSoftClip, nextOp == CigarOperator.D ? nextElementLength : -1);
                                 size++;
                                 nDeletions++;
                                 if (read.getMappingQuality() == 0)
@@ -495,11 +504,7 @@ public class LocusIteratorByState extends LocusIterator {
                         }
                         else {
                             if (!filterBaseInRead(read, location.getStart())) {
-                                String insertedBaseString = null;
-                                if (nextOp == CigarOperator.I)
-                                    insertedBaseString = new String(Arrays.copyOfRange(read.getReadBases(), readOffset + 1, readOffset + 1 + nextElement.getLength()));
-
-                                pile.add(new PileupElement(read, readOffset, false, isBeforeDeletion, isAfterDeletion, isBeforeInsertion, isAfterInsertion, isNextToSoftClip, insertedBaseString, nextElementLength));
+                                pileupBuilder.add(read, readOffset, false, isBeforeDeletion, isAfterDeletion, isBeforeInsertion, isAfterInsertion, isNextToSoftClip, nextElementLength);   // inserted bases are only read from the read when the element is created
                                 size++;
                                 if (read.getMappingQuality() == 0)
                                     nMQ0Reads++;
@@ -507,8 +512,8 @@ public class LocusIteratorByState extends LocusIterator {
                         }
                     }
 
-                    if (pile.size() != 0)                                             // if this pileup added at least one base, add it to the full pileup
-                        fullPileup.put(sample, new ReadBackedPileupImpl(location, pile, size, nDeletions, nMQ0Reads));
+                    if (pileupBuilder.size() != 0)                                    // if this pileup added at least one base, add it to the full pileup
+                        fullPileup.put(samples.get(sample), new ReadBackedPileupImpl(location, pileupBuilder.build(), size, nDeletions, nMQ0Reads));
                 }
 
                 updateReadStates();                                                   // critical - must be called after we get the current state offsets and location
@@ -541,7 +546,10 @@ public class LocusIteratorByState extends LocusIterator {
     }
 
     private void updateReadStates() {
-        for (final String sample : samples) {
+        for (int sample = 0; sample < samples.size(); sample++) {
+            if (readStates.size(sample) == 0)
+                continue;
+
             Iterator<SAMRecordState> it = readStates.iterator(sample);
             while (it.hasNext()) {
                 SAMRecordState state = it.next();
@@ -562,11 +570,11 @@ public class LocusIteratorByState extends LocusIterator {
         throw new UnsupportedOperationException("Can not remove records from a SAM file via an iterator!");
     }
 
-    private class ReadStateManager {
+    class ReadStateManager {
         private final PeekableIterator<SAMRecord> iterator;
         private final DownsamplingMethod downsamplingMethod;
         private final SamplePartitioner samplePartitioner;
-        private final Map<String, PerSampleReadStateManager> readStatesBySample = new HashMap<String, PerSampleReadStateManager>();
+        private final PerSampleReadStateManager[] readStatesBySample;                 // indexed like samples
         private final int targetCoverage;
         private int totalReadStates = 0;
 
@@ -583,25 +591,26 @@ public class LocusIteratorByState extends LocusIterator {
                     this.targetCoverage = Integer.MAX_VALUE;
             }
 
-            Map<String, ReadSelector> readSelectors = new HashMap<String, ReadSelector>();
-            for (final String sample : samples) {
-                readStatesBySample.put(sample, new PerSampleReadStateManager());
-                readSelectors.put(sample, downsamplingMethod.type == DownsampleType.BY_SAMPLE ? new NRandomReadSelector(null, targetCoverage) : new AllReadsSelector());
+            readStatesBySample = new PerSampleReadStateManager[samples.size()];
+            List<ReadSelector> readSelectors = new ArrayList<ReadSelector>(samples.size());
+            for (int sample = 0; sample < samples.size(); sample++) {
+                readStatesBySample[sample] = new PerSampleReadStateManager();
+                readSelectors.add(downsamplingMethod.type == DownsampleType.BY_SAMPLE ? new NRandomReadSelector(null, targetCoverage) : new AllReadsSelector());
             }
 
-            samplePartitioner = new SamplePartitioner(readSelectors);
+            samplePartitioner = new SamplePartitioner(samples, readSelectors);
         }
 
         /**
          * Returns a iterator over all the reads associated with the given sample.  Note that remove() is implemented
          * for this iterator; if present, total read states will be decremented.
          *
-         * @param sample The sample.
+         * @param sample The index of the sample in samples.
          * @return Iterator over the reads associated with that sample.
          */
-        public Iterator<SAMRecordState> iterator(final String sample) {
+        public Iterator<SAMRecordState> iterator(final int sample) {
             return new Iterator<SAMRecordState>() {
-                private Iterator<SAMRecordState> wrappedIterator = readStatesBySample.get(sample).iterator();
+                private Iterator<SAMRecordState> wrappedIterator = readStatesBySample[sample].iterator();
 
                 public boolean hasNext() {
                     return wrappedIterator.hasNext();
@@ -634,27 +643,26 @@ public class LocusIteratorByState extends LocusIterator {
         /**
          * Retrieves the total number of reads in the manager in the given sample.
          *
-         * @param sample The sample.
+         * @param sample The index of the sample in samples.
          * @return Total number of reads in the given sample.
          */
-        public int size(final String sample) {
-            return readStatesBySample.get(sample).size();
+        public int size(final int sample) {
+            return readStatesBySample[sample].size();
         }
 
         /**
          * The extent of downsampling; basically, the furthest base out which has 'fallen
          * victim' to the downsampler.
          *
-         * @param sample Sample, downsampled independently.
+         * @param sample Index in samples of the sample, downsampled independently.
          * @return Integer stop of the furthest undownsampled region.
          */
-        public int getDownsamplingExtent(final String sample) {
-            return readStatesBySample.get(sample).getDownsamplingExtent();
+        public int getDownsamplingExtent(final int sample) {
+            return readStatesBySample[sample].getDownsamplingExtent();
         }
 
         public SAMRecordState getFirst() {
-            for (final String sample : samples) {
-                PerSampleReadStateManager reads = readStatesBySample.get(sample);
+            for (final PerSampleReadStateManager reads : readStatesBySample) {
                 if (!reads.isEmpty())
                     return reads.peek();
             }
@@ -686,12 +694,14 @@ public class LocusIteratorByState extends LocusIterator {
             }
             samplePartitioner.complete();
 
-            for (final String sample : samples) {
+            for (int sample = 0; sample < samples.size(); sample++) {
                 ReadSelector aggregator = samplePartitioner.getSelectedReads(sample);
+                if (aggregator.getSelectedReads().isEmpty() && aggregator.getDownsamplingExtent() == 0)
+                    continue;                                                   // nothing new for this sample
 
                 Collection<SAMRecord> newReads = new ArrayList<SAMRecord>(aggregator.getSelectedReads());
 
-                PerSampleReadStateManager statesBySample = readStatesBySample.get(sample);
+                PerSampleReadStateManager statesBySample = readStatesBySample[sample];
                 int numReads = statesBySample.size();
                 int downsamplingExtent = aggregator.getDownsamplingExtent();
 
@@ -753,7 +763,7 @@ public class LocusIteratorByState extends LocusIterator {
             if (reads.isEmpty())
                 return;
 
-            Collection<SAMRecordState> newReadStates = new LinkedList<SAMRecordState>();
+            Collection<SAMRecordState> newReadStates = new ArrayList<SAMRecordState>(reads.size());
             int readCount = 0;
             for (SAMRecord read : reads) {
                 if (readCount < maxReads) {
@@ -769,27 +779,59 @@ public class LocusIteratorByState extends LocusIterator {
             readStates.addStatesAtNextAlignmentStart(newReadStates);
         }
 
-        private class PerSampleReadStateManager implements Iterable<SAMRecordState> {
-            private final Queue<SAMRecordState> readStates = new LinkedList<SAMRecordState>();
-            private final Deque<Counter> readStateCounter = new LinkedList<Counter>();
+        /**
+         * The read states for a single sample, in order of alignment start, held in a flat array along with the
+         * number of states which started at each alignment start.  States removed through the iterator are nulled
+         * out and the array compacted in a single pass before it is next accessed, so neither additions nor
+         * removals allocate per read.  As with any collection, the manager must not be modified other than
+         * through an iterator while that iterator is in use.
+         */
+        class PerSampleReadStateManager implements Iterable<SAMRecordState> {
+            private static final int INITIAL_CAPACITY = 64;
+
+            private SAMRecordState[] readStates = new SAMRecordState[INITIAL_CAPACITY];
+            private int nSlots = 0;                                                     // slots in use, including removed states which haven't been compacted away
+            private int nRemoved = 0;                                                   // removed states awaiting compaction
+
+            private int[] readStateCounts = new int[INITIAL_CAPACITY];                  // number of read states at each alignment start, in order
+            private int firstCount = 0;
+            private int nCounts = 0;
+
             private int downsamplingExtent = 0;
 
             public void addStatesAtNextAlignmentStart(Collection<SAMRecordState> states) {
-                readStates.addAll(states);
-                readStateCounter.add(new Counter(states.size()));
+                if (states.isEmpty())
+                    return;
+
+                compact();
+                if (nSlots + states.size() > readStates.length)
+                    readStates = Arrays.copyOf(readStates, Math.max(nSlots + states.size(), readStates.length * 2));
+                for (final SAMRecordState state : states)
+                    readStates[nSlots++] = state;
+
+                if (firstCount + nCounts == readStateCounts.length) {
+                    if (firstCount > 0) {                                               // reclaim the space left by counts which have been used up
+                        System.arraycopy(readStateCounts, firstCount, readStateCounts, 0, nCounts);
+                        firstCount = 0;
+                    }
+                    else
+                        readStateCounts = Arrays.copyOf(readStateCounts, readStateCounts.length * 2);
+                }
+                readStateCounts[firstCount + nCounts++] = states.size();
                 totalReadStates += states.size();
             }
 
             public boolean isEmpty() {
-                return readStates.isEmpty();
+                return size() == 0;
             }
 
             public SAMRecordState peek() {
-                return readStates.peek();
+                compact();
+                return nSlots == 0 ? null : readStates[0];
             }
 
             public int size() {
-                return readStates.size();
+                return nSlots - nRemoved;
             }
 
             public void specifyNewDownsamplingExtent(int downsamplingExtent) {
@@ -801,31 +843,35 @@ public class LocusIteratorByState extends LocusIterator {
             }
 
             public int[] getCountsPerAlignmentStart() {
-                int[] counts = new int[readStateCounter.size()];
-                int index = 0;
-                for (Counter counter : readStateCounter)
-                    counts[index++] = counter.getCount();
-                return counts;
+                compact();
+                return Arrays.copyOfRange(readStateCounts, firstCount, firstCount + nCounts);
             }
 
             public Iterator<SAMRecordState> iterator() {
+                compact();
                 return new Iterator<SAMRecordState>() {
-                    private Iterator<SAMRecordState> wrappedIterator = readStates.iterator();
+                    private final int end = nSlots;
+                    private int nextIndex = 0;
 
                     public boolean hasNext() {
-                        return wrappedIterator.hasNext();
+                        return nextIndex < end;
                     }
 
                     public SAMRecordState next() {
-                        return wrappedIterator.next();
+                        if (!hasNext())
+                            throw new NoSuchElementException("No more read states for this sample");
+                        return readStates[nextIndex++];
                     }
 
                     public void remove() {
-                        wrappedIterator.remove();
-                        Counter counter = readStateCounter.peek();
-                        counter.decrement();
-                        if (counter.getCount() == 0)
-                            readStateCounter.remove();
+                        if (nextIndex == 0 || readStates[nextIndex - 1] == null)
+                            throw new IllegalStateException("next() must be called before each call to remove()");
+                        readStates[nextIndex - 1] = null;
+                        nRemoved++;
+                        if (--readStateCounts[firstCount] == 0) {
+                            firstCount++;
+                            nCounts--;
+                        }
                     }
                 };
             }
@@ -840,63 +886,59 @@ public class LocusIteratorByState extends LocusIterator {
             public int purge(final BitSet elements) {
                 int downsamplingExtent = 0;
 
-                if (elements.isEmpty() || readStates.isEmpty()) return downsamplingExtent;
-
-                Iterator<SAMRecordState> readStateIterator = readStates.iterator();
+                if (elements.isEmpty() || isEmpty()) return downsamplingExtent;
 
-                Iterator<Counter> counterIterator = readStateCounter.iterator();
-                Counter currentCounter = counterIterator.next();
+                compact();
 
-                int readIndex = 0;
-                long alignmentStartCounter = currentCounter.getCount();
-
-                int toPurge = elements.nextSetBit(0);
+                int count = firstCount;
+                int remainingAtAlignmentStart = readStateCounts[count];
                 int removedCount = 0;
 
-                while (readStateIterator.hasNext() && toPurge >= 0) {
-                    SAMRecordState state = readStateIterator.next();
-                    downsamplingExtent = Math.max(downsamplingExtent, state.getRead().getAlignmentEnd());
+                for (int readIndex = elements.nextSetBit(0), i = 0; readIndex >= 0 && i < nSlots; i++) {
+                    downsamplingExtent = Math.max(downsamplingExtent, readStates[i].getRead().getAlignmentEnd());
 
-                    if (readIndex == toPurge) {
-                        readStateIterator.remove();
-                        currentCounter.decrement();
-                        if (currentCounter.getCount() == 0)
-                            counterIterator.remove();
+                    if (i == readIndex) {
+                        readStates[i] = null;
+                        readStateCounts[count]--;
                         removedCount++;
-                        toPurge = elements.nextSetBit(toPurge + 1);
+                        readIndex = elements.nextSetBit(readIndex + 1);
                     }
 
-                    readIndex++;
-                    alignmentStartCounter--;
-                    if (alignmentStartCounter == 0 && counterIterator.hasNext()) {
-                        currentCounter = counterIterator.next();
-                        alignmentStartCounter = currentCounter.getCount();
-                    }
+                    if (--remainingAtAlignmentStart == 0 && count + 1 < firstCount + nCounts)
+                        remainingAtAlignmentStart = readStateCounts[++count];
                 }
 
+                nRemoved += removedCount;
                 totalReadStates -= removedCount;
+                compact();
 
                 return downsamplingExtent;
             }
-        }
-    }
-
-    /**
-     * Note: assuming that, whenever we downsample, we downsample to an integer capacity.
-     */
-    static private class Counter {
-        private int count;
-
-        public Counter(int count) {
-            this.count = count;
-        }
 
-        public int getCount() {
-            return count;
-        }
+            /**
+             * Squeeze out the states, and the alignment starts, which have been removed.
+             */
+            private void compact() {
+                if (nRemoved == 0)
+                    return;
 
-        public void decrement() {
-            count--;
+                int nKept = 0;
+                for (int i = 0; i < nSlots; i++) {
+                    if (readStates[i] != null)
+                        readStates[nKept++] = readStates[i];
+                }
+                Arrays.fill(readStates, nKept, nSlots, null);
+                nSlots = nKept;
+                nRemoved = 0;
+
+                int nKeptCounts = 0;
+                for (int i = firstCount; i < firstCount + nCounts; i++) {
+                    if (readStateCounts[i] != 0)
+                        readStateCounts[nKeptCounts++] = readStateCounts[i];
+                }
+                firstCount = 0;
+                nCounts = nKeptCounts;
+            }
         }
     }
 }
@@ -1067,30 +1109,64 @@ class NRandomReadSelector implements ReadSelector {
 }
 
 /**
- * Note: stores reads by sample ID string, not by sample object
+ * Note: stores reads by the position of their sample in a list of sample ID strings, not by sample object.  Reads
+ * given a sample index by the engine are partitioned without looking up their sample names.
  */
 class SamplePartitioner implements ReadSelector {
-    private final Map<String, ReadSelector> readsBySample;
+    private static final int UNKNOWN_SAMPLE = -1;
+    private static final int UNRESOLVED_SAMPLE = -2;
+
+    private final Map<String, Integer> sampleIndices = new HashMap<String, Integer>();
+    private final ReadSelector[] readsBySample;
+    private int[] samplesBySampleIndex = new int[0];                              // position of the sample of each engine sample index
     private long readsSeen = 0;
 
-    public SamplePartitioner(Map<String, ReadSelector> readSelectors) {
-        readsBySample = readSelectors;
+    public SamplePartitioner(List<String> samples, List<ReadSelector> readSelectors) {
+        for (int i = 0; i < samples.size(); i++)
+            sampleIndices.put(samples.get(i), i);
+        readsBySample = readSelectors.toArray(new ReadSelector[readSelectors.size()]);
     }
 
     public void submitRead(SAMRecord read) {
-        String sampleName = read.getReadGroup() != null ? read.getReadGroup().getSample() : null;
-        if (readsBySample.containsKey(sampleName))
-            readsBySample.get(sampleName).submitRead(read);
+        int sample = getSample(read);
+        if (sample != UNKNOWN_SAMPLE)
+            readsBySample[sample].submitRead(read);
         readsSeen++;
     }
 
     public void notifyReadRejected(SAMRecord read) {
-        String sampleName = read.getReadGroup() != null ? read.getReadGroup().getSample() : null;
-        if (readsBySample.containsKey(sampleName))
-            readsBySample.get(sampleName).notifyReadRejected(read);
+        int sample = getSample(read);
+        if (sample != UNKNOWN_SAMPLE)
+            readsBySample[sample].notifyReadRejected(read);
         readsSeen++;
     }
 
+    /**
+     * Finds the position of the read's sample, looking up the sample name only the first time its index is seen.
+     *
+     * @param read the read
+     * @return the position of its sample, or UNKNOWN_SAMPLE if it's not one of our samples
+     */
+    private int getSample(SAMRecord read) {
+        int sampleIndex = read instanceof GATKSAMRecord ? ((GATKSAMRecord) read).getSampleIndex() : GATKSAMRecord.NO_SAMPLE_INDEX;
+        if (sampleIndex == GATKSAMRecord.NO_SAMPLE_INDEX)
+            return getSample(read.getReadGroup() != null ? read.getReadGroup().getSample() : null);
+
+        if (sampleIndex >= samplesBySampleIndex.length) {
+            int oldLength = samplesBySampleIndex.length;
+            samplesBySampleIndex = Arrays.copyOf(samplesBySampleIndex, Math.max(sampleIndex + 1, 2 * oldLength));
+            Arrays.fill(samplesBySampleIndex, oldLength, samplesBySampleIndex.length, UNRESOLVED_SAMPLE);
+        }
+        if (samplesBySampleIndex[sampleIndex] == UNRESOLVED_SAMPLE)
+            samplesBySampleIndex[sampleIndex] = getSample(read.getReadGroup().getSample());
+        return samplesBySampleIndex[sampleIndex];
+    }
+
+    private int getSample(String sampleName) {
+        Integer sample = sampleIndices.get(sampleName);
+        return sample != null ? sample : UNKNOWN_SAMPLE;
+    }
+
     public void complete() {
         // NO-OP.
     }
@@ -1105,7 +1181,7 @@ class SamplePartitioner implements ReadSelector {
 
     public int getDownsamplingExtent() {
         int downsamplingExtent = 0;
-        for (ReadSelector storage : readsBySample.values())
+        for (ReadSelector storage : readsBySample)
             downsamplingExtent = Math.max(downsamplingExtent, storage.getDownsamplingExtent());
         return downsamplingExtent;
     }
@@ -1114,14 +1190,14 @@ class SamplePartitioner implements ReadSelector {
         throw new UnsupportedOperationException("Cannot directly get selected reads from a read partitioner.");
     }
 
-    public ReadSelector getSelectedReads(String sampleName) {
-        if (!readsBySample.containsKey(sampleName))
-            throw new NoSuchElementException("Sample name not found");
-        return readsBySample.get(sampleName);
+    public ReadSelector getSelectedReads(int sample) {
+        if (sample < 0 || sample >= readsBySample.length)
+            throw new NoSuchElementException("Sample not found");
+        return readsBySample[sample];
     }
 
     public void reset() {
-        for (ReadSelector storage : readsBySample.values())
+        for (ReadSelector storage : readsBySample)
             storage.reset();
         readsSeen = 0;
     }
@@ -8,6 +8,7 @@ import org.broadinstitute.sting.commandline.RodBinding;
 import org.broadinstitute.sting.gatk.contexts.ReferenceContext;
 import org.broadinstitute.sting.gatk.refdata.utils.GATKFeature;
 import org.broadinstitute.sting.gatk.refdata.utils.RODRecordList;
+import org.broadinstitute.sting.gatk.refdata.utils.RODTrackSlots;
 import org.broadinstitute.sting.utils.GenomeLoc;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 
@@ -24,18 +25,21 @@ import java.util.*;
  * walker calls get(rodBinding) to obtain the RMDs values at this site for the track
  * associated with rodBinding.
  *
- * Note that this is an immutable class.  Once created the underlying data structures
- * cannot be modified
+ * The tracks are kept in an array indexed by the slots of a RODTrackSlots, which the traversal
+ * may refill for the next site once the walker's done with this one, so a tracker shouldn't be
+ * held onto past the call it was given to.  The Features bound to a single RodBinding are
+ * returned as an unmodifiable view of its track rather than a copy.
  *
  * User: mdepristo
  * Date: Apr 3, 2009
  * Time: 3:05:23 PM
  */
 public class RefMetaDataTracker {
-    // TODO: this should be a list, not a map, actually
     private final static RODRecordList EMPTY_ROD_RECORD_LIST = new RODRecordListImpl("EMPTY");
 
-    final Map<String, RODRecordList> map;
+    final RODTrackSlots slots;
+    final RODRecordList[] tracks;   // the tracks by slot; null or empty where nothing is bound here
+    final int nBoundTracks;
     final ReferenceContext ref;
     final protected static Logger logger = Logger.getLogger(RefMetaDataTracker.class);
 
@@ -51,26 +55,56 @@ public class RefMetaDataTracker {
      * Only for testing -- not accesssible in any other context
      */
     public RefMetaDataTracker() {
-        ref = null;
-        map = Collections.emptyMap();
+        this(Collections.<RODRecordList>emptyList(), null);
     }
 
     public RefMetaDataTracker(final Collection<RODRecordList> allBindings, final ReferenceContext ref) {
+        this(slotsOf(allBindings), allBindings, ref);
+    }
+
+    private RefMetaDataTracker(final RODTrackSlots slots, final Collection<RODRecordList> allBindings, final ReferenceContext ref) {
+        this(slots, tracksBySlot(slots, allBindings), ref);
+    }
+
+    /**
+     * Create a tracker of the tracks bound at a site
+     *
+     * @param slots the slots of all of the tracks of the traversal
+     * @param tracks the tracks bound at this site, indexed by slot, with null or empty lists where nothing is bound.
+     *               Not copied, so it mustn't be changed while this tracker is in use.
+     * @param ref the reference context of this site
+     */
+    @Requires({"slots != null", "tracks != null", "tracks.length >= slots.size()"})
+    public RefMetaDataTracker(final RODTrackSlots slots, final RODRecordList[] tracks, final ReferenceContext ref) {
+        this.slots = slots;
+        this.tracks = tracks;
         this.ref = ref;
 
-        // set up the map
-        if ( allBindings.isEmpty() )
-            map = Collections.emptyMap();
-        else {
-            Map<String, RODRecordList> tmap = new HashMap<String, RODRecordList>(allBindings.size());
-            for ( RODRecordList rod : allBindings ) {
-                if ( rod != null && ! rod.isEmpty() )
-                    tmap.put(canonicalName(rod.getName()), rod);
-            }
+        int n = 0;
+        for ( int slot = 0; slot < slots.size(); slot++ )
+            if ( isBound(tracks[slot]) )
+                n++;
+        nBoundTracks = n;
+    }
 
-            // ensure that no one modifies the map itself
-            map = Collections.unmodifiableMap(tmap);
-        }
+    private static RODTrackSlots slotsOf(final Collection<RODRecordList> allBindings) {
+        final List<String> names = new ArrayList<String>(allBindings.size());
+        for ( RODRecordList rod : allBindings )
+            if ( isBound(rod) )
+                names.add(rod.getName());
+        return new RODTrackSlots(names);
+    }
+
+    private static RODRecordList[] tracksBySlot(final RODTrackSlots slots, final Collection<RODRecordList> allBindings) {
+        final RODRecordList[] tracks = new RODRecordList[slots.size()];
+        for ( RODRecordList rod : allBindings )
+            if ( isBound(rod) )
+                tracks[slots.getSlot(rod.getName())] = rod;
+        return tracks;
+    }
+
+    private static boolean isBound(final RODRecordList rod) {
+        return rod != null && ! rod.isEmpty();
     }
 
     // ------------------------------------------------------------------------------------------
@@ -99,7 +133,7 @@ public class RefMetaDataTracker {
     @Requires({"type != null"})
     @Ensures("result != null")
     public <T extends Feature> List<T> getValues(final Class<T> type) {
-        return addValues(map.keySet(), type, new ArrayList<T>(), null, false, false);
+        return addAllValues(type, new ArrayList<T>(), null, false, false);
     }
 
     /**
@@ -114,7 +148,7 @@ public class RefMetaDataTracker {
     @Requires({"type != null", "onlyAtThisLoc != null"})
     @Ensures("result != null")
     public <T extends Feature> List<T> getValues(final Class<T> type, final GenomeLoc onlyAtThisLoc) {
-        return addValues(map.keySet(), type, new ArrayList<T>(), onlyAtThisLoc, true, false);
+        return addAllValues(type, new ArrayList<T>(), onlyAtThisLoc, true, false);
     }
 
     /**
@@ -161,12 +195,18 @@ public class RefMetaDataTracker {
      *
      * @param rodBinding Only Features coming from the track associated with this rodBinding are fetched
      * @param <T> The Tribble Feature type of the rodBinding, and consequently the type of the resulting list of Features
-     * @return A freshly allocated list of all of the bindings, or an empty list if none are bound.
+     * @return An unmodifiable view of all of the bindings, or an empty list if none are bound.
      */
     @Requires({"rodBinding != null"})
     @Ensures("result != null")
     public <T extends Feature> List<T> getValues(final RodBinding<T> rodBinding) {
-        return addValues(rodBinding.getName(), rodBinding.getType(), new ArrayList<T>(1), getTrackDataByName(rodBinding), null, false, false);
+        final RODRecordList rodList = getTrackDataByName(rodBinding);
+        if ( rodList.isEmpty() )
+            return Collections.emptyList();
+
+        for ( GATKFeature rec : rodList )
+            checkType(rodBinding.getName(), rodBinding.getType(), rec.getUnderlyingObject());
+        return new FeatureList<T>(rodList, rodBinding.getType());
     }
 
     /**
@@ -231,7 +271,8 @@ public class RefMetaDataTracker {
      */
     @Requires({"rodBinding != null"})
     public <T extends Feature> T getFirstValue(final RodBinding<T> rodBinding) {
-        return safeGetFirst(addValues(rodBinding.getName(), rodBinding.getType(), null, getTrackDataByName(rodBinding), null, false, true));
+        final RODRecordList rodList = getTrackDataByName(rodBinding);
+        return rodList.isEmpty() ? null : checkType(rodBinding.getName(), rodBinding.getType(), rodList.get(0).getUnderlyingObject());
     }
 
     /**
@@ -295,8 +336,8 @@ public class RefMetaDataTracker {
      * @return true if any Features are bound in this tracker to rodBinding
      */
     @Requires({"rodBinding != null"})
-    public boolean hasValues(final RodBinding rodBinding) {
-        return map.containsKey(canonicalName(rodBinding.getName()));
+    public boolean hasValues(final RodBinding<?> rodBinding) {
+        return ! getTrackDataByName(rodBinding).isEmpty();
     }
 
     /**
@@ -306,7 +347,11 @@ public class RefMetaDataTracker {
      * @return List of all tracks
      */
     public List<RODRecordList> getBoundRodTracks() {
-        return new ArrayList<RODRecordList>(map.values());
+        final List<RODRecordList> bound = new ArrayList<RODRecordList>(nBoundTracks);
+        for ( int slot = 0; slot < slots.size(); slot++ )
+            if ( isBound(tracks[slot]) )
+                bound.add(tracks[slot]);
+        return bound;
     }
 
     /**
@@ -314,7 +359,7 @@ public class RefMetaDataTracker {
      * @return the number of tracks with at least one bound Feature
      */
     public int getNTracksWithBoundFeatures() {
-        return map.size();
+        return nBoundTracks;
     }
 
     // ------------------------------------------------------------------------------------------
@@ -329,7 +374,7 @@ public class RefMetaDataTracker {
 
     @Deprecated
     public boolean hasValues(final String name) {
-        return map.containsKey(canonicalName(name));
+        return ! getTrackDataByName(name).isEmpty();
     }
 
     @Deprecated
@@ -370,15 +415,15 @@ public class RefMetaDataTracker {
         return l.isEmpty() ? null : l.get(0);
     }
 
-    private <T extends Feature> List<T> addValues(final Collection<String> names,
-                                                  final Class<T> type,
-                                                  List<T> values,
-                                                  final GenomeLoc curLocation,
-                                                  final boolean requireStartHere,
-                                                  final boolean takeFirstOnly ) {
-        for ( String name : names ) {
-            RODRecordList rodList = getTrackDataByName(name); // require that the name is an exact match
-            values = addValues(name, type, values, rodList, curLocation, requireStartHere, takeFirstOnly );
+    private <T extends Feature> List<T> addAllValues(final Class<T> type,
+                                                     List<T> values,
+                                                     final GenomeLoc curLocation,
+                                                     final boolean requireStartHere,
+                                                     final boolean takeFirstOnly ) {
+        for ( int slot = 0; slot < slots.size(); slot++ ) {
+            if ( ! isBound(tracks[slot]) )
+                continue;
+            values = addValues(slots.getName(slot), type, values, tracks[slot], curLocation, requireStartHere, takeFirstOnly );
             if ( takeFirstOnly && ! values.isEmpty() )
                 break;
         }
@@ -397,12 +442,7 @@ public class RefMetaDataTracker {
                                                   final boolean takeFirstOnly ) {
         for ( GATKFeature rec : rodList ) {
             if ( ! requireStartHere || rec.getLocation().getStart() == curLocation.getStart() ) {  // ok, we are going to keep this thing
-                Object obj = rec.getUnderlyingObject();
-                if (!(type.isAssignableFrom(obj.getClass())))
-                    throw new UserException.CommandLineException("Unable to cast track named " + name + " to type of " + type.toString()
-                            + " it's of type " + obj.getClass());
-
-                T objT = (T)obj;
+                T objT = checkType(name, type, rec.getUnderlyingObject());
                 if ( takeFirstOnly ) {
                     if ( values == null )
                         values = Arrays.asList(objT);
@@ -434,22 +474,50 @@ public class RefMetaDataTracker {
      * @return track data for the given rod
      */
     private RODRecordList getTrackDataByName(final String name) {
-        final String luName = canonicalName(name);
-        RODRecordList l = map.get(luName);
+        return getTrackData(slots.getSlot(name));
+    }
+
+    private RODRecordList getTrackDataByName(final RodBinding<?> binding) {
+        return getTrackData(slots.getSlot(binding));
+    }
+
+    private RODRecordList getTrackData(final int slot) {
+        final RODRecordList l = slot == RODTrackSlots.NO_SLOT ? null : tracks[slot];
         return l == null ? EMPTY_ROD_RECORD_LIST : l;
     }
 
-    private RODRecordList getTrackDataByName(final RodBinding binding) {
-        return getTrackDataByName(binding.getName());
+    /**
+     * Casts a bound object to the type requested of its track
+     * @param name the name of the track
+     * @param type the type of Feature requested
+     * @param obj the object bound to the track
+     * @return obj as a T
+     */
+    private static <T extends Feature> T checkType(final String name, final Class<T> type, final Object obj) {
+        if (!(type.isAssignableFrom(obj.getClass())))
+            throw new UserException.CommandLineException("Unable to cast track named " + name + " to type of " + type.toString()
+                    + " it's of type " + obj.getClass());
+        return type.cast(obj);
     }
 
     /**
-     * Returns the canonical name of the rod name (lowercases it)
-     * @param name the name of the rod
-     * @return canonical name of the rod
+     * An unmodifiable view of the objects underlying the features of a track, whose types have already been checked
      */
-    private final String canonicalName(final String name) {
-        // todo -- remove me after switch to RodBinding syntax
-        return name.toLowerCase();
+    private static class FeatureList<T extends Feature> extends AbstractList<T> implements RandomAccess {
+        private final RODRecordList rodList;
+        private final Class<T> type;
+
+        public FeatureList(final RODRecordList rodList, final Class<T> type) {
+            this.rodList = rodList;
+            this.type = type;
+        }
+
+        public T get(final int i) {
+            return type.cast(rodList.get(i).getUnderlyingObject());
+        }
+
+        public int size() {
+            return rodList.size();
+        }
     }
 }
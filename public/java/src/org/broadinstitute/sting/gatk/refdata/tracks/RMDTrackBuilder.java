@@ -45,6 +45,8 @@ import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.file.FSLockWithShared;
 import org.broadinstitute.sting.utils.file.FileSystemInabilityToLockException;
+import org.broadinstitute.sting.utils.gcf.GCFCodec;
+import org.broadinstitute.sting.utils.gcf.GCFFeatureSource;
 import org.broadinstitute.sting.utils.instrumentation.Sizeof;
 
 import java.io.File;
@@ -121,8 +123,10 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
             throw new UserException.BadArgumentValue("-B",fileDescriptor.getType());
 
         // return a feature reader track
-        Pair<FeatureSource, SAMSequenceDictionary> pair;
-        if (inputFile.getAbsolutePath().endsWith(".gz"))
+        Pair<FeatureSource<?>, SAMSequenceDictionary> pair;
+        if (GCFCodec.class.isAssignableFrom(descriptor.getCodecClass()))
+            pair = createGCFFeatureSource(descriptor, name, inputFile);
+        else if (inputFile.getAbsolutePath().endsWith(".gz"))
             pair = createTabixIndexedFeatureSource(descriptor, name, inputFile);
         else
             pair = getFeatureSource(descriptor, name, inputFile, fileDescriptor.getStorageType());
@@ -145,6 +149,24 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
         return createInstanceOfTrack(new RMDTriplet("anonymous",descriptor.getName(),inputFile.getAbsolutePath(),RMDStorageType.FILE,new Tags()));
     }
 
+    /**
+     * create a feature source for a GCF file.  GCF files are binary, so they are read by their own feature source
+     * rather than through tribble's line-based readers, and carry their sequence dictionary in their header.
+     *
+     * @param descriptor the FeatureDescriptor describing the GCFCodec
+     * @param name the name of the track
+     * @param inputFile the GCF file to load
+     * @return the feature source and the sequence dictionary of the file
+     */
+    private Pair<FeatureSource<?>, SAMSequenceDictionary> createGCFFeatureSource(FeatureManager.FeatureDescriptor descriptor, String name, File inputFile) {
+        try {
+            final GCFFeatureSource featureSource = ((GCFCodec)createCodec(descriptor, name)).createFeatureSource(inputFile);
+            return new Pair<FeatureSource<?>, SAMSequenceDictionary>(featureSource, featureSource.getSequenceDictionary());
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(inputFile, "Unable to open GCF file", e);
+        }
+    }
+
     /**
      * create a feature reader, without assuming there exists an index.  This code assumes the feature
      * reader of the appropriate type will figure out what the right index type is, and determine if it
@@ -155,11 +177,11 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
      * @param inputFile the file to load
      * @return a feature reader implementation
      */
-    private Pair<FeatureSource, SAMSequenceDictionary> createTabixIndexedFeatureSource(FeatureManager.FeatureDescriptor descriptor, String name, File inputFile) {
+    private Pair<FeatureSource<?>, SAMSequenceDictionary> createTabixIndexedFeatureSource(FeatureManager.FeatureDescriptor descriptor, String name, File inputFile) {
         // we might not know the index type, try loading with the default reader constructor
         logger.info("Attempting to blindly load " + inputFile + " as a tabix indexed file");
         try {
-            return new Pair<FeatureSource, SAMSequenceDictionary>(BasicFeatureSource.getFeatureSource(inputFile.getAbsolutePath(), createCodec(descriptor, name)),null);
+            return new Pair<FeatureSource<?>, SAMSequenceDictionary>(BasicFeatureSource.getFeatureSource(inputFile.getAbsolutePath(), createCodec(descriptor, name)),null);
         } catch (TribbleException e) {
             throw new UserException(e.getMessage(), e);
         }
@@ -183,12 +205,12 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
      * @param storageType How the RMD is streamed into the input file.
      * @return the input file as a FeatureReader
      */
-    private Pair<FeatureSource, SAMSequenceDictionary> getFeatureSource(FeatureManager.FeatureDescriptor descriptor,
+    private Pair<FeatureSource<?>, SAMSequenceDictionary> getFeatureSource(FeatureManager.FeatureDescriptor descriptor,
                                                                         String name,
                                                                         File inputFile,
                                                                         RMDStorageType storageType) {
         // Feature source and sequence dictionary to use as the ultimate reference
-        FeatureSource featureSource = null;
+        FeatureSource<?> featureSource = null;
         SAMSequenceDictionary sequenceDictionary = null;
 
         // Detect whether or not this source should be indexed.
@@ -231,7 +253,7 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
             featureSource = BasicFeatureSource.getFeatureSource(inputFile.getAbsolutePath(),createCodec(descriptor, name),false);
         }
 
-        return new Pair<FeatureSource,SAMSequenceDictionary>(featureSource,sequenceDictionary);
+        return new Pair<FeatureSource<?>,SAMSequenceDictionary>(featureSource,sequenceDictionary);
     }
 
     /**
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2012 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.broadinstitute.sting.gatk.refdata.utils;
+
+import org.broadinstitute.sting.commandline.RodBinding;
+
+import java.util.*;
+
+/**
+ * Numbers the reference-ordered data tracks of a traversal, so that the tracks bound at each site can be kept in
+ * an array indexed by slot rather than in a map keyed by track name.
+ *
+ * Track names are matched case-insensitively, as they always have been by the RefMetaDataTracker.  RodBindings are
+ * resolved to their slots the first time they're looked up, and by identity thereafter, so instances of this class
+ * aren't thread-safe; each view of the reference-ordered data has its own.
+ */
+public class RODTrackSlots {
+    /**
+     * The slot of names which aren't the name of any track
+     */
+    public static final int NO_SLOT = -1;
+
+    /** the canonical names of the tracks, by slot */
+    private final List<String> names = new ArrayList<String>();
+
+    /** the slots of the tracks by both their names as given and their canonical names */
+    private final Map<String,Integer> slotsByName = new HashMap<String,Integer>();
+
+    /** the slots of the RodBindings looked up so far */
+    private final Map<RodBinding<?>,Integer> slotsByBinding = new IdentityHashMap<RodBinding<?>,Integer>();
+
+    /**
+     * Gives each of the named tracks a slot, in order.  Tracks whose names differ only in case share a slot.
+     * @param trackNames the names of the tracks
+     */
+    public RODTrackSlots(final Collection<String> trackNames) {
+        for ( String name : trackNames ) {
+            final String canonicalName = canonicalName(name);
+            Integer slot = slotsByName.get(canonicalName);
+            if ( slot == null ) {
+                slot = names.size();
+                names.add(canonicalName);
+                slotsByName.put(canonicalName, slot);
+            }
+            slotsByName.put(name, slot);
+        }
+    }
+
+    /**
+     * @return the number of slots
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * @param slot a slot
+     * @return the canonical name of the track in slot
+     */
+    public String getName(final int slot) {
+        return names.get(slot);
+    }
+
+    /**
+     * @param name the name of a track
+     * @return the slot of the track named name, or NO_SLOT if there's no such track
+     */
+    public int getSlot(final String name) {
+        Integer slot = slotsByName.get(name);
+        if ( slot == null )
+            slot = slotsByName.get(canonicalName(name));
+        return slot == null ? NO_SLOT : slot;
+    }
+
+    /**
+     * @param binding a RodBinding
+     * @return the slot of the track bound to binding, or NO_SLOT if there's no such track
+     */
+    public int getSlot(final RodBinding<?> binding) {
+        Integer slot = slotsByBinding.get(binding);
+        if ( slot == null ) {
+            slot = getSlot(binding.getName());
+            slotsByBinding.put(binding, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the canonical name of the rod name (lowercases it)
+     * @param name the name of the rod
+     * @return canonical name of the rod
+     */
+    private static String canonicalName(final String name) {
+        // todo -- remove me after switch to RodBinding syntax
+        return name.toLowerCase();
+    }
+}
@@ -26,14 +26,27 @@ package org.broadinstitute.sting.gatk.report;
 
 import org.apache.commons.lang.math.NumberUtils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.Formattable;
+import java.util.List;
 
 /**
- * Holds values for a column in a GATK report table
+ * Holds values for a column in a GATK report table.
+ *
+ * Values are stored by the row index the table assigns to each primary key.  As long as every value put into the
+ * column is of the same numeric class, the column keeps them in a primitive long[] or double[] and boxes them only
+ * on the way out, so that counting tables don't hold millions of Longs and Doubles.  The first value of another class
+ * moves the column over to plain Objects.
+ *
+ * A column is no longer a Map from primary keys to values, as it knows only row indices: look values up by primary
+ * key through GATKReportTable.get, and use getValues in place of values().
  */
-public class GATKReportColumn extends LinkedHashMap<Object, Object> {
+public class GATKReportColumn {
+    private enum Storage { EMPTY, LONG, DOUBLE, OBJECT }
+
     final private String columnName;
     final private Object defaultValue;
     final private String format;
@@ -41,8 +54,13 @@ public class GATKReportColumn extends LinkedHashMap<Object, Object> {
     final private GATKReportDataType dataType;
 
     private GATKReportColumnFormat columnFormat;
-    private GATKReportColumnFormat.Alignment alignment = GATKReportColumnFormat.Alignment.RIGHT;                        // default alignment is to the right unless values added ask for a left alignment
-    private int maxWidth = 0;
+
+    private Storage storage = Storage.EMPTY;
+    private Class<?> boxClass;                  // the class of every value in the column, when it's LONG or DOUBLE
+    private long[] longValues;
+    private double[] doubleValues;
+    private Object[] objectValues;
+    private final BitSet setRows = new BitSet();
 
     /**
      * Construct the column object, specifying the column name, default value, whether or not the column should be
@@ -55,7 +73,6 @@ public class GATKReportColumn extends LinkedHashMap<Object, Object> {
      */
     public GATKReportColumn(String columnName, Object defaultValue, boolean display, String format) {
         this.columnName = columnName;
-        this.maxWidth = columnName.length();
         this.display = display;
         if ( format.equals("") ) {
             this.format = "%s";
@@ -72,10 +89,164 @@ public class GATKReportColumn extends LinkedHashMap<Object, Object> {
     /**
      * Initialize an element in the column with a default value
      *
-     * @param primaryKey the primary key position in the column that should be set
+     * @param row the row of the table that should be set
+     */
+    void initialize(int row) {
+        put(row, defaultValue);
+    }
+
+    /**
+     * @param row the row of the table
+     * @return true if a value, possibly the default, has been put in the column for this row
+     */
+    boolean isSet(int row) {
+        return setRows.get(row);
+    }
+
+    /**
+     * @return the number of rows with a value in this column
+     */
+    int getNumSetRows() {
+        return setRows.cardinality();
+    }
+
+    /**
+     * Return the value in the column for a row
+     *
+     * @param row the row of the table
+     * @return the value at the specified row, or null if it has never been set
+     */
+    Object get(int row) {
+        if ( !isSet(row) )
+            return null;
+
+        switch ( storage ) {
+            case LONG:
+                final long l = longValues[row];
+                if ( boxClass == Long.class )    return l;
+                if ( boxClass == Integer.class ) return (int) l;
+                if ( boxClass == Short.class )   return (short) l;
+                return (byte) l;
+            case DOUBLE:
+                final double d = doubleValues[row];
+                if ( boxClass == Double.class ) return d;
+                return (float) d;
+            default:
+                return objectValues[row];
+        }
+    }
+
+    /**
+     * Put a value in the column for a row
+     *
+     * @param row   the row of the table
+     * @param value the value to put in the column
      */
-    public void initialize(Object primaryKey) {
-        this.put(primaryKey, defaultValue);
+    void put(int row, Object value) {
+        if ( storage == Storage.EMPTY )
+            allocate(value);
+
+        if ( storage != Storage.OBJECT && (value == null || value.getClass() != boxClass) )
+            convertToObjects();
+
+        switch ( storage ) {
+            case LONG:
+                ensureCapacity(row);
+                longValues[row] = ((Number) value).longValue();
+                break;
+            case DOUBLE:
+                ensureCapacity(row);
+                doubleValues[row] = ((Number) value).doubleValue();
+                break;
+            default:
+                ensureCapacity(row);
+                objectValues[row] = value;
+        }
+
+        setRows.set(row);
+        columnFormat = null;
+    }
+
+    /**
+     * Add to the value in a row of a column of Longs, without boxing
+     *
+     * @param row   a row of the table that's already set in this column
+     * @param delta the value to add
+     * @return false if the column doesn't hold Longs, in which case nothing is done
+     */
+    boolean addLong(int row, long delta) {
+        if ( storage != Storage.LONG || boxClass != Long.class )
+            return false;
+        longValues[row] += delta;
+        columnFormat = null;
+        return true;
+    }
+
+    /**
+     * Add to the value in a row of a column of Doubles, without boxing
+     *
+     * @param row   a row of the table that's already set in this column
+     * @param delta the value to add
+     * @return false if the column doesn't hold Doubles, in which case nothing is done
+     */
+    boolean addDouble(int row, double delta) {
+        if ( storage != Storage.DOUBLE || boxClass != Double.class )
+            return false;
+        doubleValues[row] += delta;
+        columnFormat = null;
+        return true;
+    }
+
+    /**
+     * Picks the storage for the column based on the first value put in it
+     *
+     * @param value the first value
+     */
+    private void allocate(Object value) {
+        if ( value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte ) {
+            storage = Storage.LONG;
+            boxClass = value.getClass();
+            longValues = new long[16];
+        } else if ( value instanceof Double || value instanceof Float ) {
+            storage = Storage.DOUBLE;
+            boxClass = value.getClass();
+            doubleValues = new double[16];
+        } else {
+            storage = Storage.OBJECT;
+            objectValues = new Object[16];
+        }
+    }
+
+    /**
+     * Moves the values of a primitive column into an Object[], once a value of another class has been put in it
+     */
+    private void convertToObjects() {
+        final int length = (storage == Storage.LONG) ? longValues.length : doubleValues.length;
+        final Object[] objects = new Object[length];
+        for ( int row = setRows.nextSetBit(0); row >= 0; row = setRows.nextSetBit(row + 1) )
+            objects[row] = get(row);
+
+        storage = Storage.OBJECT;
+        boxClass = null;
+        longValues = null;
+        doubleValues = null;
+        objectValues = objects;
+    }
+
+    private void ensureCapacity(int row) {
+        switch ( storage ) {
+            case LONG:
+                if ( row >= longValues.length )
+                    longValues = Arrays.copyOf(longValues, Math.max(row + 1, 2 * longValues.length));
+                break;
+            case DOUBLE:
+                if ( row >= doubleValues.length )
+                    doubleValues = Arrays.copyOf(doubleValues, Math.max(row + 1, 2 * doubleValues.length));
+                break;
+            default:
+                if ( row >= objectValues.length )
+                    objectValues = Arrays.copyOf(objectValues, Math.max(row + 1, 2 * objectValues.length));
+        }
     }
 
     /**
@@ -84,25 +255,37 @@ public class GATKReportColumn extends LinkedHashMap<Object, Object> {
      * zero
      * values) in the table.
      *
-     * @param primaryKey the primary key position in the column that should be retrieved
+     * @param row the row of the table that should be retrieved
      * @return the value at the specified position in the column, or the default value if the element is not set
      */
-    private Object getWithoutSideEffects(Object primaryKey) {
-        if (!this.containsKey(primaryKey)) {
+    private Object getWithoutSideEffects(int row) {
+        if ( !isSet(row) ) {
             return defaultValue;
         }
 
-        return this.get(primaryKey);
+        return get(row);
     }
 
     /**
      * Return an object from the column, but if it doesn't exist, return the default value.
      *
-     * @param primaryKey the primary key position in the column that should be retrieved
+     * @param row the row of the table that should be retrieved
      * @return the string value at the specified position in the column, or the default value if the element is not set
      */
-    public String getStringValue(Object primaryKey) {
-        return formatValue(getWithoutSideEffects(primaryKey));
+    String getStringValue(int row) {
+        return formatValue(getWithoutSideEffects(row));
+    }
+
+    /**
+     * Returns the values that have been put in the column, in the order their rows were added to the table
+     *
+     * @return a list of the values in the column
+     */
+    public List<Object> getValues() {
+        final List<Object> values = new ArrayList<Object>(getNumSetRows());
+        for ( int row = setRows.nextSetBit(0); row >= 0; row = setRows.nextSetBit(row + 1) )
+            values.add(get(row));
+        return values;
     }
 
     /**
@@ -117,7 +300,8 @@ public class GATKReportColumn extends LinkedHashMap<Object, Object> {
 
     /**
      * Get the display width for this column.  This allows the entire column to be displayed with the appropriate, fixed
-     * width.
+     * width.  The width and alignment are worked out from the values in the column the first time they're needed
+     * after a change, rather than on every change.
      *
      * @return the format string for this column
      */
@@ -125,6 +309,20 @@ public class GATKReportColumn extends LinkedHashMap<Object, Object> {
         if (columnFormat != null)
             return columnFormat;
 
+        int maxWidth = columnName.length();
+        GATKReportColumnFormat.Alignment alignment = GATKReportColumnFormat.Alignment.RIGHT;                        // default alignment is to the right unless values added ask for a left alignment
+        for ( int row = setRows.nextSetBit(0); row >= 0; row = setRows.nextSetBit(row + 1) ) {
+            final Object value = get(row);
+            if (value != null) {
+                final String formatted = formatValue(value);
+                if (!formatted.equals("")) {
+                    maxWidth = Math.max(formatted.length(), maxWidth);
+                    if (alignment == GATKReportColumnFormat.Alignment.RIGHT && !isRightAlign(formatted))
+                        alignment = GATKReportColumnFormat.Alignment.LEFT;
+                }
+            }
+        }
+
         columnFormat = new GATKReportColumnFormat(maxWidth, alignment);
         return columnFormat;
     }
@@ -161,6 +359,9 @@ public class GATKReportColumn extends LinkedHashMap<Object, Object> {
         else if ( dataType.equals(GATKReportDataType.Unknown) && (obj instanceof Double || obj instanceof Float) ) {
             value = String.format("%.8f", obj);
         }
+        else if ( format.equals("%s") && !(obj instanceof Formattable) ) {
+            value = obj.toString();                                                                                 // all that String.format("%s") would do, without parsing the format
+        }
         else
             value = String.format(format, obj);
 
@@ -179,24 +380,6 @@ public class GATKReportColumn extends LinkedHashMap<Object, Object> {
                 defaultValue.equals(that.defaultValue) );
     }
 
-    boolean equals(GATKReportColumn that) {
-        if ( !this.keySet().equals(that.keySet()) ) {
-            return false;
-        }
-
-        for (Object key : keySet()) {
-            Object ValueA = this.get(key);
-            Object ValueB = that.get(key);
-
-            //if the value is not equal, (use data type to get the right comparison)
-            if (!dataType.isEqual(ValueA, ValueB)) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
     public String getColumnName() {
         return columnName;
     }
@@ -208,25 +391,4 @@ public class GATKReportColumn extends LinkedHashMap<Object, Object> {
         else
             return format;
     }
-
-    @Override
-    public Object put(Object key, Object value) {
-        if (value != null) {
-            String formatted = formatValue(value);
-            if (!formatted.equals("")) {
-                updateMaxWidth(formatted);
-                updateFormat(formatted);
-            }
-        }
-        return super.put(key, value);        
-    }
-
-    private void updateMaxWidth(String formatted) {
-        maxWidth = Math.max(formatted.length(), maxWidth);
-    }
-
-    private void updateFormat(String formatted) {
-        if (alignment == GATKReportColumnFormat.Alignment.RIGHT)
-            alignment = isRightAlign(formatted) ? GATKReportColumnFormat.Alignment.RIGHT : GATKReportColumnFormat.Alignment.LEFT;
-    }
 }
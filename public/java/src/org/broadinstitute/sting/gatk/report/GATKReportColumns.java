@@ -89,18 +89,4 @@ public class GATKReportColumns extends LinkedHashMap<String, GATKReportColumn> i
         }
         return true;
     }
-
-    boolean equals(GATKReportColumns that) {
-        for (Map.Entry<String, GATKReportColumn> pair : entrySet()) {
-            // Make sure that every column is the same, we know that the # of columns
-            // is the same from isSameFormat()
-            String key = pair.getKey();
-
-            if (!get(key).equals(that.get(key))) {
-                return false;
-            }
-        }
-
-        return true;
-    }
 }
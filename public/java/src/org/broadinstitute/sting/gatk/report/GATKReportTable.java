@@ -49,10 +49,17 @@ public class GATKReportTable {
 
 
     private String primaryKeyName;
-    private Collection<Object> primaryKeyColumn;
     private boolean primaryKeyDisplay;
     private boolean sortByPrimaryKey = true;
 
+    // every primary key is given a row index when it's first seen, and the columns store their values by that index
+    private final List<Object> rowKeys = new ArrayList<Object>();
+    private final Map<Object, Integer> rowIndices = new HashMap<Object, Integer>();
+    private int[] rowOrder;                                                                                             // the rows in the order they're written, or null if rows have been added since it was worked out
+    private int[] accessedRows = new int[16];                                                                           // an unsorted table writes a row every time its primary key is set or read, in that order
+    private int nAccessedRows = 0;
+    private List<Object> primaryKeys;                                                                                   // the primary keys in that same order
+
     private GATKReportColumns columns;
 
     private static final String COULD_NOT_READ_HEADER = "Could not read the header of this file -- ";
@@ -112,14 +119,15 @@ public class GATKReportTable {
                     counter = 1;
                 }
                 // Put in columns using the format string from the header
+                final GATKReportColumn[] tableColumns = new GATKReportColumn[nColumns];
+                final int firstColumn = primaryKeyDisplay ? 1 : 0;
                 for (int i = 0; i < nColumns; i++) {
                     String format = tableData[5 + i];
-                    if (primaryKeyDisplay)
-                        addColumn(columnNames[i + 1], true, format);
-                    else
-                        addColumn(columnNames[i], true, format);
+                    addColumn(columnNames[i + firstColumn], true, format);
+                    tableColumns[i] = columns.get(columnNames[i + firstColumn]);
                 }
     
+                // Each line goes straight into its row, without looking the columns up by name
                 for (int i = 0; i < nRows; i++) {
                     // read line
                     String dataLine;
@@ -128,22 +136,13 @@ public class GATKReportTable {
                     } catch (IOException e) {
                         throw new ReviewedStingException(COULD_NOT_READ_DATA_LINE + e.getMessage());
                     }
-                    List<String> lineSplits = Arrays.asList(TextFormattingUtils.splitFixedWidth(dataLine, columnStarts));
+                    String[] lineSplits = TextFormattingUtils.splitFixedWidth(dataLine, columnStarts);
+                    int row = getRow(primaryKeyDisplay ? lineSplits[0] : counter);
     
+                    //Input all the remaining values
                     for (int columnIndex = 0; columnIndex < nColumns; columnIndex++) {
-    
-                        //Input all the remaining values
-                        GATKReportDataType type = getColumns().getByIndex(columnIndex).getDataType();
-    
-                        if (primaryKeyDisplay) {
-                            String columnName = columnNames[columnIndex + 1];
-                            String primaryKey = lineSplits.get(0);
-                            set(primaryKey, columnName, type.Parse(lineSplits.get(columnIndex + 1)));
-                        } else {
-                            String columnName = columnNames[columnIndex];
-                            set(counter, columnName, type.Parse(lineSplits.get(columnIndex)));
-                        }
-    
+                        GATKReportColumn column = tableColumns[columnIndex];
+                        set(row, column, column.getDataType().Parse(lineSplits[columnIndex + firstColumn]));
                     }
                     counter++;
                 }
@@ -244,8 +243,6 @@ public class GATKReportTable {
         }
 
         this.primaryKeyName = primaryKeyName;
-
-        primaryKeyColumn = sortByPrimaryKey ? new TreeSet<Object>() : new LinkedList<Object>();
         primaryKeyDisplay = display;
     }
 
@@ -275,18 +272,18 @@ public class GATKReportTable {
         if (columnValues.length == 0)
             throw new IllegalArgumentException("Column values is empty");
         int columnCount = columns.size();
-        for (Object primaryKey : primaryKeyColumn) {
+        for (int row : getRowOrder()) {
             boolean matching = true;
             // i --> index into columnValues parameter
             // j --> index into columns collection
             for (int i = 0, j = 0; matching && i < columnValues.length && j < columnCount; j++) {
                 if (!columns.getByIndex(j).isDisplayable())
                     continue;
-                matching = ObjectUtils.equals(columnValues[i], get(primaryKey, i));
+                matching = ObjectUtils.equals(columnValues[i], columns.getByIndex(i).get(row));
                 i++;
             }
             if (matching)
-                return primaryKey;
+                return rowKeys.get(row);
         }
         return null;
     }
@@ -359,29 +356,114 @@ public class GATKReportTable {
     }
 
     /**
-     * Check if the requested element exists, and if not, create it.
+     * Get the column with the given name
      *
-     * @param primaryKey the primary key value
      * @param columnName the name of the column
+     * @return the column
      */
-    private void verifyEntry(Object primaryKey, String columnName) {
-        if (!columns.containsKey(columnName)) {
+    private GATKReportColumn getColumn(String columnName) {
+        GATKReportColumn column = columns.get(columnName);
+        if (column == null) {
             throw new ReviewedStingException("Attempted to access column '" + columnName + "' that does not exist in table '" + tableName + "'.");
         }
+        return column;
+    }
 
-        primaryKeyColumn.add(primaryKey);
+    /**
+     * Get the row index of a primary key, adding a row for it if it's new
+     *
+     * @param primaryKey the primary key value
+     * @return the index of the primary key's row
+     */
+    private int getRow(Object primaryKey) {
+        Integer row = rowIndices.get(primaryKey);
+        if (row == null) {
+            row = rowKeys.size();
+            rowKeys.add(primaryKey);
+            rowIndices.put(primaryKey, row);
+            rowOrder = null;
+            primaryKeys = null;
+        }
+        return row;
+    }
 
-        if (!columns.get(columnName).containsKey(primaryKey)) {
-            columns.get(columnName).initialize(primaryKey);
+    /**
+     * Get the row index of a primary key that's being set or read, adding a row for it if it's new.  In a table that
+     * isn't sorted by primary key, every use of a key lists its row once more in the output.
+     *
+     * @param primaryKey the primary key value
+     * @return the index of the primary key's row
+     */
+    private int useRow(Object primaryKey) {
+        int row = getRow(primaryKey);
+        if (!sortByPrimaryKey) {
+            if (nAccessedRows == accessedRows.length)
+                accessedRows = Arrays.copyOf(accessedRows, 2 * accessedRows.length);
+            accessedRows[nAccessedRows++] = row;
+            rowOrder = null;
+            primaryKeys = null;
         }
+        return row;
+    }
+
+    /**
+     * Check if the requested element exists, and if not, create it.
+     *
+     * @param primaryKey the primary key value
+     * @param column     the column
+     * @return the index of the primary key's row
+     */
+    private int verifyEntry(Object primaryKey, GATKReportColumn column) {
+        int row = useRow(primaryKey);
+
+        if (!column.isSet(row)) {
+            column.initialize(row);
+        }
+        return row;
+    }
+
+    /**
+     * Returns the rows of the table in the order they're written: sorted by primary key, or in the order they were
+     * set or read.  The sort is done here, once, rather than as each row is added.
+     *
+     * @return the row indices in order
+     */
+    private int[] getRowOrder() {
+        if (rowOrder == null && !sortByPrimaryKey) {
+            rowOrder = Arrays.copyOf(accessedRows, nAccessedRows);
+        } else if (rowOrder == null) {
+            Integer[] rows = new Integer[rowKeys.size()];
+            for (int i = 0; i < rows.length; i++)
+                rows[i] = i;
+
+            if (sortByPrimaryKey) {
+                Arrays.sort(rows, new Comparator<Integer>() {
+                    @SuppressWarnings("unchecked")
+                    public int compare(Integer row1, Integer row2) {
+                        return ((Comparable<Object>) rowKeys.get(row1)).compareTo(rowKeys.get(row2));
+                    }
+                });
+            }
+
+            rowOrder = new int[rows.length];
+            for (int i = 0; i < rows.length; i++)
+                rowOrder[i] = rows[i];
+        }
+        return rowOrder;
     }
 
     public boolean containsKey(Object primaryKey) {
-        return primaryKeyColumn.contains(primaryKey);
+        return rowIndices.containsKey(primaryKey);
     }
 
     public Collection<Object> getPrimaryKeys() {
-        return Collections.unmodifiableCollection(primaryKeyColumn);
+        if (primaryKeys == null) {
+            List<Object> keys = new ArrayList<Object>(getNumRows());
+            for (int row : getRowOrder())
+                keys.add(rowKeys.get(row));
+            primaryKeys = Collections.unmodifiableList(keys);
+        }
+        return primaryKeys;
     }
 
     /**
@@ -392,8 +474,18 @@ public class GATKReportTable {
      * @param value      the value to set
      */
     public void set(Object primaryKey, String columnName, Object value) {
-        verifyEntry(primaryKey, columnName);
-        GATKReportColumn column = columns.get(columnName);
+        GATKReportColumn column = getColumn(columnName);
+        set(useRow(primaryKey), column, value);
+    }
+
+    /**
+     * Set the value for a given row of a column
+     *
+     * @param row    the index of the row
+     * @param column the column
+     * @param value  the value to set
+     */
+    private void set(int row, GATKReportColumn column, Object value) {
         //todo -- Check if value is of same type as column
 
         // We do not accept internal null values
@@ -433,7 +525,7 @@ public class GATKReportTable {
 
         // todo -- Types have to be more flexible. For example, %d should accept Integers, Shorts and Bytes.
         if (column.getDataType().equals(GATKReportDataType.fromObject(value)) || column.getDataType().equals(GATKReportDataType.Unknown) )
-            columns.get(columnName).put(primaryKey, value);
+            column.put(row, value);
         else
             throw new ReviewedStingException(String.format("Tried to add an object of type: %s to a column of type: %s", GATKReportDataType.fromObject(value).name(), column.getDataType().name()));
     }
@@ -446,20 +538,39 @@ public class GATKReportTable {
      * @return the value stored at the specified position in the table
      */
     public Object get(Object primaryKey, String columnName) {
-        verifyEntry(primaryKey, columnName);
+        GATKReportColumn column = getColumn(columnName);
 
-        return columns.get(columnName).get(primaryKey);
+        return column.get(verifyEntry(primaryKey, column));
     }
 
     /**
-     * Get a value from the given position in the table
+     * Add to an element of a column of Longs in place, without boxing and unboxing it
      *
-     * @param primaryKey  the primary key value
-     * @param columnIndex the index of the column
-     * @return the value stored at the specified position in the table
+     * @param primaryKey the primary key value
+     * @param columnName the name of the column
+     * @param delta      the value to add
+     * @return false if the column doesn't hold Longs, and the element has to be updated the slow way
      */
-    private Object get(Object primaryKey, int columnIndex) {
-        return columns.getByIndex(columnIndex).get(primaryKey);
+    private boolean addLongInPlace(Object primaryKey, String columnName, long delta) {
+        if (!sortByPrimaryKey)
+            return false;                                                                                               // the slow way reads and sets the row, listing it twice
+        GATKReportColumn column = getColumn(columnName);
+        return column.addLong(verifyEntry(primaryKey, column), delta);
+    }
+
+    /**
+     * Add to an element of a column of Doubles in place, without boxing and unboxing it
+     *
+     * @param primaryKey the primary key value
+     * @param columnName the name of the column
+     * @param delta      the value to add
+     * @return false if the column doesn't hold Doubles, and the element has to be updated the slow way
+     */
+    private boolean addDoubleInPlace(Object primaryKey, String columnName, double delta) {
+        if (!sortByPrimaryKey)
+            return false;                                                                                               // the slow way reads and sets the row, listing it twice
+        GATKReportColumn column = getColumn(columnName);
+        return column.addDouble(verifyEntry(primaryKey, column), delta);
     }
 
     /**
@@ -469,6 +580,9 @@ public class GATKReportTable {
      * @param columnName the name of the column
      */
     public void increment(Object primaryKey, String columnName) {
+        if (addLongInPlace(primaryKey, columnName, 1L) || addDoubleInPlace(primaryKey, columnName, 1.0d))
+            return;
+
         Object oldValue = get(primaryKey, columnName);
         Object newValue;
 
@@ -498,6 +612,9 @@ public class GATKReportTable {
      * @param columnName the name of the column
      */
     public void decrement(Object primaryKey, String columnName) {
+        if (addLongInPlace(primaryKey, columnName, -1L) || addDoubleInPlace(primaryKey, columnName, -1.0d))
+            return;
+
         Object oldValue = get(primaryKey, columnName);
         Object newValue;
 
@@ -528,6 +645,11 @@ public class GATKReportTable {
      * @param valueToAdd the value to add
      */
     public void add(Object primaryKey, String columnName, Object valueToAdd) {
+        if (valueToAdd instanceof Long && addLongInPlace(primaryKey, columnName, (Long) valueToAdd))
+            return;
+        if (valueToAdd instanceof Double && addDoubleInPlace(primaryKey, columnName, (Double) valueToAdd))
+            return;
+
         Object oldValue = get(primaryKey, columnName);
         Object newValue;
 
@@ -558,6 +680,11 @@ public class GATKReportTable {
      * @param valueToSubtract the value to subtract
      */
     public void subtract(Object primaryKey, String columnName, Object valueToSubtract) {
+        if (valueToSubtract instanceof Long && addLongInPlace(primaryKey, columnName, -(Long) valueToSubtract))
+            return;
+        if (valueToSubtract instanceof Double && addDoubleInPlace(primaryKey, columnName, -(Double) valueToSubtract))
+            return;
+
         Object oldValue = get(primaryKey, columnName);
         Object newValue;
 
@@ -648,7 +775,7 @@ public class GATKReportTable {
      * @param addend      the column that shall be the addend
      */
     public void addColumns(String columnToSet, String augend, String addend) {
-        for (Object primaryKey : primaryKeyColumn) {
+        for (Object primaryKey : getPrimaryKeys()) {
             Number firstColumnValue = (Number) get(primaryKey, augend);
             Number secondColumnValue = (Number) get(primaryKey, addend);
 
@@ -666,7 +793,7 @@ public class GATKReportTable {
      * @param subtrahend  the column that shall be the subtrahend (the b in a - b)
      */
     public void subtractColumns(String columnToSet, String minuend, String subtrahend) {
-        for (Object primaryKey : primaryKeyColumn) {
+        for (Object primaryKey : getPrimaryKeys()) {
             Number firstColumnValue = (Number) get(primaryKey, minuend);
             Number secondColumnValue = (Number) get(primaryKey, subtrahend);
 
@@ -684,7 +811,7 @@ public class GATKReportTable {
      * @param multiplicand the column that shall be the multiplicand
      */
     public void multiplyColumns(String columnToSet, String multiplier, String multiplicand) {
-        for (Object primaryKey : primaryKeyColumn) {
+        for (Object primaryKey : getPrimaryKeys()) {
             Number firstColumnValue = (Number) get(primaryKey, multiplier);
             Number secondColumnValue = (Number) get(primaryKey, multiplicand);
 
@@ -702,7 +829,7 @@ public class GATKReportTable {
      * @param denominatorColumn the column that shall be the denominator
      */
     public void divideColumns(String columnToSet, String numeratorColumn, String denominatorColumn) {
-        for (Object primaryKey : primaryKeyColumn) {
+        for (Object primaryKey : getPrimaryKeys()) {
             Number firstColumnValue = (Number) get(primaryKey, numeratorColumn);
             Number secondColumnValue = (Number) get(primaryKey, denominatorColumn);
 
@@ -720,7 +847,7 @@ public class GATKReportTable {
     int getPrimaryKeyColumnWidth() {
         int maxWidth = getPrimaryKeyName().length();
 
-        for (Object primaryKey : primaryKeyColumn) {
+        for (Object primaryKey : rowKeys) {
             int width = primaryKey.toString().length();
 
             if (width > maxWidth) {
@@ -782,36 +909,59 @@ public class GATKReportTable {
 
         out.printf("%n");
 
-        // Emit the table body
-        for (final Object primaryKey : primaryKeyColumn) {
+        // Emit the table body, one row at a time, padding the values by hand rather than through a format string
+        final List<GATKReportColumn> displayedColumns = new ArrayList<GATKReportColumn>();
+        for (final GATKReportColumn column : columns) {
+            if (column.isDisplayable())
+                displayedColumns.add(column);
+        }
+
+        final int primaryKeyWidth = getPrimaryKeyColumnWidth();
+        final StringBuilder line = new StringBuilder();
+        for (final int row : getRowOrder()) {
+            line.setLength(0);
             needsPadding = false;
             if (primaryKeyDisplay) {
-                out.printf(primaryKeyFormat, primaryKey);
+                pad(line, String.valueOf(rowKeys.get(row)), primaryKeyWidth, GATKReportColumnFormat.Alignment.LEFT);
                 needsPadding = true;
             }
 
-            for (final Map.Entry<String, GATKReportColumn> entry : columns.entrySet()) {
-                final GATKReportColumn column = entry.getValue();
-                if (column.isDisplayable()) {
-                    if (needsPadding) {
-                        out.print("  ");
-                    }
+            for (final GATKReportColumn column : displayedColumns) {
+                if (needsPadding) {
+                    line.append("  ");
+                }
 
-                    final String value = column.getStringValue(primaryKey);
-                    out.printf(column.getColumnFormat().getValueFormat(), value);
+                final GATKReportColumnFormat columnFormat = column.getColumnFormat();
+                pad(line, column.getStringValue(row), columnFormat.getWidth(), columnFormat.getAlignment());
 
-                    needsPadding = true;
-                }
+                needsPadding = true;
             }
 
-            out.println();
+            out.println(line);
         }
 
          out.println();
     }
 
+    /**
+     * Appends a value to a line, padded with spaces to the width of its column
+     *
+     * @param line      the line being written
+     * @param value     the value
+     * @param width     the width of the column
+     * @param alignment which side of the column the value goes on
+     */
+    private static void pad(StringBuilder line, String value, int width, GATKReportColumnFormat.Alignment alignment) {
+        if (alignment == GATKReportColumnFormat.Alignment.LEFT)
+            line.append(value);
+        for (int i = value.length(); i < width; i++)
+            line.append(' ');
+        if (alignment == GATKReportColumnFormat.Alignment.RIGHT)
+            line.append(value);
+    }
+
     public int getNumRows() {
-        return primaryKeyColumn.size();
+        return sortByPrimaryKey ? rowKeys.size() : nAccessedRows;
     }
 
     public String getTableName() {
@@ -861,14 +1011,19 @@ public class GATKReportTable {
             GATKReportColumn toAdd = input.getColumns().get(columnKey);
             // We want to take the current column and add all the values from input
 
-            // The column is a map of values <Key, Value>
-            for (Object rowKey : toAdd.keySet()) {
+            // Every row of input with a value in the column
+            for (int inputRow = 0; inputRow < input.rowKeys.size(); inputRow++) {
+                if (!toAdd.isSet(inputRow))
+                    continue;
+
                 // We add every value from toAdd to the current
-                if (!current.containsKey(rowKey)) {
-                    this.set(rowKey, columnKey, toAdd.get(rowKey));
+                Object rowKey = input.rowKeys.get(inputRow);
+                int row = useRow(rowKey);
+                if (!current.isSet(row)) {
+                    this.set(row, current, toAdd.get(inputRow));
                     //System.out.printf("Putting row with PK: %s \n", rowKey);
                 } else {
-                    this.set(rowKey, columnKey, toAdd.get(rowKey));
+                    this.set(row, current, toAdd.get(inputRow));
 
                     System.out.printf("OVERWRITING Row with PK: %s \n", rowKey);
                 }
@@ -906,9 +1061,36 @@ public class GATKReportTable {
      */
     public boolean equals(GATKReportTable table) {
         return isSameFormat(table) &&
-               (columns.equals(table.columns) &&
-               primaryKeyColumn.equals(table.primaryKeyColumn) &&
+               (columnValuesEqual(table) &&
+               (sortByPrimaryKey ? rowIndices.keySet().equals(table.rowIndices.keySet()) : getPrimaryKeys().equals(table.getPrimaryKeys())) &&
                sortByPrimaryKey == table.sortByPrimaryKey);
 
     }
+
+    /**
+     * Checks that every column holds the same values for the same primary keys in both tables.  Only called once the
+     * tables are known to have the same columns.
+     *
+     * @param table another GATK table
+     * @return true if all the values are equal
+     */
+    private boolean columnValuesEqual(GATKReportTable table) {
+        for (GATKReportColumn column : columns) {
+            GATKReportColumn thatColumn = table.columns.get(column.getColumnName());
+            if (column.getNumSetRows() != thatColumn.getNumSetRows())
+                return false;
+
+            for (int row = 0; row < rowKeys.size(); row++) {
+                if (!column.isSet(row))
+                    continue;
+
+                //if the value is not equal, (use data type to get the right comparison)
+                Integer thatRow = table.rowIndices.get(rowKeys.get(row));
+                if (thatRow == null || !thatColumn.isSet(thatRow) || !column.getDataType().isEqual(column.get(row), thatColumn.get(thatRow)))
+                    return false;
+            }
+        }
+
+        return true;
+    }
 }
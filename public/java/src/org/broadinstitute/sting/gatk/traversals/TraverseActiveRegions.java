@@ -10,11 +10,14 @@ import org.broadinstitute.sting.gatk.walkers.*;
 import org.broadinstitute.sting.utils.GenomeLoc;
 import org.broadinstitute.sting.utils.GenomeLocSortedSet;
 import org.broadinstitute.sting.utils.activeregion.ActiveRegion;
+import org.broadinstitute.sting.utils.activeregion.ActiveRegionReadBuffer;
 import org.broadinstitute.sting.utils.activeregion.ActivityProfile;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.pileup.PileupElement;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Created by IntelliJ IDEA.
@@ -29,7 +32,44 @@ public class TraverseActiveRegions <M,T> extends TraversalEngine<M,T,ActiveRegio
     protected static Logger logger = Logger.getLogger(TraversalEngine.class);
 
     private final Queue<ActiveRegion> workQueue = new LinkedList<ActiveRegion>();
-    private final LinkedHashSet<GATKSAMRecord> myReads = new LinkedHashSet<GATKSAMRecord>();
+    private final ActiveRegionReadBuffer myReads = new ActiveRegionReadBuffer();
+
+    /**
+     * The most reads to leave in active regions which have been handed to the map threads but not yet reduced.  Once
+     * there are this many, the traversal waits for the earliest regions to be reduced before handing out any more.
+     */
+    protected static final int MAX_READS_IN_FLIGHT = 100000;
+
+    private ExecutorService mapThreadPool = null;
+    private int maxReadsInFlight = MAX_READS_IN_FLIGHT;
+    private final Queue<PendingMap> pendingMaps = new LinkedList<PendingMap>();
+    private int readsInFlight = 0;
+
+    /**
+     * Map active regions on a pool of threads, rather than on the traversal thread
+     * @param nThreads the number of threads on which to map active regions
+     */
+    public void mapInParallel( final int nThreads ) {
+        mapInParallel(nThreads, MAX_READS_IN_FLIGHT);
+    }
+
+    /**
+     * Map active regions on a pool of threads, with a limit other than MAX_READS_IN_FLIGHT on the reads in regions
+     * which have been handed out but not yet reduced
+     */
+    void mapInParallel( final int nThreads, final int maxReadsInFlight ) {
+        if( nThreads < 1 )
+            throw new ReviewedStingException("Active regions must be mapped on at least one thread, but was given " + nThreads);
+        this.maxReadsInFlight = maxReadsInFlight;
+        mapThreadPool = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                // map threads only ever work for the traversal, so they mustn't keep the JVM alive if it dies
+                final Thread thread = new Thread(runnable, "ActiveRegionMap");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
 
     @Override
     protected String getTraversalType() {
@@ -61,16 +101,10 @@ public class TraverseActiveRegions <M,T> extends TraversalEngine<M,T,ActiveRegio
                 final AlignmentContext locus = locusView.next();
                 GenomeLoc location = locus.getLocation();
 
-                if(prevLoc != null) {
+                if( prevLoc != null && prevLoc.getStop() + 1 < location.getStart() ) {
                     // fill in the active / inactive labels from the stop of the previous location to the start of this location
-                    // TODO refactor to separate function
-                    for(int iii = prevLoc.getStop() + 1; iii < location.getStart(); iii++ ) {
-                        final GenomeLoc fakeLoc = engine.getGenomeLocParser().createGenomeLoc(prevLoc.getContig(), iii, iii);
-                        if( initialIntervals == null || initialIntervals.overlaps( fakeLoc ) ) {
-                            final double isActiveProb = ( walker.hasPresetActiveRegions() && walker.presetActiveRegions.overlaps(fakeLoc) ? 1.0 : 0.0 );
-                            profile.add(fakeLoc, isActiveProb);
-                        }
-                    }
+                    final GenomeLoc gap = engine.getGenomeLocParser().createGenomeLoc(prevLoc.getContig(), prevLoc.getContigIndex(), prevLoc.getStop() + 1, location.getStart() - 1);
+                    addGapToProfile(walker, profile, initialIntervals, gap);
                 }
 
                 dataProvider.getShard().getReadMetrics().incrementNumIterations();
@@ -91,9 +125,7 @@ public class TraverseActiveRegions <M,T> extends TraversalEngine<M,T,ActiveRegio
                 // Grab all the previously unseen reads from this pileup and add them to the massive read list
                 for( final PileupElement p : locus.getBasePileup() ) {
                     final GATKSAMRecord read = p.getRead();
-                    if( !myReads.contains(read) ) {
-                        myReads.add(read);
-                    }
+                    myReads.add(read);
 
                     // If this is the last pileup for this shard calculate the minimum alignment start so that we know
                     // which active regions in the work queue are now safe to process
@@ -129,6 +161,50 @@ public class TraverseActiveRegions <M,T> extends TraversalEngine<M,T,ActiveRegio
     //
     // --------------------------------------------------------------------------------
 
+    /**
+     * Adds the bases of gap, which the locus view skipped over, to the profile.  Just as for the loci which were
+     * visited, only the bases within the intervals are added; the walker isn't asked about them, so they are
+     * only active if they lie within a preset active region.
+     */
+    private void addGapToProfile(final ActiveRegionWalker<M,T> walker, final ActivityProfile profile,
+                                 final GenomeLocSortedSet initialIntervals, final GenomeLoc gap) {
+        final List<GenomeLoc> parts = initialIntervals == null ? Collections.singletonList(gap) : getOverlappingParts(initialIntervals, gap);
+        for( final GenomeLoc part : parts ) {
+            if( ! walker.hasPresetActiveRegions() ) {
+                profile.add(part, 0.0);
+                continue;
+            }
+
+            int start = part.getStart();
+            for( final GenomeLoc activePart : getOverlappingParts(walker.presetActiveRegions, part) ) {
+                if( start < activePart.getStart() )
+                    profile.add(engine.getGenomeLocParser().createGenomeLoc(part.getContig(), part.getContigIndex(), start, activePart.getStart() - 1), 0.0);
+                profile.add(activePart, 1.0);
+                start = activePart.getStop() + 1;
+            }
+            if( start <= part.getStop() )
+                profile.add(engine.getGenomeLocParser().createGenomeLoc(part.getContig(), part.getContigIndex(), start, part.getStop()), 0.0);
+        }
+    }
+
+    /**
+     * @return the parts of loc covered by the intervals in set, in order and without overlaps
+     */
+    private List<GenomeLoc> getOverlappingParts( final GenomeLocSortedSet set, final GenomeLoc loc ) {
+        final List<GenomeLoc> parts = new ArrayList<GenomeLoc>();
+        for( final GenomeLoc interval : set ) {
+            if( ! interval.overlapsP(loc) )
+                continue;
+            final GenomeLoc part = interval.intersect(loc);
+            final GenomeLoc last = parts.isEmpty() ? null : parts.get(parts.size() - 1);
+            if( last != null && last.getStop() >= part.getStart() - 1 )
+                parts.set(parts.size() - 1, engine.getGenomeLocParser().createGenomeLoc(last.getContig(), last.getContigIndex(), last.getStart(), Math.max(last.getStop(), part.getStop())));
+            else
+                parts.add(part);
+        }
+        return parts;
+    }
+
     private final double walkerActiveProb(final ActiveRegionWalker<M,T> walker,
                                           final RefMetaDataTracker tracker, final ReferenceContext refContext,
                                           final AlignmentContext locus, final GenomeLoc location) {
@@ -179,12 +255,11 @@ public class TraverseActiveRegions <M,T> extends TraversalEngine<M,T,ActiveRegio
 
     private T callWalkerMapOnActiveRegions( final ActiveRegionWalker<M,T> walker, T sum, final int minStart, final String currentContig ) {
         // Since we've traversed sufficiently past this point (or this contig!) in the workQueue we can unload those regions and process them
-        // TODO can implement parallel traversal here
         while( workQueue.peek() != null ) {
             final GenomeLoc extendedLoc = workQueue.peek().getExtendedLoc();
             if ( extendedLoc.getStop() < minStart || (currentContig != null && !workQueue.peek().getExtendedLoc().getContig().equals(currentContig))) {
                 final ActiveRegion activeRegion = workQueue.remove();
-                sum = processActiveRegion( activeRegion, myReads, workQueue, sum, walker );
+                sum = processActiveRegion( activeRegion, sum, walker );
             } else {
                 break;
             }
@@ -193,15 +268,18 @@ public class TraverseActiveRegions <M,T> extends TraversalEngine<M,T,ActiveRegio
         return sum;
     }
 
-    private T processActiveRegion( final ActiveRegion activeRegion, final LinkedHashSet<GATKSAMRecord> reads, final Queue<ActiveRegion> workQueue, final T sum, final ActiveRegionWalker<M,T> walker ) {
-        final ArrayList<GATKSAMRecord> placedReads = new ArrayList<GATKSAMRecord>();
-        for( final GATKSAMRecord read : reads ) {
+    T processActiveRegion( final ActiveRegion activeRegion, final T sum, final ActiveRegionWalker<M,T> walker ) {
+        // regions come off the queue in order, and no region left in the queue or yet to be created extends back
+        // further than this one, so the buffer only needs to hold on to reads from here onwards
+        for( final GATKSAMRecord read : myReads.getReadsOverlapping( activeRegion.getExtendedLoc() ) ) {
             final GenomeLoc readLoc = this.engine.getGenomeLocParser().createGenomeLoc( read );
             if( activeRegion.getLocation().overlapsP( readLoc ) ) {
                 // The region which the highest amount of overlap is chosen as the primary region for the read (tie breaking is done as right most region)
                 long maxOverlap = activeRegion.getLocation().sizeOfOverlap( readLoc );
                 ActiveRegion bestRegion = activeRegion;
                 for( final ActiveRegion otherRegionToTest : workQueue ) {
+                    if( startsAfter( otherRegionToTest, readLoc ) )
+                        break;
                     if( otherRegionToTest.getLocation().sizeOfOverlap(readLoc) >= maxOverlap ) {
                         maxOverlap = otherRegionToTest.getLocation().sizeOfOverlap( readLoc );
                         bestRegion = otherRegionToTest;
@@ -215,23 +293,111 @@ public class TraverseActiveRegions <M,T> extends TraversalEngine<M,T,ActiveRegio
                         activeRegion.add( read );
                     }
                     for( final ActiveRegion otherRegionToTest : workQueue ) {
+                        if( startsAfter( otherRegionToTest, readLoc ) )
+                            break;
                         if( !bestRegion.equals(otherRegionToTest) && otherRegionToTest.getExtendedLoc().overlapsP( readLoc ) ) {
                             otherRegionToTest.add( read );
                         }
                     }
                 }
-                placedReads.add( read );
-            } else if( activeRegion.getExtendedLoc().overlapsP( readLoc ) && walker.wantsNonPrimaryReads() ) {
+                myReads.remove( read ); // the read has been placed into its active region
+            } else if( walker.wantsNonPrimaryReads() ) {
                 activeRegion.add( read );
             }
         }
-        reads.removeAll( placedReads ); // remove all the reads which have been placed into their active region
 
         logger.debug(">> Map call with " + activeRegion.getReads().size() + " " + (activeRegion.isActive ? "active" : "inactive") + " reads @ " + activeRegion.getLocation() + " with full extent: " + activeRegion.getReferenceLoc());
+        if( mapThreadPool != null )
+            return submitMap( activeRegion, sum, walker );
         final M x = walker.map( activeRegion, null );
         return walker.reduce( x, sum );
     }
 
+    // --------------------------------------------------------------------------------
+    //
+    // code to map active regions in parallel
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Hands the active region, which has all of its reads, to the map threads, and then reduces the results of all
+     * the earlier regions which are done.  Results are always reduced in the order in which regions were submitted.
+     */
+    private T submitMap( final ActiveRegion activeRegion, T sum, final ActiveRegionWalker<M,T> walker ) {
+        final int nReads = activeRegion.size();
+        while( ! pendingMaps.isEmpty() && readsInFlight + nReads > maxReadsInFlight )
+            sum = reduceNextMap( walker, sum );
+
+        final Future<M> result = mapThreadPool.submit( new Callable<M>() {
+            public M call() {
+                return walker.map( activeRegion, null );
+            }
+        });
+        pendingMaps.add( new PendingMap(result, nReads) );
+        readsInFlight += nReads;
+
+        while( ! pendingMaps.isEmpty() && pendingMaps.peek().result.isDone() )
+            sum = reduceNextMap( walker, sum );
+        return sum;
+    }
+
+    /**
+     * Waits for the earliest pending map to finish, and reduces its result
+     */
+    private T reduceNextMap( final ActiveRegionWalker<M,T> walker, final T sum ) {
+        final PendingMap next = pendingMaps.remove();
+        readsInFlight -= next.nReads;
+        try {
+            return walker.reduce( next.result.get(), sum );
+        } catch( InterruptedException e ) {
+            throw new ReviewedStingException("Interrupted while waiting for an active region to be mapped", e);
+        } catch( ExecutionException e ) {
+            mapThreadPool.shutdownNow();
+            // send the exception thrown by map up the stack, as it would have been if map had been called here
+            if( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException)e.getCause();
+            if( e.getCause() instanceof Error )
+                throw (Error)e.getCause();
+            throw new ReviewedStingException("Unable to map active region", e.getCause());
+        }
+    }
+
+    /**
+     * Reduces the results of all the pending maps, and shuts down the map threads
+     */
+    private T finishMaps( final ActiveRegionWalker<M,T> walker, T sum ) {
+        try {
+            while( ! pendingMaps.isEmpty() )
+                sum = reduceNextMap( walker, sum );
+        } finally {
+            mapThreadPool.shutdownNow();
+        }
+        return sum;
+    }
+
+    /**
+     * The result of mapping an active region, along with the number of reads the region held
+     */
+    private class PendingMap {
+        final Future<M> result;
+        final int nReads;
+
+        private PendingMap( final Future<M> result, final int nReads ) {
+            this.result = result;
+            this.nReads = nReads;
+        }
+    }
+
+    /**
+     * The work queue is in coordinate order, so once a region's extended loc starts after the read no later region
+     * in the queue can overlap the read either
+     */
+    private static boolean startsAfter( final ActiveRegion region, final GenomeLoc readLoc ) {
+        final GenomeLoc extendedLoc = region.getExtendedLoc();
+        return extendedLoc.getContigIndex() > readLoc.getContigIndex() ||
+                ( extendedLoc.getContigIndex() == readLoc.getContigIndex() && extendedLoc.getStart() > readLoc.getStop() );
+    }
+
     // --------------------------------------------------------------------------------
     //
     // engine interaction code
@@ -261,6 +427,9 @@ public class TraverseActiveRegions <M,T> extends TraversalEngine<M,T,ActiveRegio
      * Ugly for now but will be cleaned up when we push this functionality more into the engine
      */
     public T endTraversal( final Walker<M,T> walker, T sum) {
-        return processActiveRegions((ActiveRegionWalker<M,T>)walker, sum, Integer.MAX_VALUE, null);
+        sum = processActiveRegions((ActiveRegionWalker<M,T>)walker, sum, Integer.MAX_VALUE, null);
+        if( mapThreadPool != null )
+            sum = finishMaps((ActiveRegionWalker<M,T>)walker, sum);
+        return sum;
     }
 }
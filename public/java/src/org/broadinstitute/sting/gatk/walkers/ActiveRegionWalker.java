@@ -72,6 +72,16 @@ public abstract class ActiveRegionWalker<MapType, ReduceType> extends Walker<Map
         return false;
     }
 
+    /**
+     * Can map be run on several active regions at once?  If so, running with -nt maps active regions on that many
+     * threads, while the results are still reduced one at a time in genomic order.  Map must then be thread-safe,
+     * must leave writing output to reduce if the output is to stay in order, and must not modify the reads it's
+     * given, as non-primary reads are shared with neighbouring regions.
+     */
+    public boolean isMapThreadSafe() {
+        return false;
+    }
+
     // Determine probability of active status over the AlignmentContext
     public abstract double isActive(final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context);
 
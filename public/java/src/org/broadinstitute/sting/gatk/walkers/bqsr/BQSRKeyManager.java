@@ -1,14 +1,19 @@
 package org.broadinstitute.sting.gatk.walkers.bqsr;
 
 import org.broadinstitute.sting.utils.BitSetUtils;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.exceptions.UserException;
 
 import java.util.*;
 
 /**
- * This class provides all the functionality for the BitSet representation of the keys to the hash table of BQSR
+ * This class provides all the functionality for the long representation of the keys to the hash table of BQSR
+ *
+ * Every covariate's key is packed into its own range of bits of a single long, so keys can be built, hashed and compared
+ * without allocating anything.
  *
  * It also handles the event type "covariate" which is not exactly a covariate, but is added as a key to the hashmap. The Key Manager will
- * add the event type as a bitset to the end of the covariate bitset key. This way, it won't get int the way of masking the information
+ * add the event type to the end (most significant bits) of the covariate key. This way, it won't get int the way of masking the information
  * out of the key for the actual covariates, and having the covariates handle it. The key manager handles the event type.
  *
  * The keys represented by this key manager will always have the same order:
@@ -34,8 +39,10 @@ public class BQSRKeyManager {
     private final int nOptionalIDBits;                                                                                  // Number of bits used to represent the optional covariates IDs
     private final int totalNumberOfBits;                                                                                // Sum of all of the above plus the event bits
     
-    private final BitSet optionalCovariateMask;                                                                         // Standard mask for optional covariates bitset
-    private final BitSet optionalCovariateIDMask;                                                                       // Standard mask for optional covariates order bitset
+    private final long optionalCovariateMask;                                                                           // Standard mask for optional covariates key
+    private final long optionalCovariateIDMask;                                                                         // Standard mask for optional covariates order key
+    private final long eventTypeMask;                                                                                   // Mask for the event type key
+    private final int eventTypeBitIndex;                                                                                // Location in the key of the event type bits
     
     /**
      * Initializes the KeyManager with the total number of covariates to use
@@ -51,27 +58,43 @@ public class BQSRKeyManager {
         nRequiredBits = 0;
         for (Covariate required : requiredCovariates) {                                                                 // create a list of required covariates with the extra information for key management
             int nBits = required.numberOfBits();                                                                        // number of bits used by this covariate
-            BitSet mask = genericMask(nRequiredBits, nBits);                                                            // create a mask for this covariate
+            long mask = genericMask(nRequiredBits, nBits);                                                              // create a mask for this covariate
             this.requiredCovariates.add(new RequiredCovariateInfo(nRequiredBits, mask, required));                      // Create an object for this required covariate
             nRequiredBits += nBits;
         }
 
-        short id = 0;
         nOptionalBits = 0;
         for (Covariate optional : optionalCovariates) {
             int nBits = optional.numberOfBits();                                                                        // number of bits used by this covariate
             nOptionalBits = Math.max(nOptionalBits, nBits);                                                             // optional covariates are represented by the number of bits needed by biggest covariate
-            BitSet optionalID = BitSetUtils.bitSetFrom(id);                                                             // calculate the optional covariate ID for this covariate
-            this.optionalCovariates.add(new OptionalCovariateInfo(optionalID, optional));                               // optional covariates have standardized mask and number of bits, so no need to store in the RequiredCovariateInfo object
+        }
+
+        short id = 0;
+        for (Covariate optional : optionalCovariates) {
+            this.optionalCovariates.add(new OptionalCovariateInfo(id, optional));                                       // optional covariates have standardized mask and number of bits, so no need to store in the RequiredCovariateInfo object
             String covariateName = optional.getClass().getSimpleName().split("Covariate")[0];                           // get the name of the covariate (without the "covariate" part of it) so we can match with the GATKReport
             this.covariateNameToIDMap.put(covariateName, id);
             id++;
         }
 
         nOptionalIDBits = BitSetUtils.numberOfBitsToRepresent(optionalCovariates.size());                               // number of bits used to represent the covariate ID
-        optionalCovariateMask = genericMask(nRequiredBits, nOptionalBits);                                              // the generic mask to extract optional covariate bits from the combined bitset
-        optionalCovariateIDMask = genericMask(nRequiredBits + nOptionalBits, nOptionalIDBits);                          // the generic mask to extract optional covariate ID bits from the combined bitset
-        totalNumberOfBits = nRequiredBits + nOptionalBits + nOptionalIDBits + bitsInEventType();                        // total number of bits used in the final key
+        optionalCovariateMask = genericMask(nRequiredBits, nOptionalBits);                                              // the generic mask to extract optional covariate bits from the combined key
+        optionalCovariateIDMask = genericMask(nRequiredBits + nOptionalBits, nOptionalIDBits);                          // the generic mask to extract optional covariate ID bits from the combined key
+        eventTypeBitIndex = nRequiredBits + nOptionalBits + nOptionalIDBits;                                            // the event type goes after everything else
+        eventTypeMask = genericMask(eventTypeBitIndex, bitsInEventType());                                              // the mask to extract the event type from the combined key
+        totalNumberOfBits = eventTypeBitIndex + bitsInEventType();                                                      // total number of bits used in the final key
+
+        if (totalNumberOfBits > Long.SIZE)
+            throw new UserException(String.format("The requested covariates need %d bits per key, but BQSR keys only have %d. Try using smaller context sizes.", totalNumberOfBits, Long.SIZE));
+    }
+
+    /**
+     * The most keys that keysFromAllKeys will ever generate for a single base
+     *
+     * @return the size of the smallest key buffer that can be given to keysFromAllKeys
+     */
+    public int maximumNumberOfKeys() {
+        return Math.max(1, optionalCovariates.size());
     }
 
     /**
@@ -82,68 +105,67 @@ public class BQSRKeyManager {
      * Example allKeys:
      * RG, QUAL, CYCLE, CONTEXT
      *
-     * List of BitSets returned by this example (given eventType):
+     * List of keys generated by this example (given eventType):
      * RG, QUAL, CYCLE, EVENT
      * RG, QUAL, CONTEXT, EVENT
      *
-     * Note: If there are no optional covariates, only one bitset key will be returned with all the required covariates and the event type
+     * Note: If there are no optional covariates, only one key will be generated with all the required covariates and the event type
+     *
+     * The keys are written into a buffer provided by the caller, so that no memory is allocated per base.
      *
-     * @param allKeys      The keys in bitset representation for each covariate
+     * @param allKeys   The keys in long representation for each covariate
      * @param eventType The type of event described by this keyset (e.g. mismatches, insertions, deletions)
-     * @return one key in bitset representation per covariate
+     * @param keys      The buffer to write the keys into, with room for at least maximumNumberOfKeys() keys
+     * @return the number of keys written into the buffer
      */
-    public List<BitSet> bitSetsFromAllKeys(BitSet[] allKeys, EventType eventType) {
-        List<BitSet> allBitSets = new LinkedList<BitSet>();                                                             // Generate one key per optional covariate
-
-        BitSet eventBitSet = BitSetUtils.bitSetFrom(eventType.index);                                                   // create a bitset with the event type
-        int eventTypeBitIndex = nRequiredBits + nOptionalBits + nOptionalIDBits;                                        // Location in the bit set to add the event type bits
+    public int keysFromAllKeys(final long[] allKeys, final EventType eventType, final long[] keys) {
+        final long eventKey = keyFromEvent(eventType);                                                                  // the event type in its place in the key
 
         int covariateIndex = 0;
-        BitSet requiredKey = new BitSet(nRequiredBits);                                                                 // This will be a bitset holding all the required keys, to replicate later on
-        for (RequiredCovariateInfo infoRequired : requiredCovariates)
-            addBitSetToKeyAtLocation(requiredKey, allKeys[covariateIndex++], infoRequired.bitsBefore);                  // Add all the required covariates to the key set
+        long requiredKey = 0L;                                                                                          // This will be a key holding all the required keys, to replicate later on
+        for (RequiredCovariateInfo infoRequired : requiredCovariates) {
+            final long covariateKey = allKeys[covariateIndex++];
+            if (covariateKey == Covariate.NO_KEY)
+                throw new ReviewedStingException("Required covariate " + infoRequired.covariate.getClass().getSimpleName() + " has no value");
+            requiredKey |= covariateKey << infoRequired.bitsBefore;                                                     // Add all the required covariates to the key
+        }
 
+        int nKeys = 0;
         for (OptionalCovariateInfo infoOptional : optionalCovariates) {
-            BitSet covariateKey = allKeys[covariateIndex++];                                                            // get the bitset from all keys
-            if (covariateKey == null)
-                continue;                                                                                               // do not add nulls to the final set of keys.
-
-            BitSet optionalKey = new BitSet(totalNumberOfBits);                                                         // create a new key for this optional covariate
-            optionalKey.or(requiredKey);                                                                                // import all the required covariates
-            addBitSetToKeyAtLocation(optionalKey, covariateKey, nRequiredBits);                                         // add the optional covariate right after the required covariates
-            addBitSetToKeyAtLocation(optionalKey, infoOptional.covariateID, nRequiredBits + nOptionalBits);             // add the optional covariate ID right after the optional covarite
-            addBitSetToKeyAtLocation(optionalKey, eventBitSet, eventTypeBitIndex);                                      // Add the event type
-            allBitSets.add(optionalKey);                                                                                // add this key to the list of keys
+            final long covariateKey = allKeys[covariateIndex++];                                                        // get the key from all keys
+            if (covariateKey == Covariate.NO_KEY)
+                continue;                                                                                               // do not add missing values to the final set of keys.
+
+            keys[nKeys++] = requiredKey |                                                                               // import all the required covariates
+                    (covariateKey << nRequiredBits) |                                                                   // add the optional covariate right after the required covariates
+                    infoOptional.covariateID |                                                                          // add the optional covariate ID right after the optional covarite
+                    eventKey;                                                                                           // Add the event type
         }
 
-        if (optionalCovariates.size() == 0) {                                                                           // special case when we have no optional covariates, add the event type to the required key (our only key)
-            addBitSetToKeyAtLocation(requiredKey, eventBitSet, eventTypeBitIndex);                                      // Add the event type
-            allBitSets.add(requiredKey);                                                                                // add this key to the list of keys
-        }
+        if (optionalCovariates.size() == 0)                                                                             // special case when we have no optional covariates, add the event type to the required key (our only key)
+            keys[nKeys++] = requiredKey | eventKey;
 
-        return allBitSets;
+        return nKeys;
     }
 
     /**
-     * Generates one bitset key for the covariates represented in Object[] key
+     * Generates one key for the covariates represented in Object[] key
      *
      * The covariates will have the actual objects produced by the covariates (probably read from the recalibration data file)
-     * and will contain all required covariates and one (or none) optional covariates. Therefore, the product is one bitset key, not many.
+     * and will contain all required covariates and one (or none) optional covariates. Therefore, the product is one key, not many.
      *
      * Example key:
      * RG, QUAL, CYCLE, CYCLE_ID, EventType
      *
      * @param key list of objects produced by the required covariates followed by one or zero optional covariates.
-     * @return a bitset key representing these objects. Bitset encryption is done using the covariate's interface.
+     * @return a key representing these objects. Key encoding is done using the covariate's interface.
      */
-    public BitSet bitSetFromKey(Object[] key) {
-        BitSet bitSetKey = new BitSet(totalNumberOfBits);
+    public long longFromKey(Object[] key) {
+        long longKey = 0L;
         
         int requiredCovariate = 0;
-        for (RequiredCovariateInfo infoRequired : requiredCovariates) {             
-            BitSet covariateBitSet = infoRequired.covariate.bitSetFromKey(key[requiredCovariate++]);                    // create a bitset from the object key provided using the required covariate's interface
-            addBitSetToKeyAtLocation(bitSetKey, covariateBitSet, infoRequired.bitsBefore);                              // add it to the bitset key
-        }
+        for (RequiredCovariateInfo infoRequired : requiredCovariates)
+            longKey |= infoRequired.covariate.longFromKey(key[requiredCovariate++]) << infoRequired.bitsBefore;        // create a key from the object key provided using the required covariate's interface
         
         if (optionalCovariates.size() > 0) {
             int optionalCovariate = requiredCovariates.size();                                                          // the optional covariate index in the key array
@@ -151,17 +173,14 @@ public class BQSRKeyManager {
             int covariateID = parseCovariateID(key[covariateIDIndex]);                                                  // when reading the GATK Report the ID may come in a String instead of an index
             OptionalCovariateInfo infoOptional = optionalCovariates.get(covariateID);                                   // so we can get the optional covariate information
             
-            BitSet covariateBitSet = infoOptional.covariate.bitSetFromKey(key[optionalCovariate]);                      // convert the optional covariate key into a bitset using the covariate's interface
-            addBitSetToKeyAtLocation(bitSetKey, covariateBitSet, nRequiredBits);                                        // add the optional covariate right after the required covariates
-            addBitSetToKeyAtLocation(bitSetKey, infoOptional.covariateID, nRequiredBits + nOptionalBits);               // add the optional covariate ID right after the optional covarite
+            longKey |= infoOptional.covariate.longFromKey(key[optionalCovariate]) << nRequiredBits;                     // add the optional covariate right after the required covariates
+            longKey |= infoOptional.covariateID;                                                                        // add the optional covariate ID right after the optional covarite
         }
         
         int eventIndex = key.length - 1;                                                                                // the event type is always the last key
-        int eventTypeBitIndex = nRequiredBits + nOptionalBits + nOptionalIDBits;                                        // location in the bit set to add the event type bits
-        BitSet eventBitSet = bitSetFromEvent((EventType) key[eventIndex]);                                              // get the bit set representation of the event type
-        addBitSetToKeyAtLocation(bitSetKey, eventBitSet, eventTypeBitIndex);                                            // add the event type
+        longKey |= keyFromEvent((EventType) key[eventIndex]);                                                           // add the event type
 
-        return bitSetKey;
+        return longKey;
     }
 
     /**
@@ -176,29 +195,28 @@ public class BQSRKeyManager {
     }
 
     /**
-     * Generates a key set of objects from a combined bitset key.
+     * Generates a key set of objects from a combined key.
      *
      * Masks out each covariate independently and decodes their values (Object) into a keyset
      *
-     * @param key the bitset representation of the keys
+     * @param key the long representation of the keys
      * @return an object array with the values for each key
      */
-    public List<Object> keySetFrom(BitSet key) {
+    public List<Object> keySetFrom(long key) {
         List<Object> objectKeys = new ArrayList<Object>();
         for (RequiredCovariateInfo info : requiredCovariates) {
-            BitSet covariateBitSet = extractBitSetFromKey(key, info.mask, info.bitsBefore);                             // get the covariate's bitset
-            objectKeys.add(info.covariate.keyFromBitSet(covariateBitSet));                                              // convert the bitset to object using covariate's interface
+            long covariateKey = extractKeyFromKey(key, info.mask, info.bitsBefore);                                     // get the covariate's key
+            objectKeys.add(info.covariate.formatKey(covariateKey));                                                     // convert the key to object using covariate's interface
         }
 
         if (optionalCovariates.size() > 0) {
-            BitSet covBitSet = extractBitSetFromKey(key, optionalCovariateMask, nRequiredBits);                         // mask out the covariate bit set
-            BitSet idbs = extractBitSetFromKey(key, optionalCovariateIDMask, nRequiredBits + nOptionalBits);            // mask out the covariate order (to identify which covariate this is)
-            short id = BitSetUtils.shortFrom(idbs);                                                                     // covert the id bitset into a short
+            long covariateKey = extractKeyFromKey(key, optionalCovariateMask, nRequiredBits);                           // mask out the covariate key
+            int id = (int) extractKeyFromKey(key, optionalCovariateIDMask, nRequiredBits + nOptionalBits);              // mask out the covariate order (to identify which covariate this is)
             Covariate covariate = optionalCovariates.get(id).covariate;                                                 // get the corresponding optional covariate object
-            objectKeys.add(covariate.keyFromBitSet(covBitSet));                                                         // add the optional covariate to the key set
+            objectKeys.add(covariate.formatKey(covariateKey));                                                          // add the optional covariate to the key set
             objectKeys.add(covariate.getClass().getSimpleName().split("Covariate")[0]);                                 // add the covariate name using the id
         }
-        objectKeys.add(eventFromBitSet(key));                                                                           // add the event type object to the key set
+        objectKeys.add(eventFromKey(key));                                                                              // add the event type object to the key set
 
         return objectKeys;
     }
@@ -218,64 +236,37 @@ public class BQSRKeyManager {
     }
 
     /**
-     * Translates a masked bitset into a bitset starting at 0
-     *
-     * @param key the masked out bitset
-     * @param n   the number of bits to chop
-     * @return a translated bitset starting at 0 for the covariate machinery to decode
-     */
-    private BitSet chopNBitsFrom(BitSet key, int n) {
-        BitSet choppedKey = new BitSet();
-        for (int i = key.nextSetBit(0); i >= 0; i = key.nextSetBit(i + 1))
-            choppedKey.set(i - n);                                                                                      // Set every bit translocated to the beginning of the BitSet
-        return choppedKey;
-    }
-
-    /**
-     * Creates a mask for the requested covariate to extract the relevant bitset from a combined bitset key
+     * Creates a mask for the requested covariate to extract the relevant bits from a combined key
      *
      * @param leadingBits the index of the covariate in the ordered covariate list
-     * @param nBits the number of bits needed by the Covariate to represent its values in BitSet form
-     * @return the bitset relevant to the covariate
+     * @param nBits the number of bits needed by the Covariate to represent its values in long form
+     * @return the mask relevant to the covariate
      */
-    
-    private BitSet genericMask(int leadingBits, int nBits) {
-        BitSet mask = new BitSet(leadingBits + nBits);
-        mask.set(leadingBits, leadingBits + nBits);
-        return mask;
+    private long genericMask(int leadingBits, int nBits) {
+        final long mask = (nBits >= Long.SIZE) ? -1L : (1L << nBits) - 1;
+        return mask << leadingBits;
     }
 
     /**
-     * Decodes the event type (enum) from the full bitset key
+     * Decodes the event type (enum) from the full key
      *
      * @param fullKey the full key of all covariates + event type
      * @return the decoded event type.
      */
-    private EventType eventFromBitSet(BitSet fullKey) {
-        BitSet eventKey = new BitSet();
-        int firstBitIndex = nRequiredBits + nOptionalBits + nOptionalIDBits;
-        for (int i = fullKey.nextSetBit(firstBitIndex); i >= 0; i = fullKey.nextSetBit(i + 1))
-            eventKey.set(i - firstBitIndex);
-        return EventType.eventFrom(BitSetUtils.shortFrom(eventKey));
+    private EventType eventFromKey(long fullKey) {
+        return EventType.eventFrom((int) extractKeyFromKey(fullKey, eventTypeMask, eventTypeBitIndex));
     }
     
-    private BitSet bitSetFromEvent(EventType eventType) {
-        return BitSetUtils.bitSetFrom(eventType.index);
+    private long keyFromEvent(EventType eventType) {
+        return ((long) eventType.index) << eventTypeBitIndex;
     }
 
     private int bitsInEventType() {
         return BitSetUtils.numberOfBitsToRepresent(EventType.values().length);
     }
 
-    private void addBitSetToKeyAtLocation(BitSet key, BitSet bitSet, int location) {
-        for (int j = bitSet.nextSetBit(0); j >= 0; j = bitSet.nextSetBit(j + 1))
-            key.set(j + location);                                                                                      // translate the bits set in the key to their corresponding position in the full key
-    }
-    
-    private BitSet extractBitSetFromKey (BitSet key, BitSet mask, int leadingBits) {
-        BitSet bitSet = (BitSet) key.clone();                                  
-        bitSet.and(mask);
-        return chopNBitsFrom(bitSet, leadingBits);
+    private long extractKeyFromKey(long key, long mask, int leadingBits) {
+        return (key & mask) >>> leadingBits;
     }
 
     @Override
@@ -317,11 +308,11 @@ public class BQSRKeyManager {
      * Aggregate information for each Covariate
      */
     class RequiredCovariateInfo {
-        public final int bitsBefore;                                                                                    // number of bits before this covariate in the combined bitset key
-        public final BitSet mask;                                                                                       // the mask to pull out this covariate from the combined bitset key ( a mask made from bitsBefore and nBits )
+        public final int bitsBefore;                                                                                    // number of bits before this covariate in the combined key
+        public final long mask;                                                                                         // the mask to pull out this covariate from the combined key ( a mask made from bitsBefore and nBits )
         public final Covariate covariate;                                                                               // this allows reverse lookup of the Covariates in order
 
-        RequiredCovariateInfo(int bitsBefore, BitSet mask, Covariate covariate) {
+        RequiredCovariateInfo(int bitsBefore, long mask, Covariate covariate) {
             this.bitsBefore = bitsBefore;
             this.mask = mask;
             this.covariate = covariate;
@@ -329,11 +320,11 @@ public class BQSRKeyManager {
     }
 
     class OptionalCovariateInfo {
-        public final BitSet covariateID;                                                                                // cache the covariate ID
+        public final long covariateID;                                                                                  // cache the covariate ID, already in its place in the combined key
         public final Covariate covariate;
 
-        OptionalCovariateInfo(BitSet covariateID, Covariate covariate) {
-            this.covariateID = covariateID;
+        OptionalCovariateInfo(short covariateID, Covariate covariate) {
+            this.covariateID = ((long) covariateID) << (nRequiredBits + nOptionalBits);
             this.covariate = covariate;
         }
     }
@@ -29,11 +29,10 @@ import org.broadinstitute.sting.utils.BaseUtils;
 import org.broadinstitute.sting.utils.BitSetUtils;
 import org.broadinstitute.sting.utils.clipping.ClippingRepresentation;
 import org.broadinstitute.sting.utils.clipping.ReadClipper;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 
-import java.util.Arrays;
-import java.util.BitSet;
 
 /**
  * Created by IntelliJ IDEA.
@@ -66,9 +65,9 @@ public class ContextCovariate implements StandardCovariate {
     @Override
     public CovariateValues getValues(GATKSAMRecord read) {
         int l = read.getReadLength();
-        BitSet[] mismatches = new BitSet[l];
-        BitSet[] insertions = new BitSet[l];
-        BitSet[] deletions = new BitSet[l];
+        long[] mismatches = new long[l];
+        long[] insertions = new long[l];
+        long[] deletions = new long[l];
 
         read = ReadClipper.clipLowQualEnds(read, LOW_QUAL_TAIL, ClippingRepresentation.WRITE_NS);   // Write N's over the low quality tail of the reads to avoid adding them into the context
         
@@ -98,21 +97,25 @@ public class ContextCovariate implements StandardCovariate {
     }
 
     @Override
-    public String keyFromBitSet(BitSet key) {
-        if (key == null)    // this can only happen in test routines because we do not propagate null keys to the csv file
+    public String formatKey(long key) {
+        if (key == NO_KEY)  // this can only happen in test routines because we do not propagate missing keys to the csv file
             return null;
 
         return BitSetUtils.dnaFrom(key);
     }
 
     @Override
-    public BitSet bitSetFromKey(Object key) {
-        return BitSetUtils.bitSetFrom((String) key);
+    public long longFromKey(Object key) {
+        return BitSetUtils.longFrom((String) key);
     }
 
     @Override
     public int numberOfBits() {
-        return Long.bitCount(-1L);
+        final int maxContextSize = Math.max(mismatchesContextSize, Math.max(insertionsContextSize, deletionsContextSize));
+        if (maxContextSize <= 0)
+            throw new ReviewedStingException("The context covariate must be initialized before its keys can be sized");
+
+        return BitSetUtils.numberOfBitsToRepresent(BitSetUtils.combinationsFor(maxContextSize));    // contexts of a given length are numbered after all shorter contexts
     }
 
     /**
@@ -121,16 +124,18 @@ public class ContextCovariate implements StandardCovariate {
      * @param bases       the bases in the read to build the context from
      * @param offset      the position in the read to calculate the context for
      * @param contextSize context size to use building the context
-     * @return the bitSet representing the Context
+     * @return the long representing the Context, or NO_KEY if the context runs off the read or contains an N
      */
-    private BitSet contextWith(byte[] bases, int offset, int contextSize) {
-        BitSet result = null;
-        if (offset - contextSize + 1 >= 0) {
-            String context = new String(Arrays.copyOfRange(bases, offset - contextSize + 1, offset + 1));
-            if (!context.contains("N"))
-                result = BitSetUtils.bitSetFrom(context);
-        }
-        return result;
+    private long contextWith(byte[] bases, int offset, int contextSize) {
+        final int start = offset - contextSize + 1;
+        if (start < 0)
+            return NO_KEY;
+
+        for (int i = start; i <= offset; i++)
+            if (bases[i] == 'N')
+                return NO_KEY;
+
+        return BitSetUtils.longFrom(bases, start, contextSize);
     }
 
     /**
@@ -138,10 +143,10 @@ public class ContextCovariate implements StandardCovariate {
      *
      * @param array any array
      */
-    private static void reverse(final Object[] array) {
+    private static void reverse(final long[] array) {
         final int arrayLength = array.length;
         for (int l = 0, r = arrayLength - 1; l < r; l++, r--) {
-            final Object temp = array[l];
+            final long temp = array[l];
             array[l] = array[r];
             array[r] = temp;
         }
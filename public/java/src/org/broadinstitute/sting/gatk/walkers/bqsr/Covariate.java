@@ -2,8 +2,6 @@ package org.broadinstitute.sting.gatk.walkers.bqsr;
 
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 
-import java.util.BitSet;
-
 /*
  * Copyright (c) 2009 The Broad Institute
  *
@@ -40,6 +38,12 @@ import java.util.BitSet;
  */
 
 public interface Covariate {
+    /**
+     * The key given to bases for which the covariate has no value (e.g. a context overlapping an N).
+     * All other keys must be non-negative and fit in numberOfBits() bits.
+     */
+    public static final long NO_KEY = -1L;
+
     /**
      * Initialize any member variables using the command-line arguments passed to the walker
      *
@@ -64,26 +68,26 @@ public interface Covariate {
     public Object getValue(String str);
 
     /**
-     * Converts the bitset representation of the key (used internally for table indexing) to String format for file output.
+     * Converts the long representation of the key (used internally for table indexing) to String format for file output.
      *
-     * @param key the bitset representation of the key
-     * @return a string representation of the key
+     * @param key the long representation of the key
+     * @return a string representation of the key, or null if the key is NO_KEY
      */
-    public String keyFromBitSet(BitSet key);
+    public String formatKey(long key);
 
     /**
-     * Converts a key into a bitset
+     * Converts a key into its long representation
      *
-     * Only necessary for on-the-fly recalibration when you have the object, but need to store it in memory in bitset format. For counting covariates
-     * the getValues method already returns all values in BitSet format.
+     * Only necessary for on-the-fly recalibration when you have the object, but need to store it in memory in long format. For counting covariates
+     * the getValues method already returns all values in long format.
      *
      * @param key the object corresponding to the covariate
-     * @return a bitset representation of the object
+     * @return a long representation of the object
      */
-    public BitSet bitSetFromKey(Object key);
+    public long longFromKey(Object key);
 
     /**
-     * Each covariate should determine how many bits are necessary to encode it's data
+     * Each covariate should determine how many bits are necessary to encode it's data. Called after initialize().
      *
      * @return The number of bits used to represent the values of this covariate.
      */
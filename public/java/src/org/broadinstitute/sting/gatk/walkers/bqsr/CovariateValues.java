@@ -1,7 +1,5 @@
 package org.broadinstitute.sting.gatk.walkers.bqsr;
 
-import java.util.BitSet;
-
 /**
  * An object to hold the different covariate values for all bases in the read.
  *
@@ -14,25 +12,25 @@ import java.util.BitSet;
  * @since 2/8/12
  */
 public class CovariateValues {
-    private final BitSet[] mismatches;
-    private final BitSet[] insertions;
-    private final BitSet[] deletions;
+    private final long[] mismatches;
+    private final long[] insertions;
+    private final long[] deletions;
 
-    public CovariateValues(BitSet[] mismatch, BitSet[] insertion, BitSet[] deletion) {
+    public CovariateValues(long[] mismatch, long[] insertion, long[] deletion) {
         this.mismatches = mismatch;
         this.insertions = insertion;
         this.deletions = deletion;
     }
 
-    public BitSet[] getMismatches() {
+    public long[] getMismatches() {
         return mismatches;
     }
 
-    public BitSet[] getInsertions() {
+    public long[] getInsertions() {
         return insertions;
     }
 
-    public BitSet[] getDeletions() {
+    public long[] getDeletions() {
         return deletions;
     }
 
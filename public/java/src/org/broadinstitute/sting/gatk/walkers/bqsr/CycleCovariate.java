@@ -6,7 +6,7 @@ import org.broadinstitute.sting.utils.NGSPlatform;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 
-import java.util.BitSet;
+import java.util.Arrays;
 import java.util.EnumSet;
 
 /*
@@ -61,7 +61,8 @@ public class CycleCovariate implements StandardCovariate {
     // Used to pick out the covariate's value from attributes of the read
     @Override
     public CovariateValues getValues(final GATKSAMRecord read) {
-        BitSet[] cycles = new BitSet[read.getReadLength()];
+        long[] cycles = new long[read.getReadLength()];
+        Arrays.fill(cycles, NO_KEY);
         final NGSPlatform ngsPlatform = read.getNGSPlatform();
 
         // Discrete cycle platforms
@@ -81,7 +82,7 @@ public class CycleCovariate implements StandardCovariate {
             final int CUSHION = 4;
             final int MAX_CYCLE = read.getReadLength() - CUSHION - 1;
             for (int i = 0; i < MAX_CYCLE; i++) {
-                cycles[i] = (i<CUSHION || i>MAX_CYCLE) ? null : BitSetUtils.bitSetFrom(cycle);
+                cycles[i] = (i<CUSHION || i>MAX_CYCLE) ? NO_KEY : keyFromCycle(cycle);
                 cycle += increment;
             }
         }
@@ -108,19 +109,19 @@ public class CycleCovariate implements StandardCovariate {
                 int iii = 0;
                 while (iii < readLength) {
                     while (iii < readLength && bases[iii] == (byte) 'T') {
-                        cycles[iii] = BitSetUtils.bitSetFrom(cycle);
+                        cycles[iii] = keyFromCycle(cycle);
                         iii++;
                     }
                     while (iii < readLength && bases[iii] == (byte) 'A') {
-                        cycles[iii] = BitSetUtils.bitSetFrom(cycle);
+                        cycles[iii] = keyFromCycle(cycle);
                         iii++;
                     }
                     while (iii < readLength && bases[iii] == (byte) 'C') {
-                        cycles[iii] = BitSetUtils.bitSetFrom(cycle);
+                        cycles[iii] = keyFromCycle(cycle);
                         iii++;
                     }
                     while (iii < readLength && bases[iii] == (byte) 'G') {
-                        cycles[iii] = BitSetUtils.bitSetFrom(cycle);
+                        cycles[iii] = keyFromCycle(cycle);
                         iii++;
                     }
                     if (iii < readLength) {
@@ -130,7 +131,7 @@ public class CycleCovariate implements StandardCovariate {
                             cycle++;
                     }
                     if (iii < readLength && !BaseUtils.isRegularBase(bases[iii])) {
-                        cycles[iii] = BitSetUtils.bitSetFrom(cycle);
+                        cycles[iii] = keyFromCycle(cycle);
                         iii++;
                     }
 
@@ -140,19 +141,19 @@ public class CycleCovariate implements StandardCovariate {
                 int iii = readLength - 1;
                 while (iii >= 0) {
                     while (iii >= 0 && bases[iii] == (byte) 'T') {
-                        cycles[iii] = BitSetUtils.bitSetFrom(cycle);
+                        cycles[iii] = keyFromCycle(cycle);
                         iii--;
                     }
                     while (iii >= 0 && bases[iii] == (byte) 'A') {
-                        cycles[iii] = BitSetUtils.bitSetFrom(cycle);
+                        cycles[iii] = keyFromCycle(cycle);
                         iii--;
                     }
                     while (iii >= 0 && bases[iii] == (byte) 'C') {
-                        cycles[iii] = BitSetUtils.bitSetFrom(cycle);
+                        cycles[iii] = keyFromCycle(cycle);
                         iii--;
                     }
                     while (iii >= 0 && bases[iii] == (byte) 'G') {
-                        cycles[iii] = BitSetUtils.bitSetFrom(cycle);
+                        cycles[iii] = keyFromCycle(cycle);
                         iii--;
                     }
                     if (iii >= 0) {
@@ -162,7 +163,7 @@ public class CycleCovariate implements StandardCovariate {
                             cycle++;
                     }
                     if (iii >= 0 && !BaseUtils.isRegularBase(bases[iii])) {
-                        cycles[iii] = BitSetUtils.bitSetFrom(cycle);
+                        cycles[iii] = keyFromCycle(cycle);
                         iii--;
                     }
                 }
@@ -184,17 +185,27 @@ public class CycleCovariate implements StandardCovariate {
     }
 
     @Override
-    public String keyFromBitSet(BitSet key) {
-        return String.format("%d", BitSetUtils.shortFrom(key));
+    public String formatKey(long key) {
+        return String.format("%d", (short) key);
     }
 
     @Override
-    public BitSet bitSetFromKey(Object key) {
-        return (key instanceof String) ? BitSetUtils.bitSetFrom(Short.parseShort((String) key)) : BitSetUtils.bitSetFrom((Short) key);
+    public long longFromKey(Object key) {
+        return keyFromCycle((key instanceof String) ? Short.parseShort((String) key) : (Short) key);
     }
 
     @Override
     public int numberOfBits() {
         return BitSetUtils.numberOfBitsToRepresent(2 * Short.MAX_VALUE); // positive and negative
     }
+
+    /**
+     * Cycles can be negative, so the key is the two's complement representation of the cycle as an unsigned short
+     *
+     * @param cycle the cycle
+     * @return a non-negative key for the cycle
+     */
+    private static long keyFromCycle(final short cycle) {
+        return cycle & 0xFFFF;
+    }
 }
\ No newline at end of file
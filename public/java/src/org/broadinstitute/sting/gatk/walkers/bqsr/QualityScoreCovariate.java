@@ -4,8 +4,6 @@ import org.broadinstitute.sting.utils.BitSetUtils;
 import org.broadinstitute.sting.utils.QualityUtils;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 
-import java.util.BitSet;
-
 /*
  * Copyright (c) 2009 The Broad Institute
  *
@@ -50,18 +48,18 @@ public class QualityScoreCovariate implements RequiredCovariate {
     public CovariateValues getValues(final GATKSAMRecord read) {
         int readLength = read.getReadLength();
 
-        BitSet[] mismatches = new BitSet[readLength];
-        BitSet[] insertions = new BitSet[readLength];
-        BitSet[] deletions = new BitSet[readLength];
+        long[] mismatches = new long[readLength];
+        long[] insertions = new long[readLength];
+        long[] deletions = new long[readLength];
 
         byte[] baseQualities = read.getBaseQualities();
         byte[] baseInsertionQualities = read.getBaseInsertionQualities();
         byte[] baseDeletionQualities = read.getBaseDeletionQualities();
 
         for (int i = 0; i < baseQualities.length; i++) {
-            mismatches[i] = BitSetUtils.bitSetFrom(baseQualities[i]);
-            insertions[i] = BitSetUtils.bitSetFrom(baseInsertionQualities[i]);
-            deletions[i] = BitSetUtils.bitSetFrom(baseDeletionQualities[i]);
+            mismatches[i] = baseQualities[i];
+            insertions[i] = baseInsertionQualities[i];
+            deletions[i] = baseDeletionQualities[i];
         }
 
         return new CovariateValues(mismatches, insertions, deletions);
@@ -74,13 +72,13 @@ public class QualityScoreCovariate implements RequiredCovariate {
     }
 
     @Override
-    public String keyFromBitSet(BitSet key) {
-        return String.format("%d", BitSetUtils.longFrom(key));
+    public String formatKey(long key) {
+        return String.format("%d", key);
     }
 
     @Override
-    public BitSet bitSetFromKey(Object key) {        
-        return (key instanceof String) ? BitSetUtils.bitSetFrom(Byte.parseByte((String) key)) : BitSetUtils.bitSetFrom((Byte) key);
+    public long longFromKey(Object key) {
+        return (key instanceof String) ? Byte.parseByte((String) key) : (Byte) key;
     }
 
     @Override
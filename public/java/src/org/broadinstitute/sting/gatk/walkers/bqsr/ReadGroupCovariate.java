@@ -5,7 +5,6 @@ import org.broadinstitute.sting.utils.sam.GATKSAMReadGroupRecord;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.HashMap;
 
 /*
@@ -56,8 +55,8 @@ public class ReadGroupCovariate implements RequiredCovariate {
     public CovariateValues getValues(final GATKSAMRecord read) {
         final int l = read.getReadLength();
         final String readGroupId = readGroupValueFromRG(read.getReadGroup());
-        BitSet rg = bitSetForReadGroup(readGroupId);                            // All objects must output a BitSet, so we convert the "compressed" representation of the Read Group into a bitset
-        BitSet[] readGroups = new BitSet[l];
+        long rg = keyForReadGroup(readGroupId);                                 // All objects must output a long, so we convert the "compressed" representation of the Read Group into a long
+        long[] readGroups = new long[l];
         Arrays.fill(readGroups, rg);
         return new CovariateValues(readGroups, readGroups, readGroups);
     }
@@ -68,13 +67,13 @@ public class ReadGroupCovariate implements RequiredCovariate {
     }
 
     @Override
-    public String keyFromBitSet(BitSet key) {
-        return decodeReadGroup((short) BitSetUtils.longFrom(key));
+    public String formatKey(long key) {
+        return decodeReadGroup((short) key);
     }
 
     @Override
-    public BitSet bitSetFromKey(Object key) {
-        return bitSetForReadGroup((String) key);
+    public long longFromKey(Object key) {
+        return keyForReadGroup((String) key);
     }
 
     @Override
@@ -86,7 +85,7 @@ public class ReadGroupCovariate implements RequiredCovariate {
         return readGroupReverseLookupTable.get(id);
     }
 
-    private BitSet bitSetForReadGroup(String readGroupId) {
+    private long keyForReadGroup(String readGroupId) {
         short shortId;
         if (readGroupLookupTable.containsKey(readGroupId))
             shortId = readGroupLookupTable.get(readGroupId);
@@ -96,7 +95,7 @@ public class ReadGroupCovariate implements RequiredCovariate {
             readGroupReverseLookupTable.put(nextId, readGroupId);
             nextId++;
         }        
-        return BitSetUtils.bitSetFrom(shortId);
+        return shortId & 0xFFFF;                                                // don't let an id past Short.MAX_VALUE sign-extend into the other covariates' bits
     }
 
     /**
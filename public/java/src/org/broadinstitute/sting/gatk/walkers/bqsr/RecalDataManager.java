@@ -32,6 +32,7 @@ import org.broadinstitute.sting.utils.BaseUtils;
 import org.broadinstitute.sting.utils.R.RScriptExecutor;
 import org.broadinstitute.sting.utils.Utils;
 import org.broadinstitute.sting.utils.classloader.PluginManager;
+import org.broadinstitute.sting.utils.collections.LongHashMap;
 import org.broadinstitute.sting.utils.collections.Pair;
 import org.broadinstitute.sting.utils.exceptions.DynamicClassResolutionException;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
@@ -149,17 +150,17 @@ public class RecalDataManager {
      * @param optionalCovariates list of optional covariates (in order)
      * @return a map with each key manager and it's corresponding recalibration table properly initialized
      */
-    public static LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> initializeTables(ArrayList<Covariate> requiredCovariates, ArrayList<Covariate> optionalCovariates) {
-        final LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> tablesAndKeysMap = new LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>>();
+    public static LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> initializeTables(ArrayList<Covariate> requiredCovariates, ArrayList<Covariate> optionalCovariates) {
+        final LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> tablesAndKeysMap = new LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>>();
         ArrayList<Covariate> requiredCovariatesToAdd = new ArrayList<Covariate>(requiredCovariates.size() + 1);         // incrementally add the covariates to create the recal tables with 1, 2 and 3 covariates.
         ArrayList<Covariate> optionalCovariatesToAdd = new ArrayList<Covariate>();                                      // initialize an empty array of optional covariates to create the first few tables
         for (Covariate covariate : requiredCovariates) {
             requiredCovariatesToAdd.add(covariate);
-            final Map<BitSet, RecalDatum> recalTable = new HashMap<BitSet, RecalDatum>();                               // initializing a new recal table for each required covariate (cumulatively)
+            final LongHashMap<RecalDatum> recalTable = new LongHashMap<RecalDatum>();                                   // initializing a new recal table for each required covariate (cumulatively)
             final BQSRKeyManager keyManager = new BQSRKeyManager(requiredCovariatesToAdd, optionalCovariatesToAdd);     // initializing it's corresponding key manager
             tablesAndKeysMap.put(keyManager, recalTable);                                                               // adding the pair table+key to the map
         }
-        final Map<BitSet, RecalDatum> recalTable = new HashMap<BitSet, RecalDatum>(Short.MAX_VALUE);                    // initializing a new recal table to hold all optional covariates
+        final LongHashMap<RecalDatum> recalTable = new LongHashMap<RecalDatum>(Short.MAX_VALUE);                        // initializing a new recal table to hold all optional covariates
         final BQSRKeyManager keyManager = new BQSRKeyManager(requiredCovariates, optionalCovariates);                   // initializing it's corresponding key manager
         tablesAndKeysMap.put(keyManager, recalTable);                                                                   // adding the pair table+key to the map
         return tablesAndKeysMap;
@@ -223,7 +224,7 @@ public class RecalDataManager {
         logger.info("");
     }
 
-    private static List<GATKReportTable> generateReportTables(Map<BQSRKeyManager, Map<BitSet, RecalDatum>> keysAndTablesMap) {
+    private static List<GATKReportTable> generateReportTables(Map<BQSRKeyManager, LongHashMap<RecalDatum>> keysAndTablesMap) {
         List<GATKReportTable> result = new LinkedList<GATKReportTable>();
         int tableIndex = 0;
 
@@ -235,9 +236,9 @@ public class RecalDataManager {
         final Pair<String, String> nObservations      = new Pair<String, String>(RecalDataManager.NUMBER_OBSERVATIONS_COLUMN_NAME, "%d");
         final Pair<String, String> nErrors            = new Pair<String, String>(RecalDataManager.NUMBER_ERRORS_COLUMN_NAME, "%d");
 
-        for (Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>> entry : keysAndTablesMap.entrySet()) {
+        for (Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>> entry : keysAndTablesMap.entrySet()) {
             BQSRKeyManager keyManager = entry.getKey();
-            Map<BitSet, RecalDatum> recalTable = entry.getValue();
+            LongHashMap<RecalDatum> recalTable = entry.getValue();
 
             boolean isReadGroupTable = tableIndex == 0;                                                                 // special case for the read group table so we can print the extra column it needs.
             GATKReportTable reportTable = new GATKReportTable("RecalTable" + tableIndex++, "");
@@ -270,15 +271,14 @@ public class RecalDataManager {
 
             long primaryKey = 0L;
 
-            for (Map.Entry<BitSet, RecalDatum> recalTableEntry : recalTable.entrySet()) {                               // create a map with column name => key value for all covariate keys
-                BitSet bitSetKey = recalTableEntry.getKey();
+            for (long longKey : recalTable.sortedKeys()) {                                                              // create a map with column name => key value for all covariate keys, in key order so the report doesn't depend on the hash table's layout
                 Map<String, Object> columnData = new HashMap<String, Object>(columnNames.size());
                 Iterator<Pair<String, String>> iterator = columnNames.iterator();
-                for (Object key : keyManager.keySetFrom(bitSetKey)) {
+                for (Object key : keyManager.keySetFrom(longKey)) {
                     String columnName = iterator.next().getFirst();
                     columnData.put(columnName, key);
                 }
-                RecalDatum datum = recalTableEntry.getValue();
+                RecalDatum datum = recalTable.get(longKey);
                 columnData.put(iterator.next().getFirst(), datum.getEmpiricalQuality());
                 if (isReadGroupTable)
                     columnData.put(iterator.next().getFirst(), datum.getEstimatedQReported());                          // we only add the estimated Q reported in the RG table
@@ -297,11 +297,11 @@ public class RecalDataManager {
         return result;
     }
 
-    public static void outputRecalibrationReport(RecalibrationArgumentCollection RAC, QuantizationInfo quantizationInfo, Map<BQSRKeyManager, Map<BitSet, RecalDatum>> keysAndTablesMap, PrintStream outputFile) {
+    public static void outputRecalibrationReport(RecalibrationArgumentCollection RAC, QuantizationInfo quantizationInfo, Map<BQSRKeyManager, LongHashMap<RecalDatum>> keysAndTablesMap, PrintStream outputFile) {
         outputRecalibrationReport(RAC.generateReportTable(), quantizationInfo.generateReportTable(), generateReportTables(keysAndTablesMap), outputFile);
     }
 
-    public static void outputRecalibrationReport(GATKReportTable argumentTable, QuantizationInfo quantizationInfo, LinkedHashMap<BQSRKeyManager,Map<BitSet, RecalDatum>> keysAndTablesMap, PrintStream outputFile) {
+    public static void outputRecalibrationReport(GATKReportTable argumentTable, QuantizationInfo quantizationInfo, LinkedHashMap<BQSRKeyManager,LongHashMap<RecalDatum>> keysAndTablesMap, PrintStream outputFile) {
         outputRecalibrationReport(argumentTable, quantizationInfo.generateReportTable(), generateReportTables(keysAndTablesMap), outputFile);
     }
 
@@ -341,26 +341,26 @@ public class RecalDataManager {
 
     }
 
-    public static void generateRecalibrationPlot(File filename, LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> original, boolean keepIntermediates) {
+    public static void generateRecalibrationPlot(File filename, LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> original, boolean keepIntermediates) {
         Pair<PrintStream, File> files = initializeRecalibrationPlot(filename);
         writeCSV(files.getFirst(), original, "ORIGINAL", true);
         outputRecalibrationPlot(files, keepIntermediates);
     }
 
-    public static void generateRecalibrationPlot(File filename, LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> original, LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> recalibrated, boolean keepIntermediates) {
+    public static void generateRecalibrationPlot(File filename, LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> original, LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> recalibrated, boolean keepIntermediates) {
         Pair<PrintStream, File> files = initializeRecalibrationPlot(filename);
         writeCSV(files.getFirst(), recalibrated, "RECALIBRATED", true);
         writeCSV(files.getFirst(), original, "ORIGINAL", false);
         outputRecalibrationPlot(files, keepIntermediates);
     }
 
-    private static void writeCSV(PrintStream deltaTableFile, LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> map, String recalibrationMode, boolean printHeader) {
+    private static void writeCSV(PrintStream deltaTableFile, LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> map, String recalibrationMode, boolean printHeader) {
         final int QUALITY_SCORE_COVARIATE_INDEX = 1;
-        final Map<BitSet, RecalDatum> deltaTable = new HashMap<BitSet, RecalDatum>();
+        final LongHashMap<RecalDatum> deltaTable = new LongHashMap<RecalDatum>();
         BQSRKeyManager deltaKeyManager = null;
 
 
-        for (Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>> tableEntry : map.entrySet()) {
+        for (Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>> tableEntry : map.entrySet()) {
             BQSRKeyManager keyManager = tableEntry.getKey();
 
             if (keyManager.getOptionalCovariates().size() > 0) {                                                        // initialize with the 'all covariates' table
@@ -376,37 +376,37 @@ public class RecalDataManager {
             throw new ReviewedStingException ("Couldn't find the covariates table");
 
         boolean readyToPrint = false;
-        for (Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>> tableEntry : map.entrySet()) {
+        for (Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>> tableEntry : map.entrySet()) {
             BQSRKeyManager keyManager = tableEntry.getKey();
 
             if (keyManager.getRequiredCovariates().size() == 2 && keyManager.getOptionalCovariates().isEmpty()) {       // look for the QualityScore table
-                Map<BitSet, RecalDatum> table = tableEntry.getValue();
+                LongHashMap<RecalDatum> table = tableEntry.getValue();
 
                 // add the quality score table to the delta table
-                for (Map.Entry<BitSet, RecalDatum> entry : table.entrySet()) {                                          // go through every element in the covariates table to create the delta table
+                for (LongHashMap.Entry<RecalDatum> entry : table) {                                                     // go through every element in the covariates table to create the delta table
                     RecalDatum recalDatum = entry.getValue();                                                           // the current element (recal datum)
 
-                    List<Object> covs = keyManager.keySetFrom(entry.getKey());                                          // extract the key objects from the bitset key
+                    List<Object> covs = keyManager.keySetFrom(entry.getKey());                                          // extract the key objects from the long key
                     List<Object> newCovs = new ArrayList<Object>(4);
                     newCovs.add(0, covs.get(0));                                                                        // replace the covariate value with the quality score
                     newCovs.add(1, covs.get(1));
                     newCovs.add(2, "QualityScore");                                                                     // replace the covariate name with QualityScore (for the QualityScore covariate)
                     newCovs.add(3, covs.get(2));
-                    BitSet deltaKey = deltaKeyManager.bitSetFromKey(newCovs.toArray());                                 // create a new bitset key for the delta table
+                    long deltaKey = deltaKeyManager.longFromKey(newCovs.toArray());                                     // create a new long key for the delta table
                     addToDeltaTable(deltaTable, deltaKey, recalDatum);                                                  // add this covariate to the delta table
                 }
             }
 
             else if (keyManager.getOptionalCovariates().size() > 0) {                                                   // look for the optional covariates table
-                Map<BitSet, RecalDatum> table = tableEntry.getValue();
+                LongHashMap<RecalDatum> table = tableEntry.getValue();
 
                 // add the optional covariates to the delta table
-                for (Map.Entry<BitSet, RecalDatum> entry : table.entrySet()) {                                          // go through every element in the covariates table to create the delta table
+                for (LongHashMap.Entry<RecalDatum> entry : table) {                                                     // go through every element in the covariates table to create the delta table
                     RecalDatum recalDatum = entry.getValue();                                                           // the current element (recal datum)
 
-                    List<Object> covs = keyManager.keySetFrom(entry.getKey());                                          // extract the key objects from the bitset key
+                    List<Object> covs = keyManager.keySetFrom(entry.getKey());                                          // extract the key objects from the long key
                     covs.remove(QUALITY_SCORE_COVARIATE_INDEX);                                                         // reset the quality score covariate to 0 from the keyset (so we aggregate all rows regardless of QS)
-                    BitSet deltaKey = deltaKeyManager.bitSetFromKey(covs.toArray());                                    // create a new bitset key for the delta table
+                    long deltaKey = deltaKeyManager.longFromKey(covs.toArray());                                        // create a new long key for the delta table
                     addToDeltaTable(deltaTable, deltaKey, recalDatum);                                                  // add this covariate to the delta table
                 }
                 readyToPrint = true;
@@ -431,9 +431,9 @@ public class RecalDataManager {
                 }
 
                 // print each data line
-                for(Map.Entry<BitSet, RecalDatum> deltaEntry : deltaTable.entrySet()) {
-                    List<Object> deltaKeys = deltaKeyManager.keySetFrom(deltaEntry.getKey());
-                    RecalDatum deltaDatum = deltaEntry.getValue();
+                for (long deltaKey : deltaTable.sortedKeys()) {
+                    List<Object> deltaKeys = deltaKeyManager.keySetFrom(deltaKey);
+                    RecalDatum deltaDatum = deltaTable.get(deltaKey);
                     deltaTableFile.print(Utils.join(",", deltaKeys));
                     deltaTableFile.print("," + deltaDatum.stringForCSV());
                     deltaTableFile.println("," + recalibrationMode);
@@ -453,7 +453,7 @@ public class RecalDataManager {
      * @param deltaKey the key to the table
      * @param recalDatum the recal datum to combine with the accuracyDatum element in the table
      */
-    private static void addToDeltaTable(Map<BitSet, RecalDatum> deltaTable, BitSet deltaKey, RecalDatum recalDatum) {
+    private static void addToDeltaTable(LongHashMap<RecalDatum> deltaTable, long deltaKey, RecalDatum recalDatum) {
         RecalDatum deltaDatum = deltaTable.get(deltaKey);                                                               // check if we already have a RecalDatum for this key
         if (deltaDatum == null)
             deltaTable.put(deltaKey, new RecalDatum(recalDatum));                                                       // if we don't have a key yet, create a new one with the same values as the curent datum
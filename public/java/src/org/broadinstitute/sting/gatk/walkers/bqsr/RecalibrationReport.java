@@ -3,6 +3,7 @@ package org.broadinstitute.sting.gatk.walkers.bqsr;
 import org.broadinstitute.sting.gatk.report.GATKReport;
 import org.broadinstitute.sting.gatk.report.GATKReportTable;
 import org.broadinstitute.sting.utils.QualityUtils;
+import org.broadinstitute.sting.utils.collections.LongHashMap;
 import org.broadinstitute.sting.utils.collections.Pair;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
@@ -18,7 +19,7 @@ import java.util.*;
  */
 public class RecalibrationReport {
     private QuantizationInfo quantizationInfo;                                                                          // histogram containing the counts for qual quantization (calculated after recalibration is done)
-    private final LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> keysAndTablesMap;                                    // quick access reference to the read group table and its key manager
+    private final LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> keysAndTablesMap;                                    // quick access reference to the read group table and its key manager
     private final ArrayList<Covariate> requestedCovariates = new ArrayList<Covariate>();                                      // list of all covariates to be used in this calculation
 
     private final GATKReportTable argumentTable;                                                                              // keep the argument table untouched just for output purposes
@@ -42,12 +43,12 @@ public class RecalibrationReport {
         for (Covariate cov : requestedCovariates)
             cov.initialize(RAC);                                                                                        // initialize any covariate member variables using the shared argument collection
 
-        keysAndTablesMap = new LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>>();
+        keysAndTablesMap = new LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>>();
         ArrayList<Covariate> requiredCovariatesToAdd = new ArrayList<Covariate>(requiredCovariates.size());             // incrementally add the covariates to create the recal tables with 1, 2 and 3 covariates.
         ArrayList<Covariate> optionalCovariatesToAdd = new ArrayList<Covariate>();                                      // initialize an empty array of optional covariates to create the first few tables
         for (Covariate covariate : requiredCovariates) {
             requiredCovariatesToAdd.add(covariate);
-            final Map<BitSet, RecalDatum> table;                                                                        // initializing a new recal table for each required covariate (cumulatively)
+            final LongHashMap<RecalDatum> table;                                                                        // initializing a new recal table for each required covariate (cumulatively)
             final BQSRKeyManager keyManager = new BQSRKeyManager(requiredCovariatesToAdd, optionalCovariatesToAdd);     // initializing it's corresponding key manager
 
             int nRequiredCovariates = requiredCovariatesToAdd.size();                                                   // the number of required covariates defines which table we are looking at (RG, QUAL or ALL_COVARIATES)
@@ -69,11 +70,11 @@ public class RecalibrationReport {
 
         final BQSRKeyManager keyManager = new BQSRKeyManager(requiredCovariates, optionalCovariates);                   // initializing it's corresponding key manager
         final GATKReportTable reportTable = report.getTable(RecalDataManager.ALL_COVARIATES_REPORT_TABLE_TITLE);
-        final Map<BitSet, RecalDatum> table = parseAllCovariatesTable(keyManager, reportTable);
+        final LongHashMap<RecalDatum> table = parseAllCovariatesTable(keyManager, reportTable);
         keysAndTablesMap.put(keyManager, table);
     }
 
-    protected RecalibrationReport(QuantizationInfo quantizationInfo, LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> keysAndTablesMap, GATKReportTable argumentTable, RecalibrationArgumentCollection RAC) {
+    protected RecalibrationReport(QuantizationInfo quantizationInfo, LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> keysAndTablesMap, GATKReportTable argumentTable, RecalibrationArgumentCollection RAC) {
         this.quantizationInfo = quantizationInfo;
         this.keysAndTablesMap = keysAndTablesMap;
         this.argumentTable = argumentTable;
@@ -94,25 +95,25 @@ public class RecalibrationReport {
     * @param other the recalibration report to combine with this one
     */
     public void combine(RecalibrationReport other) {
-        Iterator<Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>>> thisIterator = keysAndTablesMap.entrySet().iterator();
+        Iterator<Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>>> thisIterator = keysAndTablesMap.entrySet().iterator();
 
-        for (Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>> otherEntry : other.getKeysAndTablesMap().entrySet()) {
-            Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>> thisEntry = thisIterator.next();
+        for (Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>> otherEntry : other.getKeysAndTablesMap().entrySet()) {
+            Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>> thisEntry = thisIterator.next();
 
-            Map<BitSet, RecalDatum> thisTable = thisEntry.getValue();
+            LongHashMap<RecalDatum> thisTable = thisEntry.getValue();
             BQSRKeyManager thisKeyManager = thisEntry.getKey();
             BQSRKeyManager otherKeyManager = otherEntry.getKey();
 
-            for (Map.Entry<BitSet, RecalDatum> otherTableEntry : otherEntry.getValue().entrySet()) {
+            for (LongHashMap.Entry<RecalDatum> otherTableEntry : otherEntry.getValue()) {
                 RecalDatum otherDatum = otherTableEntry.getValue();
-                BitSet otherBitKey = otherTableEntry.getKey();
-                List<Object> otherObjectKey = otherKeyManager.keySetFrom(otherBitKey);
+                long otherLongKey = otherTableEntry.getKey();
+                List<Object> otherObjectKey = otherKeyManager.keySetFrom(otherLongKey);
                 
-                BitSet thisBitKey = thisKeyManager.bitSetFromKey(otherObjectKey.toArray());
-                RecalDatum thisDatum = thisTable.get(thisBitKey);
+                long thisLongKey = thisKeyManager.longFromKey(otherObjectKey.toArray());
+                RecalDatum thisDatum = thisTable.get(thisLongKey);
                 
                 if (thisDatum == null)
-                    thisTable.put(thisBitKey, otherDatum);
+                    thisTable.put(thisLongKey, otherDatum);
                 else
                     thisDatum.combine(otherDatum);
             }            
@@ -123,7 +124,7 @@ public class RecalibrationReport {
         return quantizationInfo;
     }
 
-    public LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> getKeysAndTablesMap() {
+    public LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> getKeysAndTablesMap() {
         return keysAndTablesMap;
     }
 
@@ -136,9 +137,9 @@ public class RecalibrationReport {
      *
      * @param keyManager             the key manager for this table
      * @param reportTable            the GATKReport table containing data for this table
-     * @return a lookup table indexed by bitsets containing the empirical quality and estimated quality reported for every key.
+     * @return a lookup table indexed by long keys containing the empirical quality and estimated quality reported for every key.
      */
-    private Map<BitSet, RecalDatum> parseAllCovariatesTable(BQSRKeyManager keyManager, GATKReportTable reportTable) {
+    private LongHashMap<RecalDatum> parseAllCovariatesTable(BQSRKeyManager keyManager, GATKReportTable reportTable) {
         ArrayList<String> columnNamesOrderedList = new ArrayList<String>(5);
         columnNamesOrderedList.add(RecalDataManager.READGROUP_COLUMN_NAME);
         columnNamesOrderedList.add(RecalDataManager.QUALITY_SCORE_COLUMN_NAME);
@@ -153,9 +154,9 @@ public class RecalibrationReport {
      * Compiles the list of keys for the QualityScore table and uses the shared parsing utility to produce the actual table
      * @param keyManager             the key manager for this table
      * @param reportTable            the GATKReport table containing data for this table
-     * @return a lookup table indexed by bitsets containing the empirical quality and estimated quality reported for every key.
+     * @return a lookup table indexed by long keys containing the empirical quality and estimated quality reported for every key.
      */
-    private Map<BitSet, RecalDatum> parseQualityScoreTable(BQSRKeyManager keyManager, GATKReportTable reportTable) {
+    private LongHashMap<RecalDatum> parseQualityScoreTable(BQSRKeyManager keyManager, GATKReportTable reportTable) {
         ArrayList<String> columnNamesOrderedList = new ArrayList<String>(3);
         columnNamesOrderedList.add(RecalDataManager.READGROUP_COLUMN_NAME);
         columnNamesOrderedList.add(RecalDataManager.QUALITY_SCORE_COLUMN_NAME);
@@ -168,9 +169,9 @@ public class RecalibrationReport {
      *
      * @param keyManager             the key manager for this table
      * @param reportTable            the GATKReport table containing data for this table
-     * @return a lookup table indexed by bitsets containing the empirical quality and estimated quality reported for every key.
+     * @return a lookup table indexed by long keys containing the empirical quality and estimated quality reported for every key.
      */
-    private Map<BitSet, RecalDatum> parseReadGroupTable(BQSRKeyManager keyManager, GATKReportTable reportTable) {
+    private LongHashMap<RecalDatum> parseReadGroupTable(BQSRKeyManager keyManager, GATKReportTable reportTable) {
         ArrayList<String> columnNamesOrderedList = new ArrayList<String>(2);
         columnNamesOrderedList.add(RecalDataManager.READGROUP_COLUMN_NAME);
         columnNamesOrderedList.add(RecalDataManager.EVENT_TYPE_COLUMN_NAME);
@@ -183,10 +184,10 @@ public class RecalibrationReport {
      * @param keyManager             the key manager for this table
      * @param reportTable            the GATKReport table containing data for this table
      * @param columnNamesOrderedList a list of columns to read from the report table and build as key for this particular table
-     * @return a lookup table indexed by bitsets containing the empirical quality and estimated quality reported for every key.
+     * @return a lookup table indexed by long keys containing the empirical quality and estimated quality reported for every key.
      */
-    private Map<BitSet, RecalDatum> genericRecalTableParsing(BQSRKeyManager keyManager, GATKReportTable reportTable, ArrayList<String> columnNamesOrderedList, boolean hasEstimatedQReportedColumn) {
-        Map<BitSet, RecalDatum> result = new HashMap<BitSet, RecalDatum>(reportTable.getNumRows()*2);
+    private LongHashMap<RecalDatum> genericRecalTableParsing(BQSRKeyManager keyManager, GATKReportTable reportTable, ArrayList<String> columnNamesOrderedList, boolean hasEstimatedQReportedColumn) {
+        LongHashMap<RecalDatum> result = new LongHashMap<RecalDatum>(reportTable.getNumRows());
 
         for (Object primaryKey : reportTable.getPrimaryKeys()) {
             int nKeys = columnNamesOrderedList.size();
@@ -194,7 +195,7 @@ public class RecalibrationReport {
             for (int i = 0; i < nKeys; i++)
                 keySet[i] = reportTable.get(primaryKey, columnNamesOrderedList.get(i));                                 // all these objects are okay in String format, the key manager will handle them correctly (except for the event type (see below)
             keySet[keySet.length-1] = EventType.eventFrom((String) keySet[keySet.length-1]);                            // the last key is always the event type. We convert the string ("M", "I" or "D") to an enum object (necessary for the key manager).
-            BitSet bitKey = keyManager.bitSetFromKey(keySet);
+            long longKey = keyManager.longFromKey(keySet);
 
             long nObservations = (Long) reportTable.get(primaryKey, RecalDataManager.NUMBER_OBSERVATIONS_COLUMN_NAME);
             long nErrors = (Long) reportTable.get(primaryKey, RecalDataManager.NUMBER_ERRORS_COLUMN_NAME);
@@ -205,7 +206,7 @@ public class RecalibrationReport {
                 Byte.parseByte((String) reportTable.get(primaryKey, RecalDataManager.QUALITY_SCORE_COLUMN_NAME));       // or we use the reported quality if we are in any other table
 
             RecalDatum recalDatum = new RecalDatum(nObservations, nErrors, estimatedQReported, empiricalQuality);
-            result.put(bitKey, recalDatum);
+            result.put(longKey, recalDatum);
         }
         return result;
     }
@@ -305,7 +306,7 @@ public class RecalibrationReport {
      * and quantization of the quality scores during every call of combine(). Very useful for the BQSRGatherer.
      */
     public void calculateEmpiricalAndQuantizedQualities() {
-        for (Map<BitSet, RecalDatum> table : keysAndTablesMap.values())
+        for (LongHashMap<RecalDatum> table : keysAndTablesMap.values())
             for (RecalDatum datum : table.values())
                 datum.calcCombinedEmpiricalQuality();
 
@@ -330,23 +331,23 @@ public class RecalibrationReport {
         return isEqualTable(this.keysAndTablesMap, other.keysAndTablesMap);
     }
 
-    private boolean isEqualTable(LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> t1, LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> t2) {
+    private boolean isEqualTable(LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> t1, LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> t2) {
         if (t1.size() != t2.size())
             return false;
 
-        Iterator<Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>>> t1Iterator = t1.entrySet().iterator();
-        Iterator<Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>>> t2Iterator = t2.entrySet().iterator();
+        Iterator<Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>>> t1Iterator = t1.entrySet().iterator();
+        Iterator<Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>>> t2Iterator = t2.entrySet().iterator();
 
         while (t1Iterator.hasNext() && t2Iterator.hasNext()) {
-            Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>> t1MapEntry = t1Iterator.next();
-            Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>> t2MapEntry = t2Iterator.next();
+            Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>> t1MapEntry = t1Iterator.next();
+            Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>> t2MapEntry = t2Iterator.next();
 
             if (!(t1MapEntry.getKey().equals(t2MapEntry.getKey())))
                 return false;
 
-            Map<BitSet, RecalDatum> table2 = t2MapEntry.getValue();
-            for (Map.Entry<BitSet, RecalDatum> t1TableEntry : t1MapEntry.getValue().entrySet()) {
-                BitSet t1Key = t1TableEntry.getKey();
+            LongHashMap<RecalDatum> table2 = t2MapEntry.getValue();
+            for (LongHashMap.Entry<RecalDatum> t1TableEntry : t1MapEntry.getValue()) {
+                long t1Key = t1TableEntry.getKey();
                 if (!table2.containsKey(t1Key))
                     return false;
                 RecalDatum t1Datum = t1TableEntry.getValue();
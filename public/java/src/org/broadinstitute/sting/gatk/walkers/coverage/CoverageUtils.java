@@ -113,16 +113,23 @@ public class CoverageUtils {
     }
 
     private static void updateCounts(int[] counts, PileupElement e) {
+        updateCounts(counts,0,e);
+    }
+
+    /**
+     * Counts the base of e in the six counts starting at offset in counts, which are indexed by the index fields of BaseUtils
+     */
+    static void updateCounts(int[] counts, int offset, PileupElement e) {
         if ( e.isDeletion() ) {
-            counts[BaseUtils.DELETION_INDEX]++;
+            counts[offset+BaseUtils.DELETION_INDEX]++;
         } else if ( BaseUtils.basesAreEqual((byte) 'N', e.getBase()) ) {
-            counts[BaseUtils.NO_CALL_INDEX]++;
+            counts[offset+BaseUtils.NO_CALL_INDEX]++;
         } else {
-            try {
-                counts[BaseUtils.simpleBaseToBaseIndex(e.getBase())]++;
-            } catch (ArrayIndexOutOfBoundsException exc) {
+            int index = BaseUtils.simpleBaseToBaseIndex(e.getBase());
+            if ( index < 0 ) { // checked here, as a bad index would otherwise count towards the previous counts in the array
                 throw new ReviewedStingException("Expected a simple base, but actually received"+(char)e.getBase());
             }
+            counts[offset+index]++;
         }
     }
 
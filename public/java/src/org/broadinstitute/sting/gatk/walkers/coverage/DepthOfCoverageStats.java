@@ -3,9 +3,7 @@ package org.broadinstitute.sting.gatk.walkers.coverage;
 import org.broadinstitute.sting.utils.BaseUtils;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
  * IF THERE IS NO JAVADOC RIGHT HERE, YELL AT chartl
@@ -24,10 +22,13 @@ public class DepthOfCoverageStats {
     // STANDARD DATA
     ////////////////////////////////////////////////////////////////////////////////////
 
-    private Map<String,long[]> granularHistogramBySample; // holds the counts per each bin
-    private Map<String,Long> totalCoverages; // holds total coverage per sample
+    private Map<String,Integer> sampleIndices; // index of each sample in the per-sample data; a HashMap, to keep the order samples have always been listed in
+    private List<long[]> granularHistograms; // holds the counts per each bin, by sample index
+    private long[] totalCoverages; // holds total coverage per sample index
+    private long[] lociBySample; // number of loci at which each sample was given a depth; the others are counted in the zero-depth bin on demand
     private int[] binLeftEndpoints; // describes the left endpoint for each bin
-    private long[][] locusCoverageCounts; // holds counts of number of bases with >=X samples at >=Y coverage
+    private int zeroDepthBin; // the bin holding loci with no coverage
+    private long[][] locusCoverageCounts; // holds counts of number of bases with exactly X samples at >=Y coverage; see getLocusCounts()
     private boolean tabulateLocusCounts = false;
     private long nLoci; // number of loci seen
     private long totalDepthOfCoverage;
@@ -37,8 +38,8 @@ public class DepthOfCoverageStats {
     // TEMPORARY DATA ( not worth re-instantiating )
     ////////////////////////////////////////////////////////////////////////////////////
 
-    private int[] locusHistogram; // holds a histogram for each locus; reset after each update() call
-    private int totalLocusDepth; // holds the total depth of coverage for each locus; reset after each update() call
+    private int[] locusHistogram; // holds the number of samples in each bin at a locus; reset after each update() call
+    private Map<String,long[]> histogramsBySample; // view of the histograms by sample name; reset when a sample is added
 
     ////////////////////////////////////////////////////////////////////////////////////
     // STATIC METHODS
@@ -77,60 +78,57 @@ public class DepthOfCoverageStats {
 
     public DepthOfCoverageStats(int[] leftEndpoints) {
         this.binLeftEndpoints = leftEndpoints;
-        granularHistogramBySample = new HashMap<String,long[]>();
-        totalCoverages = new HashMap<String,Long>();
+        sampleIndices = new HashMap<String,Integer>();
+        granularHistograms = new ArrayList<long[]>();
+        totalCoverages = new long[0];
+        lociBySample = new long[0];
+        zeroDepthBin = depthToBin(0);
         nLoci = 0;
-        totalLocusDepth = 0;
         totalDepthOfCoverage = 0;
     }
 
     public DepthOfCoverageStats(DepthOfCoverageStats cloneMe) {
-        this.binLeftEndpoints = cloneMe.binLeftEndpoints;
-        granularHistogramBySample = new HashMap<String,long[]>();
-        totalCoverages = new HashMap<String,Long>();
+        this(cloneMe.binLeftEndpoints);
+        Map<String,long[]> cloneHistograms = cloneMe.getHistograms();
         for ( String s : cloneMe.getAllSamples() ) {
-            granularHistogramBySample.put(s,new long[cloneMe.getHistograms().get(s).length]);
-            for ( int i = 0; i < granularHistogramBySample.get(s).length; i++ ) {
-                granularHistogramBySample.get(s)[i] = cloneMe.getHistograms().get(s)[i];
-            }
-            totalCoverages.put(s,cloneMe.totalCoverages.get(s));
+            addSample(s);
+            int index = sampleIndices.get(s);
+            System.arraycopy(cloneHistograms.get(s),0,granularHistograms.get(index),0,granularHistograms.get(index).length);
+            totalCoverages[index] = cloneMe.totalCoverages[cloneMe.sampleIndices.get(s)];
+            lociBySample[index] = cloneMe.nLoci; // the zero-depth bins were filled in by getHistograms()
         }
 
         this.includeDeletions = cloneMe.includeDeletions;
         if ( cloneMe.tabulateLocusCounts ) {
             this.locusCoverageCounts = new long[cloneMe.locusCoverageCounts.length][cloneMe.locusCoverageCounts[0].length];
+            this.locusHistogram = new int[binLeftEndpoints.length+1];
         }
-        //this.granularHistogramBySample = cloneMe.granularHistogramBySample;
-        //this.totalCoverages = cloneMe.totalCoverages;
         this.nLoci = cloneMe.nLoci;
         this.totalDepthOfCoverage = cloneMe.totalDepthOfCoverage;
         this.tabulateLocusCounts = cloneMe.tabulateLocusCounts;
     }
 
     public void addSample(String sample) {
-        if ( granularHistogramBySample.containsKey(sample) ) {
+        if ( sampleIndices.containsKey(sample) ) {
             return;
         }
 
-        long[] binCounts = new long[this.binLeftEndpoints.length+1];
-        for ( int b = 0; b < binCounts.length; b ++ ) {
-            binCounts[b] = 0;
+        int index = granularHistograms.size();
+        if ( index == totalCoverages.length ) {
+            totalCoverages = Arrays.copyOf(totalCoverages,Math.max(16,2*index));
+            lociBySample = Arrays.copyOf(lociBySample,totalCoverages.length);
         }
 
-        granularHistogramBySample.put(sample,binCounts);
-        totalCoverages.put(sample,0l);
+        sampleIndices.put(sample,index);
+        granularHistograms.add(new long[this.binLeftEndpoints.length+1]);
+        totalCoverages[index] = 0l;
+        lociBySample[index] = nLoci; // the sample wasn't around to be counted at any earlier loci
+        histogramsBySample = null;
     }
 
     public void initializeLocusCounts() {
-        locusCoverageCounts = new long[granularHistogramBySample.size()][binLeftEndpoints.length+1];
+        locusCoverageCounts = new long[granularHistograms.size()][binLeftEndpoints.length+1];
         locusHistogram = new int[binLeftEndpoints.length+1];
-        for ( int b = 0; b < binLeftEndpoints.length+1; b ++ ) {
-            for ( int a = 0; a < granularHistogramBySample.size(); a ++ ) {
-                locusCoverageCounts[a][b] = 0;
-            }
-            locusHistogram[b] = 0;
-        }
-
         tabulateLocusCounts = true;
     }
 
@@ -143,26 +141,48 @@ public class DepthOfCoverageStats {
     ////////////////////////////////////////////////////////////////////////////////////
 
     public void updateDepths(Map<String,Integer> depthBySample) {
-        int b;
-        for ( String sample : granularHistogramBySample.keySet() ) {
-            if ( depthBySample.containsKey(sample) ) {
-                b = updateSample(sample,depthBySample.get(sample));
-                totalLocusDepth += depthBySample.get(sample);
-            } else {
-                b = updateSample(sample,0);
+        int[] samples = new int[depthBySample.size()];
+        int[] depths = new int[depthBySample.size()];
+        int nSamples = 0;
+        for ( Map.Entry<String,Integer> sampleDepth : depthBySample.entrySet() ) {
+            Integer index = sampleIndices.get(sampleDepth.getKey());
+            if ( index != null ) {
+                samples[nSamples] = index;
+                depths[nSamples] = sampleDepth.getValue();
+                nSamples++;
             }
+        }
+
+        updateDepths(samples,depths,nSamples);
+    }
+
+    /**
+     * Counts a locus, given the depths of just the samples with coverage there; the rest have a depth of zero.
+     *
+     * @param samples the indices of the covered samples, as given by getSampleIndex(), each at most once
+     * @param depths the depth of each of those samples
+     * @param nSamples how many of the entries of samples and depths to use
+     */
+    public void updateDepths(int[] samples, int[] depths, int nSamples) {
+        long totalLocusDepth = 0;
+        int maxBin = zeroDepthBin;
+        for ( int i = 0; i < nSamples; i++ ) {
+            int b = updateSample(samples[i],depths[i]);
+            totalLocusDepth += depths[i];
 
             if ( tabulateLocusCounts ) {
-                for ( int i = 0; i <= b; i ++ ) {
-                    locusHistogram[i]++;
-                }
+                locusHistogram[b]++;
+                maxBin = Math.max(maxBin,b);
             }
         }
-        updateLocusCounts(locusHistogram);
+
+        if ( tabulateLocusCounts ) {
+            locusHistogram[zeroDepthBin] += granularHistograms.size() - nSamples;
+            updateLocusCounts(locusHistogram,maxBin);
+        }
 
         nLoci++;
         totalDepthOfCoverage += totalLocusDepth;
-        totalLocusDepth = 0;
     }
 
     public void update(Map<String,int[]> countsBySample) {
@@ -187,25 +207,39 @@ public class DepthOfCoverageStats {
         this.updateDepths(depthBySample);
     }
 
-    private int updateSample(String sample, int depth) {
-        totalCoverages.put(sample,totalCoverages.get(sample)+depth);
+    private int updateSample(int sample, int depth) {
+        totalCoverages[sample] += depth;
+        lociBySample[sample]++;
 
-        long[] granularBins = granularHistogramBySample.get(sample);
-        for ( int b = 0; b < binLeftEndpoints.length; b ++ ) {
-            if ( depth < binLeftEndpoints[b] ) {
-                granularBins[b]++;
-                return b;
+        int b = depthToBin(depth);
+        granularHistograms.get(sample)[b]++;
+        return b;
+    }
+
+    /**
+     * @return the bin of the granular histograms holding depth: the first whose left endpoint is above depth, or the
+     * last bin if depth is beyond all of the left endpoints
+     */
+    private int depthToBin(int depth) {
+        // binary search, as the left endpoints increase
+        int low = 0;
+        int high = binLeftEndpoints.length;
+        while ( low < high ) {
+            int mid = (low + high) >>> 1;
+            if ( binLeftEndpoints[mid] <= depth ) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
 
-        granularBins[binLeftEndpoints.length]++; // greater than all left-endpoints
-        return binLeftEndpoints.length;
+        return low;
     }
 
     public void merge(DepthOfCoverageStats newStats) {
         this.mergeSamples(newStats);
         if ( this.tabulateLocusCounts && newStats.tabulateLocusCounts ) {
-            this.mergeLocusCounts(newStats.getLocusCounts());
+            this.mergeLocusCounts(newStats.locusCoverageCounts);
         }
         nLoci += newStats.getTotalLoci();
         totalDepthOfCoverage += newStats.getTotalCoverage();
@@ -213,15 +247,16 @@ public class DepthOfCoverageStats {
 
     private void mergeSamples(DepthOfCoverageStats otherStats) {
         Map<String,long[]> otherHistogram = otherStats.getHistograms();
-        Map<String,Double> otherMeans = otherStats.getMeans();
-        for ( String s : this.getAllSamples() ) {
-            long[] internalCounts = granularHistogramBySample.get(s);
-            long[] externalCounts = otherHistogram.get(s);
+        for ( Map.Entry<String,Integer> sampleIndex : sampleIndices.entrySet() ) {
+            int s = sampleIndex.getValue();
+            long[] internalCounts = granularHistograms.get(s);
+            long[] externalCounts = otherHistogram.get(sampleIndex.getKey());
             for ( int b = 0; b < internalCounts.length; b++ ) {
                 internalCounts[b] += externalCounts[b];
             }
 
-            this.totalCoverages.put(s, this.totalCoverages.get(s) + otherStats.totalCoverages.get(s));
+            this.totalCoverages[s] += otherStats.totalCoverages[otherStats.sampleIndices.get(sampleIndex.getKey())];
+            this.lociBySample[s] += otherStats.nLoci; // as all of the other loci are already in the other histogram
         }
     }
 
@@ -235,37 +270,79 @@ public class DepthOfCoverageStats {
 
     /*
      * Update locus counts -- takes an array in which the number of samples
-     * with depth ABOVE [i] is held. So if the bin left endpoints were 2, 5, 10
+     * with depth IN [i] is held. So if the bin left endpoints were 2, 5, 10
      * then we'd have an array that represented:
-     * [# samples with depth 0 - inf], [# samples with depth 2 - inf],
-     * [# samples with depth 5 - inf], [# samples with depth 10-inf];
+     * [# samples with depth 0 - 1], [# samples with depth 2 - 4],
+     * [# samples with depth 5 - 9], [# samples with depth 10-inf];
+     *
+     * Summing from the top bin down gives the number of samples at or above
+     * each bin, and the locus is counted once, for exactly that many samples.
+     * getLocusCounts() sums these back up into loci with AT LEAST that many.
      *
-     * this is
-     * @argument cumulativeSamplesByDepthBin - see above
+     * @argument samplesByDepthBin - see above; all zero afterwards
+     * @argument maxBin - the highest bin with samples in it
      */
-    private void updateLocusCounts(int[] cumulativeSamplesByDepthBin) {
-        if ( tabulateLocusCounts ) {
-            for ( int bin = 0; bin < cumulativeSamplesByDepthBin.length; bin ++ ) {
-                int numSamples = cumulativeSamplesByDepthBin[bin];
-                for ( int i = 0; i < numSamples; i ++ ) {
-                    locusCoverageCounts[i][bin]++;
-                }
-
-                cumulativeSamplesByDepthBin[bin] = 0; // reset counts in advance of next update()
+    private void updateLocusCounts(int[] samplesByDepthBin, int maxBin) {
+        int samplesAtOrAbove = 0;
+        for ( int bin = maxBin; bin >= 0; bin -- ) {
+            samplesAtOrAbove += samplesByDepthBin[bin];
+            samplesByDepthBin[bin] = 0; // reset counts in advance of next update()
+            if ( samplesAtOrAbove > 0 ) {
+                locusCoverageCounts[samplesAtOrAbove-1][bin]++;
             }
         }
     }
 
+    /**
+     * Counts the loci at which samples weren't given a depth in their zero-depth bins
+     */
+    private void countUncoveredLoci() {
+        for ( int s = 0; s < granularHistograms.size(); s++ ) {
+            granularHistograms.get(s)[zeroDepthBin] += nLoci - lociBySample[s];
+            lociBySample[s] = nLoci;
+        }
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////
     // ACCESSOR METHODS
     ////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * @param sample the name of a sample
+     * @return the index of the sample for updateDepths(), or -1 if it hasn't been added
+     */
+    public int getSampleIndex(String sample) {
+        Integer index = sampleIndices.get(sample);
+        return index == null ? -1 : index;
+    }
+
     public Map<String,long[]> getHistograms() {
-        return granularHistogramBySample;
+        countUncoveredLoci();
+        if ( histogramsBySample == null ) {
+            histogramsBySample = new LinkedHashMap<String,long[]>();
+            for ( Map.Entry<String,Integer> sampleIndex : sampleIndices.entrySet() ) {
+                histogramsBySample.put(sampleIndex.getKey(),granularHistograms.get(sampleIndex.getValue()));
+            }
+        }
+
+        return histogramsBySample;
     }
 
     public long[][] getLocusCounts() {
-        return locusCoverageCounts;
+        if ( locusCoverageCounts == null ) {
+            return null;
+        }
+
+        long[][] counts = new long[locusCoverageCounts.length][binLeftEndpoints.length+1];
+        for ( int b = 0; b < binLeftEndpoints.length+1; b ++ ) {
+            long atLeast = 0;
+            for ( int a = locusCoverageCounts.length-1; a >= 0; a -- ) {
+                atLeast += locusCoverageCounts[a][b];
+                counts[a][b] = atLeast;
+            }
+        }
+
+        return counts;
     }
 
     public int[] getEndpoints() {
@@ -274,15 +351,20 @@ public class DepthOfCoverageStats {
 
     public Map<String,Double> getMeans() {
         HashMap<String,Double> means = new HashMap<String,Double>();
-        for ( String s : getAllSamples() ) {
-            means.put(s,( (double)totalCoverages.get(s))/( (double) nLoci ));
+        for ( Map.Entry<String,Integer> sampleIndex : sampleIndices.entrySet() ) {
+            means.put(sampleIndex.getKey(),( (double)totalCoverages[sampleIndex.getValue()])/( (double) nLoci ));
         }
 
         return means;
     }
 
     public Map<String,Long> getTotals() {
-        return totalCoverages;
+        Map<String,Long> totals = new LinkedHashMap<String,Long>();
+        for ( Map.Entry<String,Integer> sampleIndex : sampleIndices.entrySet() ) {
+            totals.put(sampleIndex.getKey(),totalCoverages[sampleIndex.getValue()]);
+        }
+
+        return totals;
     }
 
     public long getTotalLoci() {
@@ -290,7 +372,7 @@ public class DepthOfCoverageStats {
     }
 
     public Set<String> getAllSamples() {
-        return granularHistogramBySample.keySet();
+        return sampleIndices.keySet();
     }
 
     public double getTotalMeanCoverage() {
@@ -302,7 +384,7 @@ public class DepthOfCoverageStats {
     }
 
     public double[] getCoverageProportions(String sample) {
-        long[] hist = granularHistogramBySample.get(sample);
+        long[] hist = getHistograms().get(sample);
         double[] distribution = new double[hist.length];
         long count = 0;
         for ( int i = hist.length-1; i >= 0; i -- ) {
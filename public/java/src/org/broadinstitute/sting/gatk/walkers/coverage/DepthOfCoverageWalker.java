@@ -109,7 +109,6 @@ import java.util.*;
  * </pre>
  *
  */
-// todo -- cache the map from sample names to means in the print functions, rather than regenerating each time
 // todo -- support for granular histograms for total depth; maybe n*[start,stop], bins*sqrt(n)
 // todo -- alter logarithmic scaling to spread out bins more
 // todo -- allow for user to set linear binning (default is logarithmic)
@@ -117,7 +116,7 @@ import java.util.*;
 @By(DataSource.REFERENCE)
 @PartitionBy(PartitionType.NONE)
 @Downsample(by= DownsampleType.NONE, toCoverage=Integer.MAX_VALUE)
-public class DepthOfCoverageWalker extends LocusWalker<Map<DoCOutputType.Partition,Map<String,int[]>>, CoveragePartitioner> implements TreeReducible<CoveragePartitioner> {
+public class DepthOfCoverageWalker extends LocusWalker<ReadGroupBaseCounts, CoveragePartitioner> implements TreeReducible<CoveragePartitioner> {
     @Output
     @Multiplex(value=DoCOutputMultiplexer.class,arguments={"partitionTypes","refSeqGeneList","omitDepthOutput","omitIntervals","omitSampleSummary","omitLocusTable"})
     Map<DoCOutputType,PrintStream> out;
@@ -231,6 +230,8 @@ public class DepthOfCoverageWalker extends LocusWalker<Map<DoCOutputType.Partiti
     String[] OUTPUT_FORMATS = {"table","rtable","csv"};
     String separator = "\t";
     Map<DoCOutputType.Partition,List<String>> orderCheck = new HashMap<DoCOutputType.Partition,List<String>>();
+    List<SAMReadGroupRecord> readGroups;
+    ReadGroupBaseCounts.Counter baseCounter;
 
     ////////////////////////////////////////////////////////////////////////////////////
     // STANDARD WALKER METHODS
@@ -299,6 +300,9 @@ public class DepthOfCoverageWalker extends LocusWalker<Map<DoCOutputType.Partiti
             }
             Collections.sort(orderCheck.get(type));
         }
+
+        readGroups = getToolkit().getSAMFileHeader().getReadGroups();
+        baseCounter = new ReadGroupBaseCounts.Counter(readGroups,minMappingQuality,maxMappingQuality,minBaseQuality,maxBaseQuality);
     }
 
     private HashSet<String> getSamplesFromToolKit( Collection<DoCOutputType.Partition> types ) {
@@ -358,34 +362,34 @@ public class DepthOfCoverageWalker extends LocusWalker<Map<DoCOutputType.Partiti
         for (DoCOutputType.Partition t : partitionTypes ) {
             aggro.addIdentifiers(t,getSamplesFromToolKit(t));
         }
-        aggro.initialize(includeDeletions,omitLocusTable);
+        aggro.initialize(includeDeletions,omitLocusTable,readGroups);
         checkOrder(aggro);
         return aggro;
     }
 
-    public Map<DoCOutputType.Partition,Map<String,int[]>> map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
+    public ReadGroupBaseCounts map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         if (includeRefNBases || BaseUtils.isRegularBase(ref.getBase())) {
             if ( ! omitDepthOutput ) {
                 getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary).printf("%s",ref.getLocus()); // yes: print locus in map, and the rest of the info in reduce (for eventual cumulatives)
                 //System.out.printf("\t[log]\t%s",ref.getLocus());
             }
 
-            return CoverageUtils.getBaseCountsByPartition(context,minMappingQuality,maxMappingQuality,minBaseQuality,maxBaseQuality,partitionTypes);
+            return baseCounter.count(context);
         } else {
             return null;
         }
     }
 
-    public CoveragePartitioner reduce(Map<DoCOutputType.Partition,Map<String,int[]>> thisMap, CoveragePartitioner prevReduce) {
+    public CoveragePartitioner reduce(ReadGroupBaseCounts thisMap, CoveragePartitioner prevReduce) {
         if ( thisMap != null ) { // skip sites we didn't want to include in the calculation (ref Ns)
+            prevReduce.update(thisMap);
+
             if ( ! omitDepthOutput ) {
                 //checkOrder(prevReduce); // tests prevReduce.getIdentifiersByType().get(t) against the initialized header order
-                printDepths(getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary),thisMap,prevReduce.getIdentifiersByType());
-                // this is an additional iteration through thisMap, plus dealing with IO, so should be much slower without
+                printDepths(getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary),prevReduce);
+                // this is an additional iteration through the counts, plus dealing with IO, so should be much slower without
                 // turning on omit
             }
-
-            prevReduce.update(thisMap); // note that in "useBoth" cases, this method alters the thisMap object
         }
 
         return prevReduce;
@@ -543,6 +547,10 @@ public class DepthOfCoverageWalker extends LocusWalker<Map<DoCOutputType.Partiti
         DepthOfCoverageStats stats = intervalStats.second;
         int[] bins = stats.getEndpoints();
 
+        Map<String,long[]> histograms = stats.getHistograms();
+        Map<String,Long> totals = stats.getTotals();
+        Map<String,Double> means = stats.getMeans();
+
         StringBuilder targetSummary = new StringBuilder();
         targetSummary.append(intervalStats.first.toString());
         targetSummary.append(separator);
@@ -552,20 +560,20 @@ public class DepthOfCoverageWalker extends LocusWalker<Map<DoCOutputType.Partiti
 
         for ( String s : stats.getAllSamples() ) {
             targetSummary.append(separator);
-            targetSummary.append(stats.getTotals().get(s));
+            targetSummary.append(totals.get(s));
             targetSummary.append(separator);
-            targetSummary.append(String.format("%.2f", stats.getMeans().get(s)));
+            targetSummary.append(String.format("%.2f", means.get(s)));
             targetSummary.append(separator);
-            int median = getQuantile(stats.getHistograms().get(s),0.5);
-            int q1 = getQuantile(stats.getHistograms().get(s),0.25);
-            int q3 = getQuantile(stats.getHistograms().get(s),0.75);
+            int median = getQuantile(histograms.get(s),0.5);
+            int q1 = getQuantile(histograms.get(s),0.25);
+            int q3 = getQuantile(histograms.get(s),0.75);
             targetSummary.append(formatBin(bins,q1));
             targetSummary.append(separator);
             targetSummary.append(formatBin(bins,median));
             targetSummary.append(separator);
             targetSummary.append(formatBin(bins,q3));
             for ( int thresh : coverageThresholds ) {
-                targetSummary.append(String.format("%s%.1f",separator,getPctBasesAbove(stats.getHistograms().get(s),stats.value2bin(thresh))));
+                targetSummary.append(String.format("%s%.1f",separator,getPctBasesAbove(histograms.get(s),stats.value2bin(thresh))));
             }
 
         }
@@ -828,20 +836,20 @@ public class DepthOfCoverageWalker extends LocusWalker<Map<DoCOutputType.Partiti
         return 100*( (double) above )/( above + below );
     }
 
-    private void printDepths(PrintStream stream, Map<DoCOutputType.Partition,Map<String,int[]>> countsBySampleByType, Map<DoCOutputType.Partition,List<String>> identifiersByType) {
+    private void printDepths(PrintStream stream, CoveragePartitioner partitioner) {
         // get the depths per sample and build up the output string while tabulating total and average coverage
         StringBuilder perSampleOutput = new StringBuilder();
         int tDepth = 0;
         boolean depthCounted = false;
         for (DoCOutputType.Partition type : partitionTypes ) {
-            Map<String,int[]> countsByID = countsBySampleByType.get(type);
-            for ( String s : identifiersByType.get(type) ) {
+            CoveragePartitioner.LocusCounts counts = partitioner.getLocusCounts(type);
+            for ( int i = 0; i < counts.size(); i++ ) {
                 perSampleOutput.append(separator);
-                long dp = (countsByID != null && countsByID.keySet().contains(s)) ? sumArray(countsByID.get(s)) : 0 ;
+                long dp = counts.getTotalCount(i);
                 perSampleOutput.append(dp);
                 if ( printBaseCounts ) {
                     perSampleOutput.append(separator);
-                    perSampleOutput.append(baseCounts(countsByID != null ? countsByID.get(s) : null ));
+                    appendBaseCounts(perSampleOutput,counts,i);
                 }
                 if ( ! depthCounted ) {
                     tDepth += dp;
@@ -851,40 +859,29 @@ public class DepthOfCoverageWalker extends LocusWalker<Map<DoCOutputType.Partiti
         }
 
         // remember -- genome locus was printed in map()
-        stream.printf("%s%d",separator,tDepth);
+        StringBuilder locusOutput = new StringBuilder();
+        locusOutput.append(separator);
+        locusOutput.append(tDepth);
         for (DoCOutputType.Partition type : partitionTypes ) {
-            stream.printf("%s%.2f",separator, ( (double) tDepth / identifiersByType.get(type).size() ) );
-        }
-        stream.printf("%s%n",perSampleOutput);
-    }
-
-    private long sumArray(int[] array) {
-        long i = 0;
-        for ( int j : array ) {
-            i += j;
+            locusOutput.append(String.format("%s%.2f",separator, ( (double) tDepth / partitioner.getLocusCounts(type).size() ) ));
         }
-        return i;
+        locusOutput.append(perSampleOutput);
+        stream.println(locusOutput);
     }
 
-    private String baseCounts(int[] counts) {
-        if ( counts == null ) {
-            counts = new int[6];
-        }
-        StringBuilder s = new StringBuilder();
+    private void appendBaseCounts(StringBuilder s, CoveragePartitioner.LocusCounts counts, int i) {
         int nbases = 0;
         for ( byte b : BaseUtils.EXTENDED_BASES ) {
             nbases++;
             if ( includeDeletions || b != BaseUtils.D ) {
                 s.append((char)b);
                 s.append(":");
-                s.append(counts[BaseUtils.extendedBaseToBaseIndex(b)]);
+                s.append(counts.getCount(i,BaseUtils.extendedBaseToBaseIndex(b)));
                 if ( nbases < 6 ) {
                     s.append(" ");
                 }
             }
         }
-
-        return s.toString();
     }
 
     private void checkOrder(CoveragePartitioner ag) {
@@ -991,10 +988,12 @@ class CoveragePartitioner {
     private Collection<DoCOutputType.Partition> types;
     private Map<DoCOutputType.Partition,DepthOfCoverageStats> coverageProfiles;
     private Map<DoCOutputType.Partition,List<String>> identifiersByType;
+    private Map<DoCOutputType.Partition,LocusCounts> locusCountsByType;
     private Set<String> allIdentifiers;
     public CoveragePartitioner(Collection<DoCOutputType.Partition> typesToUse, int start, int stop, int nBins) {
         coverageProfiles = new HashMap<DoCOutputType.Partition,DepthOfCoverageStats>();
         identifiersByType = new HashMap<DoCOutputType.Partition,List<String>>();
+        locusCountsByType = new HashMap<DoCOutputType.Partition,LocusCounts>();
         types = typesToUse;
         for ( DoCOutputType.Partition type : types ) {
             coverageProfiles.put(type,new DepthOfCoverageStats(DepthOfCoverageStats.calculateBinEndpoints(start,stop,nBins)));
@@ -1022,7 +1021,12 @@ class CoveragePartitioner {
         Collections.sort(identifiersByType.get(t));
     }
 
-    public void initialize(boolean useDels, boolean omitLocusTable) {
+    /**
+     * @param useDels
+     * @param omitLocusTable
+     * @param readGroups the read groups indexed by the ReadGroupBaseCounts given to update()
+     */
+    public void initialize(boolean useDels, boolean omitLocusTable, List<SAMReadGroupRecord> readGroups) {
         for ( DoCOutputType.Partition t : types ) {
             if ( useDels ) {
                 coverageProfiles.get(t).initializeDeletions();
@@ -1030,15 +1034,29 @@ class CoveragePartitioner {
             if ( ! omitLocusTable ) {
                 coverageProfiles.get(t).initializeLocusCounts();
             }
+            locusCountsByType.put(t,new LocusCounts(t,coverageProfiles.get(t),identifiersByType.get(t),readGroups,useDels));
         }
     }
 
-    public void update(Map<DoCOutputType.Partition,Map<String,int[]>> countsByIdentifierByType) {
+    /**
+     * Adds the counts at a locus to the coverage of each type; they're kept as the locus counts until the next update
+     *
+     * @param countsByReadGroup
+     */
+    public void update(ReadGroupBaseCounts countsByReadGroup) {
         for ( DoCOutputType.Partition t : types ) {
-            coverageProfiles.get(t).update(countsByIdentifierByType.get(t));
+            locusCountsByType.get(t).update(countsByReadGroup,coverageProfiles.get(t));
         }
     }
 
+    /**
+     * @param t
+     * @return the counts of each identifier of type t at the last locus given to update()
+     */
+    public LocusCounts getLocusCounts(DoCOutputType.Partition t) {
+        return locusCountsByType.get(t);
+    }
+
     public Set<String> getAllIdentifiers() {
         return allIdentifiers;
     }
@@ -1046,4 +1064,100 @@ class CoveragePartitioner {
     public Map<DoCOutputType.Partition,List<String>> getIdentifiersByType() {
         return identifiersByType;
     }
+
+    /**
+     * The base counts at a locus of the identifiers of one partition type, indexed like the DepthOfCoverageStats of
+     * the type, and summed up from the counts of the read groups belonging to each identifier.
+     */
+    static class LocusCounts {
+        private final int[] identifierOfReadGroup; // the stats index of the identifier each read group belongs to
+        private final int[] sortedIdentifiers; // the stats index of each identifier, in the sorted order of the identifiers
+        private final boolean includeDeletions;
+        private final int[] counts;
+        private final int[] seen; // the stats indices of the identifiers with reads at the locus
+        private final boolean[] isSeen;
+        private final int[] depths;
+        private int nSeen = 0;
+
+        LocusCounts(DoCOutputType.Partition type, DepthOfCoverageStats stats, List<String> sortedIdentifiers, List<SAMReadGroupRecord> readGroups, boolean includeDeletions) {
+            this.identifierOfReadGroup = new int[readGroups.size()];
+            for ( int rg = 0; rg < readGroups.size(); rg++ ) {
+                identifierOfReadGroup[rg] = stats.getSampleIndex(CoverageUtils.getTypeID(readGroups.get(rg),type));
+            }
+            this.sortedIdentifiers = new int[sortedIdentifiers.size()];
+            for ( int i = 0; i < sortedIdentifiers.size(); i++ ) {
+                this.sortedIdentifiers[i] = stats.getSampleIndex(sortedIdentifiers.get(i));
+            }
+            this.includeDeletions = includeDeletions;
+
+            int nIdentifiers = stats.getAllSamples().size();
+            counts = new int[nIdentifiers*ReadGroupBaseCounts.COUNTS_PER_READ_GROUP];
+            seen = new int[nIdentifiers];
+            isSeen = new boolean[nIdentifiers];
+            depths = new int[nIdentifiers];
+        }
+
+        private void update(ReadGroupBaseCounts countsByReadGroup, DepthOfCoverageStats stats) {
+            // clear out the last locus, which only touched the identifiers seen there
+            for ( int i = 0; i < nSeen; i++ ) {
+                Arrays.fill(counts,seen[i]*ReadGroupBaseCounts.COUNTS_PER_READ_GROUP,(seen[i]+1)*ReadGroupBaseCounts.COUNTS_PER_READ_GROUP,0);
+                isSeen[seen[i]] = false;
+            }
+            nSeen = 0;
+
+            for ( int i = 0; i < countsByReadGroup.size(); i++ ) {
+                int id = identifierOfReadGroup[countsByReadGroup.getReadGroup(i)];
+                if ( id < 0 ) {
+                    continue;
+                }
+                if ( ! isSeen[id] ) {
+                    isSeen[id] = true;
+                    seen[nSeen++] = id;
+                }
+                for ( int b = 0; b < ReadGroupBaseCounts.COUNTS_PER_READ_GROUP; b++ ) {
+                    counts[id*ReadGroupBaseCounts.COUNTS_PER_READ_GROUP+b] += countsByReadGroup.getCount(i,b);
+                }
+            }
+
+            for ( int i = 0; i < nSeen; i++ ) {
+                int offset = seen[i]*ReadGroupBaseCounts.COUNTS_PER_READ_GROUP;
+                int depth = 0;
+                for ( int b = 0; b < ReadGroupBaseCounts.COUNTS_PER_READ_GROUP; b++ ) {
+                    if ( includeDeletions || b != BaseUtils.DELETION_INDEX ) {
+                        depth += counts[offset+b];
+                    }
+                }
+                depths[i] = depth;
+            }
+            stats.updateDepths(seen,depths,nSeen);
+        }
+
+        /**
+         * @return the number of identifiers of the type
+         */
+        public int size() {
+            return sortedIdentifiers.length;
+        }
+
+        /**
+         * @param i the position of the identifier in the sorted identifiers of the type
+         * @param baseIndex the BaseUtils index of the base
+         * @return the number of those bases at the locus
+         */
+        public int getCount(int i, int baseIndex) {
+            return counts[sortedIdentifiers[i]*ReadGroupBaseCounts.COUNTS_PER_READ_GROUP+baseIndex];
+        }
+
+        /**
+         * @param i the position of the identifier in the sorted identifiers of the type
+         * @return the number of all bases at the locus, deletions included
+         */
+        public long getTotalCount(int i) {
+            long total = 0;
+            for ( int b = 0; b < ReadGroupBaseCounts.COUNTS_PER_READ_GROUP; b++ ) {
+                total += getCount(i,b);
+            }
+            return total;
+        }
+    }
 }
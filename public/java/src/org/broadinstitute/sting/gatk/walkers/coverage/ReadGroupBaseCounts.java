@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2012 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.walkers.coverage;
+
+import net.sf.samtools.SAMReadGroupRecord;
+import org.broadinstitute.sting.gatk.contexts.AlignmentContext;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.pileup.PileupElement;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The counts of bases at a locus from each read group with reads there.
+ *
+ * Read groups are given by their index in the list of read groups the counts were made with, and the six counts of
+ * each are indexed by the index fields of BaseUtils, as in CoverageUtils.
+ */
+class ReadGroupBaseCounts {
+    public static final int COUNTS_PER_READ_GROUP = 6;
+
+    private final int[] readGroups;
+    private final int[] counts;
+
+    private ReadGroupBaseCounts(int[] readGroups, int[] counts) {
+        this.readGroups = readGroups;
+        this.counts = counts;
+    }
+
+    /**
+     * @return the number of read groups with counted bases at the locus
+     */
+    public int size() {
+        return readGroups.length;
+    }
+
+    /**
+     * @param i which of the read groups at the locus
+     * @return the index of the i-th read group at the locus
+     */
+    public int getReadGroup(int i) {
+        return readGroups[i];
+    }
+
+    /**
+     * @param i which of the read groups at the locus
+     * @param baseIndex the BaseUtils index of the base
+     * @return the number of those bases from the i-th read group at the locus
+     */
+    public int getCount(int i, int baseIndex) {
+        return counts[i*COUNTS_PER_READ_GROUP+baseIndex];
+    }
+
+    /**
+     * Counts the bases in pileups by read group, with the same filters as CoverageUtils.getBaseCountsByReadGroup.
+     *
+     * A counter may be shared between threads; each thread counts in its own scratch space.
+     */
+    static class Counter {
+        private final Map<String,Integer> readGroupIndices = new HashMap<String,Integer>();
+        private final int minMapQ;
+        private final int maxMapQ;
+        private final byte minBaseQ;
+        private final byte maxBaseQ;
+
+        private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+            protected Scratch initialValue() {
+                return new Scratch(readGroupIndices.size());
+            }
+        };
+
+        /**
+         * The counts of all of the read groups, of which only those seen at the current locus are nonzero
+         */
+        private static class Scratch {
+            final int[] counts;
+            final boolean[] isSeen;
+            final int[] seen;
+            int nSeen = 0;
+            String lastReadGroupID = null;
+            int lastReadGroup = -1;
+
+            Scratch(int nReadGroups) {
+                counts = new int[nReadGroups*COUNTS_PER_READ_GROUP];
+                isSeen = new boolean[nReadGroups];
+                seen = new int[nReadGroups];
+            }
+        }
+
+        public Counter(List<SAMReadGroupRecord> readGroups, int minMapQ, int maxMapQ, byte minBaseQ, byte maxBaseQ) {
+            for ( SAMReadGroupRecord rg : readGroups ) {
+                readGroupIndices.put(rg.getReadGroupId(),readGroupIndices.size());
+            }
+            this.minMapQ = minMapQ;
+            this.maxMapQ = maxMapQ;
+            this.minBaseQ = minBaseQ;
+            this.maxBaseQ = maxBaseQ;
+        }
+
+        public ReadGroupBaseCounts count(AlignmentContext context) {
+            Scratch s = scratch.get();
+            for ( PileupElement e : context.getBasePileup() ) {
+                if ( e.getMappingQual() >= minMapQ && e.getMappingQual() <= maxMapQ && ( e.getQual() >= minBaseQ && e.getQual() <= maxBaseQ || e.isDeletion() ) ) {
+                    int rg = getReadGroupIndex(s,e.getRead());
+                    int offset = rg*COUNTS_PER_READ_GROUP;
+                    if ( ! s.isSeen[rg] ) {
+                        s.isSeen[rg] = true;
+                        s.seen[s.nSeen++] = rg;
+                    }
+                    CoverageUtils.updateCounts(s.counts,offset,e);
+                }
+            }
+
+            // copy out the read groups we saw, zeroing their scratch counts for the next locus
+            int[] readGroups = new int[s.nSeen];
+            int[] counts = new int[s.nSeen*COUNTS_PER_READ_GROUP];
+            for ( int i = 0; i < s.nSeen; i++ ) {
+                int offset = s.seen[i]*COUNTS_PER_READ_GROUP;
+                readGroups[i] = s.seen[i];
+                System.arraycopy(s.counts,offset,counts,i*COUNTS_PER_READ_GROUP,COUNTS_PER_READ_GROUP);
+                for ( int b = 0; b < COUNTS_PER_READ_GROUP; b++ ) {
+                    s.counts[offset+b] = 0;
+                }
+                s.isSeen[s.seen[i]] = false;
+            }
+            s.nSeen = 0;
+
+            return new ReadGroupBaseCounts(readGroups,counts);
+        }
+
+        private int getReadGroupIndex(Scratch s, GATKSAMRecord read) {
+            // reads at a locus mostly come from a few read groups, so remember the last one looked up
+            SAMReadGroupRecord rg = read.getReadGroup();
+            if ( rg != null && rg.getReadGroupId().equals(s.lastReadGroupID) ) {
+                return s.lastReadGroup;
+            }
+
+            Integer index = rg == null ? null : readGroupIndices.get(rg.getReadGroupId());
+            if ( index == null ) {
+                String msg = "Read "+read.getReadName()+" lacks read group information; Please associate all reads with read groups";
+                throw new UserException.MalformedBAM(read, msg);
+            }
+            s.lastReadGroupID = rg.getReadGroupId();
+            s.lastReadGroup = index;
+            return index;
+        }
+    }
+}
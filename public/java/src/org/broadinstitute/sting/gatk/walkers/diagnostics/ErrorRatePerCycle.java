@@ -91,7 +91,7 @@ public class ErrorRatePerCycle extends LocusWalker<Integer, Integer> {
             this.cycle = cycle;
         }
 
-        // Must overload hashCode and equals to properly work with GATKReportColumn
+        // Must overload hashCode and equals to properly work as a GATKReportTable primary key
         @Override
         public int hashCode() {
             return readGroup.hashCode() + 33 * cycle;
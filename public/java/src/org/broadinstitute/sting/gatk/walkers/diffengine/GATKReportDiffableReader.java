@@ -76,7 +76,7 @@ public class GATKReportDiffableReader implements DiffableReader {
             columnRoot.add("Displayable", column.isDisplayable());
 
             int n = 1;
-            for (Object elt : column.values()) {
+            for (Object elt : column.getValues()) {
                 String name = column.getColumnName() + n++;
                 columnRoot.add(name, elt.toString());
             }
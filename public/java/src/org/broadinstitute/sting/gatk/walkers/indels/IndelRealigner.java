@@ -292,10 +292,13 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     // fraction of mismatches that need to no longer mismatch for a column to be considered cleaned
     private static final double MISMATCH_COLUMN_CLEANED_FRACTION = 0.75;
 
-    private static final double SW_MATCH = 30.0;      // 1.0;
-    private static final double SW_MISMATCH = -10.0;  //-1.0/3.0;
-    private static final double SW_GAP = -10.0;       //-1.0-1.0/3.0;
-    private static final double SW_GAP_EXTEND = -2.0; //-1.0/.0;
+    private static final int SW_MATCH = 30;      // 1.0;
+    private static final int SW_MISMATCH = -10;  //-1.0/3.0;
+    private static final int SW_GAP = -10;       //-1.0-1.0/3.0;
+    private static final int SW_GAP_EXTEND = -2; //-1.0/.0;
+
+    // reuses its matrices from one read to the next
+    private final SWPairwiseAligner swAligner = new SWPairwiseAligner(SW_MATCH, SW_MISMATCH, SW_GAP, SW_GAP_EXTEND);
 
     // reference base padding size
     // TODO -- make this a command-line argument if the need arises
@@ -962,8 +965,8 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     private void createAndAddAlternateConsensus(final byte[] read, final Set<Consensus> altConsensesToPopulate, final byte[] reference) {
 
         // do a pairwise alignment against the reference
-         SWPairwiseAlignment swConsensus = new SWPairwiseAlignment(reference, read, SW_MATCH, SW_MISMATCH, SW_GAP, SW_GAP_EXTEND);
-         Consensus c = createAlternateConsensus(swConsensus.getAlignmentStart2wrt1(), swConsensus.getCigar(), reference, read);
+         swAligner.align(reference, read);
+         Consensus c = createAlternateConsensus(swAligner.getAlignmentStart2wrt1(), swAligner.getCigar(), reference, read);
          if ( c != null )
              altConsensesToPopulate.add(c);
     }
@@ -979,8 +982,8 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
          }
          // do a pairwise alignment against the reference
          SWalignmentRuns++;
-         SWPairwiseAlignment swConsensus = new SWPairwiseAlignment(reference, read.getReadBases(), SW_MATCH, SW_MISMATCH, SW_GAP, SW_GAP_EXTEND);
-         Consensus c = createAlternateConsensus(swConsensus.getAlignmentStart2wrt1(), swConsensus.getCigar(), reference, read.getReadBases());
+         swAligner.align(reference, read.getReadBases());
+         Consensus c = createAlternateConsensus(swAligner.getAlignmentStart2wrt1(), swAligner.getCigar(), reference, read.getReadBases());
          if ( c != null ) {
              altConsensesToPopulate.add(c);
              SWalignmentSuccess++;
@@ -64,6 +64,14 @@ public class PairHMMIndelErrorModel {
     private final byte[] GAP_OPEN_PROB_TABLE;
     private final byte[] GAP_CONT_PROB_TABLE;
 
+    // PairHMMs hold on to their matrices between reads, so each genotyping thread gets its own
+    private final ThreadLocal<PairHMM> pairHMM = new ThreadLocal<PairHMM>() {
+        @Override
+        protected PairHMM initialValue() {
+            return new PairHMM(bandedLikelihoods);
+        }
+    };
+
     /////////////////////////////
     // Private Member Variables
     /////////////////////////////
@@ -164,11 +172,11 @@ public class PairHMMIndelErrorModel {
             }
         }
     }
-    public synchronized double[] computeReadHaplotypeLikelihoods(ReadBackedPileup pileup, LinkedHashMap<Allele,Haplotype> haplotypeMap, ReferenceContext ref, int eventLength, HashMap<PileupElement, LinkedHashMap<Allele,Double>> indelLikelihoodMap){
+    public double[] computeReadHaplotypeLikelihoods(ReadBackedPileup pileup, LinkedHashMap<Allele,Haplotype> haplotypeMap, ReferenceContext ref, int eventLength, HashMap<PileupElement, LinkedHashMap<Allele,Double>> indelLikelihoodMap){
         final int numHaplotypes = haplotypeMap.size();
         final double readLikelihoods[][] = new double[pileup.getNumberOfElements()][numHaplotypes];
         final int readCounts[] = new int[pileup.getNumberOfElements()];
-        final PairHMM pairHMM = new PairHMM(bandedLikelihoods);
+        final PairHMM pairHMM = this.pairHMM.get();
 
         int readIdx=0;
         for (PileupElement p: pileup) {
@@ -283,9 +291,8 @@ public class PairHMMIndelErrorModel {
                     final byte[] readQuals = Arrays.copyOfRange(unclippedReadQuals,numStartSoftClippedBases, unclippedReadBases.length-numEndSoftClippedBases);
                     int j=0;
 
-                    // initialize path metric and traceback memories for likelihood computation
-                    double[][] matchMetricArray = null, XMetricArray = null, YMetricArray = null;
-                    byte[] previousHaplotypeSeen = null;
+                    // the first haplotype caches the values derived from the read, for the rest to reuse
+                    boolean firstHaplotype = true;
                     final byte[] contextLogGapOpenProbabilities = new byte[readBases.length];
                     final byte[] contextLogGapContinuationProbabilities  = new byte[readBases.length];
 
@@ -318,34 +325,17 @@ public class PairHMMIndelErrorModel {
                             final byte[] haplotypeBases = Arrays.copyOfRange(haplotype.getBases(),
                                     (int)indStart, (int)indStop);
 
-                            final int X_METRIC_LENGTH = readBases.length+2;
-                            final int Y_METRIC_LENGTH = haplotypeBases.length+2;
-
-                            if (matchMetricArray == null) {
-                                //no need to reallocate arrays for each new haplotype, as length won't change
-                                matchMetricArray = new double[X_METRIC_LENGTH][Y_METRIC_LENGTH];
-                                XMetricArray = new double[X_METRIC_LENGTH][Y_METRIC_LENGTH];
-                                YMetricArray = new double[X_METRIC_LENGTH][Y_METRIC_LENGTH];
-
-
-                                PairHMM.initializeArrays(matchMetricArray, XMetricArray, YMetricArray, X_METRIC_LENGTH);
-                            }
-
-                            int startIndexInHaplotype = 0;
-                            if (previousHaplotypeSeen != null)
-                                startIndexInHaplotype = computeFirstDifferingPosition(haplotypeBases, previousHaplotypeSeen);
-                            previousHaplotypeSeen = haplotypeBases.clone();
-
+                            // consecutive haplotypes share the matrix columns for their common prefix
                             readLikelihood = pairHMM.computeReadLikelihoodGivenHaplotype(haplotypeBases, readBases, readQuals,
                                     contextLogGapOpenProbabilities, contextLogGapOpenProbabilities, contextLogGapContinuationProbabilities,
-                                    startIndexInHaplotype, matchMetricArray, XMetricArray, YMetricArray);
+                                    firstHaplotype);
+                            firstHaplotype = false;
 
 
                             if (DEBUG) {
                                 System.out.println("H:"+new String(haplotypeBases));
                                 System.out.println("R:"+new String(readBases));
                                 System.out.format("L:%4.2f\n",readLikelihood);
-                                System.out.format("StPos:%d\n", startIndexInHaplotype);
                             }
                         readEl.put(a,readLikelihood);
                         readLikelihoods[readIdx][j++] = readLikelihood;
@@ -374,17 +364,6 @@ public class PairHMMIndelErrorModel {
         return !((read.getAlignmentStart() >= eventStartPos-eventLength && read.getAlignmentStart() <= eventStartPos+1) || (read.getAlignmentEnd() >= eventStartPos && read.getAlignmentEnd() <= eventStartPos + eventLength));
     }
 
-    private int computeFirstDifferingPosition(byte[] b1, byte[] b2) {
-        if (b1.length != b2.length)
-            return 0; // sanity check
-
-        for (int i=0; i < b1.length; i++ ){
-            if ( b1[i]!= b2[i] )
-                return i;
-        }
-        return b1.length;
-    }
-
     private static double[] getHaplotypeLikelihoods(final int numHaplotypes, final int readCounts[], final double readLikelihoods[][]) {
         final double[][] haplotypeLikehoodMatrix = new double[numHaplotypes][numHaplotypes];
 
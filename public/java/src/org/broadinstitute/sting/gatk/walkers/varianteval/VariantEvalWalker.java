@@ -211,7 +211,7 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
     // Public constants
     private static String ALL_SAMPLE_NAME = "all";
 
-    // the number of processed bp for this walker
+    // the number of processed bp for this walker, summed over all threads once the traversal is done
     long nProcessedLoci = 0;
 
     // Utility class
@@ -224,6 +224,14 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
     StratificationManager<VariantStratifier, EvaluationContext> stratManager;
     //Set<DynamicStratification> dynamicStratifications = Collections.emptySet();
 
+    // The evaluation modules run in each evaluation context
+    private Set<Class<? extends VariantEvaluator>> evaluationClasses;
+
+    // The evaluation state of each thread calling map, so that threads never share an evaluator.  The first thread
+    // updates the contexts in stratManager itself; the others are combined into them when the traversal is done.
+    private List<EvaluationState> evaluationStates;
+    private ThreadLocal<EvaluationState> evaluationState;
+
     /**
      * Initialize the stratifications, evaluations, evaluation contexts, and reporting object
      */
@@ -293,6 +301,14 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
         // Initialize the evaluation contexts
         createStratificationStates(stratificationObjects, evaluationClasses);
 
+        // each thread has its own evaluators, so all of them must be able to combine their results
+        if ( getToolkit().getArguments().numberOfThreads > 1 ) {
+            for ( final VariantEvaluator ve : stratManager.get(0).getVariantEvaluators() ) {
+                if ( ! ve.supportsCombine() )
+                    throw new UserException.BadArgumentValue("nt", "The evaluation module " + ve.getSimpleName() + " can't combine the results of several threads, so it can only be run with -nt 1");
+            }
+        }
+
         // Load ancestral alignments
         if (ancestralAlignmentsFile != null) {
             try {
@@ -324,14 +340,51 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
     final void createStratificationStates(final List<VariantStratifier> stratificationObjects, final Set<Class<? extends VariantEvaluator>> evaluationObjects) {
         final List<VariantStratifier> strats = new ArrayList<VariantStratifier>(stratificationObjects);
         stratManager = new StratificationManager<VariantStratifier, EvaluationContext>(strats);
+        this.evaluationClasses = evaluationObjects;
 
         logger.info("Creating " + stratManager.size() + " combinatorial stratification states");
         for ( int i = 0; i < stratManager.size(); i++ ) {
             EvaluationContext ec = new EvaluationContext(this, evaluationObjects);
             stratManager.set(i, ec);
         }
-    }    
-    
+
+        evaluationStates = new ArrayList<EvaluationState>();
+        evaluationState = new ThreadLocal<EvaluationState>() {
+            @Override
+            protected EvaluationState initialValue() {
+                return newEvaluationState();
+            }
+        };
+    }
+
+    /**
+     * The evaluation contexts updated by one thread, indexed by stratification key
+     */
+    private class EvaluationState {
+        final EvaluationContext[] contexts = new EvaluationContext[stratManager.size()];
+        long nProcessedLoci = 0;
+
+        /**
+         * @param key a stratification key
+         * @return this thread's context for key, created on first use
+         */
+        EvaluationContext getContext(final int key) {
+            if ( contexts[key] == null )
+                contexts[key] = new EvaluationContext(VariantEvalWalker.this, evaluationClasses);
+            return contexts[key];
+        }
+    }
+
+    private synchronized EvaluationState newEvaluationState() {
+        final EvaluationState state = new EvaluationState();
+        if ( evaluationStates.isEmpty() ) {
+            for ( int key = 0; key < stratManager.size(); key++ )
+                state.contexts[key] = stratManager.get(key);
+        }
+        evaluationStates.add(state);
+        return state;
+    }
+
     public final Map<String, IntervalTree<GenomeLoc>> createIntervalTreeByContig(final IntervalBinding<Feature> intervals) {
         final Map<String, IntervalTree<GenomeLoc>> byContig = new HashMap<String, IntervalTree<GenomeLoc>>();
 
@@ -355,9 +408,8 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
     public Integer map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         // we track the processed bp and expose this for modules instead of wasting CPU power on calculating
         // the same thing over and over in evals that want the processed bp
-        synchronized (this) {
-            nProcessedLoci += context.getSkippedBases() + (ref == null ? 0 : 1);
-        }
+        final EvaluationState state = evaluationState.get();
+        state.nProcessedLoci += context.getSkippedBases() + (ref == null ? 0 : 1);
 
         if (tracker != null) {
             String aastr = (ancestralAlignments == null) ? null : new String(ancestralAlignments.getSubsequenceAt(ref.getLocus().getContig(), ref.getLocus().getStart(), ref.getLocus().getStop()).getBases());
@@ -406,16 +458,12 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
                             for ( EvaluationContext nec : getEvaluationContexts(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), sampleName) ) {
 
                                 // eval against the comp
-                                synchronized (nec) {
-                                    nec.apply(tracker, ref, context, comp, eval);
-                                }
+                                nec.apply(tracker, ref, context, comp, eval);
 
                                 // eval=null against all comps of different type that aren't bound to another eval
                                 for ( VariantContext otherComp : compSet ) {
                                     if ( otherComp != comp && ! compHasMatchingEval(otherComp, evalSetBySample) ) {
-                                        synchronized (nec) {
-                                            nec.apply(tracker, ref, context, otherComp, null);
-                                        }
+                                        nec.apply(tracker, ref, context, otherComp, null);
                                     }
                                 }
                             }
@@ -477,7 +525,13 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
         for ( final VariantStratifier vs : stratManager.getStratifiers() ) {
             states.add(vs.getRelevantStates(ref, tracker, comp, compName, eval, evalName, sampleName));
         }
-        return stratManager.values(states);
+
+        // the calling thread's own contexts for those keys
+        final EvaluationState state = evaluationState.get();
+        final Collection<EvaluationContext> contexts = new LinkedList<EvaluationContext>();
+        for ( final int key : stratManager.getKeys(states) )
+            contexts.add(state.getContext(key));
+        return contexts;
     }
 
 
@@ -552,7 +606,17 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
      */
     public void onTraversalDone(Integer result) {
         logger.info("Finalizing variant report");
-        
+
+        // combine the results of every other thread into the contexts of the first
+        for ( final EvaluationState state : evaluationStates ) {
+            nProcessedLoci += state.nProcessedLoci;
+            for ( int key = 0; key < stratManager.size(); key++ ) {
+                final EvaluationContext nec = state.contexts[key];
+                if ( nec != null && nec != stratManager.get(key) )
+                    stratManager.get(key).combine(nec);
+            }
+        }
+
         // go through the evaluations and finalize them
         for ( final EvaluationContext nec : stratManager.values() )
             for ( final VariantEvaluator ve : nec.getVariantEvaluators() )
@@ -45,6 +45,19 @@ public class CompOverlap extends VariantEvaluator implements StandardEval {
     public double compRate() { return rate(nVariantsAtComp, nEvalVariants); }
     public double concordanceRate() { return rate(nConcordant, nVariantsAtComp); }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator o) {
+        final CompOverlap other = (CompOverlap)o;
+        nEvalVariants += other.nEvalVariants;
+        nVariantsAtComp += other.nVariantsAtComp;
+        nConcordant += other.nConcordant;
+    }
+
     public void finalizeEvaluation() {
         compRate = 100 * compRate();
         concordantRate = 100 * concordanceRate();
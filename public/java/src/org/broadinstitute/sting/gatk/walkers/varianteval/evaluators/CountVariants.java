@@ -178,6 +178,32 @@ public class CountVariants extends VariantEvaluator implements StandardEval {
         }
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator o) {
+        final CountVariants other = (CountVariants)o;
+        nCalledLoci += other.nCalledLoci;
+        nRefLoci += other.nRefLoci;
+        nVariantLoci += other.nVariantLoci;
+        nSNPs += other.nSNPs;
+        nMNPs += other.nMNPs;
+        nInsertions += other.nInsertions;
+        nDeletions += other.nDeletions;
+        nComplex += other.nComplex;
+        nSymbolic += other.nSymbolic;
+        nMixed += other.nMixed;
+        nNoCalls += other.nNoCalls;
+        nHets += other.nHets;
+        nHomRef += other.nHomRef;
+        nHomVar += other.nHomVar;
+        nSingletons += other.nSingletons;
+        nHomDerived += other.nHomDerived;
+    }
+
     public void finalizeEvaluation() {
         nProcessedLoci = getWalker().getnProcessedLoci();
         variantRate = perLocusRate(nVariantLoci);
@@ -157,6 +157,19 @@ public class GenotypeConcordance extends VariantEvaluator {
         return sum;
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator o) {
+        final GenotypeConcordance other = (GenotypeConcordance)o;
+        for ( int i = 0; i < truthByCalledGenotypeCounts.length; i++ )
+            for ( int j = 0; j < truthByCalledGenotypeCounts[i].length; j++ )
+                truthByCalledGenotypeCounts[i][j] += other.truthByCalledGenotypeCounts[i][j];
+    }
+
     @Override
     public void finalizeEvaluation() {
         final EnumSet<Genotype.Type> allVariantGenotypes = EnumSet.of(Genotype.Type.HOM_VAR, Genotype.Type.HET);
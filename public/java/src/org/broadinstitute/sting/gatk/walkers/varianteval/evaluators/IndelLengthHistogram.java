@@ -65,6 +65,19 @@ public class IndelLengthHistogram extends VariantEvaluator implements StandardEv
         }
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator o) {
+        final IndelLengthHistogram other = (IndelLengthHistogram)o;
+        nIndels += other.nIndels;
+        for ( final Map.Entry<Integer, Integer> count : other.counts.entrySet() )
+            counts.put(count.getKey(), counts.get(count.getKey()) + count.getValue());
+    }
+
     @Override
     public void finalizeEvaluation() {
         if ( asFrequencies ) {
@@ -236,6 +236,38 @@ public class IndelSummary extends VariantEvaluator implements StandardEval {
         return;
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator o) {
+        final IndelSummary other = (IndelSummary)o;
+        n_SNPs += other.n_SNPs;
+        n_singleton_SNPs += other.n_singleton_SNPs;
+        n_indels += other.n_indels;
+        n_singleton_indels += other.n_singleton_indels;
+        n_indels_matching_gold_standard += other.n_indels_matching_gold_standard;
+        nIndelSites += other.nIndelSites;
+        n_multiallelic_indel_sites += other.n_multiallelic_indel_sites;
+        n_novel_indels += other.n_novel_indels;
+        n_insertions += other.n_insertions;
+        n_deletions += other.n_deletions;
+        n_large_deletions += other.n_large_deletions;
+        n_large_insertions += other.n_large_insertions;
+        n_coding_indels_frameshifting += other.n_coding_indels_frameshifting;
+        n_coding_indels_in_frame += other.n_coding_indels_in_frame;
+        nSNPHets += other.nSNPHets;
+        nSNPHoms += other.nSNPHoms;
+        nIndelHets += other.nIndelHets;
+        nIndelHoms += other.nIndelHoms;
+        for ( int i = 0; i < insertionCountByLength.length; i++ ) {
+            insertionCountByLength[i] += other.insertionCountByLength[i];
+            deletionCountByLength[i] += other.deletionCountByLength[i];
+        }
+    }
+
     public void finalizeEvaluation() {
         percent_of_sites_with_more_than_2_alleles = Utils.formattedPercent(n_multiallelic_indel_sites, nIndelSites);
         SNP_to_indel_ratio = Utils.formattedRatio(n_SNPs, n_indels);
@@ -118,6 +118,44 @@ public class MendelianViolationEvaluator extends VariantEvaluator {
         return 1;   // we only need to see each eval track
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator o) {
+        final MendelianViolationEvaluator other = (MendelianViolationEvaluator)o;
+        nVariants += other.nVariants;
+        nSkipped += other.nSkipped;
+        nFamCalled += other.nFamCalled;
+        nVarFamCalled += other.nVarFamCalled;
+        nLowQual += other.nLowQual;
+        nNoCall += other.nNoCall;
+        nLociViolations += other.nLociViolations;
+        nViolations += other.nViolations;
+        mvRefRef_Var += other.mvRefRef_Var;
+        mvRefRef_Het += other.mvRefRef_Het;
+        mvRefHet_Var += other.mvRefHet_Var;
+        mvRefVar_Var += other.mvRefVar_Var;
+        mvRefVar_Ref += other.mvRefVar_Ref;
+        mvVarHet_Ref += other.mvVarHet_Ref;
+        mvVarVar_Ref += other.mvVarVar_Ref;
+        mvVarVar_Het += other.mvVarVar_Het;
+        HomRefHomRef_HomRef += other.HomRefHomRef_HomRef;
+        HetHet_Het += other.HetHet_Het;
+        HetHet_HomRef += other.HetHet_HomRef;
+        HetHet_HomVar += other.HetHet_HomVar;
+        HomVarHomVar_HomVar += other.HomVarHomVar_HomVar;
+        HomRefHomVAR_Het += other.HomRefHomVAR_Het;
+        HetHet_inheritedRef += other.HetHet_inheritedRef;
+        HetHet_inheritedVar += other.HetHet_inheritedVar;
+        HomRefHet_inheritedRef += other.HomRefHet_inheritedRef;
+        HomRefHet_inheritedVar += other.HomRefHet_inheritedVar;
+        HomVarHet_inheritedRef += other.HomVarHet_inheritedRef;
+        HomVarHet_inheritedVar += other.HomVarHet_inheritedVar;
+    }
+
     public void update1(VariantContext vc, RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         if (vc.isBiallelic() && vc.hasGenotypes()) { // todo -- currently limited to biallelic loci
 
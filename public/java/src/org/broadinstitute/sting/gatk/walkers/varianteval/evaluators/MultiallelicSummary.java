@@ -148,6 +148,26 @@ public class MultiallelicSummary extends VariantEvaluator implements StandardEva
         // TODO -- implement me
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator o) {
+        final MultiallelicSummary other = (MultiallelicSummary)o;
+        nSNPs += other.nSNPs;
+        nMultiSNPs += other.nMultiSNPs;
+        nIndels += other.nIndels;
+        nMultiIndels += other.nMultiIndels;
+        nTi += other.nTi;
+        nTv += other.nTv;
+        knownSNPsPartial += other.knownSNPsPartial;
+        knownSNPsComplete += other.knownSNPsComplete;
+        knownIndelsPartial += other.knownIndelsPartial;
+        knownIndelsComplete += other.knownIndelsComplete;
+    }
+
     public void finalizeEvaluation() {
         nProcessedLoci = getWalker().getnProcessedLoci();
         processedMultiSnpRatio = (double)nMultiSNPs / (double)nProcessedLoci;
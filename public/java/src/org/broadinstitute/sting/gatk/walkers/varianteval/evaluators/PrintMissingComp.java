@@ -44,6 +44,17 @@ public class PrintMissingComp extends VariantEvaluator {
         return 2;   // we need to see each eval track and each comp track
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator o) {
+        final PrintMissingComp other = (PrintMissingComp)o;
+        nMissing += other.nMissing;
+    }
+
     public void update2(VariantContext eval, VariantContext comp, RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         final boolean compIsGood = comp != null && comp.isNotFiltered() && comp.isSNP();
         final boolean evalIsGood = eval != null && eval.isSNP();
@@ -105,6 +105,20 @@ public class ThetaVariantEvaluator extends VariantEvaluator {
         }
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator o) {
+        final ThetaVariantEvaluator other = (ThetaVariantEvaluator)o;
+        numSites += other.numSites;
+        totalHet += other.totalHet;
+        thetaRegionNumSites += other.thetaRegionNumSites;
+        totalAvgDiffs += other.totalAvgDiffs;
+    }
+
     @Override
     public void finalizeEvaluation() {
 
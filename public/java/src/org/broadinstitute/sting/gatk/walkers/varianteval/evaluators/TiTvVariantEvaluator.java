@@ -62,6 +62,22 @@ public class TiTvVariantEvaluator extends VariantEvaluator implements StandardEv
         if (vc2 != null) updateTiTv(vc2, true);
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator o) {
+        final TiTvVariantEvaluator other = (TiTvVariantEvaluator)o;
+        nTi += other.nTi;
+        nTv += other.nTv;
+        nTiInComp += other.nTiInComp;
+        nTvInComp += other.nTvInComp;
+        nTiDerived += other.nTiDerived;
+        nTvDerived += other.nTvDerived;
+    }
+
     @Override
     public void finalizeEvaluation() {
         // the ti/tv ratio needs to be set (it's not calculated per-variant).
@@ -118,6 +118,14 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
             get(type).put(sample, count + 1);
         }
 
+        public final void add(final TypeSampleMap other) {
+            for ( final Map.Entry<Type, Map<String, Integer>> byType : other.entrySet() ) {
+                final Map<String, Integer> bySample = get(byType.getKey());
+                for ( final Map.Entry<String, Integer> pair : byType.getValue().entrySet() )
+                    bySample.put(pair.getKey(), bySample.get(pair.getKey()) + pair.getValue());
+            }
+        }
+
         public final int all(Type type) {
             return get(type).get(ALL);
         }
@@ -251,6 +259,22 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
         return Utils.formattedNoveltyRate(known, all);
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator o) {
+        final VariantSummary other = (VariantSummary)o;
+        allVariantCounts.add(other.allVariantCounts);
+        knownVariantCounts.add(other.knownVariantCounts);
+        countsPerSample.add(other.countsPerSample);
+        transitionsPerSample.add(other.transitionsPerSample);
+        transversionsPerSample.add(other.transversionsPerSample);
+        depthPerSample.add(other.depthPerSample);
+    }
+
     public void finalizeEvaluation() {
         nProcessedLoci = getWalker().getnProcessedLoci();
         nSNPs = allVariantCounts.all(Type.SNP);
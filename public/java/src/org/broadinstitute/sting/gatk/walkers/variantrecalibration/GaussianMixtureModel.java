@@ -30,19 +30,32 @@ import cern.jet.random.Normal;
 import org.apache.log4j.Logger;
 import org.broadinstitute.sting.gatk.GenomeAnalysisEngine;
 import org.broadinstitute.sting.utils.MathUtils;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Created by IntelliJ IDEA.
  * User: rpoplin
  * Date: Mar 4, 2011
+ *
+ * The methods which fit the model take the data as a flat, row-major matrix of annotations, and run on the given
+ * executor (or on the calling thread, if it's null).  The E step is split into chunks of variants and the M step
+ * into one task per Gaussian, with each Gaussian still summing over the variants in order, so the fitted model is
+ * the same however many threads are used.  All of the random draws happen on the calling thread.
  */
 
 public class GaussianMixtureModel {
 
+    // the number of variants handled by each task in the E step
+    private final static int CHUNK_SIZE = 10000;
+
     protected final static Logger logger = Logger.getLogger(GaussianMixtureModel.class);
 
     private final ArrayList<MultivariateGaussian> gaussians;
@@ -51,6 +64,7 @@ public class GaussianMixtureModel {
     private final double priorCounts;
     private final double[] empiricalMu;
     private final Matrix empiricalSigma;
+    private final int numAnnotations;
     public boolean isModelReadyForEvaluation;
     public boolean failedToConverge = false;
 
@@ -65,6 +79,7 @@ public class GaussianMixtureModel {
         this.shrinkage = shrinkage;
         this.dirichletParameter = dirichletParameter;
         this.priorCounts = priorCounts;
+        this.numAnnotations = numAnnotations;
         empiricalMu = new double[numAnnotations];
         empiricalSigma = new Matrix(numAnnotations, numAnnotations);
         isModelReadyForEvaluation = false;
@@ -72,7 +87,7 @@ public class GaussianMixtureModel {
         empiricalSigma.setMatrix(0, empiricalMu.length - 1, 0, empiricalMu.length - 1, Matrix.identity(empiricalMu.length, empiricalMu.length).times(200.0).inverse());
     }
 
-    public void initializeRandomModel( final List<VariantDatum> data, final int numKMeansIterations ) {
+    public void initializeRandomModel( final double[] data, final int numKMeansIterations, final ExecutorService executor ) {
 
         // initialize random Gaussian means // BUGBUG: this is broken up this way to match the order of calls to rand.nextDouble() in the old code
         for( final MultivariateGaussian gaussian : gaussians ) {
@@ -81,7 +96,7 @@ public class GaussianMixtureModel {
 
         // initialize means using K-means algorithm
         logger.info( "Initializing model with " + numKMeansIterations + " k-means iterations..." );
-        initializeMeansUsingKMeans( data, numKMeansIterations );
+        initializeMeansUsingKMeans( data, numKMeansIterations, executor );
 
         // initialize uniform mixture coefficients, random covariance matrices, and initial hyperparameters
         for( final MultivariateGaussian gaussian : gaussians ) {
@@ -94,69 +109,150 @@ public class GaussianMixtureModel {
         }
     }
 
-    private void initializeMeansUsingKMeans( final List<VariantDatum> data, final int numIterations ) {
+    private void initializeMeansUsingKMeans( final double[] data, final int numIterations, final ExecutorService executor ) {
+        final int numData = data.length / numAnnotations;
+        final int[] assignments = new int[numData];
+        final int[] numAssigned = new int[gaussians.size()];
 
         int ttt = 0;
         while( ttt++ < numIterations ) {
             // E step: assign each variant to the nearest cluster
-            for( final VariantDatum datum : data ) {
-                double minDistance = Double.MAX_VALUE;
-                MultivariateGaussian minGaussian = null;
-                datum.assignment = minGaussian;
-                for( final MultivariateGaussian gaussian : gaussians ) {
-                    final double dist = gaussian.calculateDistanceFromMeanSquared( datum );
-                    if( dist < minDistance ) {
-                        minDistance = dist;
-                        minGaussian = gaussian;
+            final List<Callable<Void>> assignTasks = new ArrayList<Callable<Void>>();
+            for( final int[] chunk : chunks( numData ) ) {
+                assignTasks.add( new Callable<Void>() {
+                    public Void call() {
+                        for( int datumIndex = chunk[0]; datumIndex < chunk[1]; datumIndex++ ) {
+                            double minDistance = Double.MAX_VALUE;
+                            int minGaussian = -1;
+                            for( int gaussianIndex = 0; gaussianIndex < gaussians.size(); gaussianIndex++ ) {
+                                final double dist = gaussians.get(gaussianIndex).calculateDistanceFromMeanSquared( data, datumIndex * numAnnotations );
+                                if( dist < minDistance ) {
+                                    minDistance = dist;
+                                    minGaussian = gaussianIndex;
+                                }
+                            }
+                            assignments[datumIndex] = minGaussian;
+                        }
+                        return null;
                     }
-                }
-                datum.assignment = minGaussian;
+                });
             }
+            run( assignTasks, executor );
 
             // M step: update gaussian means based on assigned variants
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                gaussian.zeroOutMu();
-                int numAssigned = 0;
-
-                for( final VariantDatum datum : data ) {
-                    if( datum.assignment.equals(gaussian) ) {
-                        numAssigned++;
-                        gaussian.incrementMu( datum );
+            final List<Callable<Void>> meanTasks = new ArrayList<Callable<Void>>();
+            for( int iii = 0; iii < gaussians.size(); iii++ ) {
+                final int gaussianIndex = iii;
+                meanTasks.add( new Callable<Void>() {
+                    public Void call() {
+                        final MultivariateGaussian gaussian = gaussians.get(gaussianIndex);
+                        gaussian.zeroOutMu();
+                        numAssigned[gaussianIndex] = 0;
+                        for( int datumIndex = 0; datumIndex < numData; datumIndex++ ) {
+                            if( assignments[datumIndex] == gaussianIndex ) {
+                                numAssigned[gaussianIndex]++;
+                                gaussian.incrementMu( data, datumIndex * numAnnotations );
+                            }
+                        }
+                        return null;
                     }
-                }
-                if( numAssigned != 0 ) {
-                    gaussian.divideEqualsMu( ((double) numAssigned) );
+                });
+            }
+            run( meanTasks, executor );
+
+            // the empty clusters are given new random means in order, on this thread
+            for( int gaussianIndex = 0; gaussianIndex < gaussians.size(); gaussianIndex++ ) {
+                if( numAssigned[gaussianIndex] != 0 ) {
+                    gaussians.get(gaussianIndex).divideEqualsMu( ((double) numAssigned[gaussianIndex]) );
                 } else {
-                    gaussian.initializeRandomMu( GenomeAnalysisEngine.getRandomGenerator() );
+                    gaussians.get(gaussianIndex).initializeRandomMu( GenomeAnalysisEngine.getRandomGenerator() );
                 }
             }
         }
     }
 
-    public void expectationStep( final List<VariantDatum> data ) {
+    public void expectationStep( final double[] data, final ExecutorService executor ) {
 
+        final int numData = data.length / numAnnotations;
         for( final MultivariateGaussian gaussian : gaussians ) {
             gaussian.precomputeDenominatorForVariationalBayes( getSumHyperParameterLambda() );
+            gaussian.initializePVarInGaussian( numData );
         }
 
-        for( final VariantDatum datum : data ) {
-            final double[] pVarInGaussianLog10 = new double[gaussians.size()];
-            int gaussianIndex = 0;
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                final double pVarLog10 = gaussian.evaluateDatumLog10( datum );
-                pVarInGaussianLog10[gaussianIndex++] = pVarLog10;
-            }
-            final double[] pVarInGaussianNormalized = MathUtils.normalizeFromLog10( pVarInGaussianLog10, false );
-            gaussianIndex = 0;
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                gaussian.assignPVarInGaussian( pVarInGaussianNormalized[gaussianIndex++] );
-            }
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for( final int[] chunk : chunks( numData ) ) {
+            tasks.add( new Callable<Void>() {
+                public Void call() {
+                    final double[] pVarInGaussianLog10 = new double[gaussians.size()];
+                    for( int datumIndex = chunk[0]; datumIndex < chunk[1]; datumIndex++ ) {
+                        int gaussianIndex = 0;
+                        for( final MultivariateGaussian gaussian : gaussians ) {
+                            final double pVarLog10 = gaussian.evaluateDatumLog10( data, datumIndex * numAnnotations );
+                            pVarInGaussianLog10[gaussianIndex++] = pVarLog10;
+                        }
+                        final double[] pVarInGaussianNormalized = MathUtils.normalizeFromLog10( pVarInGaussianLog10, false );
+                        gaussianIndex = 0;
+                        for( final MultivariateGaussian gaussian : gaussians ) {
+                            gaussian.assignPVarInGaussian( datumIndex, pVarInGaussianNormalized[gaussianIndex++] );
+                        }
+                    }
+                    return null;
+                }
+            });
         }
+        run( tasks, executor );
     }
 
-    public void maximizationStep( final List<VariantDatum> data ) {
+    public void maximizationStep( final double[] data, final ExecutorService executor ) {
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
         for( final MultivariateGaussian gaussian : gaussians ) {
-            gaussian.maximizeGaussian( data, empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts);
+            tasks.add( new Callable<Void>() {
+                public Void call() {
+                    gaussian.maximizeGaussian( data, empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts );
+                    return null;
+                }
+            });
+        }
+        run( tasks, executor );
+    }
+
+    /**
+     * Splits the variants into contiguous chunks of CHUNK_SIZE
+     *
+     * @return the [start, end) of each chunk, in order
+     */
+    private static List<int[]> chunks( final int numData ) {
+        final List<int[]> chunks = new ArrayList<int[]>();
+        for( int start = 0; start < numData; start += CHUNK_SIZE ) {
+            chunks.add( new int[]{ start, Math.min( numData, start + CHUNK_SIZE ) } );
+        }
+        return chunks;
+    }
+
+    /**
+     * Runs the tasks on the executor and waits for all of them to finish, or runs them in order here if it's null
+     */
+    private static void run( final List<Callable<Void>> tasks, final ExecutorService executor ) {
+        try {
+            if( executor == null ) {
+                for( final Callable<Void> task : tasks ) {
+                    task.call();
+                }
+            } else {
+                for( final Future<Void> result : executor.invokeAll( tasks ) ) {
+                    result.get();
+                }
+            }
+        } catch( ExecutionException e ) {
+            if( e.getCause() instanceof RuntimeException ) { throw (RuntimeException) e.getCause(); }
+            if( e.getCause() instanceof Error ) { throw (Error) e.getCause(); }
+            throw new ReviewedStingException( "Unexpected error while fitting the Gaussian mixture model", e.getCause() );
+        } catch( InterruptedException e ) {
+            throw new ReviewedStingException( "Interrupted while fitting the Gaussian mixture model", e );
+        } catch( RuntimeException e ) {
+            throw e;
+        } catch( Exception e ) {
+            throw new ReviewedStingException( "Unexpected error while fitting the Gaussian mixture model", e );
         }
     }
 
@@ -168,10 +264,17 @@ public class GaussianMixtureModel {
         return sum;
     }
 
-    public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
+    public void evaluateFinalModelParameters( final double[] data, final ExecutorService executor ) {
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
         for( final MultivariateGaussian gaussian : gaussians ) {
-            gaussian.evaluateFinalModelParameters(data);
+            tasks.add( new Callable<Void>() {
+                public Void call() {
+                    gaussian.evaluateFinalModelParameters( data );
+                    return null;
+                }
+            });
         }
+        run( tasks, executor );
         normalizePMixtureLog10();
     }
 
@@ -27,18 +27,19 @@ package org.broadinstitute.sting.gatk.walkers.variantrecalibration;
 
 import Jama.Matrix;
 import org.apache.commons.math.special.Gamma;
-import org.broadinstitute.sting.utils.MathUtils;
-import org.broadinstitute.sting.utils.collections.ExpandingArrayList;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 
 import java.util.Arrays;
-import java.util.List;
 import java.util.Random;
 
 /**
  * Created by IntelliJ IDEA.
  * User: rpoplin
  * Date: Mar 4, 2011
+ *
+ * While the model is being fit the data is a flat, row-major matrix of annotations, one row of mu.length values per
+ * variant, and the probability of each variant in this Gaussian is kept in a parallel array.  The methods which
+ * update a Gaussian from the data only touch this Gaussian, so different Gaussians can be updated concurrently.
  */
 
 public class MultivariateGaussian {
@@ -51,12 +52,11 @@ public class MultivariateGaussian {
     public double hyperParameter_lambda;
     private double cachedDenomLog10;
     private Matrix cachedSigmaInverse;
-    final private ExpandingArrayList<Double> pVarInGaussian;
+    private double[] pVarInGaussian = null;
 
     public MultivariateGaussian( final int numAnnotations ) {
         mu = new double[numAnnotations];
         sigma = new Matrix(numAnnotations, numAnnotations);
-        pVarInGaussian = new ExpandingArrayList<Double>();
     }
 
     public void zeroOutMu() {
@@ -94,17 +94,22 @@ public class MultivariateGaussian {
         sigma.setMatrix(0, mu.length - 1, 0, mu.length - 1, tmp);
     }
 
-    public double calculateDistanceFromMeanSquared( final VariantDatum datum ) {
-        return MathUtils.distanceSquared( datum.annotations, mu );
+    public double calculateDistanceFromMeanSquared( final double[] data, final int offset ) {
+        double dist = 0.0;
+        for( int jjj = 0; jjj < mu.length; jjj++ ) {
+            final double diff = data[offset + jjj] - mu[jjj];
+            dist += diff * diff;
+        }
+        return dist;
     }
 
-    public void incrementMu( final VariantDatum datum ) {
-        incrementMu( datum, 1.0 );
+    public void incrementMu( final double[] data, final int offset ) {
+        incrementMu( data, offset, 1.0 );
     }
-    
-    public void incrementMu( final VariantDatum datum, final double prob ) {
+
+    public void incrementMu( final double[] data, final int offset, final double prob ) {
         for( int jjj = 0; jjj < mu.length; jjj++ ) {
-            mu[jjj] += prob * datum.annotations[jjj];
+            mu[jjj] += prob * data[offset + jjj];
         }
     }
 
@@ -146,41 +151,49 @@ public class MultivariateGaussian {
     }
 
     public double evaluateDatumLog10( final VariantDatum datum ) {
+        return evaluateDatumLog10( datum.annotations, 0 );
+    }
+
+    public double evaluateDatumLog10( final double[] data, final int offset ) {
+        final double[][] sigmaInverse = cachedSigmaInverse.getArray();
         double sumKernel = 0.0;
         final double[] crossProdTmp = new double[mu.length];
         Arrays.fill(crossProdTmp, 0.0);
         for( int iii = 0; iii < mu.length; iii++ ) {
             for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                crossProdTmp[iii] += (datum.annotations[jjj] - mu[jjj]) * cachedSigmaInverse.get(jjj, iii);
+                crossProdTmp[iii] += (data[offset + jjj] - mu[jjj]) * sigmaInverse[jjj][iii];
             }
         }
         for( int iii = 0; iii < mu.length; iii++ ) {
-            sumKernel += crossProdTmp[iii] * (datum.annotations[iii] - mu[iii]);
+            sumKernel += crossProdTmp[iii] * (data[offset + iii] - mu[iii]);
         }
         
         return (( -0.5 * sumKernel ) / Math.log(10.0)) + cachedDenomLog10; // This is the definition of a Gaussian PDF Log10
     }
 
-    public void assignPVarInGaussian( final double pVar ) {
-        pVarInGaussian.add( pVar );
+    public void initializePVarInGaussian( final int numData ) {
+        pVarInGaussian = new double[numData];
+    }
+
+    public void assignPVarInGaussian( final int datumIndex, final double pVar ) {
+        pVarInGaussian[datumIndex] = pVar;
     }
 
     public void resetPVarInGaussian() {
-        pVarInGaussian.clear();
+        pVarInGaussian = null;
     }
 
-    public void maximizeGaussian( final List<VariantDatum> data, final double[] empiricalMu, final Matrix empiricalSigma,
+    public void maximizeGaussian( final double[] data, final double[] empiricalMu, final Matrix empiricalSigma,
                                   final double SHRINKAGE, final double DIRICHLET_PARAMETER, final double DEGREES_OF_FREEDOM ) {
         sumProb = 1E-10;
         final Matrix wishart = new Matrix(mu.length, mu.length);
         zeroOutMu();
         zeroOutSigma();
         
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
+        for( int datumIndex = 0; datumIndex < pVarInGaussian.length; datumIndex++ ) {
+            final double prob = pVarInGaussian[datumIndex];
             sumProb += prob;
-            incrementMu( datum, prob );
+            incrementMu( data, datumIndex * mu.length, prob );
         }
         divideEqualsMu( sumProb );
 
@@ -191,17 +204,7 @@ public class MultivariateGaussian {
             }
         }
 
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
-            for( int iii = 0; iii < mu.length; iii++ ) {
-                for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, prob * (datum.annotations[iii]-mu[iii]) * (datum.annotations[jjj]-mu[jjj]));
-                }
-            }
-            sigma.plusEquals( pVarSigma );
-        }
+        incrementSigma( data );
 
         sigma.plusEquals( empiricalSigma );
         sigma.plusEquals( wishart );
@@ -217,32 +220,35 @@ public class MultivariateGaussian {
         resetPVarInGaussian(); // clean up some memory
     }
 
-    public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
+    public void evaluateFinalModelParameters( final double[] data ) {
         sumProb = 0.0;
         zeroOutMu();
         zeroOutSigma();
 
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
+        for( int datumIndex = 0; datumIndex < pVarInGaussian.length; datumIndex++ ) {
+            final double prob = pVarInGaussian[datumIndex];
             sumProb += prob;
-            incrementMu( datum, prob );
+            incrementMu( data, datumIndex * mu.length, prob );
         }
         divideEqualsMu( sumProb );
 
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
+        incrementSigma( data );
+        sigma.timesEquals( 1.0 / sumProb );
+
+        resetPVarInGaussian(); // clean up some memory
+    }
+
+    // Adds the probability-weighted scatter of every variant around mu into sigma, accumulating straight into its array
+    private void incrementSigma( final double[] data ) {
+        final double[][] sigmaArray = sigma.getArray();
+        for( int datumIndex = 0; datumIndex < pVarInGaussian.length; datumIndex++ ) {
+            final double prob = pVarInGaussian[datumIndex];
+            final int offset = datumIndex * mu.length;
             for( int iii = 0; iii < mu.length; iii++ ) {
                 for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, prob * (datum.annotations[iii]-mu[iii]) * (datum.annotations[jjj]-mu[jjj]));
+                    sigmaArray[iii][jjj] += prob * (data[offset + iii]-mu[iii]) * (data[offset + jjj]-mu[jjj]);
                 }
             }
-            sigma.plusEquals( pVarSigma );
         }
-        sigma.timesEquals( 1.0 / sumProb );
-
-        resetPVarInGaussian(); // clean up some memory
     }
-}
\ No newline at end of file
+}
@@ -50,7 +50,6 @@ public class VariantDatum implements Comparable<VariantDatum> {
     public int consensusCount;
     public GenomeLoc loc;
     public int worstAnnotation;
-    public MultivariateGaussian assignment; // used in K-means implementation 
 
     public int compareTo( final VariantDatum other ) {
         return Double.compare(this.lod, other.lod);
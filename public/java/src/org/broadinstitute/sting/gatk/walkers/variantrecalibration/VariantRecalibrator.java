@@ -192,7 +192,7 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     private VariantDataManager dataManager;
     private PrintStream tranchesStream;
     private final Set<String> ignoreInputFilterSet = new TreeSet<String>();
-    private final VariantRecalibratorEngine engine = new VariantRecalibratorEngine( VRAC );
+    private VariantRecalibratorEngine engine;
 
     //---------------------------------------------------------------------------------------------------------------
     //
@@ -202,6 +202,7 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
 
     public void initialize() {
         dataManager = new VariantDataManager( new ArrayList<String>(Arrays.asList(USE_ANNOTATIONS)), VRAC );
+        engine = new VariantRecalibratorEngine( VRAC, getToolkit().getArguments().numberOfThreads );
 
         if (RSCRIPT_FILE != null && !RScriptExecutor.RSCRIPT_EXISTS)
             Utils.warnUser(logger, String.format(
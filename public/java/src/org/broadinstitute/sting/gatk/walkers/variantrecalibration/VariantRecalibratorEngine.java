@@ -29,6 +29,8 @@ import org.apache.log4j.Logger;
 import org.broadinstitute.sting.gatk.GenomeAnalysisEngine;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by IntelliJ IDEA.
@@ -48,14 +50,18 @@ public class VariantRecalibratorEngine {
     // the unified argument collection
     final private VariantRecalibratorArgumentCollection VRAC;
 
+    // the number of threads used to fit each model
+    final private int numThreads;
+
     private final static double MIN_PROB_CONVERGENCE = 2E-2;
 
     /////////////////////////////
     // Public Methods to interface with the Engine
     /////////////////////////////
 
-    public VariantRecalibratorEngine( final VariantRecalibratorArgumentCollection VRAC ) {
+    public VariantRecalibratorEngine( final VariantRecalibratorArgumentCollection VRAC, final int numThreads ) {
         this.VRAC = VRAC;
+        this.numThreads = numThreads;
     }
 
     public GaussianMixtureModel generateModel( final List<VariantDatum> data ) {
@@ -113,29 +119,47 @@ public class VariantRecalibratorEngine {
 
     private void variationalBayesExpectationMaximization( final GaussianMixtureModel model, final List<VariantDatum> data ) {
 
-        model.initializeRandomModel( data, VRAC.NUM_KMEANS_ITERATIONS );
-
-        // The VBEM loop
-        model.normalizePMixtureLog10();
-        model.expectationStep( data );
-        double currentChangeInMixtureCoefficients;
-        int iteration = 0;
-        logger.info("Finished iteration " + iteration + ".");
-        while( iteration < VRAC.MAX_ITERATIONS ) {
-            iteration++;
-            model.maximizationStep( data );
-            currentChangeInMixtureCoefficients = model.normalizePMixtureLog10();
-            model.expectationStep( data );
-            if( iteration % 5 == 0 ) { // cut down on the number of output lines so that users can read the warning messages
-                logger.info("Finished iteration " + iteration + ". \tCurrent change in mixture coefficients = " + String.format("%.5f", currentChangeInMixtureCoefficients));
-            }
-            if( iteration > 2 && currentChangeInMixtureCoefficients < MIN_PROB_CONVERGENCE ) {
-                logger.info("Convergence after " + iteration + " iterations!");
-                break;
+        final double[] annotations = flattenAnnotations( data );
+        final ExecutorService executor = numThreads > 1 ? Executors.newFixedThreadPool( numThreads ) : null;
+        try {
+            model.initializeRandomModel( annotations, VRAC.NUM_KMEANS_ITERATIONS, executor );
+
+            // The VBEM loop
+            model.normalizePMixtureLog10();
+            model.expectationStep( annotations, executor );
+            double currentChangeInMixtureCoefficients;
+            int iteration = 0;
+            logger.info("Finished iteration " + iteration + ".");
+            while( iteration < VRAC.MAX_ITERATIONS ) {
+                iteration++;
+                model.maximizationStep( annotations, executor );
+                currentChangeInMixtureCoefficients = model.normalizePMixtureLog10();
+                model.expectationStep( annotations, executor );
+                if( iteration % 5 == 0 ) { // cut down on the number of output lines so that users can read the warning messages
+                    logger.info("Finished iteration " + iteration + ". \tCurrent change in mixture coefficients = " + String.format("%.5f", currentChangeInMixtureCoefficients));
+                }
+                if( iteration > 2 && currentChangeInMixtureCoefficients < MIN_PROB_CONVERGENCE ) {
+                    logger.info("Convergence after " + iteration + " iterations!");
+                    break;
+                }
             }
+
+            model.evaluateFinalModelParameters( annotations, executor );
+        } finally {
+            if( executor != null ) { executor.shutdownNow(); }
         }
+    }
 
-        model.evaluateFinalModelParameters( data );
+    // Copies the annotations of every variant into one flat, row-major matrix, which is what the model is fit on
+    private static double[] flattenAnnotations( final List<VariantDatum> data ) {
+        final int numAnnotations = data.get(0).annotations.length;
+        final double[] annotations = new double[data.size() * numAnnotations];
+        int offset = 0;
+        for( final VariantDatum datum : data ) {
+            System.arraycopy( datum.annotations, 0, annotations, offset, numAnnotations );
+            offset += numAnnotations;
+        }
+        return annotations;
     }
 
     /////////////////////////////
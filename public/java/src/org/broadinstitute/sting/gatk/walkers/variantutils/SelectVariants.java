@@ -688,7 +688,7 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
 
             if ( g.isNotFiltered() ) {
 
-                String dp = (String) g.getAttribute("DP");
+                String dp = g.getAttributeAsString("DP", null);
                 if (dp != null && ! dp.equals(VCFConstants.MISSING_DEPTH_v3) && ! dp.equals(VCFConstants.MISSING_VALUE_v4) ) {
                     depth += Integer.valueOf(dp);
                 }
@@ -126,7 +126,18 @@ public class BitSetUtils {
      * @return the dna sequence represented by the bitset
      */
     public static String dnaFrom(final BitSet bitSet) {
-        long number = longFrom(bitSet);         // the base_10 representation of the bit set
+        return dnaFrom(longFrom(bitSet));
+    }
+
+    /**
+     * Converts a number into the dna string representation.
+     *
+     * This is the long version of dnaFrom(BitSet), see its description for details.
+     *
+     * @param number the long representation of the dna sequence
+     * @return the dna sequence represented by the number
+     */
+    public static String dnaFrom(long number) {
         if (number < 0)
             throw new ReviewedStingException("dna conversion cannot handle negative numbers. Possible overflow?");
 
@@ -178,14 +189,39 @@ public class BitSetUtils {
      * @return the bitset representing the dna sequence
      */
     public static BitSet bitSetFrom(String dna) {
-        if (dna.length() > MAX_DNA_CONTEXT)
-            throw new ReviewedStingException(String.format("DNA Length cannot be bigger than %d. dna: %s (%d)", MAX_DNA_CONTEXT, dna, dna.length()));
+        return bitSetFrom(longFrom(dna));
+    }
+
+    /**
+     * Creates a long representation of a given dna string.
+     *
+     * This is the long version of bitSetFrom(String), see its description for details.
+     *
+     * @param dna the dna sequence
+     * @return the number representing the dna sequence
+     */
+    public static long longFrom(String dna) {
+        return longFrom(dna.getBytes(), 0, dna.length());
+    }
+
+    /**
+     * Creates a long representation of a dna sequence held in a section of a base array, without
+     * creating an intermediate String.
+     *
+     * @param bases  the array holding the dna sequence
+     * @param start  the offset of the first base of the sequence in the array
+     * @param length the number of bases in the sequence
+     * @return the number representing the dna sequence
+     */
+    public static long longFrom(final byte[] bases, final int start, final int length) {
+        if (length > MAX_DNA_CONTEXT)
+            throw new ReviewedStingException(String.format("DNA Length cannot be bigger than %d. dna: %s (%d)", MAX_DNA_CONTEXT, new String(bases, start, length), length));
 
-        long baseTen = 0;                                       // the number in base_10 that we are going to use to generate the bit set
-        long preContext = combinationsFor(dna.length() - 1);    // the sum of all combinations that preceded the length of the dna string
-        for (int i = 0; i < dna.length(); i++) {
+        long baseTen = 0;                                       // the number in base_10 that we are going to use to represent the sequence
+        long preContext = combinationsFor(length - 1);          // the sum of all combinations that preceded the length of the dna string
+        for (int i = start; i < start + length; i++) {
             baseTen *= 4;
-            switch (dna.charAt(i)) {
+            switch (bases[i]) {
                 case 'A':
                     baseTen += 0;
                     break;
@@ -200,7 +236,7 @@ public class BitSetUtils {
                     break;
             }
         }
-        return bitSetFrom(baseTen + preContext);                // the number representing this DNA string is the base_10 representation plus all combinations that preceded this string length.
+        return baseTen + preContext;                            // the number representing this DNA string is the base_10 representation plus all combinations that preceded this string length.
     }
 
     /**
@@ -255,7 +291,7 @@ public class BitSetUtils {
      * @param length the length of the DNA context
      * @return the sum of all combinations leading up to this context length.
      */
-    private static long combinationsFor(int length) {
+    public static long combinationsFor(int length) {
         if (length > MAX_DNA_CONTEXT)
             throw new ReviewedStingException(String.format("Context cannot be longer than %d bases but requested %d.", MAX_DNA_CONTEXT, length));
 
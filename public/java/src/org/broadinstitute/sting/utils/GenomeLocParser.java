@@ -40,6 +40,9 @@ import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Factory class for creating GenomeLocs
  */
@@ -57,106 +60,62 @@ public class GenomeLocParser {
     private final MasterSequenceDictionary contigInfo;
 
     /**
-     * A wrapper class that provides efficient last used caching for the global
-     * SAMSequenceDictionary underlying all of the GATK engine capabilities
+     * An immutable, pre-built view of the global SAMSequenceDictionary underlying all of the GATK
+     * engine capabilities.  Records are looked up by index in an array and by name in a hash map,
+     * neither of which is modified after construction, so lookups are safe from any number of
+     * threads without locking.
      */
-    // todo -- enable when CoFoJa developers identify the problem (likely thread unsafe invariants)
-//    @Invariant({
-//            "dict != null",
-//            "dict.size() > 0",
-//            "lastSSR == null || dict.getSequence(lastContig).getSequenceIndex() == lastIndex",
-//            "lastSSR == null || dict.getSequence(lastContig).getSequenceName() == lastContig",
-//            "lastSSR == null || dict.getSequence(lastContig) == lastSSR"})
-    private final class MasterSequenceDictionary {
-        final private SAMSequenceDictionary dict;
-
-        // cache
-        SAMSequenceRecord lastSSR = null;
-        String lastContig = "";
-        int lastIndex = -1;
+    private final static class MasterSequenceDictionary {
+        final private SAMSequenceRecord[] sequencesByIndex;
+        final private Map<String, SAMSequenceRecord> sequencesByName;
 
         @Requires({"dict != null", "dict.size() > 0"})
         public MasterSequenceDictionary(SAMSequenceDictionary dict) {
-            this.dict = dict;
+            sequencesByIndex = new SAMSequenceRecord[dict.size()];
+            sequencesByName = new HashMap<String, SAMSequenceRecord>(dict.size() * 2);
+            for ( final SAMSequenceRecord rec : dict.getSequences() ) {
+                sequencesByIndex[rec.getSequenceIndex()] = rec;
+                sequencesByName.put(rec.getSequenceName(), rec);
+            }
         }
 
         @Ensures("result > 0")
         public final int getNSequences() {
-            return dict.size();
+            return sequencesByIndex.length;
         }
 
         @Requires("contig != null")
-        public synchronized boolean hasContig(final String contig) {
-            return contig.equals(lastContig) || dict.getSequence(contig) != null;
+        public boolean hasContig(final String contig) {
+            return sequencesByName.containsKey(contig);
         }
 
         @Requires("index >= 0")
-        public synchronized boolean hasContig(final int index) {
-            return lastIndex == index || dict.getSequence(index) != null;
+        public boolean hasContig(final int index) {
+            return index < sequencesByIndex.length;
         }
 
         @Requires("contig != null")
         @Ensures("result != null")
-        public synchronized final SAMSequenceRecord getSequence(final String contig) {
-            if ( isCached(contig) )
-                return lastSSR;
-            else
-                return updateCache(contig, -1);
+        public final SAMSequenceRecord getSequence(final String contig) {
+            final SAMSequenceRecord rec = sequencesByName.get(contig);
+            if ( rec == null )
+                throw new ReviewedStingException("BUG: requested unknown contig=" + contig);
+            return rec;
         }
 
         @Requires("index >= 0")
         @Ensures("result != null")
-        public synchronized final SAMSequenceRecord getSequence(final int index) {
-            if ( isCached(index) )
-                return lastSSR;
-            else
-                return updateCache(null, index);
-
+        public final SAMSequenceRecord getSequence(final int index) {
+            if ( index >= sequencesByIndex.length )
+                throw new ReviewedStingException("BUG: requested unknown contig index=" + index);
+            return sequencesByIndex[index];
         }
 
         @Requires("contig != null")
         @Ensures("result >= 0")
-        public synchronized final int getSequenceIndex(final String contig) {
-            if ( ! isCached(contig) ) {
-                updateCache(contig, -1);
-            }
-
-            return lastIndex;
-        }
-
-        @Requires({"contig != null", "lastContig != null"})
-        private synchronized boolean isCached(final String contig) {
-            return lastContig.equals(contig);
+        public final int getSequenceIndex(final String contig) {
+            return getSequence(contig).getSequenceIndex();
         }
-
-        @Requires({"lastIndex != -1", "index >= 0"})
-        private synchronized boolean isCached(final int index) {
-            return lastIndex == index;
-        }
-
-        /**
-         * The key algorithm.  Given a new record, update the last used record, contig
-         * name, and index.
-         *
-         * @param contig
-         * @param index
-         * @return
-         */
-        @Requires("contig != null || index >= 0")
-        @Ensures("result != null")
-        private synchronized SAMSequenceRecord updateCache(final String contig, int index ) {
-            SAMSequenceRecord rec = contig == null ? dict.getSequence(index) : dict.getSequence(contig);
-            if ( rec == null ) {
-                throw new ReviewedStingException("BUG: requested unknown contig=" + contig + " index=" + index);
-            } else {
-                lastSSR = rec;
-                lastContig = rec.getSequenceName();
-                lastIndex = rec.getSequenceIndex();
-                return rec;
-            }
-        }
-
-
     }
 
     /**
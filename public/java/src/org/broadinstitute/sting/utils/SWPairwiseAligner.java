@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils;
+
+import net.sf.samtools.Cigar;
+import net.sf.samtools.CigarElement;
+import net.sf.samtools.CigarOperator;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Smith-Waterman alignment of one sequence against another, with integer scores and reusable workspace.
+ *
+ * Produces exactly the same cigar and offset as SWPairwiseAlignment given the same (integral) weights, but one
+ * aligner can be used for any number of alignments, one after the other: the score and backtrack matrices are
+ * kept between calls and only grow when a larger alignment comes along.  The alignment can optionally be
+ * restricted to a band of diagonals around the expected offset of the second sequence within the first, which
+ * only fills in the cells of the matrix within that band; when the best alignment lies within the band, the
+ * result is the same as that of the full alignment.
+ *
+ * Each aligner holds the result of its last alignment, so it isn't thread-safe; use one per thread.
+ *
+ * ****  This class assumes that all bytes come from UPPERCASED chars! ****
+ */
+public class SWPairwiseAligner {
+    private static final int MSTATE = 0;
+    private static final int ISTATE = 1;
+    private static final int DSTATE = 2;
+    private static final int CLIP = 3;
+
+    // lower than any score an alignment can reach, but far enough from Integer.MIN_VALUE that adding penalties can't overflow
+    private static final int MINUS_INFINITY = Integer.MIN_VALUE / 2;
+
+    private final int w_match;
+    private final int w_mismatch;
+    private final int w_open;
+    private final int w_extend;
+
+    // the workspace, reused from one alignment to the next
+    private int[] sw = new int[0];
+    private int[] btrack = new int[0];
+    private int[] best_gap_v = new int[0];
+    private int[] gap_size_v = new int[0];
+
+    // the result of the last alignment
+    private int alignment_offset;
+    private Cigar alignmentCigar;
+
+    /**
+     * @param match    the score of a match
+     * @param mismatch the score of a mismatch
+     * @param open     the score of a gap of length 1
+     * @param extend   the score of extending a gap by one more base
+     */
+    public SWPairwiseAligner(final int match, final int mismatch, final int open, final int extend) {
+        w_match = match;
+        w_mismatch = mismatch;
+        w_open = open;
+        w_extend = extend;
+    }
+
+    /**
+     * @return the cigar of the last alignment
+     */
+    public Cigar getCigar() { return alignmentCigar; }
+
+    /**
+     * @return the offset of the second sequence with respect to the first in the last alignment
+     */
+    public int getAlignmentStart2wrt1() { return alignment_offset; }
+
+    /**
+     * Aligns seq2 against seq1, filling in the whole score matrix
+     *
+     * @param seq1 the sequence aligned against, such as a reference window
+     * @param seq2 the sequence to align, such as a read
+     */
+    public void align(final byte[] seq1, final byte[] seq2) {
+        align(seq1, seq2, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Aligns seq2 against seq1, only considering the alignments whose path through the score matrix stays within
+     * bandWidth diagonals of the one where seq2 starts at offset diagonal in seq1
+     *
+     * @param seq1      the sequence aligned against, such as a reference window
+     * @param seq2      the sequence to align, such as a read
+     * @param diagonal  the expected offset of seq2 within seq1
+     * @param bandWidth the number of diagonals on either side of the expected one to consider
+     */
+    public void align(final byte[] seq1, final byte[] seq2, final int diagonal, final int bandWidth) {
+        if ( bandWidth < 0 )
+            throw new ReviewedStingException("Band width must be non-negative but got " + bandWidth);
+
+        final int n = seq1.length;
+        final int m = seq2.length;
+        ensureCapacity(n, m);
+        calculateMatrix(seq1, seq2, diagonal, bandWidth);
+        calculateCigar(n, m, diagonal, bandWidth);
+    }
+
+    private void ensureCapacity(final int n, final int m) {
+        final long size = (long)(n+1)*(m+1);
+        if ( size > Integer.MAX_VALUE )
+            throw new ReviewedStingException("Sequences of lengths " + n + " and " + m + " are too long to align");
+        if ( sw.length < size ) {
+            sw = new int[(int)size];
+            btrack = new int[(int)size];
+        }
+        if ( best_gap_v.length < m+1 ) {
+            best_gap_v = new int[m+1];
+            gap_size_v = new int[m+1];
+        }
+    }
+
+    // the first column of row i which lies within the band, which may be past the end of the row
+    private static int bandStart(final int i, final int diagonal, final int bandWidth) {
+        return (int)Math.max(1L, (long)i - diagonal - bandWidth);
+    }
+
+    // the last column of row i which lies within the band, which may be before the start of the row
+    private static int bandEnd(final int i, final int m, final int diagonal, final int bandWidth) {
+        return (int)Math.min((long)m, (long)i - diagonal + bandWidth);
+    }
+
+    private void calculateMatrix(final byte[] a, final byte[] b, final int diagonal, final int bandWidth) {
+        final int n = a.length+1;
+        final int m = b.length+1;
+
+        // the first row and column are all zero
+        Arrays.fill(sw, 0, m, 0);
+        Arrays.fill(btrack, 0, m, 0);
+        for ( int i = 1, data_offset = m ; i < n ; i++, data_offset += m ) {
+            sw[data_offset] = 0;
+            btrack[data_offset] = 0;
+        }
+
+        Arrays.fill(best_gap_v, 0, m, MINUS_INFINITY);
+        Arrays.fill(gap_size_v, 0, m, 0);
+
+        // see SWPairwiseAlignment.calculateMatrix for the details of each step, which are the same here
+        for ( int i = 1, row_offset_1 = 0 ; i < n ; i++, row_offset_1 += m ) {
+            final byte a_base = a[i-1];
+            final int row_offset = row_offset_1 + m;
+            final int jStart = bandStart(i, diagonal, bandWidth);
+            final int jEnd = bandEnd(i, m-1, diagonal, bandWidth);
+
+            // the cells just outside of the band can't be reached, but are looked at from within it
+            if ( jStart > 1 && jStart-1 < m ) sw[row_offset + jStart-1] = MINUS_INFINITY;
+            if ( jEnd+1 >= 1 && jEnd+1 < m ) sw[row_offset + jEnd+1] = MINUS_INFINITY;
+
+            int best_gap_h = MINUS_INFINITY;
+            int gap_size_h = 0;
+
+            for ( int j = jStart, data_offset_1 = row_offset_1 + jStart-1 ; j <= jEnd ; j++, data_offset_1++ ) {
+                final int step_diag = sw[data_offset_1] + (a_base == b[j-1] ? w_match : w_mismatch);
+
+                // the best gap ending here coming down from above
+                int prev_gap = sw[data_offset_1+1] + w_open;
+                best_gap_v[j] += w_extend;
+                if ( prev_gap > best_gap_v[j] ) {
+                    best_gap_v[j] = prev_gap;
+                    gap_size_v[j] = 1;
+                } else {
+                    gap_size_v[j]++;
+                }
+                final int step_down = best_gap_v[j];
+                final int kd = gap_size_v[j];
+
+                // the best gap ending here coming in from the left
+                final int data_offset = row_offset + j;
+                prev_gap = sw[data_offset-1] + w_open;
+                best_gap_h += w_extend;
+                if ( prev_gap > best_gap_h ) {
+                    best_gap_h = prev_gap;
+                    gap_size_h = 1;
+                } else {
+                    gap_size_h++;
+                }
+                final int step_right = best_gap_h;
+                final int ki = gap_size_h;
+
+                if ( step_down > step_right ) {
+                    if ( step_down > step_diag ) {
+                        sw[data_offset] = step_down;
+                        btrack[data_offset] = kd; // positive=vertical
+                    } else {
+                        sw[data_offset] = step_diag;
+                        btrack[data_offset] = 0; // 0 = diagonal
+                    }
+                } else {
+                    if ( step_right > step_diag ) {
+                        sw[data_offset] = step_right;
+                        btrack[data_offset] = -ki; // negative = horizontal
+                    } else {
+                        sw[data_offset] = step_diag;
+                        btrack[data_offset] = 0; // 0 = diagonal
+                    }
+                }
+            }
+        }
+    }
+
+    private void calculateCigar(final int n, final int m, final int diagonal, final int bandWidth) {
+        // p holds the position we start backtracking from; we will be assembling a cigar in the backwards order
+        int p1 = 0, p2 = 0;
+
+        int maxscore = 0;
+        int segment_length = 0; // length of the segment (continuous matches, insertions or deletions)
+
+        // look for largest score in the last column and then the last row, within the band. we use >= combined
+        // with the traversal direction to ensure that if two scores are equal, the one closer to diagonal gets picked
+        for ( int i = 1, data_offset = m+1+m ; i < n+1 ; i++, data_offset += (m+1) ) {
+            // data_offset is the offset of [i][m]
+            // (when seq2 is empty the last column is the first, which is always filled in)
+            final boolean inBand = m == 0 || (bandStart(i, diagonal, bandWidth) <= m && m <= bandEnd(i, m, diagonal, bandWidth));
+            if ( inBand && sw[data_offset] >= maxscore ) {
+                p1 = i; p2 = m ; maxscore = sw[data_offset];
+            }
+        }
+
+        final int jStart = bandStart(n, diagonal, bandWidth);
+        final int jEnd = bandEnd(n, m, diagonal, bandWidth);
+        for ( int j = jStart, data_offset = n*(m+1)+jStart ; j <= jEnd ; j++, data_offset++ ) {
+            // data_offset is the offset of [n][j]
+            if ( sw[data_offset] > maxscore || sw[data_offset] == maxscore && Math.abs(n-j) < Math.abs(p1 - p2)) {
+                p1 = n;
+                p2 = j ;
+                maxscore = sw[data_offset];
+                segment_length = m - j ; // end of sequence 2 is overhanging; we will just record it as 'M' segment
+            }
+        }
+
+        final List<CigarElement> lce = new ArrayList<CigarElement>(5);
+
+        if ( segment_length > 0 ) {
+            lce.add(makeElement(CLIP, segment_length));
+            segment_length = 0;
+        }
+
+        // we will be placing all insertions and deletions into sequence b, so the states are named w/regard
+        // to that sequence
+
+        int state = MSTATE;
+
+        int data_offset = p1*(m+1)+p2;  // offset of element [p1][p2]
+        do {
+            final int btr = btrack[data_offset];
+
+            final int new_state;
+            int step_length = 1;
+
+            if ( btr > 0 ) {
+                new_state = DSTATE;
+                step_length = btr;
+            } else if ( btr < 0 ) {
+                new_state = ISTATE;
+                step_length = (-btr);
+            } else new_state = MSTATE; // and step_length =1, already set above
+
+            // move to next best location in the sw matrix:
+            switch( new_state ) {
+                case MSTATE: data_offset -= (m+2); p1--; p2--; break; // move back along the diag in the sw matrix
+                case ISTATE: data_offset -= step_length; p2 -= step_length; break; // move left
+                case DSTATE: data_offset -= (m+1)*step_length; p1 -= step_length; break; // move up
+            }
+
+            // now let's see if the state actually changed:
+            if ( new_state == state ) segment_length+=step_length;
+            else {
+                // state changed, lets emit previous segment, whatever it was (Insertion Deletion, or (Mis)Match).
+                lce.add(makeElement(state, segment_length));
+                segment_length = step_length;
+                state = new_state;
+            }
+        } while ( p1 > 0 && p2 > 0 );
+
+        // post-process the last segment we are still keeping; bases of the read overhanging the start of the
+        // reference are softclipped, and the consumers need to check for the alignment offset
+        lce.add(makeElement(state, segment_length));
+        if ( p2 > 0 ) lce.add(makeElement(CLIP, p2));
+        alignment_offset = p1;
+
+        Collections.reverse(lce);
+        alignmentCigar = new Cigar(lce);
+    }
+
+    private static CigarElement makeElement(final int state, final int segment_length) {
+        CigarOperator o = null;
+        switch(state) {
+            case MSTATE: o = CigarOperator.M; break;
+            case ISTATE: o = CigarOperator.I; break;
+            case DSTATE: o = CigarOperator.D; break;
+            case CLIP: o = CigarOperator.S; break;
+        }
+        return new CigarElement(segment_length,o);
+    }
+}
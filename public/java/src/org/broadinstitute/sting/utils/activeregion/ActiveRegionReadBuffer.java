@@ -0,0 +1,153 @@
+package org.broadinstitute.sting.utils.activeregion;
+
+import org.broadinstitute.sting.utils.GenomeLoc;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+
+import java.util.*;
+
+/**
+ * The reads seen by the active region traversal which have yet to be placed into an active region.
+ *
+ * Reads are kept sorted by alignment start, so the reads overlapping a region are found by scanning forward from
+ * the start of the buffer instead of testing every buffered read.  Regions must be queried in coordinate order:
+ * each query drops the reads which end before the queried interval, as no later region can overlap them.  Reads
+ * are returned in the order in which they were first added, and a read equal to one already in the buffer isn't
+ * added again, so the buffer behaves exactly like the insertion-ordered set it replaces.
+ *
+ * Not thread-safe.
+ */
+public class ActiveRegionReadBuffer {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Map<GATKSAMRecord, BufferedRead> contents = new HashMap<GATKSAMRecord, BufferedRead>();
+    private BufferedRead[] buffer = new BufferedRead[INITIAL_CAPACITY];                                                 // live entries are buffer[head, tail), sorted by contig and start
+    private int head = 0;
+    private int tail = 0;
+    private long nAdded = 0;
+
+    /**
+     * Adds a read to the buffer, unless an equal read is already there
+     *
+     * @param read a read which isn't unmapped, or is placed on the genome
+     * @return true if the read was added
+     */
+    public boolean add(final GATKSAMRecord read) {
+        if ( read.getReferenceIndex() < 0 )
+            throw new ReviewedStingException("Cannot buffer a read which isn't placed on the genome: " + read.getReadName());
+        if ( contents.containsKey(read) )
+            return false;
+
+        final BufferedRead entry = new BufferedRead(read, nAdded++);
+        contents.put(read, entry);
+        if ( tail == buffer.length )
+            makeRoom();
+
+        // reads mostly arrive in coordinate order, so look for the insertion point from the end
+        int i = tail;
+        while ( i > head && entry.isBefore(buffer[i - 1]) )
+            i--;
+        System.arraycopy(buffer, i, buffer, i + 1, tail - i);
+        buffer[i] = entry;
+        tail++;
+        return true;
+    }
+
+    /**
+     * Removes a read from the buffer, typically once it's been placed into its active region
+     *
+     * @param read a read in the buffer
+     */
+    public void remove(final GATKSAMRecord read) {
+        final BufferedRead entry = contents.remove(read);
+        if ( entry != null )
+            entry.removed = true;                                                                                       // the entry itself is dropped once it reaches the front
+    }
+
+    /**
+     * Finds the reads overlapping loc, first dropping all reads which end before it
+     *
+     * @param loc the interval to query; must not come before any interval previously queried
+     * @return the reads overlapping loc, in the order in which they were added
+     */
+    public List<GATKSAMRecord> getReadsOverlapping(final GenomeLoc loc) {
+        final int contigIndex = loc.getContigIndex();
+
+        // drop reads from the front of the buffer which end before loc; those behind a longer read stay until it goes
+        while ( head < tail && (buffer[head].removed || buffer[head].endsBefore(contigIndex, loc.getStart())) ) {
+            final BufferedRead dropped = buffer[head];
+            if ( ! dropped.removed )
+                contents.remove(dropped.read);
+            buffer[head++] = null;
+        }
+
+        final List<BufferedRead> overlapping = new ArrayList<BufferedRead>();
+        for ( int i = head; i < tail; i++ ) {
+            final BufferedRead entry = buffer[i];
+            if ( entry.contigIndex > contigIndex || (entry.contigIndex == contigIndex && entry.start > loc.getStop()) )
+                break;
+            if ( ! entry.removed && ! entry.endsBefore(contigIndex, loc.getStart()) )
+                overlapping.add(entry);
+        }
+        Collections.sort(overlapping, ADDITION_ORDER);
+
+        final List<GATKSAMRecord> reads = new ArrayList<GATKSAMRecord>(overlapping.size());
+        for ( final BufferedRead entry : overlapping )
+            reads.add(entry.read);
+        return reads;
+    }
+
+    /**
+     * @return the number of reads in the buffer
+     */
+    public int size() {
+        return contents.size();
+    }
+
+    /**
+     * Makes room for at least one more entry at the end of the buffer, by shifting out the dropped entries at the
+     * front or, if that wouldn't free up much, by growing the buffer.
+     */
+    private void makeRoom() {
+        final int size = tail - head;
+        final BufferedRead[] newBuffer = size < buffer.length / 2 ? buffer : new BufferedRead[buffer.length * 2];
+        System.arraycopy(buffer, head, newBuffer, 0, size);
+        if ( newBuffer == buffer )
+            Arrays.fill(buffer, size, tail, null);
+        buffer = newBuffer;
+        head = 0;
+        tail = size;
+    }
+
+    private static final Comparator<BufferedRead> ADDITION_ORDER = new Comparator<BufferedRead>() {
+        public int compare(final BufferedRead a, final BufferedRead b) {
+            return a.order < b.order ? -1 : (a.order == b.order ? 0 : 1);
+        }
+    };
+
+    private static class BufferedRead {
+        final GATKSAMRecord read;
+        final int contigIndex;
+        final int start;
+        final int stop;
+        final long order;
+        boolean removed = false;
+
+        private BufferedRead(final GATKSAMRecord read, final long order) {
+            this.read = read;
+            this.contigIndex = read.getReferenceIndex();
+            this.start = read.getAlignmentStart();
+            // the same extent GenomeLocParser.createGenomeLoc(read) gives the read
+            this.stop = read.getReadUnmappedFlag() ? start : Math.max(read.getAlignmentEnd(), start);
+            this.order = order;
+        }
+
+        boolean isBefore(final BufferedRead other) {
+            return contigIndex < other.contigIndex || (contigIndex == other.contigIndex && start < other.start);
+        }
+
+        boolean endsBefore(final int contigIndex, final int position) {
+            return this.contigIndex < contigIndex || (this.contigIndex == contigIndex && stop < position);
+        }
+    }
+}
@@ -73,14 +73,18 @@ public class ActivityProfile {
         this.regionStartLoc = regionStartLoc;
     }
 
+    /**
+     * Adds the same score for each base of loc, as if each base had been added in turn
+     * @param loc the bases to add, usually just one
+     * @param score the activity score of every base in loc
+     */
     public void add(final GenomeLoc loc, final double score) {
-        if ( loc.size() != 1 )
-            throw new ReviewedStingException("Bad add call to ActivityProfile: loc " + loc + " size != 1" );
         if ( lastLoc != null && loc.getStart() != lastLoc.getStop() + 1 )
             throw new ReviewedStingException("Bad add call to ActivityProfile: lastLoc added " + lastLoc + " and next is " + loc);
-        isActiveList.add(score);
+        for ( int i = 0; i < loc.size(); i++ )
+            isActiveList.add(score);
         if( regionStartLoc == null ) {
-            regionStartLoc = loc;
+            regionStartLoc = loc.size() == 1 ? loc : parser.createGenomeLoc(loc.getContig(), loc.getContigIndex(), loc.getStart(), loc.getStart());
         }
     }
 
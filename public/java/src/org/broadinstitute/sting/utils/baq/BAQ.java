@@ -11,6 +11,8 @@ import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.sam.ReadUtils;
 
+import java.util.Arrays;
+
 /*
   The topology of the profile HMM:
 
@@ -35,6 +37,9 @@ import org.broadinstitute.sting.utils.sam.ReadUtils;
    lower two bits can be 0 (an alignment match) or 1 (an
    insertion). q[i] gives the phred scaled posterior probability of
    state[i] being wrong.
+
+   A BAQ object can be shared between threads: the tables it looks up are immutable, and each thread gets its own
+   workspace for the forward and backward matrices, which is reused from one read to the next.
  */
 public class BAQ {
     private final static boolean DEBUG = false;
@@ -132,29 +137,89 @@ public class BAQ {
     private final static double EM = 0.33333333333;
     private final static double EI = 0.25;
 
-    private double[][][] EPSILONS = new double[256][256][SAMUtils.MAX_PHRED_SCORE+1];
+    /**
+     * The row of the epsilon table for each pair of ref and read bases, with A, C, G and T (in either case) getting
+     * their own rows and every other base sharing the last one.
+     */
+    private final static int N_BASE_INDICES = 5;
+    private final static int[] BASE_INDEX = new int[256];
+    static {
+        Arrays.fill(BASE_INDEX, N_BASE_INDICES - 1);
+        final String bases = "ACGT";
+        for ( int i = 0; i < bases.length(); i++ ) {
+            BASE_INDEX[bases.charAt(i)] = i;
+            BASE_INDEX[Character.toLowerCase(bases.charAt(i))] = i;
+        }
+    }
+
+    /**
+     * The epsilon tables for each minimum base quality, shared by every BAQ object and never modified once made
+     */
+    private final static double[][][][] EPSILON_TABLES = new double[256][][][];
+
+    private final static synchronized double[][][] getEpsilonTable(final byte minBaseQual) {
+        final int index = minBaseQual & 0xFF;
+        if ( EPSILON_TABLES[index] == null ) {
+            final double[][][] epsilons = new double[N_BASE_INDICES][N_BASE_INDICES][SAMUtils.MAX_PHRED_SCORE+1];
+            for ( int i = 0; i < N_BASE_INDICES; i++ )
+                for ( int j = 0; j < N_BASE_INDICES; j++ )
+                    for ( int q = 0; q <= SAMUtils.MAX_PHRED_SCORE; q++ ) {
+                        if ( i == N_BASE_INDICES - 1 || j == N_BASE_INDICES - 1 ) {
+                            epsilons[i][j][q] = 1.0;
+                        } else {
+                            double qual = qual2prob[q < minBaseQual ? minBaseQual : q];
+                            epsilons[i][j][q] = i == j ? 1 - qual : qual * EM;
+                        }
+                    }
+            EPSILON_TABLES[index] = epsilons;
+        }
+        return EPSILON_TABLES[index];
+    }
+
+    private double[][][] EPSILONS;
 
     private void initializeCachedData() {
-        for ( int i = 0; i < 256; i++ )
-            for ( int j = 0; j < 256; j++ )
-                for ( int q = 0; q <= SAMUtils.MAX_PHRED_SCORE; q++ ) {
-                    EPSILONS[i][j][q] = 1.0;
-                }
+        EPSILONS = getEpsilonTable(minBaseQual);
+    }
 
-        for ( char b1 : "ACGTacgt".toCharArray() ) {
-            for ( char b2 : "ACGTacgt".toCharArray() ) {
-                for ( int q = 0; q <= SAMUtils.MAX_PHRED_SCORE; q++ ) {
-                    double qual = qual2prob[q < minBaseQual ? minBaseQual : q];
-                    double e = Character.toLowerCase(b1) == Character.toLowerCase(b2) ? 1 - qual : qual * EM;
-                    EPSILONS[(byte)b1][(byte)b2][q] = e;
+    protected double calcEpsilon( byte ref, byte read, byte qualB ) {
+        return EPSILONS[BASE_INDEX[ref & 0xFF]][BASE_INDEX[read & 0xFF]][qualB];
+    }
+
+    /**
+     * The forward and backward matrices and the scaling array of hmm_glocal, kept by each thread so they only need
+     * to be allocated again when a read needs larger ones.
+     */
+    private static class HMMWorkspace {
+        double[][] f = new double[0][0];
+        double[][] b = new double[0][0];
+        double[] s = new double[0];
+
+        /**
+         * Makes sure the matrices have at least nRows rows of nCols columns each, all of them zero
+         */
+        void prepare(final int nRows, final int nCols) {
+            if ( f.length < nRows || f[0].length < nCols ) {
+                final int rows = Math.max(nRows, f.length);
+                final int cols = Math.max(nCols, f.length == 0 ? 0 : f[0].length);
+                f = new double[rows][cols];
+                b = new double[rows][cols];
+            } else {
+                for ( int i = 0; i < nRows; i++ ) {
+                    Arrays.fill(f[i], 0, nCols, 0.0);
+                    Arrays.fill(b[i], 0, nCols, 0.0);
                 }
             }
+            if ( s.length < nRows + 1 )
+                s = new double[nRows + 1];
         }
     }
 
-    protected double calcEpsilon( byte ref, byte read, byte qualB ) {
-        return EPSILONS[ref][read][qualB];
-    }
+    private final static ThreadLocal<HMMWorkspace> workspace = new ThreadLocal<HMMWorkspace>() {
+        @Override protected HMMWorkspace initialValue() {
+            return new HMMWorkspace();
+        }
+    };
 
     // ####################################################################################################
     //
@@ -195,10 +260,12 @@ public class BAQ {
         //System.out.printf("c->bw = %d, bw = %d, l_ref = %d, l_query = %d\n", cb, bw, l_ref, l_query);
 		bw2 = bw * 2 + 1;
 
-        // allocate the forward and backward matrices f[][] and b[][] and the scaling array s[]
-		double[][] f = new double[l_query+1][bw2*3 + 6];
-		double[][] b = new double[l_query+1][bw2*3 + 6];
-		double[] s = new double[l_query+2];
+        // get the forward and backward matrices f[][] and b[][] and the scaling array s[] of this thread
+        final HMMWorkspace ws = workspace.get();
+        ws.prepare(l_query+1, bw2*3 + 6);
+		double[][] f = ws.f;
+		double[][] b = ws.b;
+		double[] s = ws.s;
 
 		// initialize transition probabilities
 		double sM, sI, bM, bI;
@@ -509,18 +576,40 @@ public class BAQ {
     }
 
      public BAQCalculationResult calcBAQFromHMM(SAMRecord read, IndexedFastaSequenceFile refReader) {
-        // start is alignment start - band width / 2 - size of first I element, if there is one.  Stop is similar
-        int offset = getBandWidth() / 2;
-        long readStart = includeClippedBases ? read.getUnclippedStart() : read.getAlignmentStart();
-        long start = Math.max(readStart - offset - ReadUtils.getFirstInsertionOffset(read), 0);
-        long stop = (includeClippedBases ? read.getUnclippedEnd() : read.getAlignmentEnd()) + offset + ReadUtils.getLastInsertionOffset(read);
+        final byte[] ref = getReferenceWindow(read, refReader);
+        return ref == null ? null : calcBAQFromHMM(read, ref, getReferenceWindowOffset(read));
+    }
+
+    private long getReadStart(SAMRecord read) {
+        return includeClippedBases ? read.getUnclippedStart() : read.getAlignmentStart();
+    }
+
+    // start is alignment start - band width / 2 - size of first I element, if there is one.  Stop is similar
+    private long getReferenceWindowStart(SAMRecord read) {
+        return Math.max(getReadStart(read) - getBandWidth() / 2 - ReadUtils.getFirstInsertionOffset(read), 0);
+    }
+
+    private int getReferenceWindowOffset(SAMRecord read) {
+        return (int)(getReferenceWindowStart(read) - getReadStart(read));
+    }
+
+    /**
+     * Gets the reference bases the HMM aligns read against, padded by half the band width on either side
+     *
+     * @param read the read
+     * @param refReader the reference
+     * @return the reference bases, or null if the window runs off the end of the contig
+     */
+    public byte[] getReferenceWindow(SAMRecord read, IndexedFastaSequenceFile refReader) {
+        long start = getReferenceWindowStart(read);
+        long stop = (includeClippedBases ? read.getUnclippedEnd() : read.getAlignmentEnd()) + getBandWidth() / 2 + ReadUtils.getLastInsertionOffset(read);
 
         if ( stop > refReader.getSequenceDictionary().getSequence(read.getReferenceName()).getSequenceLength() ) {
             return null;
         } else {
             // now that we have the start and stop, get the reference sequence covering it
             ReferenceSequence refSeq = refReader.getSubsequenceAt(read.getReferenceName(), start, stop);
-            return calcBAQFromHMM(read, refSeq.getBases(), (int)(start - readStart));
+            return refSeq.getBases();
         }
     }
 
@@ -643,6 +732,19 @@ public class BAQ {
      * @return BQ qualities for use, in case qmode is DONT_MODIFY
      */
     public byte[] baqRead(SAMRecord read, IndexedFastaSequenceFile refReader, CalculationMode calculationType, QualityMode qmode ) {
+        return baqRead(read, requiresHMM(read, calculationType) ? getReferenceWindow(read, refReader) : null, calculationType, qmode);
+    }
+
+    /**
+     * As baqRead above, but with the reference window the HMM needs, if any, already fetched by getReferenceWindow.
+     * Doesn't use the reference reader, so reads can be BAQ'd on other threads than the one reading the reference.
+     *
+     * @param read
+     * @param refWindow the reference window of read, or null if it runs off the end of the contig or isn't needed
+     * @param calculationType
+     * @return BQ qualities for use, in case qmode is DONT_MODIFY
+     */
+    public byte[] baqRead(SAMRecord read, byte[] refWindow, CalculationMode calculationType, QualityMode qmode ) {
         if ( DEBUG ) System.out.printf("BAQ %s read %s%n", calculationType, read.getReadName());
 
         byte[] BAQQuals = read.getBaseQualities();      // in general we are overwriting quals, so just get a pointer to them
@@ -653,7 +755,7 @@ public class BAQ {
         } else {
             if ( calculationType == CalculationMode.RECALCULATE || ! hasBAQTag(read) ) {
                 if ( DEBUG ) System.out.printf("  Calculating BAQ on the fly%n");
-                BAQCalculationResult hmmResult = calcBAQFromHMM(read, refReader);
+                BAQCalculationResult hmmResult = refWindow == null ? null : calcBAQFromHMM(read, refWindow, getReferenceWindowOffset(read));
                 if ( hmmResult != null ) {
                     switch ( qmode ) {
                         case ADD_TAG:         addBAQTag(read, hmmResult.bq); break;
@@ -672,6 +774,18 @@ public class BAQ {
         return BAQQuals;
     }
 
+    /**
+     * Returns true if baqRead would run the HMM on read, rather than leaving it alone or taking the BAQ from its tag
+     *
+     * @param read
+     * @param calculationType
+     * @return
+     */
+    public boolean requiresHMM(SAMRecord read, CalculationMode calculationType) {
+        return calculationType != CalculationMode.OFF && ! excludeReadFromBAQ(read)
+                && (calculationType == CalculationMode.RECALCULATE || ! hasBAQTag(read));
+    }
+
     /**
      * Returns true if we don't think this read is eligible for the BAQ calculation.  Examples include non-PF reads,
      * duplicates, or unmapped reads.  Used by baqRead to determine if a read should fall through the calculation.
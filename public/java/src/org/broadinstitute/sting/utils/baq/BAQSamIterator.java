@@ -7,18 +7,35 @@ import net.sf.samtools.SAMRecord;
 import org.broadinstitute.sting.gatk.iterators.StingSAMIterator;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
-import java.util.Iterator;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
- * Simple iterator that applies Heng's BAQ calculation to a stream of incoming reads
+ * Simple iterator that applies Heng's BAQ calculation to a stream of incoming reads.
+ *
+ * Given an executor, the reads are instead BAQ'd in batches on the executor's threads, a few batches ahead of the
+ * consumer.  The reference windows are still read on the consumer's thread, as the reference reader isn't thread-safe.
  */
 public class BAQSamIterator implements StingSAMIterator {
+    /**
+     * The number of reads BAQ'd together by one task on the executor
+     */
+    private static final int BATCH_SIZE = 100;
+
     private final StingSAMIterator it;
     private final BAQ baqHMM = new BAQ();         // creates a BAQ creator with default parameters
     private final IndexedFastaSequenceFile refReader;
     private final BAQ.CalculationMode cmode;
     private final BAQ.QualityMode qmode;
 
+    private final ExecutorService executor;
+    private final int maxPendingBatches;
+    private final Queue<Future<List<SAMRecord>>> pendingBatches = new LinkedList<Future<List<SAMRecord>>>();
+    private Iterator<SAMRecord> currentBatch = Collections.<SAMRecord>emptyList().iterator();
+
     /**
      * Creates a new BAMSamIterator using the reference getter refReader and applies the BAM to the reads coming
      * in from it.  See BAQ docs for baqType information.
@@ -34,6 +51,28 @@ public class BAQSamIterator implements StingSAMIterator {
             "cmode != null" ,
             "qmode != null"})
     public BAQSamIterator(IndexedFastaSequenceFile refReader, StingSAMIterator it, BAQ.CalculationMode cmode, BAQ.QualityMode qmode) {
+        this(refReader, it, cmode, qmode, null, 0);
+    }
+
+    /**
+     * Creates a new BAQSamIterator which BAQs the reads on the threads of executor, keeping up to maxPendingBatches
+     * batches of reads in flight ahead of the consumer.
+     *
+     * @param refReader
+     * @param it
+     * @param cmode
+     * @param qmode
+     * @param executor the executor to BAQ the reads on, or null to BAQ each read as it's returned
+     * @param maxPendingBatches the number of batches of reads to BAQ ahead of the consumer, if executor isn't null
+     */
+    @Requires({
+            "refReader != null",
+            "it != null",
+            "cmode != null" ,
+            "qmode != null",
+            "executor == null || maxPendingBatches > 0"})
+    public BAQSamIterator(IndexedFastaSequenceFile refReader, StingSAMIterator it, BAQ.CalculationMode cmode, BAQ.QualityMode qmode,
+                          ExecutorService executor, int maxPendingBatches) {
         if ( cmode == BAQ.CalculationMode.OFF ) throw new ReviewedStingException("BUG: shouldn't create BAQSamIterator with calculation mode OFF");
         if ( qmode == BAQ.QualityMode.DONT_MODIFY ) throw new ReviewedStingException("BUG: shouldn't create BAQSamIterator with quailty mode DONT_MODIFY");
 
@@ -41,19 +80,69 @@ public class BAQSamIterator implements StingSAMIterator {
         this.it = it;
         this.cmode = cmode;
         this.qmode = qmode;
+        this.executor = executor;
+        this.maxPendingBatches = maxPendingBatches;
     }
 
     @Requires("hasNext()")
     @Ensures("result != null")
     public SAMRecord next()     {
         //System.out.printf("BAQing during input%n");
-        SAMRecord read = it.next();
-        baqHMM.baqRead(read, refReader, cmode, qmode);
-        return read;
+        if ( executor == null ) {
+            SAMRecord read = it.next();
+            baqHMM.baqRead(read, refReader, cmode, qmode);
+            return read;
+        }
+
+        if ( ! currentBatch.hasNext() ) {
+            submitBatches();
+            currentBatch = getResult(pendingBatches.remove()).iterator();
+        }
+        return currentBatch.next();
     }
 
-    public boolean hasNext()    { return this.it.hasNext(); }
+    /**
+     * Tops up the batches being BAQ'd by the executor, reading the reference windows they need as we go
+     */
+    private void submitBatches() {
+        while ( pendingBatches.size() < maxPendingBatches && it.hasNext() ) {
+            final List<SAMRecord> reads = new ArrayList<SAMRecord>(BATCH_SIZE);
+            final List<byte[]> refWindows = new ArrayList<byte[]>(BATCH_SIZE);
+            while ( reads.size() < BATCH_SIZE && it.hasNext() ) {
+                final SAMRecord read = it.next();
+                reads.add(read);
+                refWindows.add(baqHMM.requiresHMM(read, cmode) ? baqHMM.getReferenceWindow(read, refReader) : null);
+            }
+
+            pendingBatches.add(executor.submit(new Callable<List<SAMRecord>>() {
+                public List<SAMRecord> call() {
+                    for ( int i = 0; i < reads.size(); i++ )
+                        baqHMM.baqRead(reads.get(i), refWindows.get(i), cmode, qmode);
+                    return reads;
+                }
+            }));
+        }
+    }
+
+    private static List<SAMRecord> getResult(final Future<List<SAMRecord>> batch) {
+        try {
+            return batch.get();
+        } catch ( InterruptedException e ) {
+            throw new ReviewedStingException("Interrupted while waiting for reads to be BAQ'd", e);
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException)e.getCause();
+            throw new ReviewedStingException("Unable to BAQ reads", e.getCause());
+        }
+    }
+
+    public boolean hasNext()    { return currentBatch.hasNext() || ! pendingBatches.isEmpty() || this.it.hasNext(); }
     public void remove()        { throw new UnsupportedOperationException("Can not remove records from a SAM file via an iterator!"); }
-    public void close()         { it.close(); }
+    public void close()         {
+        for ( final Future<List<SAMRecord>> batch : pendingBatches )
+            batch.cancel(false);
+        pendingBatches.clear();
+        it.close();
+    }
     public Iterator<SAMRecord> iterator() { return this; }
 }
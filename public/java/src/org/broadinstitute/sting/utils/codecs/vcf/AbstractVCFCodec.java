@@ -7,7 +7,6 @@ import org.broad.tribble.NameAwareCodec;
 import org.broad.tribble.TribbleException;
 import org.broad.tribble.readers.LineReader;
 import org.broad.tribble.util.BlockCompressedInputStream;
-import org.broad.tribble.util.ParsingUtils;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.variantcontext.*;
@@ -34,17 +33,16 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
     // for ParsingUtils.split
     protected String[] GTValueArray = new String[100];
     protected String[] genotypeKeyArray = new String[100];
-    protected String[] infoFieldArray = new String[1000];
-    protected String[] infoValueArray = new String[1000];
 
     // for performance testing purposes
     public static boolean validate = true;
 
-    // a key optimization -- we need a per thread string parts array, so we don't allocate a big array over and over
+    // a key optimization -- rather than splitting the line into a String for every column, we record where each
+    // column starts and ends, and only create Strings for the columns that need them
     // todo: make this thread safe?
-    protected String[] parts = null;
+    private final int[] fieldStarts = new int[NUM_STANDARD_FIELDS + 1];
+    private final int[] fieldEnds = new int[NUM_STANDARD_FIELDS + 1];
     protected String[] genotypeParts = null;
-    protected final String[] locParts = new String[6];
 
     // for performance we cache the hashmap of filter encodings for quick lookup
     protected HashMap<String,LinkedHashSet<String>> filterHash = new HashMap<String,LinkedHashSet<String>>();
@@ -59,7 +57,7 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
 
     protected int lineNo = 0;
 
-    protected Map<String, String> stringCache = new HashMap<String, String>();
+    private final VCFStringCache stringCache = new VCFStringCache();
 
     /**
      * Creates a LazyParser for a LazyGenotypesContext to use to decode
@@ -199,23 +197,18 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
         // our header cannot be null, we need the genotype sample names and counts
         if (header == null) throw new ReviewedStingException("VCF Header cannot be null when decoding a record");
 
-        final int nParts = ParsingUtils.split(line, locParts, VCFConstants.FIELD_SEPARATOR_CHAR, true);
+        final int nParts = splitLine(line, 6);
 
         if ( nParts != 6 )
             throw new UserException.MalformedVCF("there aren't enough columns for line " + line, lineNo);
 
         // get our alleles (because the end position depends on them)
-        final String ref = getCachedString(locParts[3].toUpperCase());
-        final String alts = getCachedString(locParts[4].toUpperCase());
+        final String ref = getCachedUpperCaseString(line, fieldStarts[3], fieldEnds[3]);
+        final String alts = getCachedUpperCaseString(line, fieldStarts[4], fieldEnds[4]);
         final List<Allele> alleles = parseAlleles(ref, alts, lineNo);
 
         // find out our location
-        int start = 0;
-        try {
-            start = Integer.valueOf(locParts[1]);
-        } catch (Exception e) {
-            generateException("the value in the POS field must be an integer but it was " + locParts[1], lineNo);
-        }
+        final int start = parsePosition(line, fieldStarts[1], fieldEnds[1]);
         int stop = start;
 
         // ref alleles don't need to be single bases for monomorphic sites
@@ -224,14 +217,17 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
         }
         // we need to parse the INFO field to check for an END tag if it's a symbolic allele
         else if ( alleles.size() == 2 && alleles.get(1).isSymbolic() ) {
-            final String[] extraParts = new String[4];
-            final int nExtraParts = ParsingUtils.split(locParts[5], extraParts, VCFConstants.FIELD_SEPARATOR_CHAR, true);
-            if ( nExtraParts < 3 )
+            final int infoStart = nthFieldStart(line, fieldStarts[5], 2);
+            if ( infoStart == -1 )
                 throw new UserException.MalformedVCF("there aren't enough columns for line " + line, lineNo);
 
-            final Map<String, Object> attrs = parseInfo(extraParts[2]);
+            int infoEnd = line.indexOf(VCFConstants.FIELD_SEPARATOR_CHAR, infoStart);
+            if ( infoEnd == -1 )
+                infoEnd = line.length();
+
+            final Map<String, Object> attrs = parseInfo(line, infoStart, infoEnd);
             try {
-                stop = attrs.containsKey(VCFConstants.END_KEY) ? Integer.valueOf(attrs.get(VCFConstants.END_KEY).toString()) : start;
+                stop = attrs != null && attrs.containsKey(VCFConstants.END_KEY) ? Integer.valueOf(attrs.get(VCFConstants.END_KEY).toString()) : start;
             } catch (Exception e) {
                 throw new UserException.MalformedVCF("the END value in the INFO field is not valid for line " + line, lineNo);
             }
@@ -241,7 +237,7 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
             stop = clipAlleles(start, ref, alleles, null, lineNo);
         }
 
-        return new VCFLocFeature(locParts[0], start, stop);
+        return new VCFLocFeature(getCachedString(line, fieldStarts[0], fieldEnds[0]), start, stop);
     }
 
     private final static class VCFLocFeature implements Feature {
@@ -273,18 +269,57 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
         // our header cannot be null, we need the genotype sample names and counts
         if (header == null) throw new ReviewedStingException("VCF Header cannot be null when decoding a record");
 
-        if (parts == null)
-            parts = new String[Math.min(header.getColumnCount(), NUM_STANDARD_FIELDS+1)];
-
-        int nParts = ParsingUtils.split(line, parts, VCFConstants.FIELD_SEPARATOR_CHAR, true);
+        // the genotype columns are kept together, as a single field, for the lazy genotype parser
+        final int nParts = splitLine(line, NUM_STANDARD_FIELDS + 1);
 
-        // if we have don't have a header, or we have a header with no genotyping data check that we have eight columns.  Otherwise check that we have nine (normal colummns + genotyping data)
-        if (( (header == null || !header.hasGenotypingData()) && nParts != NUM_STANDARD_FIELDS) ||
-                (header != null && header.hasGenotypingData() && nParts != (NUM_STANDARD_FIELDS + 1)) )
-            throw new UserException.MalformedVCF("there aren't enough columns for line " + line + " (we expected " + (header == null ? NUM_STANDARD_FIELDS : NUM_STANDARD_FIELDS + 1) +
+        // if we have a header with no genotyping data check that we have eight columns.  Otherwise check that we have nine (normal colummns + genotyping data)
+        final int expectedParts = header.hasGenotypingData() ? NUM_STANDARD_FIELDS + 1 : NUM_STANDARD_FIELDS;
+        if ( nParts != expectedParts )
+            throw new UserException.MalformedVCF("there aren't enough columns for line " + line + " (we expected " + expectedParts +
                     " tokens, and saw " + nParts + " )", lineNo);
 
-        return parseVCFLine(parts);
+        return parseVCFLine(line, nParts);
+    }
+
+    /**
+     * Finds the extent of each of the first maxParts tab-separated columns of the line, filling in fieldStarts
+     * and fieldEnds.  The last column runs to the end of the line, including any tabs after it.
+     *
+     * @param line the line
+     * @param maxParts the maximum number of columns to find
+     * @return the number of columns found
+     */
+    private int splitLine(final String line, final int maxParts) {
+        int nParts = 0;
+        int start = 0;
+        while ( nParts < maxParts - 1 ) {
+            final int tab = line.indexOf(VCFConstants.FIELD_SEPARATOR_CHAR, start);
+            if ( tab == -1 )
+                break;
+            fieldStarts[nParts] = start;
+            fieldEnds[nParts] = tab;
+            nParts++;
+            start = tab + 1;
+        }
+
+        fieldStarts[nParts] = start;
+        fieldEnds[nParts] = line.length();
+        return nParts + 1;
+    }
+
+    /**
+     * @param line the line
+     * @param from the start of a column
+     * @param n the number of columns to skip
+     * @return the start of the nth column after the one starting at from, or -1 if there aren't that many
+     */
+    private static int nthFieldStart(final String line, int from, final int n) {
+        for ( int i = 0; i < n && from != -1; i++ ) {
+            from = line.indexOf(VCFConstants.FIELD_SEPARATOR_CHAR, from);
+            if ( from != -1 )
+                from++;
+        }
+        return from;
     }
 
     protected void generateException(String message) {
@@ -298,10 +333,11 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
     /**
      * parse out the VCF line
      *
-     * @param parts the parts split up
+     * @param line the line, already split by splitLine
+     * @param nParts the number of columns found by splitLine
      * @return a variant context object
      */
-    private VariantContext parseVCFLine(String[] parts) {
+    private VariantContext parseVCFLine(final String line, final int nParts) {
         VariantContextBuilder builder = new VariantContextBuilder();
         builder.source(getName());
 
@@ -311,23 +347,26 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
         lineNo++;
 
         // parse out the required fields
-        final String chr = getCachedString(parts[0]);
+        final String chr = getCachedString(line, fieldStarts[0], fieldEnds[0]);
         builder.chr(chr);
-        int pos = Integer.valueOf(parts[1]);
+        final int pos = parsePosition(line, fieldStarts[1], fieldEnds[1]);
         builder.start(pos);
 
-        if ( parts[2].length() == 0 )
+        if ( fieldStarts[2] == fieldEnds[2] )
             generateException("The VCF specification requires a valid ID field");
-        else if ( parts[2].equals(VCFConstants.EMPTY_ID_FIELD) )
+        else if ( isMissing(line, fieldStarts[2], fieldEnds[2]) )
             builder.noID();
         else
-            builder.id(parts[2]);
+            builder.id(line.substring(fieldStarts[2], fieldEnds[2]));
 
-        String ref = getCachedString(parts[3].toUpperCase());
-        String alts = getCachedString(parts[4].toUpperCase());
-        builder.log10PError(parseQual(parts[5]));
-        builder.filters(parseFilters(getCachedString(parts[6])));
-        final Map<String, Object> attrs = parseInfo(parts[7]);
+        String ref = getCachedUpperCaseString(line, fieldStarts[3], fieldEnds[3]);
+        String alts = getCachedUpperCaseString(line, fieldStarts[4], fieldEnds[4]);
+        if ( isMissing(line, fieldStarts[5], fieldEnds[5]) )
+            builder.log10PError(VariantContext.NO_LOG10_PERROR);
+        else
+            builder.log10PError(parseQual(line.substring(fieldStarts[5], fieldEnds[5])));
+        builder.filters(parseFilters(getCachedString(line, fieldStarts[6], fieldEnds[6])));
+        final Map<String, Object> attrs = parseInfo(line, fieldStarts[7], fieldEnds[7]);
         builder.attributes(attrs);
 
         // get our alleles, filters, and setup an attribute map
@@ -340,7 +379,7 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
             stop = pos + alleles.get(0).length() - 1;
         }
         // we need to parse the INFO field to check for an END tag if it's a symbolic allele
-        else if ( alleles.size() == 2 && alleles.get(1).isSymbolic() && attrs.containsKey(VCFConstants.END_KEY) ) {
+        else if ( alleles.size() == 2 && alleles.get(1).isSymbolic() && attrs != null && attrs.containsKey(VCFConstants.END_KEY) ) {
             try {
                 stop = Integer.valueOf(attrs.get(VCFConstants.END_KEY).toString());
             } catch (Exception e) {
@@ -355,10 +394,10 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
         builder.alleles(alleles);
 
         // do we have genotyping data
-        if (parts.length > NUM_STANDARD_FIELDS) {
+        if (nParts > NUM_STANDARD_FIELDS) {
             final LazyGenotypesContext.LazyParser lazyParser = new LazyVCFGenotypesParser(alleles, chr, pos);
             final int nGenotypes = header.getGenotypeSamples().size();
-            LazyGenotypesContext lazy = new LazyGenotypesContext(lazyParser, parts[8], nGenotypes);
+            LazyGenotypesContext lazy = new LazyGenotypesContext(lazyParser, line.substring(fieldStarts[NUM_STANDARD_FIELDS]), nGenotypes);
 
             // did we resort the sample names?  If so, we need to load the genotype data
             if ( !header.samplesWereAlreadySorted() )
@@ -369,7 +408,7 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
 
         VariantContext vc = null;
         try {
-            builder.referenceBaseForIndel(ref.getBytes()[0]);
+            builder.referenceBaseForIndel((byte)ref.charAt(0));
             vc = builder.make();
         } catch (Exception e) {
             generateException(e.getMessage());
@@ -409,59 +448,82 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
      * @return interned string
      */
     protected String getCachedString(String str) {
-        String internedString = stringCache.get(str);
-        if ( internedString == null ) {
-            internedString = new String(str);
-            stringCache.put(internedString, internedString);
+        return stringCache.get(str);
+    }
+
+    /**
+     * Return a cached copy of line.substring(start, end), without creating the substring if it's already cached.
+     *
+     * @param line string
+     * @param start the start of the substring, inclusive
+     * @param end the end of the substring, exclusive
+     * @return interned string
+     */
+    protected String getCachedString(String line, int start, int end) {
+        return stringCache.get(line, start, end);
+    }
+
+    /**
+     * Return a cached copy of line.substring(start, end).toUpperCase(), as for getCachedString.  Only lower
+     * case values need to be copied before the lookup.
+     */
+    private String getCachedUpperCaseString(final String line, final int start, final int end) {
+        for ( int i = start; i < end; i++ ) {
+            if ( Character.isLowerCase(line.charAt(i)) )
+                return stringCache.get(line.substring(start, end).toUpperCase());
         }
-        return internedString;
+        return stringCache.get(line, start, end);
     }
 
     /**
-     * parse out the info fields
-     * @param infoField the fields
-     * @return a mapping of keys to objects
+     * @return true if line[start, end) is the VCF missing value, "."
      */
-    private Map<String, Object> parseInfo(String infoField) {
-        Map<String, Object> attributes = new HashMap<String, Object>();
+    private static boolean isMissing(final String line, final int start, final int end) {
+        return end - start == 1 && line.charAt(start) == VCFConstants.MISSING_VALUE_v4.charAt(0);
+    }
 
-        if ( infoField.length() == 0 )
-            generateException("The VCF specification requires a valid info field");
+    /**
+     * parse the POS field without creating a String for it
+     * @param line the line
+     * @param start the start of the field, inclusive
+     * @param end the end of the field, exclusive
+     * @return the position
+     */
+    private int parsePosition(final String line, final int start, final int end) {
+        int pos = 0;
+        boolean valid = end > start && end - start < 11;
+        for ( int i = start; i < end && valid; i++ ) {
+            final int digit = line.charAt(i) - '0';
+            valid = digit >= 0 && digit <= 9;
+            pos = 10 * pos + digit;
+        }
 
-        if ( !infoField.equals(VCFConstants.EMPTY_INFO_FIELD) ) {
-            if ( infoField.indexOf("\t") != -1 || infoField.indexOf(" ") != -1 )
-                generateException("The VCF specification does not allow for whitespace in the INFO field");
+        if ( !valid || pos < 0 )
+            generateException("the value in the POS field must be an integer but it was " + line.substring(start, end), lineNo);
+        return pos;
+    }
 
-            int infoFieldSplitSize = ParsingUtils.split(infoField, infoFieldArray, VCFConstants.INFO_FIELD_SEPARATOR_CHAR, false);
-            for (int i = 0; i < infoFieldSplitSize; i++) {
-                String key;
-                Object value;
-
-                int eqI = infoFieldArray[i].indexOf("=");
-                if ( eqI != -1 ) {
-                    key = infoFieldArray[i].substring(0, eqI);
-                    String str = infoFieldArray[i].substring(eqI+1);
-
-                    // split on the INFO field separator
-                    int infoValueSplitSize = ParsingUtils.split(str, infoValueArray, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR, false);
-                    if ( infoValueSplitSize == 1 ) {
-                        value = infoValueArray[0];
-                    } else {
-                        ArrayList<String> valueList = new ArrayList<String>(infoValueSplitSize);
-                        for ( int j = 0; j < infoValueSplitSize; j++ )
-                            valueList.add(infoValueArray[j]);
-                        value = valueList;
-                    }
-                } else {
-                    key = infoFieldArray[i];
-                    value = true;
-                }
+    /**
+     * Validates the INFO field, and sets it up to be parsed on first use.
+     * @param line the line
+     * @param start the start of the INFO field, inclusive
+     * @param end the end of the INFO field, exclusive
+     * @return a mapping of keys to objects, or null if there are none
+     */
+    private Map<String, Object> parseInfo(final String line, final int start, final int end) {
+        if ( start == end )
+            generateException("The VCF specification requires a valid info field");
 
-                attributes.put(key, value);
-            }
+        if ( isMissing(line, start, end) )
+            return null;
+
+        for ( int i = start; i < end; i++ ) {
+            final char c = line.charAt(i);
+            if ( c == '\t' || c == ' ' )
+                generateException("The VCF specification does not allow for whitespace in the INFO field");
         }
 
-        return attributes;
+        return new LazyInfoAttributes(line, start, end);
     }
 
     /**
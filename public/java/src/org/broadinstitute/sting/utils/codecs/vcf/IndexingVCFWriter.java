@@ -27,6 +27,7 @@ package org.broadinstitute.sting.utils.codecs.vcf;
 import com.google.java.contract.Ensures;
 import com.google.java.contract.Requires;
 import net.sf.samtools.SAMSequenceDictionary;
+import org.broad.tribble.Feature;
 import org.broad.tribble.Tribble;
 import org.broad.tribble.TribbleException;
 import org.broad.tribble.index.DynamicIndexCreator;
@@ -113,9 +114,26 @@ public abstract class IndexingVCFWriter implements VCFWriter {
      * @param vc      the Variant Context object
      */
     public void add(VariantContext vc) {
-        // if we are doing on the fly indexing, add the record ***before*** we write any bytes
+        addToIndex(vc);
+    }
+
+    /**
+     * Are we building an index for this file as records are written?
+     * @return true if indexing on the fly
+     */
+    public boolean isIndexingOnTheFly() {
+        return indexer != null;
+    }
+
+    /**
+     * Register a record with the on-the-fly index, if there is one.  Must be called ***before*** any bytes
+     * of the record are written.
+     *
+     * @param feature the extent of the record about to be written
+     */
+    protected void addToIndex(final Feature feature) {
         if ( indexer != null )
-            indexer.addFeature(vc, positionalStream.getPosition());
+            indexer.addFeature(feature, positionalStream.getPosition());
     }
 
     /**
@@ -0,0 +1,150 @@
+package org.broadinstitute.sting.utils.codecs.vcf;
+
+import java.util.*;
+
+/**
+ * The attributes of a VCF record, parsed from its INFO field only when they are first asked for.
+ *
+ * Holds on to the INFO field alone, so an unparsed record doesn't keep the rest of its line (the genotype
+ * columns in particular) in memory.  Whether a key is present is answered from the raw field; any other
+ * operation on the map splits the field into a HashMap of keys to values exactly as an eager parse would, and
+ * every operation from then on goes to that map.  Walkers which never look at the INFO field therefore never
+ * pay for it.  The map is mutable, as the VariantContextBuilder expects attribute maps handed to it to be.
+ *
+ * Like LazyGenotypesContext, not thread-safe.
+ */
+class LazyInfoAttributes extends AbstractMap<String, Object> {
+    private String info;
+    private Map<String, Object> attributes = null;
+
+    /**
+     * @param line  the VCF line
+     * @param start the start of the INFO field in line, inclusive
+     * @param end   the end of the INFO field in line, exclusive; the field must not be empty or missing
+     */
+    LazyInfoAttributes(final String line, final int start, final int end) {
+        this.info = line.substring(start, end);
+    }
+
+    /**
+     * @return true if the INFO field has been split into its attributes
+     */
+    boolean isDecoded() {
+        return attributes != null;
+    }
+
+    private Map<String, Object> decode() {
+        if ( attributes == null ) {
+            attributes = parse(info, 0, info.length());
+            info = null;
+        }
+        return attributes;
+    }
+
+    /**
+     * parse out the info fields
+     * @param line  a string holding the INFO field
+     * @param start the start of the INFO field in line, inclusive
+     * @param end   the end of the INFO field in line, exclusive
+     * @return a mapping of keys to objects
+     */
+    static Map<String, Object> parse(final String line, final int start, final int end) {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+
+        int fieldStart = start;
+        while ( true ) {
+            final int fieldEnd = indexOf(line, VCFConstants.INFO_FIELD_SEPARATOR_CHAR, fieldStart, end);
+            final int eqI = indexOf(line, '=', fieldStart, fieldEnd);
+
+            if ( eqI != fieldEnd ) {
+                attributes.put(line.substring(fieldStart, eqI), parseValue(line, eqI + 1, fieldEnd));
+            } else {
+                attributes.put(line.substring(fieldStart, fieldEnd), true);
+            }
+
+            if ( fieldEnd == end )
+                break;
+            fieldStart = fieldEnd + 1;
+        }
+
+        return attributes;
+    }
+
+    /**
+     * @return the value as a String, or a List of Strings if it has multiple comma-separated values
+     */
+    private static Object parseValue(final String line, final int start, final int end) {
+        int valueEnd = indexOf(line, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR, start, end);
+        if ( valueEnd == end )
+            return line.substring(start, end);
+
+        final ArrayList<String> valueList = new ArrayList<String>();
+        int valueStart = start;
+        while ( true ) {
+            valueList.add(line.substring(valueStart, valueEnd));
+            if ( valueEnd == end )
+                return valueList;
+            valueStart = valueEnd + 1;
+            valueEnd = indexOf(line, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR, valueStart, end);
+        }
+    }
+
+    /**
+     * @return true if one of the fields of the undecoded INFO field is the flag key or starts with key=
+     */
+    private boolean infoHasKey(final String key) {
+        final int end = info.length();
+        int fieldStart = 0;
+        while ( true ) {
+            final int fieldEnd = indexOf(info, VCFConstants.INFO_FIELD_SEPARATOR_CHAR, fieldStart, end);
+            final int keyEnd = fieldStart + key.length();
+            if ( keyEnd <= fieldEnd && info.startsWith(key, fieldStart) && (keyEnd == fieldEnd || info.charAt(keyEnd) == '=') )
+                return true;
+
+            if ( fieldEnd == end )
+                return false;
+            fieldStart = fieldEnd + 1;
+        }
+    }
+
+    /**
+     * @return the index of the first c in line[from, to), or to if there is none
+     */
+    private static int indexOf(final String line, final char c, final int from, final int to) {
+        for ( int i = from; i < to; i++ )
+            if ( line.charAt(i) == c )
+                return i;
+        return to;
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // Map methods, all of which but isEmpty and containsKey decode the INFO field first
+    //
+    // --------------------------------------------------------------------------------
+
+    @Override
+    public boolean isEmpty() {
+        // a non-empty INFO field always holds at least one key, so there's no need to decode
+        return attributes != null && attributes.isEmpty();
+    }
+
+    @Override public int size() { return decode().size(); }
+    @Override
+    public boolean containsKey(final Object key) {
+        // the VariantContext constructor checks every record for the ID key, so this can't force a decode
+        if ( attributes == null )
+            return key instanceof String && infoHasKey((String)key);
+        return attributes.containsKey(key);
+    }
+
+    @Override public boolean containsValue(final Object value) { return decode().containsValue(value); }
+    @Override public Object get(final Object key) { return decode().get(key); }
+    @Override public Object put(final String key, final Object value) { return decode().put(key, value); }
+    @Override public Object remove(final Object key) { return decode().remove(key); }
+    @Override public void putAll(final Map<? extends String, ?> m) { decode().putAll(m); }
+    @Override public void clear() { decode().clear(); }
+    @Override public Set<String> keySet() { return decode().keySet(); }
+    @Override public Collection<Object> values() { return decode().values(); }
+    @Override public Set<Entry<String, Object>> entrySet() { return decode().entrySet(); }
+}
@@ -25,6 +25,7 @@
 package org.broadinstitute.sting.utils.codecs.vcf;
 
 import net.sf.samtools.SAMSequenceDictionary;
+import org.broad.tribble.Feature;
 import org.broad.tribble.TribbleException;
 import org.broad.tribble.util.ParsingUtils;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
@@ -227,7 +228,8 @@ public class StandardVCFWriter extends IndexingVCFWriter {
 
             // FORMAT
             final GenotypesContext gc = vc.getGenotypes();
-            if ( gc instanceof LazyGenotypesContext && ((LazyGenotypesContext)gc).getUnparsedGenotypeData() != null) {
+            // genotypes still in their VCF text form can be written out as is
+            if ( gc instanceof LazyGenotypesContext && ((LazyGenotypesContext)gc).getUnparsedGenotypeData() instanceof String ) {
                 mWriter.write(VCFConstants.FIELD_SEPARATOR);
                 mWriter.write(((LazyGenotypesContext)gc).getUnparsedGenotypeData().toString());
             } else {
@@ -255,6 +257,32 @@ public class StandardVCFWriter extends IndexingVCFWriter {
         }
     }
 
+    /**
+     * add records which were already encoded by a StandardVCFWriter with the same header, without
+     * decoding and re-encoding them.
+     *
+     * @param location  the extent of the single record in encoded.  Only required when indexing on the fly;
+     *                  otherwise may be null, in which case encoded may hold any number of records
+     * @param encoded   buffer holding complete, newline-terminated VCF records
+     * @param offset    offset of the first byte to write
+     * @param length    number of bytes to write
+     */
+    public void addEncoded(final Feature location, final byte[] encoded, final int offset, final int length) {
+        if ( mHeader == null )
+            throw new IllegalStateException("The VCF Header must be written before records can be added: " + getStreamName());
+        if ( location == null && isIndexingOnTheFly() )
+            throw new ReviewedStingException("Encoded records must be added one at a time when indexing on the fly: " + getStreamName());
+
+        // add() and writeHeader() flush mWriter as they finish, so the bytes can go straight to the stream
+        try {
+            if ( location != null )
+                addToIndex(location);
+            getOutputStream().write(encoded, offset, length);
+        } catch (IOException e) {
+            throw new ReviewedStingException("Unable to write encoded VCF records to " + getStreamName(), e);
+        }
+    }
+
     // --------------------------------------------------------------------------------
     //
     // implementation functions
@@ -145,7 +145,7 @@ public class VCF3Codec extends AbstractVCFCodec {
 
             // check to see if the value list is longer than the key list, which is a problem
             if (nGTKeys < GTValueSplitSize)
-                generateException("There are too many keys for the sample " + sampleName + ", keys = " + parts[8] + ", values = " + parts[genotypeOffset]);
+                generateException("There are too many keys for the sample " + sampleName + ", keys = " + genotypeParts[0] + ", values = " + genotypeParts[genotypeOffset]);
 
             int genotypeAlleleLocation = -1;
             if (nGTKeys >= 1) {
@@ -0,0 +1,88 @@
+package org.broadinstitute.sting.utils.codecs.vcf;
+
+/**
+ * Interns the strings which recur from one VCF record to the next, such as contigs, alleles and filters.
+ *
+ * Lookups can be made directly against a range of a larger string, such as one field of the current line,
+ * so a value which is already in the cache is found without creating a String for it.  The table is
+ * cleared when it fills up, which bounds its memory on files where these values rarely repeat.
+ *
+ * Not thread-safe.
+ */
+final class VCFStringCache {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAXIMUM_CAPACITY = 1 << 16;
+
+    private String[] strings = new String[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * @param str string
+     * @return the cached string equal to str
+     */
+    public String get(final String str) {
+        return get(str, 0, str.length());
+    }
+
+    /**
+     * Finds the cached string equal to source.substring(start, end), adding it if it isn't there yet.
+     *
+     * @param source the string holding the value
+     * @param start  the start of the value in source, inclusive
+     * @param end    the end of the value in source, exclusive
+     * @return the cached string equal to the range
+     */
+    public String get(final String source, final int start, final int end) {
+        final int length = end - start;
+        int hash = 0;
+        for ( int i = start; i < end; i++ )
+            hash = 31 * hash + source.charAt(i);                                                                        // same as String.hashCode
+
+        int slot = slotFor(hash, source, start, length);
+        if ( strings[slot] != null )
+            return strings[slot];
+
+        if ( size >= strings.length / 2 ) {
+            if ( strings.length < MAXIMUM_CAPACITY )
+                grow();
+            else
+                clear();
+            slot = slotFor(hash, source, start, length);
+        }
+
+        // copy the value, so the cache doesn't keep the whole line it came from alive
+        final String str = new String(source.substring(start, end));
+        strings[slot] = str;
+        size++;
+        return str;
+    }
+
+    /**
+     * Finds the slot holding the given range, or the empty slot where it would be inserted.
+     */
+    private int slotFor(final int hash, final String source, final int start, final int length) {
+        final int mask = strings.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String str;
+        while ( (str = strings[slot]) != null ) {
+            if ( str.hashCode() == hash && str.length() == length && str.regionMatches(0, source, start, length) )
+                break;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        final String[] old = strings;
+        strings = new String[old.length * 2];
+        for ( final String str : old ) {
+            if ( str != null )
+                strings[slotFor(str.hashCode(), str, 0, str.length())] = str;
+        }
+    }
+
+    private void clear() {
+        strings = new String[strings.length];
+        size = 0;
+    }
+}
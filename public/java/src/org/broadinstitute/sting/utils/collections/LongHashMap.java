@@ -0,0 +1,229 @@
+package org.broadinstitute.sting.utils.collections;
+
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map from primitive longs to objects, using open addressing with linear probing.
+ *
+ * Unlike a HashMap<Long, V>, neither lookups nor insertions of existing keys allocate: keys are stored
+ * in a flat long[] alongside the values, so there are no boxed keys and no per-entry objects.  Null
+ * values are not permitted, as an empty slot is marked by a null value.  Removal is not supported.
+ *
+ * Not thread-safe, although concurrent reads with no writers are fine.
+ */
+public class LongHashMap<V> implements Iterable<LongHashMap.Entry<V>> {
+    private static final int DEFAULT_EXPECTED_SIZE = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;                                                                                                   // capacity - 1; capacity is always a power of two
+    private int resizeThreshold;                                                                                        // grow once size passes this, keeping the load factor at or under 1/2
+
+    public LongHashMap() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map should hold without having to grow
+     */
+    public LongHashMap(final int expectedSize) {
+        if (expectedSize < 0)
+            throw new ReviewedStingException("Expected size must be positive: " + expectedSize);
+
+        int capacity = 2;
+        while (capacity < 2 * expectedSize && capacity < MAXIMUM_CAPACITY)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Looks up the value associated with a key.
+     *
+     * @param key the key
+     * @return the value associated with the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final long key) {
+        return (V) values[slotFor(key)];
+    }
+
+    /**
+     * @param key the key
+     * @return true if there is a value associated with the key
+     */
+    public boolean containsKey(final long key) {
+        return values[slotFor(key)] != null;
+    }
+
+    /**
+     * Associates a value with a key, replacing any value it previously had.
+     *
+     * @param key   the key
+     * @param value the value (may not be null)
+     * @return the value previously associated with the key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(final long key, final V value) {
+        if (value == null)
+            throw new ReviewedStingException("LongHashMap does not support null values");
+
+        int slot = slotFor(key);
+        final V previous = (V) values[slot];
+        if (previous == null) {
+            if (size >= resizeThreshold) {
+                grow();
+                slot = slotFor(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return a list with all values in the map, in the map's iteration order
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        final List<V> result = new ArrayList<V>(size);
+        for (Object value : values)
+            if (value != null)
+                result.add((V) value);
+        return result;
+    }
+
+    /**
+     * @return the keys in the map, in ascending order
+     */
+    public long[] sortedKeys() {
+        final long[] result = new long[size];
+        int i = 0;
+        for (int slot = nextOccupiedSlot(0); slot < values.length; slot = nextOccupiedSlot(slot + 1))
+            result[i++] = keys[slot];
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Iterates over the entries in the map.  The order is unspecified but deterministic: two maps
+     * built by the same sequence of insertions iterate in the same order.
+     *
+     * @return an iterator over the map's entries
+     */
+    public Iterator<Entry<V>> iterator() {
+        return new Iterator<Entry<V>>() {
+            private int nextSlot = nextOccupiedSlot(0);
+
+            public boolean hasNext() {
+                return nextSlot < values.length;
+            }
+
+            @SuppressWarnings("unchecked")
+            public Entry<V> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                final Entry<V> entry = new Entry<V>(keys[nextSlot], (V) values[nextSlot]);
+                nextSlot = nextOccupiedSlot(nextSlot + 1);
+                return entry;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("LongHashMap does not support removal");
+            }
+        };
+    }
+
+    /**
+     * Finds the slot holding the key, or the empty slot where it would be inserted.
+     *
+     * @param key the key
+     * @return the index of the slot
+     */
+    private int slotFor(final long key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != null && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private int nextOccupiedSlot(int slot) {
+        while (slot < values.length && values[slot] == null)
+            slot++;
+        return slot;
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = capacity == MAXIMUM_CAPACITY ? capacity - 1 : capacity / 2;
+    }
+
+    private void grow() {
+        if (keys.length == MAXIMUM_CAPACITY)
+            throw new ReviewedStingException("LongHashMap cannot hold more than " + size + " entries");
+
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                final int slot = slotFor(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of the key so that keys differing only in their high bits (as packed keys
+     * often do) don't all land in the same neighborhood of the table.
+     *
+     * @param key the key
+     * @return a well mixed hash of the key
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * A key and its value, as returned by the map's iterator.
+     */
+    public static class Entry<V> {
+        private final long key;
+        private final V value;
+
+        private Entry(final long key, final V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+    }
+}
@@ -26,19 +26,33 @@ package org.broadinstitute.sting.utils.fasta;
 
 import net.sf.picard.PicardException;
 import net.sf.picard.reference.FastaSequenceIndex;
+import net.sf.picard.reference.FastaSequenceIndexUtils;
 import net.sf.picard.reference.IndexedFastaSequenceFile;
 import net.sf.picard.reference.ReferenceSequence;
 import net.sf.samtools.SAMSequenceRecord;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.exceptions.UserException;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A caching version of the IndexedFastaSequenceFile that avoids going to disk as often as the raw indexer.
  *
- * Thread-safe!  Uses a lock object to protect write and access to the cache.
+ * The fasta is memory-mapped in fixed-size windows of the file, each the first time a query touches it, and
+ * every query is copied straight out of the mappings using the line layout from the fasta index.  The mappings
+ * are shared by all threads, so with many threads each base is paged in from disk once, rather than once per
+ * thread; there's never more than one mapping per window, however many contigs it holds.  Queries starting
+ * before the first base of a contig fall back to a per-thread cache of the most recently loaded window of
+ * each thread.
+ *
+ * Thread-safe!
  */
 public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
     /** global enable flag */
@@ -54,8 +68,8 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
     private static final long DEFAULT_CACHE_SIZE = 1000000;
 
     // information about checking efficiency
-    long cacheHits = 0;
-    long cacheMisses = 0;
+    private final AtomicLong cacheHits = new AtomicLong(0);
+    private final AtomicLong cacheMisses = new AtomicLong(0);
 
     /** The cache size of this CachingIndexedFastaSequenceFile */
     long cacheSize = DEFAULT_CACHE_SIZE;
@@ -63,6 +77,19 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
     /** When we have a cache miss at position X, we load sequence from X - cacheMissBackup */
     long cacheMissBackup = 100;
 
+    /** log2 of the size in bytes of each mapped window of the fasta; 2^28 bytes is 256MB */
+    private static final int WINDOW_SHIFT = 28;
+    private static final long WINDOW_MASK = (1L << WINDOW_SHIFT) - 1;
+
+    /** The contigs of the fasta, with their line layout, by name */
+    private final Map<String, MappedContig> mappedContigs;
+
+    /** The fasta file the windows are mapped from */
+    private final File mappedFile;
+
+    /** The windows of the fasta which have been mapped so far, in file order; null where a window isn't mapped yet */
+    private final AtomicReferenceArray<ByteBuffer> windows;
+
     /** Represents a specific cached sequence, with a specific start and stop, as well as the bases */
     private static class Cache {
         long start = -1, stop = -1;
@@ -92,6 +119,9 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
     public CachingIndexedFastaSequenceFile(final File file, final FastaSequenceIndex index, long cacheSize) {
         super(file, index);
         setCacheSize(cacheSize);
+        mappedContigs = getMappedContigs(index);
+        mappedFile = file;
+        windows = new AtomicReferenceArray<ByteBuffer>((int)((file.length() + WINDOW_MASK) >>> WINDOW_SHIFT));
     }
 
     private void setCacheSize(long cacheSize) {
@@ -118,30 +148,34 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
     }
 
     public CachingIndexedFastaSequenceFile(final File file, long cacheSize ) throws FileNotFoundException {
-        super(file);
-        setCacheSize(cacheSize);
+        this(file, readIndex(file), cacheSize);
     }
 
     public void printEfficiency() {
         // comment out to disable tracking
-        if ( (cacheHits + cacheMisses) % PRINT_FREQUENCY == 0 ) {
-            System.out.printf("### CachingIndexedFastaReader: hits=%d misses=%d efficiency %.6f%%%n", cacheHits, cacheMisses, calcEfficiency());
+        if ( (getCacheHits() + getCacheMisses()) % PRINT_FREQUENCY == 0 ) {
+            System.out.printf("### CachingIndexedFastaReader: hits=%d misses=%d efficiency %.6f%%%n", getCacheHits(), getCacheMisses(), calcEfficiency());
         }
     }
 
     public double calcEfficiency() {
-        return 100.0 * cacheHits / (cacheMisses + cacheHits * 1.0);
+        return 100.0 * getCacheHits() / (getCacheMisses() + getCacheHits() * 1.0);
     }
 
+    /**
+     * @return the number of queries answered from memory: from already mapped windows, or a thread's cached window
+     */
     public long getCacheHits() {
-        return cacheHits;
+        return cacheHits.get();
     }
 
+    /**
+     * @return the number of queries which had to map a window of the fasta, or load a window of sequence from disk
+     */
     public long getCacheMisses() {
-        return cacheMisses;
+        return cacheMisses.get();
     }
 
-
     /**
      * Gets the subsequence of the contig in the range [start,stop]
      * @param contig Contig whose subsequence to retrieve.
@@ -151,39 +185,20 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
      */
     public ReferenceSequence getSubsequenceAt( String contig, long start, long stop ) {
         ReferenceSequence result;
-        Cache myCache = cache.get();
-        //System.out.printf("getSubsequentAt cache=%s%n", myCache);
+        final MappedContig mappedContig = mappedContigs.get(contig);
 
-        if ( ! USE_CACHE || (stop - start) >= cacheSize ) {
-            cacheMisses++;
+        if ( ! USE_CACHE ) {
+            cacheMisses.incrementAndGet();
             result = super.getSubsequenceAt(contig, start, stop);
-        } else {
-            // todo -- potential optimization is to check if contig.name == contig, as this in generally will be true
-            SAMSequenceRecord contigInfo = super.getSequenceDictionary().getSequence(contig);
-
-            if (stop > contigInfo.getSequenceLength())
+        } else if ( mappedContig != null && start >= 1 && start <= stop + 1 ) {
+            if (stop > mappedContig.length)
                 throw new PicardException("Query asks for data past end of contig");
-
-            if ( start < myCache.start || stop > myCache.stop || myCache.seq == null || myCache.seq.getContigIndex() != contigInfo.getSequenceIndex() ) {
-                cacheMisses++;
-                myCache.start = Math.max(start - cacheMissBackup, 0);
-                myCache.stop  = Math.min(start + cacheSize + cacheMissBackup, contigInfo.getSequenceLength());
-                myCache.seq   = super.getSubsequenceAt(contig, myCache.start, myCache.stop);
-                //System.out.printf("New cache at %s %d-%d%n", contig, cacheStart, cacheStop);
-            } else {
-                cacheHits++;
-            }
-
-            // at this point we determine where in the cache we want to extract the requested subsequence
-            int cacheOffsetStart = (int)(start - myCache.start);
-            int cacheOffsetStop = (int)(stop - start + cacheOffsetStart + 1);
-
-            try {
-                result = new ReferenceSequence(myCache.seq.getName(), myCache.seq.getContigIndex(), Arrays.copyOfRange(myCache.seq.getBases(), cacheOffsetStart, cacheOffsetStop));
-            } catch ( ArrayIndexOutOfBoundsException e ) {
-                throw new ReviewedStingException(String.format("BUG: bad array indexing.  Cache start %d and end %d, request start %d end %d, offset start %d and end %d, base size %d",
-                        myCache.start, myCache.stop, start, stop, cacheOffsetStart, cacheOffsetStop, myCache.seq.getBases().length), e);
-            }
+            result = new ReferenceSequence(mappedContig.name, mappedContig.index, mappedContig.getBases(start, stop));
+        } else if ( (stop - start) >= cacheSize ) {
+            cacheMisses.incrementAndGet();
+            result = super.getSubsequenceAt(contig, start, stop);
+        } else {
+            result = getCachedSubsequenceAt(contig, start, stop);
         }
 
 //        // comment out to disable testing
@@ -194,4 +209,174 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
         if ( PRINT_EFFICIENCY ) printEfficiency();
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the subsequence of the contig in the range [start,stop] from the calling thread's cached window,
+     * loading a new window starting just before start if the range isn't in it.
+     */
+    private ReferenceSequence getCachedSubsequenceAt( String contig, long start, long stop ) {
+        Cache myCache = cache.get();
+        //System.out.printf("getSubsequentAt cache=%s%n", myCache);
+
+        // todo -- potential optimization is to check if contig.name == contig, as this in generally will be true
+        SAMSequenceRecord contigInfo = super.getSequenceDictionary().getSequence(contig);
+
+        if (stop > contigInfo.getSequenceLength())
+            throw new PicardException("Query asks for data past end of contig");
+
+        if ( start < myCache.start || stop > myCache.stop || myCache.seq == null || myCache.seq.getContigIndex() != contigInfo.getSequenceIndex() ) {
+            cacheMisses.incrementAndGet();
+            myCache.start = Math.max(start - cacheMissBackup, 0);
+            myCache.stop  = Math.min(start + cacheSize + cacheMissBackup, contigInfo.getSequenceLength());
+            myCache.seq   = super.getSubsequenceAt(contig, myCache.start, myCache.stop);
+            //System.out.printf("New cache at %s %d-%d%n", contig, cacheStart, cacheStop);
+        } else {
+            cacheHits.incrementAndGet();
+        }
+
+        // at this point we determine where in the cache we want to extract the requested subsequence
+        int cacheOffsetStart = (int)(start - myCache.start);
+        int cacheOffsetStop = (int)(stop - start + cacheOffsetStart + 1);
+
+        try {
+            return new ReferenceSequence(myCache.seq.getName(), myCache.seq.getContigIndex(), Arrays.copyOfRange(myCache.seq.getBases(), cacheOffsetStart, cacheOffsetStop));
+        } catch ( ArrayIndexOutOfBoundsException e ) {
+            throw new ReviewedStingException(String.format("BUG: bad array indexing.  Cache start %d and end %d, request start %d end %d, offset start %d and end %d, base size %d",
+                    myCache.start, myCache.stop, start, stop, cacheOffsetStart, cacheOffsetStop, myCache.seq.getBases().length), e);
+        }
+    }
+
+    /**
+     * Loads the index of the given fasta, as the IndexedFastaSequenceFile(File) constructor does.
+     *
+     * @param file the fasta file
+     * @return the index from the .fai next to the fasta
+     * @throws FileNotFoundException if there's no index next to the fasta
+     */
+    private static FastaSequenceIndex readIndex(final File file) throws FileNotFoundException {
+        final File indexFile = new File(file.getAbsolutePath() + ".fai");
+        if ( ! indexFile.exists() )
+            throw new FileNotFoundException("Fasta index file not found: " + indexFile.getAbsolutePath());
+        return new FastaSequenceIndex(indexFile);
+    }
+
+    /**
+     * @param index the index of the fasta
+     * @return the location and line layout of every contig in the index, by name
+     */
+    private Map<String, MappedContig> getMappedContigs(final FastaSequenceIndex index) {
+        final Map<String, MappedContig> contigs = new HashMap<String, MappedContig>();
+        for ( final String name : FastaSequenceIndexUtils.getContigs(index) ) {
+            contigs.put(name, new MappedContig(name, FastaSequenceIndexUtils.getSequenceIndex(index, name),
+                    FastaSequenceIndexUtils.getSize(index, name),
+                    FastaSequenceIndexUtils.getLocation(index, name),
+                    FastaSequenceIndexUtils.getBasesPerLine(index, name),
+                    FastaSequenceIndexUtils.getBytesPerLine(index, name)));
+        }
+        return contigs;
+    }
+
+    /**
+     * Copies bytes of the fasta out of the mapped windows, mapping any window they cover which isn't mapped yet.
+     *
+     * @param position the offset in the fasta of the first byte to copy
+     * @param dest     the array to copy into
+     * @param offset   the offset in dest of the first byte
+     * @param length   the number of bytes to copy
+     * @return true if a window had to be mapped
+     */
+    private boolean copyMappedBytes(long position, final byte[] dest, int offset, int length) {
+        boolean mappedWindow = false;
+        while ( length > 0 ) {
+            final int window = (int)(position >>> WINDOW_SHIFT);
+            ByteBuffer mapped = windows.get(window);
+            if ( mapped == null ) {
+                // two threads may both map the window at once, which is harmless: one mapping just goes unused
+                windows.compareAndSet(window, null, mapWindow(window));
+                mapped = windows.get(window);
+                mappedWindow = true;
+            }
+
+            final ByteBuffer view = mapped.duplicate();
+            final int windowOffset = (int)(position & WINDOW_MASK);
+            final int n = Math.min(length, view.limit() - windowOffset);
+            view.position(windowOffset);
+            view.get(dest, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+        return mappedWindow;
+    }
+
+    /**
+     * Maps the given window of the fasta.  The file is closed again straight away; the mapping stays valid without it.
+     */
+    private ByteBuffer mapWindow(final int window) {
+        final long start = (long)window << WINDOW_SHIFT;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mappedFile, "r");
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << WINDOW_SHIFT, mappedFile.length() - start));
+        } catch ( FileNotFoundException e ) {
+            throw new UserException.CouldNotReadInputFile(mappedFile, e);
+        } catch ( IOException e ) {
+            throw new ReviewedStingException("Unable to map window " + window + " of the reference", e);
+        } finally {
+            if ( file != null )
+                try { file.close(); } catch ( IOException e ) {}
+        }
+    }
+
+    /**
+     * A contig of the fasta, with the layout of its lines, read out of the mapped windows of the fasta.
+     */
+    private class MappedContig {
+        final String name;
+        final int index;
+        final long length;
+        final long location;
+        final int basesPerLine, bytesPerLine;
+
+        MappedContig(final String name, final int index, final long length, final long location, final int basesPerLine, final int bytesPerLine) {
+            this.name = name;
+            this.index = index;
+            this.length = length;
+            this.location = location;
+            this.basesPerLine = basesPerLine;
+            this.bytesPerLine = bytesPerLine;
+        }
+
+        /**
+         * @return the offset of the 0-based base from the start of the contig's bytes
+         */
+        private long offsetOf(final long base) {
+            return (base / basesPerLine) * bytesPerLine + base % basesPerLine;
+        }
+
+        /**
+         * @param start inclusive, 1-based start of region; must be at most stop + 1
+         * @param stop inclusive, 1-based stop of region; must be at most the length of the contig
+         * @return a new array holding the bases in [start,stop]
+         */
+        byte[] getBases(final long start, final long stop) {
+            final byte[] bases = new byte[(int)(stop - start + 1)];
+
+            boolean mappedWindow = false;
+            int copied = 0;
+            long base = start - 1;
+            while ( copied < bases.length ) {
+                final int n = (int)Math.min(basesPerLine - base % basesPerLine, bases.length - copied);
+                mappedWindow |= copyMappedBytes(location + offsetOf(base), bases, copied, n);
+                copied += n;
+                base += n;
+            }
+
+            if ( mappedWindow )
+                cacheMisses.incrementAndGet();
+            else
+                cacheHits.incrementAndGet();
+            return bases;
+        }
+    }
+}
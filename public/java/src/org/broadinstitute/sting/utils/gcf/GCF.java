@@ -22,232 +22,144 @@
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 
+
 package org.broadinstitute.sting.utils.gcf;
 
-import org.broadinstitute.sting.utils.codecs.vcf.StandardVCFWriter;
+import org.broad.tribble.util.ParsingUtils;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFConstants;
-import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFInfoHeaderLine;
 import org.broadinstitute.sting.utils.variantcontext.*;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.*;
 
 /**
- * GATK binary VCF record
+ * Encoding and decoding of GATK binary VCF (GCF) records.
+ *
+ * A record holds the site fields, typed INFO values, and a block of genotype columns (see GCFGenotypes).
+ * The genotype block is length-prefixed, so a site can be decoded without touching its samples: the block
+ * is handed as is to a LazyGenotypesContext, and only decoded if the genotypes are used.
  *
- * @author Your Name
- * @since Date created
+ * Records are written one after the other after the GCFHeader, each preceded by its length in bytes,
+ * with a negative length marking the end of the file.
  */
 public class GCF {
-    private final static int RECORD_TERMINATOR = 123456789;
-    private int chromOffset;
-    private int start, stop;
-    private String id;
-    private List<Allele> alleleMap;
-    private int alleleOffsets[];
-    private float qual;
-    private byte refPad;
-    private String info;
-    private int filterOffset;
-
-    private List<GCFGenotype> genotypes = Collections.emptyList();
-
-    public GCF(final GCFHeaderBuilder GCFHeaderBuilder, final VariantContext vc, boolean skipGenotypes) {
-        chromOffset = GCFHeaderBuilder.encodeString(vc.getChr());
-        start = vc.getStart();
-        stop = vc.getEnd();
-        refPad = vc.hasReferenceBaseForIndel() ? vc.getReferenceBaseForIndel() : 0;
-        id = vc.getID();
-
-        // encode alleles
-        alleleMap = new ArrayList<Allele>(vc.getNAlleles());
-        alleleOffsets = new int[vc.getNAlleles()];
-        alleleMap.add(vc.getReference());
-        alleleOffsets[0] = GCFHeaderBuilder.encodeAllele(vc.getReference());
-        for ( int i = 0; i < vc.getAlternateAlleles().size(); i++ ) {
-            alleleMap.add(vc.getAlternateAllele(i));
-            alleleOffsets[i+1] = GCFHeaderBuilder.encodeAllele(vc.getAlternateAllele(i));
-        }
-
-        qual = (float)vc.getLog10PError(); //qualToByte(vc.getPhredScaledQual());
-        info = infoFieldString(vc, GCFHeaderBuilder);
-        filterOffset = GCFHeaderBuilder.encodeString(StandardVCFWriter.getFilterString(vc));
-
-        if ( ! skipGenotypes ) {
-            genotypes = encodeGenotypes(GCFHeaderBuilder, vc);
+    protected final static int END_OF_RECORDS = -1;
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private GCF() {}
+
+    /**
+     * Encodes a record.  The record's length isn't included.
+     *
+     * @param header the header of the file being written
+     * @param vc the variant context to encode
+     * @param skipGenotypes if true, the genotypes of the vc are not written
+     * @param outputStream the stream to write to
+     * @throws IOException if the stream can't be written
+     */
+    public static void encode(final GCFHeader header, final VariantContext vc, final boolean skipGenotypes, final DataOutputStream outputStream) throws IOException {
+        header.writeContig(outputStream, vc.getChr());
+        outputStream.writeInt(vc.getStart());
+        outputStream.writeInt(vc.getEnd());
+        writeString(outputStream, vc.getID());
+        outputStream.writeByte(vc.hasReferenceBaseForIndel() ? vc.getReferenceBaseForIndel() : 0);
+
+        outputStream.writeShort(vc.getNAlleles());
+        for ( final Allele allele : vc.getAlleles() ) // the reference is always first
+            writeString(outputStream, allele.getDisplayString());
+
+        outputStream.writeDouble(vc.getLog10PError());
+        header.writeString(outputStream, filterString(vc.getFiltersMaybeNull()));
+
+        final Map<String, Object> attributes = vc.getAttributes();
+        outputStream.writeInt(attributes.size());
+        for ( final Map.Entry<String, Object> attribute : attributes.entrySet() ) {
+            final VCFInfoHeaderLine metaData = header.getVCFHeader().getInfoHeaderLine(attribute.getKey());
+            header.writeString(outputStream, attribute.getKey());
+            GCFTypedValues.write(outputStream, attribute.getValue(), metaData == null ? null : metaData.getType());
         }
-    }
 
-    public GCF(DataInputStream inputStream, boolean skipGenotypes) throws IOException, EOFException {
-        chromOffset = inputStream.readInt();
-
-        // have we reached the footer?
-        if ( chromOffset == GCFHeader.FOOTER_START_MARKER )
-            throw new EOFException();
-
-        start = inputStream.readInt();
-        stop = inputStream.readInt();
-        id = inputStream.readUTF();
-        refPad = inputStream.readByte();
-        alleleOffsets = readIntArray(inputStream);
-        qual = inputStream.readFloat();
-        info = inputStream.readUTF();
-        filterOffset = inputStream.readInt();
-
-        int nGenotypes = inputStream.readInt();
-        int sizeOfGenotypes = inputStream.readInt();
-        if ( skipGenotypes ) {
-            genotypes = Collections.emptyList();
-            inputStream.skipBytes(sizeOfGenotypes);
+        if ( skipGenotypes || ! vc.hasGenotypes() || header.getNSamples() == 0 ) {
+            outputStream.writeInt(0);
+            outputStream.writeInt(0);
         } else {
-            genotypes = new ArrayList<GCFGenotype>(nGenotypes);
-            for ( int i = 0; i < nGenotypes; i++ )
-                genotypes.add(new GCFGenotype(this, inputStream));
+            final byte[] genotypes = GCFGenotypes.encode(header, vc);
+            outputStream.writeInt(header.getNSamples());
+            outputStream.writeInt(genotypes.length);
+            outputStream.write(genotypes);
         }
-
-        int recordDone = inputStream.readInt();
-        if ( recordDone != RECORD_TERMINATOR )
-            throw new UserException.MalformedFile("Record not terminated by RECORD_TERMINATOR key");
     }
 
-    public int write(DataOutputStream outputStream) throws IOException {
-        int startSize = outputStream.size();
-        outputStream.writeInt(chromOffset);
-        outputStream.writeInt(start);
-        outputStream.writeInt(stop);
-        outputStream.writeUTF(id);
-        outputStream.writeByte(refPad);
-        writeIntArray(alleleOffsets, outputStream, true);
-        outputStream.writeFloat(qual);
-        outputStream.writeUTF(info);
-        outputStream.writeInt(filterOffset);
-
-        int nGenotypes = genotypes.size();
-        int expectedSizeOfGenotypes = nGenotypes == 0 ? 0 : genotypes.get(0).sizeInBytes() * nGenotypes;
-        outputStream.writeInt(nGenotypes);
-        outputStream.writeInt(expectedSizeOfGenotypes);
-        int obsSizeOfGenotypes = 0;
-        for ( GCFGenotype g : genotypes )
-            obsSizeOfGenotypes += g.write(outputStream);
-        if ( obsSizeOfGenotypes != expectedSizeOfGenotypes )
-            throw new RuntimeException("Expect and observed genotype sizes disagree! expect = " + expectedSizeOfGenotypes + " obs =" + obsSizeOfGenotypes);
-
-        outputStream.writeInt(RECORD_TERMINATOR);
-        return outputStream.size() - startSize;
-    }
-
-    public VariantContext decode(final String source, final GCFHeader header) {
-        final String contig = header.getString(chromOffset);
-        alleleMap = header.getAlleles(alleleOffsets);
-
-        VariantContextBuilder builder = new VariantContextBuilder(source, contig, start, stop, alleleMap);
-        builder.genotypes(decodeGenotypes(header));
-        builder.log10PError(qual);
-        builder.filters(header.getFilters(filterOffset));
-        builder.attribute("INFO", info);
+    /**
+     * Decodes a record.  Its genotypes are decoded lazily, when they are first used.
+     *
+     * @param header the header of the file being read
+     * @param source the name of the source of the variant context
+     * @param inputStream the stream to read the record from, positioned after its length
+     * @return the variant context
+     * @throws IOException if the stream can't be read
+     */
+    public static VariantContext decode(final GCFHeader header, final String source, final DataInputStream inputStream) throws IOException {
+        final VariantContextBuilder builder = new VariantContextBuilder();
+        builder.source(source);
+        builder.chr(header.readContig(inputStream));
+        builder.start(inputStream.readInt());
+        builder.stop(inputStream.readInt());
+        builder.id(readString(inputStream));
+        final byte refPad = inputStream.readByte();
         builder.referenceBaseForIndel(refPad == 0 ? null : refPad);
-        return builder.make();
-    }
 
-    private GenotypesContext decodeGenotypes(final GCFHeader header) {
-        if ( genotypes.isEmpty() )
-            return VariantContext.NO_GENOTYPES;
-        else {
-            GenotypesContext map = GenotypesContext.create(genotypes.size());
+        final int nAlleles = inputStream.readShort();
+        final List<Allele> alleles = new ArrayList<Allele>(nAlleles);
+        for ( int i = 0; i < nAlleles; i++ )
+            alleles.add(Allele.create(readString(inputStream), i == 0));
+        builder.alleles(alleles);
 
-            for ( int i = 0; i < genotypes.size(); i++ ) {
-                final String sampleName = header.getSample(i);
-                final Genotype g = genotypes.get(i).decode(sampleName, header, this, alleleMap);
-                map.add(g);
-            }
+        builder.log10PError(inputStream.readDouble());
+        builder.filters(header.readFilters(inputStream));
 
-            return map;
+        final int nAttributes = inputStream.readInt();
+        final Map<String, Object> attributes = new HashMap<String, Object>(nAttributes * 2);
+        for ( int i = 0; i < nAttributes; i++ ) {
+            final String key = header.readString(inputStream);
+            attributes.put(key, GCFTypedValues.read(inputStream));
         }
-    }
-
-    private List<GCFGenotype> encodeGenotypes(final GCFHeaderBuilder GCFHeaderBuilder, final VariantContext vc) {
-        int nGenotypes = vc.getNSamples();
-        if ( nGenotypes > 0 ) {
-            List<GCFGenotype> genotypes = new ArrayList<GCFGenotype>(nGenotypes);
-            for ( int i = 0; i < nGenotypes; i++ ) genotypes.add(null);
-
-            for ( Genotype g : vc.getGenotypes() ) {
-                int i = GCFHeaderBuilder.encodeSample(g.getSampleName());
-                genotypes.set(i, new GCFGenotype(GCFHeaderBuilder, alleleMap, g));
-            }
-
-            return genotypes;
-        } else {
-            return Collections.emptyList();
-        }
-    }
+        builder.attributes(attributes);
 
-    public int getNAlleles() { return alleleOffsets.length; }
+        final int nGenotypes = inputStream.readInt();
+        final byte[] genotypes = new byte[inputStream.readInt()];
+        inputStream.readFully(genotypes);
+        if ( nGenotypes > 0 )
+            builder.genotypesNoValidation(new LazyGenotypesContext(new GCFGenotypes(header, alleles), genotypes, nGenotypes));
 
-
-    private final String infoFieldString(VariantContext vc, final GCFHeaderBuilder GCFHeaderBuilder) {
-        StringBuilder s = new StringBuilder();
-
-        boolean first = true;
-        for ( Map.Entry<String, Object> field : vc.getAttributes().entrySet() ) {
-            String key = field.getKey();
-            int stringIndex = GCFHeaderBuilder.encodeString(key);
-            String outputValue = StandardVCFWriter.formatVCFField(field.getValue());
-            if ( outputValue != null ) {
-                if ( ! first ) s.append(";");
-                s.append(stringIndex).append("=").append(outputValue);
-                first = false;
-            }
-        }
-
-        return s.toString();
-    }
-
-    protected final static int BUFFER_SIZE = 1048576; // 2**20
-
-    public static DataInputStream createDataInputStream(final InputStream stream) {
-        return new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
-    }
-
-    public static FileInputStream createFileInputStream(final File file) throws FileNotFoundException {
-        return new FileInputStream(file);
-    }
-
-    protected final static int[] readIntArray(final DataInputStream inputStream) throws IOException {
-        return readIntArray(inputStream, inputStream.readInt());
-    }
-
-    protected final static int[] readIntArray(final DataInputStream inputStream, int size) throws IOException {
-        int[] array = new int[size];
-        for ( int i = 0; i < array.length; i++ )
-            array[i] = inputStream.readInt();
-        return array;
-    }
-
-    protected final static void writeIntArray(int[] array, final DataOutputStream outputStream, boolean writeSize) throws IOException {
-        if ( writeSize ) outputStream.writeInt(array.length);
-        for ( int i : array )
-            outputStream.writeInt(i);
-    }
-
-    protected final static byte[] readByteArray(final DataInputStream inputStream) throws IOException {
-        return readByteArray(inputStream, inputStream.readInt());
+        return builder.make();
     }
 
-    protected final static byte[] readByteArray(final DataInputStream inputStream, int size) throws IOException {
-        byte[] array = new byte[size];
-        for ( int i = 0; i < array.length; i++ )
-            array[i] = inputStream.readByte();
-        return array;
+    /**
+     * @param filters the filters of a site or genotype, or null if filters were not applied
+     * @return the filters as they'd appear in a VCF file
+     */
+    protected static String filterString(final Set<String> filters) {
+        if ( filters == null )
+            return VCFConstants.UNFILTERED;
+        else if ( filters.isEmpty() )
+            return VCFConstants.PASSES_FILTERS_v4;
+        else
+            return ParsingUtils.join(VCFConstants.FILTER_CODE_SEPARATOR, ParsingUtils.sortList(filters));
     }
 
-    protected final static void writeByteArray(byte[] array, final DataOutputStream outputStream, boolean writeSize) throws IOException {
-        if ( writeSize ) outputStream.writeInt(array.length);
-        for ( byte i : array )
-            outputStream.writeByte(i);
+    protected static void writeString(final DataOutputStream outputStream, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(UTF8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
     }
 
-    protected final static byte qualToByte(double phredScaledQual) {
-        return (byte)Math.round(Math.min(phredScaledQual, 255));
+    protected static String readString(final DataInputStream inputStream) throws IOException {
+        final byte[] bytes = new byte[inputStream.readInt()];
+        inputStream.readFully(bytes);
+        return new String(bytes, UTF8);
     }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2011, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.broadinstitute.sting.utils.gcf;
+
+import net.sf.samtools.util.BlockCompressedInputStream;
+import org.broad.tribble.Feature;
+import org.broad.tribble.FeatureCodec;
+import org.broad.tribble.NameAwareCodec;
+import org.broad.tribble.readers.LineReader;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.variantcontext.VariantContext;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Codec for GATK binary VCF (GCF) files, read as VariantContexts just like VCF files.
+ *
+ * GCF files are binary and block compressed, so they can't be read line by line as tribble codecs normally
+ * are.  Tracks of this type read records through a GCFFeatureSource instead, created by createFeatureSource().
+ */
+public class GCFCodec implements FeatureCodec<VariantContext>, NameAwareCodec {
+    private String name = "Unknown";
+
+    /**
+     * Creates the feature source from which records of a GCF file are read
+     *
+     * @param file the GCF file
+     * @return the feature source
+     * @throws IOException if the file or its index can't be read
+     */
+    public GCFFeatureSource createFeatureSource(final File file) throws IOException {
+        return new GCFFeatureSource(file, getName());
+    }
+
+    public Feature decodeLoc(String line) {
+        throw new ReviewedStingException("GCF files can't be read line by line; use a GCFFeatureSource");
+    }
+
+    public VariantContext decode(String line) {
+        throw new ReviewedStingException("GCF files can't be read line by line; use a GCFFeatureSource");
+    }
+
+    public Object readHeader(LineReader reader) {
+        throw new ReviewedStingException("GCF files can't be read line by line; use a GCFFeatureSource");
+    }
+
+    public Class<VariantContext> getFeatureType() {
+        return VariantContext.class;
+    }
+
+    public boolean canDecode(final String potentialInput) {
+        try {
+            final InputStream stream = new BufferedInputStream(new FileInputStream(potentialInput));
+            try {
+                if ( ! BlockCompressedInputStream.isValidFile(stream) )
+                    return false;
+                final DataInputStream inputStream = new DataInputStream(new BlockCompressedInputStream(stream));
+                final byte[] magic = new byte[GCFHeader.GCF_FILE_START_MARKER.length];
+                inputStream.readFully(magic);
+                return Arrays.equals(magic, GCFHeader.GCF_FILE_START_MARKER);
+            } finally {
+                stream.close();
+            }
+        } catch ( IOException e ) {
+            return false;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2011, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.broadinstitute.sting.utils.gcf;
+
+import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.util.BlockCompressedInputStream;
+import org.apache.log4j.Logger;
+import org.broad.tribble.FeatureSource;
+import org.broad.tribble.iterators.CloseableTribbleIterator;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.variantcontext.VariantContext;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads VariantContexts from a GCF file, using its GCFIndex for queries if there is one.
+ *
+ * As with other feature sources, all iterators read from the same underlying stream, so starting a new
+ * query or iteration invalidates any earlier iterator.
+ */
+public class GCFFeatureSource implements FeatureSource<VariantContext> {
+    final protected static Logger logger = Logger.getLogger(GCFFeatureSource.class);
+
+    private final File file;
+    private final String name;
+    private final BlockCompressedInputStream blockCompressedInputStream;
+    private final DataInputStream inputStream;
+    private final GCFHeader header;
+    private final GCFIndex index;
+    private final long firstRecordFilePointer;
+
+    /**
+     * @param file the GCF file
+     * @param name the name of the track, used as the source of the VariantContexts
+     * @throws IOException if the file or its index can't be read
+     */
+    public GCFFeatureSource(final File file, final String name) throws IOException {
+        this.file = file;
+        this.name = name;
+
+        blockCompressedInputStream = new BlockCompressedInputStream(file);
+        inputStream = new DataInputStream(new UnsignedByteInputStream(blockCompressedInputStream));
+        header = GCFHeader.read(inputStream);
+        firstRecordFilePointer = blockCompressedInputStream.getFilePointer();
+
+        final File indexFile = GCFIndex.indexFile(file);
+        if ( indexFile.exists() ) {
+            index = GCFIndex.read(indexFile);
+        } else {
+            logger.warn("No index found for GCF file " + file + "; queries will have to scan the whole file");
+            index = null;
+        }
+    }
+
+    public CloseableTribbleIterator<VariantContext> query(final String chr, final int start, final int end) throws IOException {
+        long filePointer = firstRecordFilePointer;
+        if ( index != null ) {
+            filePointer = index.getQueryStart(chr, start, end);
+            if ( filePointer == -1 ) // no records overlap the query
+                return new RecordIterator(chr, start, end, true);
+        }
+
+        blockCompressedInputStream.seek(filePointer);
+        return new RecordIterator(chr, start, end, false);
+    }
+
+    public CloseableTribbleIterator<VariantContext> iterator() throws IOException {
+        blockCompressedInputStream.seek(firstRecordFilePointer);
+        return new RecordIterator(null, 0, 0, false);
+    }
+
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    public List<String> getSequenceNames() {
+        return index != null ? index.getSequenceNames() : header.getContigs();
+    }
+
+    public Object getHeader() {
+        return header.getVCFHeader();
+    }
+
+    /**
+     * @return the sequence dictionary stored in the GCF header
+     */
+    public SAMSequenceDictionary getSequenceDictionary() {
+        return header.getSequenceDictionary();
+    }
+
+    /**
+     * Reads records from the current position of the stream, returning all of them or only those overlapping
+     * an interval.  When querying, reading stops at the first record past the end of the interval.
+     */
+    private class RecordIterator implements CloseableTribbleIterator<VariantContext> {
+        private final String chr;
+        private final int start, end;
+        private boolean done;
+        private boolean inQueryContig = false;
+        private VariantContext next = null;
+        private byte[] record = new byte[4096];
+
+        public RecordIterator(final String chr, final int start, final int end, final boolean empty) {
+            this.chr = chr;
+            this.start = start;
+            this.end = end;
+            this.done = empty;
+            advance();
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public VariantContext next() {
+            if ( next == null )
+                throw new NoSuchElementException("No more records in GCF file " + file);
+            final VariantContext vc = next;
+            advance();
+            return vc;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove records from a GCF file");
+        }
+
+        public Iterator<VariantContext> iterator() {
+            return this;
+        }
+
+        private void advance() {
+            next = null;
+            try {
+                while ( ! done && next == null ) {
+                    final VariantContext vc = readRecord();
+                    if ( vc == null || chr == null ) {
+                        done = vc == null;
+                        next = vc;
+                    } else if ( vc.getChr().equals(chr) ) {
+                        inQueryContig = true;
+                        if ( vc.getStart() > end )
+                            done = true;
+                        else if ( vc.getEnd() >= start )
+                            next = vc;
+                    } else if ( inQueryContig ) {
+                        done = true; // we've moved on to the next contig
+                    }
+                }
+            } catch ( EOFException e ) {
+                throw new UserException.MalformedFile(file, "GCF file is truncated", e);
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+        }
+
+        /**
+         * @return the next record in the file, or null if there are no more
+         */
+        private VariantContext readRecord() throws IOException {
+            final int length = inputStream.readInt();
+            if ( length == GCF.END_OF_RECORDS )
+                return null;
+
+            if ( length > record.length )
+                record = new byte[Math.max(length, record.length * 2)];
+            inputStream.readFully(record, 0, length);
+            return GCF.decode(header, name, new DataInputStream(new ByteArrayInputStream(record, 0, length)));
+        }
+    }
+
+    /**
+     * BlockCompressedInputStream.read() returns bytes sign extended, which DataInputStream would take for the
+     * end of the stream, so single bytes are read through read(byte[]) instead.
+     */
+    private static class UnsignedByteInputStream extends FilterInputStream {
+        private final byte[] singleByte = new byte[1];
+
+        public UnsignedByteInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return in.read(singleByte, 0, 1) == 1 ? singleByte[0] & 0xFF : -1;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2011, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.broadinstitute.sting.utils.gcf;
+
+import org.broadinstitute.sting.utils.codecs.vcf.StandardVCFWriter;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFConstants;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFFormatHeaderLine;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.variantcontext.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The genotypes of a GCF record, stored column by column.
+ *
+ * There is one entry per sample in the header, in header order, in each column:
+ *
+ * - GT: a byte holding the ploidy, with the top bit set if phased, then a byte per allele giving its index in
+ *   the site's alleles, or -1 for a no-call.  Samples without a genotype in the VariantContext are written as
+ *   diploid no-calls, as they are in VCF files
+ * - GQ: the log10PError of each genotype, as a double
+ * - FT: a flag for whether any genotype was filtered, followed if so by each genotype's filter string
+ * - the other FORMAT fields: the number of fields, then for each field its key and a typed value per sample
+ *
+ * Encoded blocks are decoded lazily, when a LazyGenotypesContext uses this class as its parser.
+ */
+public class GCFGenotypes implements LazyGenotypesContext.LazyParser {
+    private final static int PHASED = 0x80;
+    private final static int NO_CALL = -1;
+
+    private final GCFHeader header;
+    private final List<Allele> alleles;
+
+    /**
+     * @param header the header of the file being read
+     * @param alleles the alleles of the site whose genotypes will be parsed
+     */
+    public GCFGenotypes(final GCFHeader header, final List<Allele> alleles) {
+        this.header = header;
+        this.alleles = alleles;
+    }
+
+    /**
+     * Encodes the genotypes of a VariantContext for the samples in the header
+     *
+     * @param header the header of the file being written
+     * @param vc the variant context
+     * @return the encoded block of genotypes
+     * @throws IOException if the block can't be written
+     */
+    public static byte[] encode(final GCFHeader header, final VariantContext vc) throws IOException {
+        final List<String> samples = header.getSamples();
+        final Genotype[] genotypes = new Genotype[samples.size()];
+        for ( int i = 0; i < genotypes.length; i++ )
+            genotypes[i] = vc.getGenotype(samples.get(i));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream outputStream = new DataOutputStream(bytes);
+
+        // GT
+        final List<Allele> siteAlleles = vc.getAlleles();
+        for ( final Genotype g : genotypes ) {
+            if ( g == null ) {
+                outputStream.writeByte(2);
+                outputStream.writeByte(NO_CALL);
+                outputStream.writeByte(NO_CALL);
+            } else {
+                outputStream.writeByte(g.getPloidy() | (g.isPhased() ? PHASED : 0));
+                for ( final Allele allele : g.getAlleles() )
+                    outputStream.writeByte(allele.isNoCall() ? NO_CALL : alleleIndex(allele, siteAlleles, vc));
+            }
+        }
+
+        // GQ
+        for ( final Genotype g : genotypes )
+            outputStream.writeDouble(g == null ? VariantContext.NO_LOG10_PERROR : g.getLog10PError());
+
+        // FT
+        boolean filtersWereApplied = false;
+        for ( final Genotype g : genotypes )
+            filtersWereApplied |= g != null && g.filtersWereApplied();
+        outputStream.writeBoolean(filtersWereApplied);
+        if ( filtersWereApplied )
+            for ( final Genotype g : genotypes )
+                header.writeString(outputStream, GCF.filterString(g == null ? null : g.getFiltersMaybeNull()));
+
+        // all other FORMAT fields
+        final Set<String> keys = new TreeSet<String>();
+        for ( final Genotype g : genotypes )
+            if ( g != null )
+                keys.addAll(g.getAttributes().keySet());
+        outputStream.writeInt(keys.size());
+        for ( final String key : keys ) {
+            final VCFFormatHeaderLine metaData = header.getVCFHeader().getFormatHeaderLine(key);
+            header.writeString(outputStream, key);
+            for ( final Genotype g : genotypes ) {
+                if ( g == null || ! g.hasAttribute(key) )
+                    GCFTypedValues.writeAbsent(outputStream);
+                else
+                    GCFTypedValues.write(outputStream, g.getAttribute(key), metaData == null ? null : metaData.getType());
+            }
+        }
+
+        outputStream.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes an encoded block of genotypes
+     *
+     * @param data the byte[] produced by encode()
+     * @return the genotypes
+     */
+    public LazyGenotypesContext.LazyData parse(final Object data) {
+        final List<String> samples = header.getSamples();
+        final int nSamples = samples.size();
+        final DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream((byte[])data));
+
+        try {
+            // GT
+            final List<List<Allele>> genotypeAlleles = new ArrayList<List<Allele>>(nSamples);
+            final boolean[] phased = new boolean[nSamples];
+            for ( int i = 0; i < nSamples; i++ ) {
+                final int ploidyAndPhase = inputStream.readUnsignedByte();
+                phased[i] = (ploidyAndPhase & PHASED) != 0;
+                final int ploidy = ploidyAndPhase & ~PHASED;
+                final List<Allele> gtAlleles = new ArrayList<Allele>(ploidy);
+                for ( int j = 0; j < ploidy; j++ ) {
+                    final int alleleIndex = inputStream.readByte();
+                    gtAlleles.add(alleleIndex == NO_CALL ? Allele.NO_CALL : alleles.get(alleleIndex));
+                }
+                genotypeAlleles.add(gtAlleles);
+            }
+
+            // GQ
+            final double[] log10PErrors = new double[nSamples];
+            for ( int i = 0; i < nSamples; i++ )
+                log10PErrors[i] = inputStream.readDouble();
+
+            // FT
+            final List<Set<String>> filters = new ArrayList<Set<String>>(nSamples);
+            final boolean filtersWereApplied = inputStream.readBoolean();
+            for ( int i = 0; i < nSamples; i++ )
+                filters.add(filtersWereApplied ? header.readFilters(inputStream) : null);
+
+            // all other FORMAT fields
+            final List<Map<String, Object>> attributes = new ArrayList<Map<String, Object>>(nSamples);
+            final int nKeys = inputStream.readInt();
+            for ( int i = 0; i < nSamples; i++ )
+                attributes.add(new HashMap<String, Object>(nKeys * 2));
+            for ( int k = 0; k < nKeys; k++ ) {
+                final String key = header.readString(inputStream);
+                for ( int i = 0; i < nSamples; i++ ) {
+                    final Object value = GCFTypedValues.read(inputStream);
+                    if ( value != null )
+                        attributes.get(i).put(key, decodeFormatValue(key, value));
+                }
+            }
+
+            final ArrayList<Genotype> genotypes = new ArrayList<Genotype>(nSamples);
+            for ( int i = 0; i < nSamples; i++ )
+                genotypes.add(new Genotype(samples.get(i), genotypeAlleles.get(i), log10PErrors[i], filters.get(i), attributes.get(i), phased[i]));
+
+            return new LazyGenotypesContext.LazyData(genotypes, header.samplesInSortedOrder, header.sampleOffsets);
+        } catch ( IOException e ) {
+            throw new UserException.MalformedFile("Malformed GCF file: couldn't decode genotypes", e);
+        }
+    }
+
+    /**
+     * PL values must be a String or GenotypeLikelihoods to be found by Genotype.getLikelihoods()
+     */
+    private static Object decodeFormatValue(final String key, final Object value) {
+        if ( ! key.equals(VCFConstants.PHRED_GENOTYPE_LIKELIHOODS_KEY) )
+            return value;
+
+        if ( value instanceof List ) {
+            final List<?> pls = (List<?>)value;
+            if ( ! pls.isEmpty() && pls.get(0) instanceof Integer ) {
+                final double[] log10Likelihoods = new double[pls.size()];
+                for ( int i = 0; i < log10Likelihoods.length; i++ )
+                    log10Likelihoods[i] = (Integer)pls.get(i) / -10.0;
+                return GenotypeLikelihoods.fromLog10Likelihoods(log10Likelihoods);
+            }
+        }
+
+        return StandardVCFWriter.formatVCFField(value);
+    }
+
+    private static int alleleIndex(final Allele allele, final List<Allele> siteAlleles, final VariantContext vc) {
+        final int index = siteAlleles.indexOf(allele);
+        if ( index == -1 )
+            throw new ReviewedStingException("BUG: genotype allele " + allele + " isn't one of the alleles of the site at " + vc.getChr() + ":" + vc.getStart());
+        return index;
+    }
+}
@@ -22,184 +22,226 @@
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 
+
 package org.broadinstitute.sting.utils.gcf;
 
-import org.apache.log4j.Logger;
-import org.broadinstitute.sting.utils.codecs.vcf.VCFCodec;
-import org.broadinstitute.sting.utils.codecs.vcf.VCFConstants;
+import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.SAMSequenceRecord;
+import org.broad.tribble.readers.AsciiLineReader;
+import org.broadinstitute.sting.utils.codecs.vcf.*;
 import org.broadinstitute.sting.utils.exceptions.UserException;
-import org.broadinstitute.sting.utils.variantcontext.Allele;
 
 import java.io.*;
 import java.util.*;
 
 /**
- * [Short one sentence description of this walker]
- * <p/>
- * <p>
- * [Functionality of this walker]
- * </p>
- * <p/>
- * <h2>Input</h2>
- * <p>
- * [Input description]
- * </p>
- * <p/>
- * <h2>Output</h2>
- * <p>
- * [Output description]
- * </p>
- * <p/>
- * <h2>Examples</h2>
- * <pre>
- *    java
- *      -jar GenomeAnalysisTK.jar
- *      -T $WalkerName
- *  </pre>
+ * The header of a GCF file: the VCF header it was written with, plus the tables of contigs, strings and
+ * samples that records refer to by offset.  The contig table keeps the lengths of the contigs alongside
+ * their names, as the sequence dictionary of the file.
  *
- * @author Your Name
- * @since Date created
+ * The string table holds every INFO, FORMAT and FILTER ID declared in the VCF header.  All tables are fixed
+ * once the header is written, so any record can be decoded on its own; a contig or string which isn't in its
+ * table is written out in full wherever it occurs.
  */
 public class GCFHeader {
-    final protected static Logger logger = Logger.getLogger(GCFHeader.class);
+    public final static int GCF_VERSION = 3;
+    public final static byte[] GCF_FILE_START_MARKER = "GCF\2".getBytes();
 
-    public final static int GCF_VERSION = 1;
-    public final static byte[] GCF_FILE_START_MARKER = "GCF\1".getBytes();
-    public final static int FOOTER_START_MARKER = -1;
-    public final static long HEADER_FORWARD_REFERENCE_OFFSET = GCF_FILE_START_MARKER.length + 4; // for the version
+    /** Offset written in place of a table entry, when the value itself follows */
+    protected final static int INLINE_VALUE = -1;
 
-    final int version;
-    long footerPosition;
-    final List<Allele> alleles;
+    final VCFHeader vcfHeader;
+    final List<String> contigs;
+    final List<Integer> contigLengths;
     final List<String> strings;
     final List<String> samples;
-    final List<Set<String>> filters;
-
-    public GCFHeader(final Map<Allele, Integer> allelesIn, final Map<String, Integer> stringIn, final Map<String, Integer> samplesIn) {
-        version = GCF_VERSION;
-        footerPosition = 0;
-        this.alleles = linearize(allelesIn);
-        this.strings = linearize(stringIn);
-        this.samples = linearize(samplesIn);
-        this.filters = null; // not used with this constructor
-    }
-
-    public GCFHeader(FileInputStream fileInputStream) throws IOException {
-        DataInputStream inputStream = new DataInputStream(fileInputStream);
-        byte[] headerTest = new byte[GCF_FILE_START_MARKER.length];
-        inputStream.read(headerTest);
-        if ( ! Arrays.equals(headerTest, GCF_FILE_START_MARKER) ) {
-            throw new UserException("Could not read GVCF file.  GCF_FILE_START_MARKER missing.  Saw " + new String(headerTest));
-        } else {
-            version = inputStream.readInt();
-            logger.info("Read GCF version " + version);
-            footerPosition = inputStream.readLong();
-            logger.info("Read footer position of " + footerPosition);
-            long lastPos = fileInputStream.getChannel().position();
-            logger.info("  Last position is " + lastPos);
-
-            // seek to the footer
-            fileInputStream.getChannel().position(footerPosition);
-            if ( inputStream.readInt() != FOOTER_START_MARKER )
-                throw new UserException.MalformedFile("Malformed GCF file: couldn't find the footer marker");
-            alleles = stringsToAlleles(readStrings(inputStream));
-            strings = readStrings(inputStream);
-            samples = readStrings(inputStream);
-            logger.info(String.format("Allele map of %d elements", alleles.size()));
-            logger.info(String.format("String map of %d elements", strings.size()));
-            logger.info(String.format("Sample map of %d elements", samples.size()));
-            filters = initializeFilterCache();
-            fileInputStream.getChannel().position(lastPos);
+    final List<String> samplesInSortedOrder;
+    final Map<String, Integer> contigOffsets;
+    final Map<String, Integer> stringOffsets;
+    final Map<String, Integer> sampleOffsets;
+    private final Map<String, LinkedHashSet<String>> filterCache = new HashMap<String, LinkedHashSet<String>>();
+
+    /**
+     * Creates the header for a new GCF file
+     *
+     * @param vcfHeader the VCF header of the records to be written
+     * @param refDict the reference dictionary, used to build the contig table; may be null
+     */
+    public GCFHeader(final VCFHeader vcfHeader, final SAMSequenceDictionary refDict) {
+        this.vcfHeader = vcfHeader;
+
+        contigs = new ArrayList<String>();
+        contigLengths = new ArrayList<Integer>();
+        if ( refDict != null ) {
+            for ( final SAMSequenceRecord contig : refDict.getSequences() ) {
+                contigs.add(contig.getSequenceName());
+                contigLengths.add(contig.getSequenceLength());
+            }
         }
+
+        final Set<String> ids = new LinkedHashSet<String>();
+        for ( final VCFHeaderLine line : vcfHeader.getMetaData() )
+            if ( line instanceof VCFIDHeaderLine )
+                ids.add(((VCFIDHeaderLine)line).getID());
+        strings = new ArrayList<String>(ids);
+
+        samples = new ArrayList<String>(vcfHeader.getGenotypeSamples());
+
+        samplesInSortedOrder = sorted(samples);
+        contigOffsets = offsets(contigs);
+        stringOffsets = offsets(strings);
+        sampleOffsets = offsets(samples);
+    }
+
+    private GCFHeader(final VCFHeader vcfHeader, final List<String> contigs, final List<Integer> contigLengths, final List<String> strings) {
+        this.vcfHeader = vcfHeader;
+        this.contigs = contigs;
+        this.contigLengths = contigLengths;
+        this.strings = strings;
+        this.samples = new ArrayList<String>(vcfHeader.getGenotypeSamples());
+        samplesInSortedOrder = sorted(samples);
+        contigOffsets = offsets(contigs);
+        stringOffsets = offsets(strings);
+        sampleOffsets = offsets(samples);
+    }
+
+    /**
+     * Reads the header from the start of a GCF file, leaving the stream at the first record
+     *
+     * @param inputStream the decompressed GCF stream
+     * @return the header
+     * @throws IOException if the stream can't be read
+     */
+    public static GCFHeader read(final DataInputStream inputStream) throws IOException {
+        final byte[] headerTest = new byte[GCF_FILE_START_MARKER.length];
+        inputStream.readFully(headerTest);
+        if ( ! Arrays.equals(headerTest, GCF_FILE_START_MARKER) )
+            throw new UserException.MalformedFile("Could not read GCF file.  GCF_FILE_START_MARKER missing.  Saw " + new String(headerTest));
+
+        final int version = inputStream.readInt();
+        if ( version != GCF_VERSION )
+            throw new UserException.MalformedFile("Unsupported GCF version " + version + "; this version of the GATK reads GCF version " + GCF_VERSION);
+
+        final byte[] vcfHeaderText = new byte[inputStream.readInt()];
+        inputStream.readFully(vcfHeaderText);
+        final VCFHeader vcfHeader = (VCFHeader)new VCFCodec().readHeader(new AsciiLineReader(new ByteArrayInputStream(vcfHeaderText)));
+
+        final List<String> contigs = readStrings(inputStream);
+        final List<Integer> contigLengths = new ArrayList<Integer>(contigs.size());
+        for ( int i = 0; i < contigs.size(); i++ )
+            contigLengths.add(inputStream.readInt());
+        final List<String> strings = readStrings(inputStream);
+        return new GCFHeader(vcfHeader, contigs, contigLengths, strings);
     }
 
-    public static int writeHeader(final DataOutputStream outputStream) throws IOException {
-        int startBytes = outputStream.size();
+    /**
+     * Writes the header at the start of a GCF file
+     *
+     * @param outputStream the stream to write to
+     * @throws IOException if the stream can't be written
+     */
+    public void write(final DataOutputStream outputStream) throws IOException {
+        // the VCF header is stored as text, exactly as it would appear in a VCF file
+        final ByteArrayOutputStream vcfHeaderText = new ByteArrayOutputStream();
+        final StandardVCFWriter vcfHeaderWriter = new StandardVCFWriter(vcfHeaderText, null, false);
+        vcfHeaderWriter.writeHeader(vcfHeader);
+        vcfHeaderWriter.close();
+
         outputStream.write(GCF_FILE_START_MARKER);
         outputStream.writeInt(GCF_VERSION);
-        outputStream.writeLong(0);
-        return outputStream.size() - startBytes;
+        outputStream.writeInt(vcfHeaderText.size());
+        vcfHeaderText.writeTo(outputStream);
+        writeStrings(outputStream, contigs);
+        for ( final int length : contigLengths )
+            outputStream.writeInt(length);
+        writeStrings(outputStream, strings);
     }
 
-    public int writeFooter(final DataOutputStream outputStream) throws IOException {
-        int startBytes = outputStream.size();
-        outputStream.writeInt(FOOTER_START_MARKER); // has to be the same as chrom encoding
-        write(outputStream, allelesToStrings(alleles));
-        write(outputStream, strings);
-        write(outputStream, samples);
-        return outputStream.size() - startBytes;
+    public VCFHeader getVCFHeader() { return vcfHeader; }
+
+    public List<String> getContigs() { return Collections.unmodifiableList(contigs); }
+
+    /**
+     * @return the dictionary of the reference the file was written against, empty if it was written without one
+     */
+    public SAMSequenceDictionary getSequenceDictionary() {
+        final SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+        for ( int i = 0; i < contigs.size(); i++ )
+            dictionary.addSequence(new SAMSequenceRecord(contigs.get(i), contigLengths.get(i)));
+        return dictionary;
     }
 
-    private void write(DataOutputStream outputStream, List<String> l) throws IOException {
-        outputStream.writeInt(l.size());
-        for ( String elt : l ) outputStream.writeUTF(elt);
+    /**
+     * @return the samples with genotype columns, in the order of the columns
+     */
+    public List<String> getSamples() { return Collections.unmodifiableList(samples); }
+
+    public int getNSamples() { return samples.size(); }
+
+    // --------------------------------------------------------------------------------
+    //
+    // Table lookups
+    //
+    // --------------------------------------------------------------------------------
+
+    protected void writeContig(final DataOutputStream outputStream, final String contig) throws IOException {
+        writeTableEntry(outputStream, contigOffsets, contig);
     }
 
-    private List<String> allelesToStrings(List<Allele> alleles) {
-        List<String> strings = new ArrayList<String>(alleles.size());
-        for ( Allele allele : alleles ) strings.add(allele.toString());
-        return strings;
+    protected String readContig(final DataInputStream inputStream) throws IOException {
+        return readTableEntry(inputStream, contigs);
     }
 
-    private List<Set<String>> initializeFilterCache() {
-        // required to allow offset -> set lookup
-        List<Set<String>> l = new ArrayList<Set<String>>(strings.size());
-        for ( int i = 0; i < strings.size(); i++ ) l.add(null);
-        return l;
+    protected void writeString(final DataOutputStream outputStream, final String string) throws IOException {
+        writeTableEntry(outputStream, stringOffsets, string);
     }
 
-    private static List<Allele> stringsToAlleles(final List<String> strings) {
-        final List<Allele> alleles = new ArrayList<Allele>(strings.size());
-        for ( String string : strings ) {
-            boolean isRef = string.endsWith("*");
-            if ( isRef ) string = string.substring(0, string.length() - 1);
-            alleles.add(Allele.create(string, isRef));
-        }
-        return alleles;
+    protected String readString(final DataInputStream inputStream) throws IOException {
+        return readTableEntry(inputStream, strings);
     }
 
-    private static List<String> readStrings(final DataInputStream inputStream) throws IOException {
-        final int nStrings = inputStream.readInt();
+    protected Set<String> readFilters(final DataInputStream inputStream) throws IOException {
+        return VCFCodec.parseFilters(filterCache, -1, readString(inputStream));
+    }
 
-        final List<String> strings = new ArrayList<String>(nStrings);
-        for ( int i = 0; i < nStrings; i++ ) {
-            strings.add(inputStream.readUTF());
+    private static void writeTableEntry(final DataOutputStream outputStream, final Map<String, Integer> offsets, final String value) throws IOException {
+        final Integer offset = offsets.get(value);
+        if ( offset != null )
+            outputStream.writeInt(offset);
+        else {
+            outputStream.writeInt(INLINE_VALUE);
+            GCF.writeString(outputStream, value);
         }
+    }
 
-        return strings;
+    private static String readTableEntry(final DataInputStream inputStream, final List<String> table) throws IOException {
+        final int offset = inputStream.readInt();
+        return offset == INLINE_VALUE ? GCF.readString(inputStream) : table.get(offset);
     }
 
-    private static <T> List<T> linearize(final Map<T, Integer> map) {
-        final ArrayList<T> l = new ArrayList<T>(map.size());
-        for ( int i = 0; i < map.size(); i++ ) l.add(null);
-        for ( final Map.Entry<T, Integer> elt : map.entrySet() )
-            l.set(elt.getValue(), elt.getKey());
-        return l;
+    private static void writeStrings(final DataOutputStream outputStream, final List<String> l) throws IOException {
+        outputStream.writeInt(l.size());
+        for ( final String elt : l ) GCF.writeString(outputStream, elt);
     }
 
-    public String getSample(final int offset) { return samples.get(offset); }
-    public String getString(final int offset) { return strings.get(offset); }
-    public Allele getAllele(final int offset) { return alleles.get(offset); }
-    public List<Allele> getAlleles(final int[] offsets) {
-        final List<Allele> alleles = new ArrayList<Allele>(offsets.length);
-        for ( int i : offsets ) alleles.add(getAllele(i));
-        return alleles;
+    private static List<String> readStrings(final DataInputStream inputStream) throws IOException {
+        final int nStrings = inputStream.readInt();
+        final List<String> strings = new ArrayList<String>(nStrings);
+        for ( int i = 0; i < nStrings; i++ )
+            strings.add(GCF.readString(inputStream));
+        return strings;
     }
 
-    public Set<String> getFilters(final int offset) {
-        Set<String> cached = filters.get(offset);
+    private static Map<String, Integer> offsets(final List<String> l) {
+        final Map<String, Integer> offsets = new HashMap<String, Integer>(l.size() * 2);
+        for ( int i = 0; i < l.size(); i++ )
+            offsets.put(l.get(i), i);
+        return offsets;
+    }
 
-        if ( cached != null )
-            return cached;
-        else {
-            final String filterString = getString(offset);
-            if ( filterString.equals(VCFConstants.UNFILTERED) )
-                return null; // UNFILTERED records are represented by null
-            else {
-                Set<String> set = VCFCodec.parseFilters(null, -1, filterString);
-                filters.set(offset, set); // remember the result
-                return set;
-            }
-        }
+    private static List<String> sorted(final List<String> l) {
+        final List<String> sorted = new ArrayList<String>(l);
+        Collections.sort(sorted);
+        return sorted;
     }
 }
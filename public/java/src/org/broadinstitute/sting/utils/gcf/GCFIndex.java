@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2011, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.broadinstitute.sting.utils.gcf;
+
+import org.broadinstitute.sting.utils.exceptions.UserException;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A linear index of a GCF file, kept alongside it in a file with the GCF_INDEX_EXTENSION.
+ *
+ * Each contig is divided into fixed-size bins, and each bin holds the BGZF virtual file pointer of the
+ * first record overlapping it.  As records are sorted, all records overlapping a query interval are
+ * found by scanning forward from the pointer of the first non-empty bin the interval overlaps.
+ */
+public class GCFIndex {
+    public final static String GCF_INDEX_EXTENSION = ".gcfi";
+    public final static int DEFAULT_BIN_SIZE = 16384;
+
+    private final static byte[] GCF_INDEX_START_MARKER = "GCFI".getBytes();
+    private final static long NO_RECORD = -1;
+
+    private final int binSize;
+    private final Map<String, ContigBins> contigs = new LinkedHashMap<String, ContigBins>();
+
+    // for checking that records are added in order
+    private String lastContig = null;
+    private int lastStart = 0;
+
+    public GCFIndex() {
+        this(DEFAULT_BIN_SIZE);
+    }
+
+    public GCFIndex(final int binSize) {
+        this.binSize = binSize;
+    }
+
+    /**
+     * @param gcfFile a GCF file
+     * @return the index file of the GCF file
+     */
+    public static File indexFile(final File gcfFile) {
+        return new File(gcfFile.getAbsolutePath() + GCF_INDEX_EXTENSION);
+    }
+
+    /**
+     * Adds a record to the index.  Records must be added in the order they were written.
+     *
+     * @param contig the contig of the record
+     * @param start the start of the record
+     * @param stop the stop of the record
+     * @param filePointer the virtual file pointer of the record
+     */
+    public void add(final String contig, final int start, final int stop, final long filePointer) {
+        if ( ! contig.equals(lastContig) ) {
+            if ( contigs.containsKey(contig) )
+                throw new UserException("GCF records must be sorted to be indexed, but contig " + contig + " appears again after " + lastContig);
+            contigs.put(contig, new ContigBins());
+            lastContig = contig;
+        } else if ( start < lastStart )
+            throw new UserException(String.format("GCF records must be sorted to be indexed, but %s:%d follows %s:%d", contig, start, contig, lastStart));
+        lastStart = start;
+
+        final ContigBins bins = contigs.get(contig);
+        for ( int bin = bin(start); bin <= bin(stop); bin++ )
+            bins.setIfEmpty(bin, filePointer);
+    }
+
+    /**
+     * @param contig the contig of the query
+     * @param start the start of the query
+     * @param stop the stop of the query
+     * @return the virtual file pointer from which to scan for records overlapping the query, or -1 if there are none
+     */
+    public long getQueryStart(final String contig, final int start, final int stop) {
+        final ContigBins bins = contigs.get(contig);
+        if ( bins == null )
+            return NO_RECORD;
+
+        final int lastBin = Math.min(bin(stop), bins.size - 1);
+        for ( int bin = bin(start); bin <= lastBin; bin++ )
+            if ( bins.offsets[bin] != NO_RECORD )
+                return bins.offsets[bin];
+        return NO_RECORD;
+    }
+
+    /**
+     * @return the contigs with records, in the order they appear in the file
+     */
+    public List<String> getSequenceNames() {
+        return new ArrayList<String>(contigs.keySet());
+    }
+
+    private int bin(final int position) {
+        return Math.max(position - 1, 0) / binSize;
+    }
+
+    public void write(final File indexFile) throws IOException {
+        final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            outputStream.write(GCF_INDEX_START_MARKER);
+            outputStream.writeInt(GCFHeader.GCF_VERSION);
+            outputStream.writeInt(binSize);
+            outputStream.writeInt(contigs.size());
+            for ( final Map.Entry<String, ContigBins> contig : contigs.entrySet() ) {
+                GCF.writeString(outputStream, contig.getKey());
+                outputStream.writeInt(contig.getValue().size);
+                for ( int i = 0; i < contig.getValue().size; i++ )
+                    outputStream.writeLong(contig.getValue().offsets[i]);
+            }
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    public static GCFIndex read(final File indexFile) throws IOException {
+        final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            final byte[] headerTest = new byte[GCF_INDEX_START_MARKER.length];
+            inputStream.readFully(headerTest);
+            if ( ! Arrays.equals(headerTest, GCF_INDEX_START_MARKER) || inputStream.readInt() != GCFHeader.GCF_VERSION )
+                throw new UserException.MalformedFile(indexFile, "Not a GCF index of version " + GCFHeader.GCF_VERSION);
+
+            final GCFIndex index = new GCFIndex(inputStream.readInt());
+            final int nContigs = inputStream.readInt();
+            for ( int i = 0; i < nContigs; i++ ) {
+                final String contig = GCF.readString(inputStream);
+                final ContigBins bins = new ContigBins();
+                final int nBins = inputStream.readInt();
+                for ( int bin = 0; bin < nBins; bin++ )
+                    bins.setIfEmpty(bin, inputStream.readLong());
+                index.contigs.put(contig, bins);
+            }
+            return index;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * The file pointers of the bins of a single contig
+     */
+    private static class ContigBins {
+        long[] offsets = new long[16];
+        int size = 0;
+
+        void setIfEmpty(final int bin, final long filePointer) {
+            if ( bin >= offsets.length )
+                offsets = Arrays.copyOf(offsets, Math.max(bin + 1, offsets.length * 2));
+            while ( size <= bin )
+                offsets[size++] = NO_RECORD;
+            if ( offsets[bin] == NO_RECORD )
+                offsets[bin] = filePointer;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2011, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.broadinstitute.sting.utils.gcf;
+
+import org.broadinstitute.sting.utils.codecs.vcf.StandardVCFWriter;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFConstants;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFHeaderLineType;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.variantcontext.GenotypeLikelihoods;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Typed encoding of INFO and FORMAT values in GCF records.
+ *
+ * Each value is written as a one byte type tag followed by its data.  Values of fields declared as Integer or
+ * Float in the VCF header are stored as binary ints and doubles, and decode as Integers and Doubles, or Lists
+ * of them for multi-valued fields.  Everything else, including numeric values which don't parse as their
+ * declared type, is stored as its VCF text and decodes as a String or List of Strings, as the VCF codec would.
+ */
+final class GCFTypedValues {
+    final static byte ABSENT = 0;
+    final static byte MISSING = 1;
+    final static byte FLAG = 2;
+    final static byte INTEGER = 3;
+    final static byte FLOAT = 4;
+    final static byte STRING = 5;
+    final static byte INTEGER_ARRAY = 6;
+    final static byte FLOAT_ARRAY = 7;
+    final static byte STRING_ARRAY = 8;
+
+    private GCFTypedValues() {}
+
+    /**
+     * Writes the tag of a value which isn't there at all, as opposed to a missing (".") value
+     *
+     * @param outputStream the stream to write to
+     * @throws IOException if the stream can't be written
+     */
+    static void writeAbsent(final DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(ABSENT);
+    }
+
+    /**
+     * Writes a value
+     *
+     * @param outputStream the stream to write to
+     * @param value the value
+     * @param type the type declared for the field in the VCF header, or null if the field isn't declared
+     * @throws IOException if the stream can't be written
+     */
+    static void write(final DataOutputStream outputStream, Object value, final VCFHeaderLineType type) throws IOException {
+        if ( value instanceof GenotypeLikelihoods )
+            value = ((GenotypeLikelihoods)value).getAsString();
+
+        if ( value == null || VCFConstants.MISSING_VALUE_v4.equals(value) ) {
+            outputStream.writeByte(MISSING);
+            return;
+        }
+
+        if ( value instanceof Boolean ) {
+            outputStream.writeByte(FLAG);
+            outputStream.writeBoolean((Boolean)value);
+            return;
+        }
+
+        final List<?> values = asList(value, type);
+        if ( type == VCFHeaderLineType.Integer ) {
+            final int[] ints = parseInts(values == null ? Arrays.asList(value) : values);
+            if ( ints != null ) {
+                if ( values == null ) {
+                    outputStream.writeByte(INTEGER);
+                    outputStream.writeInt(ints[0]);
+                } else {
+                    outputStream.writeByte(INTEGER_ARRAY);
+                    outputStream.writeInt(ints.length);
+                    for ( final int i : ints ) outputStream.writeInt(i);
+                }
+                return;
+            }
+        } else if ( type == VCFHeaderLineType.Float ) {
+            final double[] doubles = parseDoubles(values == null ? Arrays.asList(value) : values);
+            if ( doubles != null ) {
+                if ( values == null ) {
+                    outputStream.writeByte(FLOAT);
+                    outputStream.writeDouble(doubles[0]);
+                } else {
+                    outputStream.writeByte(FLOAT_ARRAY);
+                    outputStream.writeInt(doubles.length);
+                    for ( final double d : doubles ) outputStream.writeDouble(d);
+                }
+                return;
+            }
+        }
+
+        // everything else is kept as VCF text
+        if ( values == null ) {
+            outputStream.writeByte(STRING);
+            GCF.writeString(outputStream, StandardVCFWriter.formatVCFField(value));
+        } else {
+            outputStream.writeByte(STRING_ARRAY);
+            outputStream.writeInt(values.size());
+            for ( final Object v : values )
+                GCF.writeString(outputStream, StandardVCFWriter.formatVCFField(v));
+        }
+    }
+
+    /**
+     * Reads a value
+     *
+     * @param inputStream the stream to read from
+     * @return the value, or null if it was absent
+     * @throws IOException if the stream can't be read
+     */
+    static Object read(final DataInputStream inputStream) throws IOException {
+        final byte tag = inputStream.readByte();
+        switch ( tag ) {
+            case ABSENT: return null;
+            case MISSING: return VCFConstants.MISSING_VALUE_v4;
+            case FLAG: return inputStream.readBoolean();
+            case INTEGER: return inputStream.readInt();
+            case FLOAT: return inputStream.readDouble();
+            case STRING: return GCF.readString(inputStream);
+            case INTEGER_ARRAY: {
+                final int n = inputStream.readInt();
+                final List<Integer> values = new ArrayList<Integer>(n);
+                for ( int i = 0; i < n; i++ ) values.add(inputStream.readInt());
+                return values;
+            }
+            case FLOAT_ARRAY: {
+                final int n = inputStream.readInt();
+                final List<Double> values = new ArrayList<Double>(n);
+                for ( int i = 0; i < n; i++ ) values.add(inputStream.readDouble());
+                return values;
+            }
+            case STRING_ARRAY: {
+                final int n = inputStream.readInt();
+                final List<String> values = new ArrayList<String>(n);
+                for ( int i = 0; i < n; i++ ) values.add(GCF.readString(inputStream));
+                return values;
+            }
+            default:
+                throw new UserException.MalformedFile("Malformed GCF file: unknown value type " + tag);
+        }
+    }
+
+    /**
+     * @return the elements of a multi-valued field, or null if the value is a single value
+     */
+    private static List<?> asList(final Object value, final VCFHeaderLineType type) {
+        if ( value instanceof List )
+            return (List<?>)value;
+        if ( value.getClass().isArray() ) {
+            final int length = Array.getLength(value);
+            final List<Object> values = new ArrayList<Object>(length);
+            for ( int i = 0; i < length; i++ ) values.add(Array.get(value, i));
+            return values;
+        }
+        // numeric fields still in their VCF text form
+        if ( value instanceof String && (type == VCFHeaderLineType.Integer || type == VCFHeaderLineType.Float) && ((String)value).indexOf(VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR) != -1 )
+            return Arrays.asList(((String)value).split(VCFConstants.INFO_FIELD_ARRAY_SEPARATOR));
+        return null;
+    }
+
+    /**
+     * @return the values as ints, or null if any of them isn't an integer
+     */
+    private static int[] parseInts(final List<?> values) {
+        final int[] ints = new int[values.size()];
+        for ( int i = 0; i < ints.length; i++ ) {
+            final Object v = values.get(i);
+            if ( v instanceof Integer || v instanceof Short || v instanceof Byte )
+                ints[i] = ((Number)v).intValue();
+            else if ( v instanceof String ) {
+                try {
+                    ints[i] = Integer.parseInt((String)v);
+                } catch ( NumberFormatException e ) {
+                    return null;
+                }
+            } else
+                return null;
+        }
+        return ints;
+    }
+
+    /**
+     * @return the values as doubles, or null if any of them isn't a number
+     */
+    private static double[] parseDoubles(final List<?> values) {
+        final double[] doubles = new double[values.size()];
+        for ( int i = 0; i < doubles.length; i++ ) {
+            final Object v = values.get(i);
+            if ( v instanceof Number )
+                doubles[i] = ((Number)v).doubleValue();
+            else if ( v instanceof String ) {
+                try {
+                    doubles[i] = Double.parseDouble((String)v);
+                } catch ( NumberFormatException e ) {
+                    return null;
+                }
+            } else
+                return null;
+        }
+        return doubles;
+    }
+}
@@ -22,11 +22,13 @@
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 
+
 package org.broadinstitute.sting.utils.gcf;
 
 import net.sf.samtools.SAMSequenceDictionary;
-import org.broadinstitute.sting.utils.codecs.vcf.IndexingVCFWriter;
+import net.sf.samtools.util.BlockCompressedOutputStream;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFHeader;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFWriter;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
@@ -34,18 +36,23 @@ import org.broadinstitute.sting.utils.variantcontext.VariantContext;
 import java.io.*;
 
 /**
- * GCFWriter implementing the VCFWriter interface
- * @author Your Name
- * @since Date created
+ * GCFWriter implementing the VCFWriter interface.
+ *
+ * The file is BGZF compressed, so it can be read from any record whose virtual file pointer is known.
+ * If indexing on the fly, the GCFIndex of those pointers is written next to the file when it is closed.
  */
-public class GCFWriter extends IndexingVCFWriter {
+public class GCFWriter implements VCFWriter {
+    final File location;
+    final SAMSequenceDictionary refDict;
     final boolean skipGenotypes;
-    final FileOutputStream fileOutputStream;
+    final BlockCompressedOutputStream blockCompressedOutputStream;
     final DataOutputStream dataOutputStream;
-    final GCFHeaderBuilder gcfHeaderBuilder;
-    int nbytes = 0;
-    VCFHeader header = null;
-    File location;
+    final GCFIndex index;
+    GCFHeader header = null;
+
+    // each record is encoded into this buffer first, as it's written prefixed by its length
+    final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    final DataOutputStream recordOutputStream = new DataOutputStream(recordBuffer);
 
     // --------------------------------------------------------------------------------
     //
@@ -54,18 +61,13 @@ public class GCFWriter extends IndexingVCFWriter {
     // --------------------------------------------------------------------------------
 
     public GCFWriter(final File location, final SAMSequenceDictionary refDict, boolean enableOnTheFlyIndexing, boolean doNotWriteGenotypes) {
-        super(writerName(location, null), location, null, refDict, enableOnTheFlyIndexing);
         this.location = location;
+        this.refDict = refDict;
         this.skipGenotypes = doNotWriteGenotypes;
+        this.index = enableOnTheFlyIndexing ? new GCFIndex() : null;
 
-        // write the output
-        try {
-            fileOutputStream = new FileOutputStream(location);
-            dataOutputStream = createDataOutputStream(fileOutputStream);
-            gcfHeaderBuilder = new GCFHeaderBuilder();
-        } catch ( FileNotFoundException e ) {
-            throw new UserException.CouldNotCreateOutputFile(location, e);
-        }
+        blockCompressedOutputStream = new BlockCompressedOutputStream(location);
+        dataOutputStream = new DataOutputStream(blockCompressedOutputStream); // BGZF buffers, and we need its file pointer to be current
     }
 
     // --------------------------------------------------------------------------------
@@ -75,49 +77,43 @@ public class GCFWriter extends IndexingVCFWriter {
     // --------------------------------------------------------------------------------
 
     @Override
-    public void writeHeader(VCFHeader header) {
-        this.header = header;
+    public void writeHeader(VCFHeader vcfHeader) {
+        header = new GCFHeader(skipGenotypes ? new VCFHeader(vcfHeader.getMetaData()) : vcfHeader, refDict);
         try {
-            nbytes += GCFHeader.writeHeader(dataOutputStream);
+            header.write(dataOutputStream);
         } catch ( IOException e ) {
-            throw new UserException.CouldNotCreateOutputFile(getStreamName(), "Couldn't write header", e);
+            throw new UserException.CouldNotCreateOutputFile(location, "Couldn't write header", e);
         }
     }
 
     @Override
     public void add(VariantContext vc) {
-        super.add(vc);
-        GCF gcf = new GCF(gcfHeaderBuilder, vc, skipGenotypes);
+        if ( header == null )
+            throw new ReviewedStingException("The GCF header must be written before records can be added: " + location);
+
         try {
-            nbytes += gcf.write(dataOutputStream);
+            recordBuffer.reset();
+            GCF.encode(header, vc, skipGenotypes, recordOutputStream);
+            recordOutputStream.flush();
+
+            if ( index != null )
+                index.add(vc.getChr(), vc.getStart(), vc.getEnd(), blockCompressedOutputStream.getFilePointer());
+            dataOutputStream.writeInt(recordBuffer.size());
+            recordBuffer.writeTo(dataOutputStream);
         } catch ( IOException e ) {
-            throw new UserException.CouldNotCreateOutputFile(getStreamName(), "Failed to add gcf record " + gcf + " to stream " + getStreamName(), e);
+            throw new UserException.CouldNotCreateOutputFile(location, "Failed to add gcf record at " + vc.getChr() + ":" + vc.getStart(), e);
         }
     }
 
     @Override
     public void close() {
-        // todo -- write out VCF header lines
-        GCFHeader gcfHeader = gcfHeaderBuilder.createHeader();
         try {
-            long headerPosition = nbytes;
-            nbytes += gcfHeader.writeFooter(dataOutputStream);
+            dataOutputStream.writeInt(GCF.END_OF_RECORDS);
             dataOutputStream.close();
-            //System.out.println("Writing forward reference to " + headerPosition);
-
-            RandomAccessFile raFile = new RandomAccessFile(location, "rw");
-            raFile.seek(GCFHeader.HEADER_FORWARD_REFERENCE_OFFSET);
-            raFile.writeLong(headerPosition);
-            raFile.close();
+            if ( index != null )
+                index.write(GCFIndex.indexFile(location));
         } catch ( IOException e ) {
-            throw new ReviewedStingException("Failed to close GCFWriter " + getStreamName(), e);
+            throw new ReviewedStingException("Failed to close GCFWriter " + location, e);
         }
-
-        super.close();
     }
-
-    private static final DataOutputStream createDataOutputStream(final OutputStream stream) {
-        return new DataOutputStream(new BufferedOutputStream(stream, GCF.BUFFER_SIZE));
-    }
-
 }
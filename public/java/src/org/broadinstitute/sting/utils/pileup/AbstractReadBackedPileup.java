@@ -719,6 +719,55 @@ public abstract class AbstractReadBackedPileup<RBP extends AbstractReadBackedPil
         return result;
     }
 
+    @Override
+    public Map<String, ReadBackedPileup> getPileupsBySample() {
+        Map<String, ReadBackedPileup> result = new HashMap<String, ReadBackedPileup>();
+
+        if (pileupElementTracker instanceof PerSamplePileupElementTracker) {
+            PerSamplePileupElementTracker<PE> tracker = (PerSamplePileupElementTracker<PE>) pileupElementTracker;
+            for (final String sample : tracker.getSamples()) {
+                PileupElementTracker<PE> perSampleElements = tracker.getElements(sample);
+                if (perSampleElements.size() > 0)
+                    result.put(sample, createNewPileup(loc, perSampleElements));
+            }
+        } else {
+            Map<String, UnifiedPileupElementTracker<PE>> trackerMap = new HashMap<String, UnifiedPileupElementTracker<PE>>();
+            List<UnifiedPileupElementTracker<PE>> trackersBySampleIndex = new ArrayList<UnifiedPileupElementTracker<PE>>();
+
+            for (PE p : pileupElementTracker) {
+                GATKSAMRecord read = p.getRead();
+                int sampleIndex = read.getSampleIndex();
+                UnifiedPileupElementTracker<PE> tracker;
+                if (sampleIndex == GATKSAMRecord.NO_SAMPLE_INDEX) {
+                    tracker = getTrackerForSample(trackerMap, read);
+                } else {
+                    while (sampleIndex >= trackersBySampleIndex.size())                                             // grow to the largest index seen, not to the number of samples
+                        trackersBySampleIndex.add(null);
+                    tracker = trackersBySampleIndex.get(sampleIndex);
+                    if (tracker == null) {                                                                          // look up the sample name the first time its index is seen
+                        tracker = getTrackerForSample(trackerMap, read);
+                        trackersBySampleIndex.set(sampleIndex, tracker);
+                    }
+                }
+                tracker.add(p);
+            }
+
+            for (Map.Entry<String, UnifiedPileupElementTracker<PE>> entry : trackerMap.entrySet())
+                result.put(entry.getKey(), createNewPileup(loc, entry.getValue()));
+        }
+
+        return result;
+    }
+
+    private UnifiedPileupElementTracker<PE> getTrackerForSample(Map<String, UnifiedPileupElementTracker<PE>> trackerMap, GATKSAMRecord read) {
+        String sampleName = read.getReadGroup() != null ? read.getReadGroup().getSample() : null;
+        UnifiedPileupElementTracker<PE> tracker = trackerMap.get(sampleName);
+        if (tracker == null) {
+            tracker = new UnifiedPileupElementTracker<PE>();
+            trackerMap.put(sampleName, tracker);
+        }
+        return tracker;
+    }
 
     @Override
     public RBP getPileupForSample(String sampleName) {
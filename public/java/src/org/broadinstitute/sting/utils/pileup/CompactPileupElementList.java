@@ -0,0 +1,118 @@
+package org.broadinstitute.sting.utils.pileup;
+
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of pileup elements stored as parallel arrays of reads, offsets, flags and event lengths.
+ *
+ * PileupElement objects are only created when an element is first requested, and are then cached, so a
+ * pileup which is only asked for its size and cached counts never allocates them at all.  Lists are made
+ * with a Builder, whose scratch arrays can be reused from one locus to the next.
+ *
+ * Like the rest of the pileup classes, not thread-safe.
+ */
+public class CompactPileupElementList extends AbstractList<PileupElement> implements RandomAccess {
+    private static final byte IS_DELETION = 1;
+    private static final byte IS_BEFORE_DELETION = 1 << 1;
+    private static final byte IS_AFTER_DELETION = 1 << 2;
+    private static final byte IS_BEFORE_INSERTION = 1 << 3;
+    private static final byte IS_AFTER_INSERTION = 1 << 4;
+    private static final byte IS_NEXT_TO_SOFT_CLIP = 1 << 5;
+
+    private final GATKSAMRecord[] reads;
+    private final int[] offsets;
+    private final byte[] flags;
+    private final int[] eventLengths;
+    private PileupElement[] elements = null;                                                                            // materialized elements, allocated on first access
+
+    private CompactPileupElementList(final GATKSAMRecord[] reads, final int[] offsets, final byte[] flags, final int[] eventLengths) {
+        this.reads = reads;
+        this.offsets = offsets;
+        this.flags = flags;
+        this.eventLengths = eventLengths;
+    }
+
+    @Override
+    public int size() {
+        return reads.length;
+    }
+
+    @Override
+    public PileupElement get(final int index) {
+        if (elements == null)
+            elements = new PileupElement[reads.length];
+
+        PileupElement element = elements[index];
+        if (element == null) {
+            final byte f = flags[index];
+            element = new PileupElement(reads[index], offsets[index], (f & IS_DELETION) != 0, (f & IS_BEFORE_DELETION) != 0, (f & IS_AFTER_DELETION) != 0,
+                    (f & IS_BEFORE_INSERTION) != 0, (f & IS_AFTER_INSERTION) != 0, (f & IS_NEXT_TO_SOFT_CLIP) != 0, null, eventLengths[index]);
+            elements[index] = element;
+        }
+        return element;
+    }
+
+    /**
+     * Accumulates the elements of a pileup.  A single builder can make any number of lists, one after the
+     * other: build() copies the elements added so far into a new, exactly sized list and resets the builder,
+     * keeping its scratch arrays for the next one.
+     */
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private GATKSAMRecord[] reads = new GATKSAMRecord[INITIAL_CAPACITY];
+        private int[] offsets = new int[INITIAL_CAPACITY];
+        private byte[] flags = new byte[INITIAL_CAPACITY];
+        private int[] eventLengths = new int[INITIAL_CAPACITY];
+        private int size = 0;
+
+        /**
+         * Adds an element, with the same meaning for each argument as the PileupElement constructor.  Inserted
+         * bases are read from the read when they are requested.
+         */
+        public void add(final GATKSAMRecord read, final int offset, final boolean isDeletion, final boolean isBeforeDeletion, final boolean isAfterDeletion, final boolean isBeforeInsertion, final boolean isAfterInsertion, final boolean isNextToSoftClip, final int nextEventLength) {
+            if (size == reads.length)
+                grow();
+
+            byte f = 0;
+            if (isDeletion) f |= IS_DELETION;
+            if (isBeforeDeletion) f |= IS_BEFORE_DELETION;
+            if (isAfterDeletion) f |= IS_AFTER_DELETION;
+            if (isBeforeInsertion) f |= IS_BEFORE_INSERTION;
+            if (isAfterInsertion) f |= IS_AFTER_INSERTION;
+            if (isNextToSoftClip) f |= IS_NEXT_TO_SOFT_CLIP;
+
+            reads[size] = read;
+            offsets[size] = offset;
+            flags[size] = f;
+            eventLengths[size] = nextEventLength;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return a list of all elements added since the last call, which are then cleared from the builder
+         */
+        public CompactPileupElementList build() {
+            final CompactPileupElementList list = new CompactPileupElementList(Arrays.copyOf(reads, size), Arrays.copyOf(offsets, size), Arrays.copyOf(flags, size), Arrays.copyOf(eventLengths, size));
+            Arrays.fill(reads, 0, size, null);                                                                          // don't hold on to reads which may have left the window
+            size = 0;
+            return list;
+        }
+
+        private void grow() {
+            final int capacity = reads.length * 2;
+            reads = Arrays.copyOf(reads, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            eventLengths = Arrays.copyOf(eventLengths, capacity);
+        }
+    }
+}
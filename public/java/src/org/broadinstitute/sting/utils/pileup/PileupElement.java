@@ -7,6 +7,8 @@ import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 
+import java.util.Arrays;
+
 /**
  * Created by IntelliJ IDEA.
  * User: depristo
@@ -43,7 +45,7 @@ public class PileupElement implements Comparable<PileupElement> {
      * @param isBeforeInsertion whether or not this base is before an insertion
      * @param isAfterInsertion  whether or not this base is after an insertion
      * @param isNextToSoftClip  whether or not this base is next to a soft clipped base
-     * @param nextEventBases    bases in event in case element comes before insertion or deletion 
+     * @param nextEventBases    bases in event in case element comes before insertion or deletion (if null, inserted bases are read from the read)
      * @param nextEventLength   length of next event in case it's insertion or deletion                             
      */
     @Requires({
@@ -63,7 +65,7 @@ public class PileupElement implements Comparable<PileupElement> {
         this.isAfterInsertion = isAfterInsertion;
         this.isNextToSoftClip = isNextToSoftClip;
         if (isBeforeInsertion)
-            eventBases = nextEventBases;
+            eventBases = nextEventBases == null && nextEventLength > 0 ? new String(Arrays.copyOfRange(read.getReadBases(), offset + 1, offset + 1 + nextEventLength)) : nextEventBases;
         else
             eventBases = null;                  // ignore argument in any other case
         if (isBeforeDeletion || isBeforeInsertion)
@@ -170,6 +170,14 @@ public interface ReadBackedPileup extends Iterable<PileupElement>, HasGenomeLoca
      */
     public Map<String, ReadBackedPileup> getPileupsForSamples(Collection<String> sampleNames);
 
+    /**
+     * Splits this pileup by sample in a single pass.  Reads given a sample index by the engine are grouped by
+     * that index, so the sample name is looked up once per sample rather than once per read.
+     *
+     * @return a map from the name of each sample in this pileup, or null for reads without one, to its reads
+     */
+    public Map<String, ReadBackedPileup> getPileupsBySample();
+
 
     /**
      * Gets the particular subset of this pileup with the given sample name.
@@ -26,8 +26,8 @@
 package org.broadinstitute.sting.utils.recalibration;
 
 import org.broadinstitute.sting.gatk.walkers.bqsr.*;
-import org.broadinstitute.sting.utils.BitSetUtils;
 import org.broadinstitute.sting.utils.QualityUtils;
+import org.broadinstitute.sting.utils.collections.LongHashMap;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 
@@ -43,8 +43,9 @@ import java.util.*;
 
 public class BaseRecalibration {
     private QuantizationInfo quantizationInfo;                                                                          // histogram containing the map for qual quantization (calculated after recalibration is done)
-    private LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> keysAndTablesMap;                                    // quick access reference to the read group table and its key manager
+    private LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> keysAndTablesMap;                                    // quick access reference to the read group table and its key manager
     private ArrayList<Covariate> requestedCovariates = new ArrayList<Covariate>();                                      // list of all covariates to be used in this calculation
+    private int maximumNumberOfKeys;                                                                                    // the most keys any of the key managers generates for a single base
 
 
     /**
@@ -63,6 +64,8 @@ public class BaseRecalibration {
             quantizationInfo.noQuantization();
         else if (quantizationLevels > 0 && quantizationLevels != quantizationInfo.getQuantizationLevels())              // any other positive value means, we want a different quantization than the one pre-calculated in the recalibration report. Negative values mean the user did not provide a quantization argument, and just wnats to use what's in the report.
             quantizationInfo.quantizeQualityScores(quantizationLevels);
+
+        maximumNumberOfKeys = calculateMaximumNumberOfKeys(keysAndTablesMap);
     }
 
     /**
@@ -72,10 +75,27 @@ public class BaseRecalibration {
      * @param keysAndTablesMap the map of key managers and recalibration tables
      * @param requestedCovariates the list of requested covariates
      */
-    protected BaseRecalibration(QuantizationInfo quantizationInfo, LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> keysAndTablesMap, ArrayList<Covariate> requestedCovariates) {
+    protected BaseRecalibration(QuantizationInfo quantizationInfo, LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> keysAndTablesMap, ArrayList<Covariate> requestedCovariates) {
         this.quantizationInfo = quantizationInfo;
         this.keysAndTablesMap = keysAndTablesMap;
         this.requestedCovariates = requestedCovariates;
+        this.maximumNumberOfKeys = calculateMaximumNumberOfKeys(keysAndTablesMap);
+    }
+
+    private static int calculateMaximumNumberOfKeys(final Map<BQSRKeyManager, LongHashMap<RecalDatum>> keysAndTablesMap) {
+        int result = 0;
+        for (BQSRKeyManager keyManager : keysAndTablesMap.keySet())
+            result = Math.max(result, keyManager.maximumNumberOfKeys());
+        return result;
+    }
+
+    /**
+     * Allocates a buffer big enough to hold the keys generated by any of the key managers for one base
+     *
+     * @return a new key buffer
+     */
+    protected long[] createKeyBuffer() {
+        return new long[maximumNumberOfKeys];
     }
 
     /**
@@ -87,6 +107,7 @@ public class BaseRecalibration {
      */
     public void recalibrateRead(final GATKSAMRecord read) {
         final ReadCovariates readCovariates = RecalDataManager.computeCovariates(read, requestedCovariates);            // compute all covariates for the read
+        final long[] keyBuffer = createKeyBuffer();                                                                     // reused for every base, so we don't allocate keys per base
         for (final EventType errorModel : EventType.values()) {                                                         // recalibrate all three quality strings
             final byte[] originalQuals = read.getBaseQualities(errorModel);
             final byte[] recalQuals = originalQuals.clone();
@@ -95,8 +116,8 @@ public class BaseRecalibration {
                 byte qualityScore = originalQuals[offset];
 
                 if (qualityScore >= QualityUtils.MIN_USABLE_Q_SCORE) {                                                  // only recalibrate usable qualities (the original quality will come from the instrument -- reported quality)
-                    final BitSet[] keySet = readCovariates.getKeySet(offset, errorModel);                               // get the keyset for this base using the error model
-                    qualityScore = performSequentialQualityCalculation(keySet, errorModel);                             // recalibrate the base
+                    final long[] keySet = readCovariates.getKeySet(offset, errorModel);                                 // get the keyset for this base using the error model
+                    qualityScore = performSequentialQualityCalculation(keySet, errorModel, keyBuffer);                  // recalibrate the base
                 }
                 recalQuals[offset] = qualityScore;
             }
@@ -121,29 +142,30 @@ public class BaseRecalibration {
      * 
      * @param key        The list of Comparables that were calculated from the covariates
      * @param errorModel the event type
+     * @param keyBuffer  scratch space for the table keys, as allocated by createKeyBuffer()
      * @return A recalibrated quality score as a byte
      */
-    protected byte performSequentialQualityCalculation(BitSet[] key, EventType errorModel) {
+    protected byte performSequentialQualityCalculation(long[] key, EventType errorModel, long[] keyBuffer) {
         final String UNRECOGNIZED_REPORT_TABLE_EXCEPTION = "Unrecognized table. Did you add an extra required covariate? This is a hard check that needs propagate through the code";
         final String TOO_MANY_KEYS_EXCEPTION = "There should only be one key for the RG collapsed table, something went wrong here";
 
-        final byte qualFromRead = (byte) BitSetUtils.shortFrom(key[1]);
+        final byte qualFromRead = (byte) key[1];
 
         double globalDeltaQ = 0.0;
         double deltaQReported = 0.0;
         double deltaQCovariates = 0.0;
 
-        for (Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>> mapEntry : keysAndTablesMap.entrySet()) {
+        for (Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>> mapEntry : keysAndTablesMap.entrySet()) {
             BQSRKeyManager keyManager = mapEntry.getKey();
-            Map<BitSet, RecalDatum> table = mapEntry.getValue();
+            LongHashMap<RecalDatum> table = mapEntry.getValue();
 
             switch(keyManager.getRequiredCovariates().size()) {
                 case 1:                                                                                                 // this is the ReadGroup table                    
-                    List<BitSet> bitKeys = keyManager.bitSetsFromAllKeys(key, errorModel);                              // calculate the shift in quality due to the read group
-                    if (bitKeys.size() > 1)
+                    int nKeys = keyManager.keysFromAllKeys(key, errorModel, keyBuffer);                                 // calculate the shift in quality due to the read group
+                    if (nKeys > 1)
                         throw new ReviewedStingException(TOO_MANY_KEYS_EXCEPTION);
 
-                    final RecalDatum empiricalQualRG = table.get(bitKeys.get(0));
+                    final RecalDatum empiricalQualRG = table.get(keyBuffer[0]);
                     if (empiricalQualRG != null) {
                         final double globalDeltaQEmpirical = empiricalQualRG.getEmpiricalQuality();
                         final double aggregrateQReported = empiricalQualRG.getEstimatedQReported();
@@ -152,20 +174,20 @@ public class BaseRecalibration {
                     break;
                 case 2:
                     if (keyManager.getOptionalCovariates().isEmpty()) {                                                 // this is the QualityScore table
-                        bitKeys = keyManager.bitSetsFromAllKeys(key, errorModel);                                       // calculate the shift in quality due to the reported quality score
-                        if (bitKeys.size() > 1)
+                        nKeys = keyManager.keysFromAllKeys(key, errorModel, keyBuffer);                                 // calculate the shift in quality due to the reported quality score
+                        if (nKeys > 1)
                             throw new ReviewedStingException(TOO_MANY_KEYS_EXCEPTION);
 
-                        final RecalDatum empiricalQualQS = table.get(bitKeys.get(0));
+                        final RecalDatum empiricalQualQS = table.get(keyBuffer[0]);
                         if (empiricalQualQS != null) {
                             final double deltaQReportedEmpirical = empiricalQualQS.getEmpiricalQuality();
                             deltaQReported = deltaQReportedEmpirical - qualFromRead - globalDeltaQ;
                         }
                     }
                     else {                                                                                              // this is the table with all the covariates                        
-                        bitKeys = keyManager.bitSetsFromAllKeys(key, errorModel);                                       // calculate the shift in quality due to each covariate by itself in turn
-                        for (BitSet k : bitKeys) {
-                            final RecalDatum empiricalQualCO = table.get(k);
+                        nKeys = keyManager.keysFromAllKeys(key, errorModel, keyBuffer);                                 // calculate the shift in quality due to each covariate by itself in turn
+                        for (int i = 0; i < nKeys; i++) {
+                            final RecalDatum empiricalQualCO = table.get(keyBuffer[i]);
                             if (empiricalQualCO != null) {
                                 double deltaQCovariateEmpirical = empiricalQualCO.getEmpiricalQuality();
                                 deltaQCovariates += (deltaQCovariateEmpirical - qualFromRead - (globalDeltaQ + deltaQReported));
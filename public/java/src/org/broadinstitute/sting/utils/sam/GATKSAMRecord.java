@@ -55,10 +55,14 @@ public class GATKSAMRecord extends BAMRecord {
     public static final String BQSR_BASE_INSERTION_QUALITIES = "BI";                // base qualities for insertions
     public static final String BQSR_BASE_DELETION_QUALITIES = "BD";                 // base qualities for deletions
 
+    // the sample index of reads whose sample hasn't been indexed by the engine
+    public static final int NO_SAMPLE_INDEX = -1;
+
     // the SAMRecord data we're caching
     private String mReadString = null;
     private GATKSAMReadGroupRecord mReadGroup = null;
     private byte[] reducedReadCounts = null;
+    private int sampleIndex = NO_SAMPLE_INDEX;
 
     // because some values can be null, we don't want to duplicate effort
     private boolean retrievedReadGroup = false;
@@ -231,9 +235,25 @@ public class GATKSAMRecord extends BAMRecord {
     public void setReadGroup( final GATKSAMReadGroupRecord readGroup ) {
         mReadGroup = readGroup;
         retrievedReadGroup = true;
+        sampleIndex = NO_SAMPLE_INDEX;                // the new read group may belong to another sample
         setAttribute("RG", mReadGroup.getId());       // todo -- this should be standardized, but we don't have access to SAMTagUtils!
     }
 
+    /**
+     * The index of the sample of this read among all of the samples in the reads, assigned by the engine as the read
+     * is loaded so that reads can be partitioned by sample without looking up their sample names.  Reads with the
+     * same index have the same sample; reads created outside of the engine have no index.
+     *
+     * @return the sample index, or NO_SAMPLE_INDEX if the engine hasn't given this read one
+     */
+    public int getSampleIndex() {
+        return sampleIndex;
+    }
+
+    public void setSampleIndex( final int sampleIndex ) {
+        this.sampleIndex = sampleIndex;
+    }
+
     ///////////////////////////////////////////////////////////////////////////////
     // *** ReduceReads functions                                              ***//
     ///////////////////////////////////////////////////////////////////////////////
@@ -455,6 +475,7 @@ public class GATKSAMRecord extends BAMRecord {
         if (samRG != null) {
             GATKSAMReadGroupRecord rg = new GATKSAMReadGroupRecord(samRG);
             emptyRead.setReadGroup(rg);
+            emptyRead.setSampleIndex(read.getSampleIndex());
         }
 
         return emptyRead;
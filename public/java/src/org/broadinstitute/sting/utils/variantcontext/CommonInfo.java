@@ -215,7 +215,7 @@ final class CommonInfo {
     public double getAttributeAsDouble(String key, double defaultValue) {
         Object x = getAttribute(key);
         if ( x == null ) return defaultValue;
-        if ( x instanceof Double ) return (Double)x;
+        if ( x instanceof Number ) return ((Number)x).doubleValue();
         return Double.valueOf((String)x); // throws an exception if this isn't a string
     }
 
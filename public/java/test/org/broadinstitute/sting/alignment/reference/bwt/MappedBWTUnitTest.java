@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2012 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.bwt;
+
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Checks that the BWTs and suffix arrays mapped from their files answer the same as the ones read onto the heap
+ */
+public class MappedBWTUnitTest extends BaseTest {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    @DataProvider(name = "lengths")
+    public Object[][] makeLengths() {
+        return new Object[][] {
+                {1},
+                {15},
+                {BWT.SEQUENCE_BLOCK_SIZE - 1},
+                {BWT.SEQUENCE_BLOCK_SIZE},
+                {BWT.SEQUENCE_BLOCK_SIZE * 3 + 17},
+                {5000}
+        };
+    }
+
+    private File bwtFile;
+    private File saFile;
+
+    /**
+     * Writes the BWT and suffix array of a random sequence of the given length to bwtFile and saFile
+     */
+    private void writeIndex(final int length) {
+        final Random random = new Random(length);
+        final byte[] sequence = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            sequence[i] = BASES[random.nextInt(BASES.length)];
+        final int[] sortedSuffixes = SuffixArraySorter.sort(sequence);
+
+        bwtFile = createTempFile("mapped", ".bwt");
+        final BWTWriter bwtWriter = new BWTWriter(bwtFile);
+        bwtWriter.write(sequence, sortedSuffixes);
+        bwtWriter.close();
+
+        saFile = createTempFile("mapped", ".sa");
+        final SuffixArrayWriter saWriter = new SuffixArrayWriter(saFile);
+        saWriter.write(sequence, sortedSuffixes);
+        saWriter.close();
+    }
+
+    @Test(dataProvider = "lengths")
+    public void testMappedMatchesRead(final int length) {
+        writeIndex(length);
+
+        BWTReader bwtReader = new BWTReader(bwtFile);
+        final BWT bwt = bwtReader.read();
+        bwtReader.close();
+        bwtReader = new BWTReader(bwtFile);
+        final BWT mappedBWT = bwtReader.map();
+        bwtReader.close();
+
+        Assert.assertEquals(mappedBWT.length(), bwt.length());
+        Assert.assertEquals(mappedBWT.getSequence(), bwt.getSequence());
+        for ( final byte base : BASES )
+            Assert.assertEquals(mappedBWT.counts(base), bwt.counts(base));
+        // the '$' has no base to look up or count
+        for ( long index = 0; index <= bwt.length(); index++ ) {
+            if ( index == bwt.inverseSA0 )
+                continue;
+            Assert.assertEquals(mappedBWT.getBase(index), bwt.getBase(index), "base at " + index);
+            for ( final byte base : BASES )
+                Assert.assertEquals(mappedBWT.occurrences(base, index), bwt.occurrences(base, index), "occurrences of " + (char)base + " at " + index);
+        }
+
+        SuffixArrayReader saReader = new SuffixArrayReader(saFile, bwt);
+        final SuffixArray suffixArray = saReader.read();
+        saReader.close();
+        saReader = new SuffixArrayReader(saFile, mappedBWT);
+        final SuffixArray mappedSuffixArray = saReader.map();
+        saReader.close();
+
+        Assert.assertEquals(mappedSuffixArray.length(), suffixArray.length());
+        Assert.assertEquals(mappedSuffixArray.inverseSA0, suffixArray.inverseSA0);
+        for ( long index = 0; index < suffixArray.length() - 1; index++ )
+            Assert.assertEquals(mappedSuffixArray.get(index), suffixArray.get(index), "suffix array entry " + index);
+    }
+
+    @Test(expectedExceptions = ReviewedStingException.class)
+    public void testMappedBWTCantBeWritten() {
+        writeIndex(1000);
+        final BWTReader bwtReader = new BWTReader(bwtFile);
+        final BWT mappedBWT = bwtReader.map();
+        bwtReader.close();
+        new BWTWriter(createTempFile("rewritten", ".bwt")).write(mappedBWT);
+    }
+
+    @Test(expectedExceptions = ReviewedStingException.class)
+    public void testMappedSuffixArrayCantBeWritten() {
+        writeIndex(1000);
+        final BWTReader bwtReader = new BWTReader(bwtFile);
+        final BWT mappedBWT = bwtReader.map();
+        bwtReader.close();
+        final SuffixArrayReader saReader = new SuffixArrayReader(saFile, mappedBWT);
+        final SuffixArray mappedSuffixArray = saReader.map();
+        saReader.close();
+        new SuffixArrayWriter(createTempFile("rewritten", ".sa")).write(mappedSuffixArray);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2012 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.bwt;
+
+import org.apache.commons.io.FileUtils;
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Checks the suffix arrays from SuffixArraySorter against ones sorted the long way, and that the BWT and
+ * suffix array written straight from them match the ones written from the in-memory structures.
+ */
+public class SuffixArraySorterUnitTest extends BaseTest {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private static byte[] randomSequence(final Random random, final int length, final int nBases) {
+        final byte[] sequence = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            sequence[i] = BASES[random.nextInt(nBases)];
+        return sequence;
+    }
+
+    private static byte[] repeat(final String unit, final int times) {
+        final StringBuilder builder = new StringBuilder();
+        for ( int i = 0; i < times; i++ )
+            builder.append(unit);
+        return builder.toString().getBytes();
+    }
+
+    @DataProvider(name = "sequences")
+    public Object[][] makeSequences() {
+        final Random random = new Random(42);
+        return new Object[][] {
+                {"".getBytes()},
+                {"A".getBytes()},
+                {"ACGT".getBytes()},
+                {"TGCA".getBytes()},
+                {"GATTACA".getBytes()},
+                {repeat("A", 100)},
+                {repeat("AC", 100)},
+                {repeat("ACG", 99)},
+                {repeat("AACAAG", 50)},
+                {randomSequence(random, 1000, 2)},
+                {randomSequence(random, 1000, 4)},
+                {randomSequence(random, 10000, 4)}
+        };
+    }
+
+    /**
+     * Sorts the suffixes with the lexicographic order of the unsigned bytes, the empty suffix first.
+     */
+    private static int[] naiveSort(final byte[] sequence) {
+        final Integer[] suffixes = new Integer[sequence.length + 1];
+        for ( int i = 0; i < suffixes.length; i++ )
+            suffixes[i] = i;
+        Arrays.sort(suffixes, new Comparator<Integer>() {
+            public int compare(final Integer lhs, final Integer rhs) {
+                int i = lhs, j = rhs;
+                while ( i < sequence.length && j < sequence.length ) {
+                    if ( sequence[i] != sequence[j] )
+                        return (sequence[i] & 0xff) - (sequence[j] & 0xff);
+                    i++;
+                    j++;
+                }
+                return (sequence.length - i) - (sequence.length - j);
+            }
+        });
+        final int[] suffixArray = new int[suffixes.length];
+        for ( int i = 0; i < suffixes.length; i++ )
+            suffixArray[i] = suffixes[i];
+        return suffixArray;
+    }
+
+    @Test(dataProvider = "sequences")
+    public void testSort(final byte[] sequence) {
+        Assert.assertEquals(SuffixArraySorter.sort(sequence), naiveSort(sequence));
+    }
+
+    @Test
+    public void testSortUnsignedBytes() {
+        final Random random = new Random(42);
+        final byte[] sequence = new byte[2000];
+        for ( int i = 0; i < sequence.length; i++ )
+            sequence[i] = (byte)(random.nextInt(3) == 0 ? 200 + random.nextInt(3) : random.nextInt(3));
+        Assert.assertEquals(SuffixArraySorter.sort(sequence), naiveSort(sequence));
+    }
+
+    @Test
+    public void testStreamingWriters() throws IOException {
+        final byte[] sequence = randomSequence(new Random(42), 1000, 4);
+        final int[] suffixArray = SuffixArraySorter.sort(sequence);
+
+        final File bwtFile = createTempFile("expected", ".bwt");
+        final BWTWriter bwtWriter = new BWTWriter(bwtFile);
+        bwtWriter.write(BWT.createFromReferenceSequence(sequence));
+        bwtWriter.close();
+
+        final File streamedBWTFile = createTempFile("streamed", ".bwt");
+        final BWTWriter streamedBWTWriter = new BWTWriter(streamedBWTFile);
+        streamedBWTWriter.write(sequence, suffixArray);
+        streamedBWTWriter.close();
+
+        Assert.assertEquals(FileUtils.readFileToByteArray(streamedBWTFile), FileUtils.readFileToByteArray(bwtFile));
+
+        final File saFile = createTempFile("expected", ".sa");
+        final SuffixArrayWriter saWriter = new SuffixArrayWriter(saFile);
+        saWriter.write(SuffixArray.createFromReferenceSequence(sequence));
+        saWriter.close();
+
+        final File streamedSAFile = createTempFile("streamed", ".sa");
+        final SuffixArrayWriter streamedSAWriter = new SuffixArrayWriter(streamedSAFile);
+        streamedSAWriter.write(sequence, suffixArray);
+        streamedSAWriter.close();
+
+        Assert.assertEquals(FileUtils.readFileToByteArray(streamedSAFile), FileUtils.readFileToByteArray(saFile));
+    }
+}
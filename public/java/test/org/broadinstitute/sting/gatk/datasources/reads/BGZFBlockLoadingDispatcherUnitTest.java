@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.datasources.reads;
+
+import net.sf.samtools.*;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.commandline.Tags;
+import org.broadinstitute.sting.gatk.iterators.StingSAMIterator;
+import org.broadinstitute.sting.gatk.resourcemanagement.ThreadAllocation;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests that reads loaded asynchronously by the BGZFBlockLoadingDispatcher match those read directly by Picard.
+ */
+public class BGZFBlockLoadingDispatcherUnitTest extends BaseTest {
+    private static final int NUM_READS = 20000;
+    private static final int READ_LENGTH = 100;
+
+    private File bam;
+    private GenomeLocParser genomeLocParser;
+
+    @BeforeClass
+    public void createBAM() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(2, 0, 1000000);
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg1");
+        readGroup.setSample("sample1");
+        header.addReadGroup(readGroup);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+
+        // random bases and quals, so that the reads span many BGZF blocks
+        bam = createTempFile("BGZFBlockLoadingDispatcherUnitTest", ".bam");
+        new File(bam.getAbsolutePath().replaceAll("\\.bam$", ".bai")).deleteOnExit();
+        final SAMFileWriterFactory factory = new SAMFileWriterFactory();
+        factory.setCreateIndex(true);
+        final SAMFileWriter writer = factory.makeBAMWriter(header, true, bam);
+
+        final Random random = new Random(42);
+        for ( int i = 0; i < NUM_READS; i++ ) {
+            final byte[] bases = new byte[READ_LENGTH];
+            final byte[] quals = new byte[READ_LENGTH];
+            for ( int j = 0; j < READ_LENGTH; j++ ) {
+                bases[j] = (byte)"ACGT".charAt(random.nextInt(4));
+                quals[j] = (byte)(10 + random.nextInt(30));
+            }
+            final int contig = i < NUM_READS / 2 ? 0 : 1;
+            final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + i, contig, 1 + 40 * (i % (NUM_READS / 2)), bases, quals);
+            read.setAttribute(SAMTag.RG.name(), readGroup.getId());
+            writer.addAlignment(read);
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testAsynchronousReadsMatchSynchronousReads() {
+        final List<String> expected = readAll(new ThreadAllocation());
+        Assert.assertEquals(expected.size(), NUM_READS);
+
+        for ( final int numIOThreads : Arrays.asList(1, 2, 4) )
+            Assert.assertEquals(readAll(new ThreadAllocation(numIOThreads + 1, 1, numIOThreads)), expected, "Reads differ with " + numIOThreads + " I/O threads");
+    }
+
+    @Test
+    public void testDecompressionStatistics() {
+        final BGZFBlockLoadingDispatcher.DecompressionStatistics statistics = new BGZFBlockLoadingDispatcher.DecompressionStatistics();
+        Assert.assertEquals(statistics.getThroughput(), 0.0);
+
+        statistics.addBlock(1000, 4000, 1000000);
+        statistics.addBlock(2000, 6000, 1000000);
+        Assert.assertEquals(statistics.getNumBlocks(), 2);
+        Assert.assertEquals(statistics.getUncompressedBytes(), 10000);
+        Assert.assertEquals(statistics.getThroughput(), 5.0, 1e-9);
+    }
+
+    /**
+     * @return the names and positions of all reads in the BAM, read shard by shard as the engine would
+     */
+    private List<String> readAll(final ThreadAllocation threadAllocation) {
+        final List<SAMReaderID> readers = Arrays.asList(new SAMReaderID(bam, new Tags()));
+        final SAMDataSource data = new SAMDataSource(readers, threadAllocation, null, genomeLocParser);
+
+        final List<String> reads = new ArrayList<String>();
+        for ( final Shard shard : data.createShardIteratorOverAllReads(new ReadShardBalancer()) ) {
+            final StingSAMIterator iterator = data.seek(shard);
+            for ( final SAMRecord read : iterator )
+                reads.add(read.getReadName() + ":" + read.getReferenceName() + ":" + read.getAlignmentStart() + ":" + read.getReadString());
+            iterator.close();
+        }
+        return reads;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.datasources.reads;
+
+import net.sf.samtools.*;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.commandline.Tags;
+import org.broadinstitute.sting.gatk.iterators.StingSAMIterator;
+import org.broadinstitute.sting.gatk.resourcemanagement.ThreadAllocation;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.GenomeLocSortedSet;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests that read shards filled ahead of the traversal hold the same reads as those filled as they're reached.
+ */
+public class ReadShardBalancerUnitTest extends BaseTest {
+    private static final int NUM_READS = 20000;
+    private static final int READ_LENGTH = 50;
+
+    private File bam;
+    private GenomeLocParser genomeLocParser;
+
+    @BeforeClass
+    public void createBAM() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(2, 0, 1000000);
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg1");
+        readGroup.setSample("sample1");
+        header.addReadGroup(readGroup);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+
+        bam = createTempFile("ReadShardBalancerUnitTest", ".bam");
+        new File(bam.getAbsolutePath().replaceAll("\\.bam$", ".bai")).deleteOnExit();
+        final SAMFileWriterFactory factory = new SAMFileWriterFactory();
+        factory.setCreateIndex(true);
+        final SAMFileWriter writer = factory.makeBAMWriter(header, true, bam);
+        for ( int i = 0; i < NUM_READS; i++ ) {
+            final int contig = i < NUM_READS / 2 ? 0 : 1;
+            final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + i, contig, 1 + 40 * (i % (NUM_READS / 2)), READ_LENGTH);
+            read.setAttribute(SAMTag.RG.name(), readGroup.getId());
+            writer.addAlignment(read);
+        }
+        writer.close();
+    }
+
+    @DataProvider(name = "prefetchedShards")
+    public Object[][] makePrefetchedShards() {
+        return new Object[][] { {1}, {3}, {100} };
+    }
+
+    @Test(dataProvider = "prefetchedShards")
+    public void testPrefetchedShardsMatchFilledShards(final int numPrefetchedShards) {
+        final List<List<String>> expected = readAllShards(new ReadShardBalancer(), null);
+        Assert.assertTrue(expected.size() > 1, "Expected the reads to be split over several shards");
+        Assert.assertEquals(readAllShards(new ReadShardBalancer(numPrefetchedShards), null), expected);
+    }
+
+    @Test(dataProvider = "prefetchedShards")
+    public void testPrefetchedShardsMatchFilledShardsOverIntervals(final int numPrefetchedShards) {
+        final GenomeLocSortedSet intervals = new GenomeLocSortedSet(genomeLocParser);
+        intervals.add(genomeLocParser.createGenomeLoc("chr0", 1000, 150000));
+        intervals.add(genomeLocParser.createGenomeLoc("chr1", 300000, 310000));
+        final List<List<String>> expected = readAllShards(new ReadShardBalancer(), intervals);
+        Assert.assertEquals(readAllShards(new ReadShardBalancer(numPrefetchedShards), intervals), expected);
+    }
+
+    @Test(expectedExceptions = ReviewedStingException.class)
+    public void testNegativePrefetchedShards() {
+        new ReadShardBalancer(-1);
+    }
+
+    /**
+     * @return the names and positions of the reads in each shard of the BAM, as the engine would see them
+     */
+    private List<List<String>> readAllShards(final ReadShardBalancer balancer, final GenomeLocSortedSet intervals) {
+        final List<SAMReaderID> readers = Arrays.asList(new SAMReaderID(bam, new Tags()));
+        final SAMDataSource data = new SAMDataSource(readers, new ThreadAllocation(), null, genomeLocParser);
+        final Iterable<Shard> shards = intervals == null ? data.createShardIteratorOverAllReads(balancer) : data.createShardIteratorOverIntervals(intervals, balancer);
+
+        final List<List<String>> reads = new ArrayList<List<String>>();
+        for ( final Shard shard : shards ) {
+            final List<String> readsInShard = new ArrayList<String>();
+            final StingSAMIterator iterator = data.seek(shard);
+            for ( final SAMRecord read : iterator )
+                readsInShard.add(read.getReadName() + ":" + read.getReferenceName() + ":" + read.getAlignmentStart());
+            iterator.close();
+            reads.add(readsInShard);
+        }
+        return reads;
+    }
+}
@@ -0,0 +1,78 @@
+package org.broadinstitute.sting.gatk.datasources.reads;
+
+import com.google.caliper.Param;
+import net.sf.picard.filter.FilteringIterator;
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMReadGroupRecord;
+import net.sf.samtools.SAMRecord;
+import org.broadinstitute.sting.commandline.Tags;
+import org.broadinstitute.sting.gatk.DownsampleType;
+import org.broadinstitute.sting.gatk.DownsamplingMethod;
+import org.broadinstitute.sting.gatk.ReadProperties;
+import org.broadinstitute.sting.gatk.arguments.ValidationExclusion;
+import org.broadinstitute.sting.gatk.filters.ReadFilter;
+import org.broadinstitute.sting.gatk.filters.UnmappedReadFilter;
+import org.broadinstitute.sting.gatk.iterators.LocusIteratorByState;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.baq.BAQ;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Replays the start of a BAM through LocusIteratorByState, downsampling each sample to the given coverage,
+ * to measure the cost of managing the per-sample read states.  Unlike the DownsamplerBenchmark, reads are
+ * partitioned by the samples in the BAM's read groups.
+ */
+public class ReadStateManagerBenchmark extends ReadProcessingBenchmark {
+    @Param
+    private String bamFile;
+
+    @Param
+    private Integer maxReads;
+
+    @Param({"250", "1000"})
+    private int downsampleToCoverage;
+
+    @Override
+    public String getBAMFile() { return bamFile; }
+
+    @Override
+    public Integer getMaxReads() { return maxReads; }
+
+    public void timeReadStateManagement(int reps) {
+        for(int i = 0; i < reps; i++) {
+            SAMFileReader reader = new SAMFileReader(inputFile);
+            ReadProperties readProperties = new ReadProperties(Collections.<SAMReaderID>singletonList(new SAMReaderID(inputFile,new Tags())),
+                                                               reader.getFileHeader(),
+                                                               false,
+                                                               SAMFileReader.ValidationStringency.SILENT,
+                                                               new DownsamplingMethod(DownsampleType.BY_SAMPLE,downsampleToCoverage,null),
+                                                               new ValidationExclusion(Collections.singletonList(ValidationExclusion.TYPE.ALL)),
+                                                               Collections.<ReadFilter>emptyList(),
+                                                               false,
+                                                               BAQ.CalculationMode.OFF,
+                                                               BAQ.QualityMode.DONT_MODIFY,
+                                                               null, // no BAQ
+                                                               null, // no BQSR
+                                                               (byte)0);
+
+            GenomeLocParser genomeLocParser = new GenomeLocParser(reader.getFileHeader().getSequenceDictionary());
+            Iterator<SAMRecord> readIterator = new FilteringIterator(reader.iterator(),new UnmappedReadFilter());
+            LocusIteratorByState locusIteratorByState = new LocusIteratorByState(readIterator,readProperties,genomeLocParser,getSamples(reader));
+            while(locusIteratorByState.hasNext()) {
+                locusIteratorByState.next().getLocation();
+            }
+            reader.close();
+        }
+    }
+
+    private static Collection<String> getSamples(SAMFileReader reader) {
+        Collection<String> samples = new LinkedHashSet<String>();
+        for(SAMReadGroupRecord readGroup: reader.getFileHeader().getReadGroups())
+            samples.add(readGroup.getSample());
+        return samples.isEmpty() ? LocusIteratorByState.sampleListForSAMWithoutReadGroups() : samples;
+    }
+}
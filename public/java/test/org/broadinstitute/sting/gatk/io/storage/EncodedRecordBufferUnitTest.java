@@ -0,0 +1,86 @@
+package org.broadinstitute.sting.gatk.io.storage;
+
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Make sure encoded records come back out of the buffer exactly as they went in, whether or not they were spilled.
+ */
+public class EncodedRecordBufferUnitTest extends BaseTest {
+    @DataProvider(name = "spillThresholds")
+    public Object[][] createSpillThresholds() {
+        return new Object[][] { {1}, {100}, {1000}, {1024*1024} };
+    }
+
+    @Test(dataProvider = "spillThresholds")
+    public void testReplayMatchesInput(final int spillThreshold) throws IOException {
+        final File spillFile = File.createTempFile("EncodedRecordBufferUnitTest", ".tmp");
+        spillFile.deleteOnExit();
+
+        final EncodedRecordBuffer buffer = new EncodedRecordBuffer(spillFile, spillThreshold);
+        final List<String> expected = new ArrayList<String>();
+        for ( int i = 0; i < 500; i++ ) {
+            final String record = String.format("record\t%d\t%s%n", i, i % 7 == 0 ? "long.long.long.long" : "x");
+            buffer.write(record.getBytes());
+            buffer.markRecordEnd();
+            expected.add(record);
+        }
+        buffer.close();
+
+        Assert.assertEquals(buffer.getNumRecords(), expected.size());
+
+        final List<String> observed = new ArrayList<String>();
+        final ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        buffer.replay(new EncodedRecordBuffer.BlockHandler() {
+            public void handleBlock(byte[] block, int length, int[] recordEnds, int numRecords) {
+                int recordStart = 0;
+                for ( int i = 0; i < numRecords; i++ ) {
+                    observed.add(new String(block, recordStart, recordEnds[i] - recordStart));
+                    recordStart = recordEnds[i];
+                }
+                Assert.assertEquals(recordStart, length, "Block contains a partial record");
+                concatenated.write(block, 0, length);
+            }
+        });
+
+        Assert.assertEquals(observed, expected);
+        Assert.assertEquals(concatenated.toString(), join(expected));
+        Assert.assertFalse(spillFile.exists(), "Spill file should be removed after replay");
+    }
+
+    @Test
+    public void testClearDropsUnmarkedData() throws IOException {
+        final File spillFile = File.createTempFile("EncodedRecordBufferUnitTest", ".tmp");
+        spillFile.deleteOnExit();
+
+        final EncodedRecordBuffer buffer = new EncodedRecordBuffer(spillFile);
+        buffer.write("##header\n".getBytes());
+        buffer.clear();
+        buffer.write("record\n".getBytes());
+        buffer.markRecordEnd();
+        buffer.close();
+
+        final StringBuilder observed = new StringBuilder();
+        buffer.replay(new EncodedRecordBuffer.BlockHandler() {
+            public void handleBlock(byte[] block, int length, int[] recordEnds, int numRecords) {
+                observed.append(new String(block, 0, length));
+            }
+        });
+        Assert.assertEquals(observed.toString(), "record\n");
+    }
+
+    private static String join(final List<String> records) {
+        final StringBuilder builder = new StringBuilder();
+        for ( final String record : records )
+            builder.append(record);
+        return builder.toString();
+    }
+}
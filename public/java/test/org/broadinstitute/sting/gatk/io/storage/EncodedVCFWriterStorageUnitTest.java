@@ -0,0 +1,211 @@
+package org.broadinstitute.sting.gatk.io.storage;
+
+import net.sf.picard.reference.ReferenceSequenceFileFactory;
+import net.sf.samtools.SAMSequenceDictionary;
+import org.apache.commons.io.FileUtils;
+import org.broad.tribble.Feature;
+import org.broad.tribble.Tribble;
+import org.broad.tribble.index.Index;
+import org.broad.tribble.index.IndexFactory;
+import org.broad.tribble.readers.AsciiLineReader;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.gatk.io.stubs.VCFWriterStub;
+import org.broadinstitute.sting.utils.codecs.vcf.StandardVCFWriter;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFCodec;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFHeader;
+import org.broadinstitute.sting.utils.variantcontext.VariantContext;
+import org.broadinstitute.sting.utils.variantcontext.VariantContextUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Make sure VCF output merged from encoded storage, and its on-the-fly index, match what a StandardVCFWriter
+ * writes when handed the records directly.  The input has indels, which the writer pads before indexing.
+ */
+public class EncodedVCFWriterStorageUnitTest extends BaseTest {
+    private static final File VCF_FILE = new File(testDir + "exampleDBSNP.vcf");
+
+    private SAMSequenceDictionary dict;
+    private VCFHeader header;
+    private List<VariantContext> vcs;
+
+    @BeforeClass
+    public void readInput() throws IOException {
+        dict = ReferenceSequenceFileFactory.getReferenceSequenceFile(new File(testDir + "exampleFASTA.fasta")).getSequenceDictionary();
+
+        final VCFCodec codec = new VCFCodec();
+        final AsciiLineReader reader = new AsciiLineReader(new FileInputStream(VCF_FILE));
+        header = (VCFHeader)codec.readHeader(reader);
+        vcs = new ArrayList<VariantContext>();
+        String line;
+        while ( (line = reader.readLine()) != null )
+            vcs.add((VariantContext)codec.decode(line));
+        reader.close();
+    }
+
+    @Test
+    public void testAddEncodedWithIndexing() throws IOException {
+        final File file = createIndexedTempFile("addEncoded");
+        final Expected expected = new Expected(file);
+
+        final StandardVCFWriter writer = new StandardVCFWriter(file, dict, true);
+        writer.writeHeader(header);
+        for ( final VariantContext vc : vcs ) {
+            final byte[] encoded = encode(vc);
+            // the location the target indexes is the padded one, as StandardVCFWriter.add would use
+            writer.addEncoded(new EncodedLocation(vc), encoded, 0, encoded.length);
+        }
+        writer.close();
+
+        expected.assertMatches();
+    }
+
+    @Test
+    public void testMergeIntoIndexedTarget() throws IOException {
+        final File file = createIndexedTempFile("merged");
+        final Expected expected = new Expected(file);
+
+        final VCFWriterStub stub = new TestVCFWriterStub(file);
+        final VCFWriterStorage target = new VCFWriterStorage(stub);
+        target.writeHeader(header);
+
+        // two shards' worth of output, merged in order
+        final int split = vcs.size() / 3;
+        for ( final List<VariantContext> shard : Arrays.asList(vcs.subList(0, split), vcs.subList(split, vcs.size())) ) {
+            final File tempFile = createTempFile("EncodedVCFWriterStorageUnitTest", ".tmp");
+            final EncodedVCFWriterStorage storage = new EncodedVCFWriterStorage(stub, tempFile, 1024);
+            for ( final VariantContext vc : shard )
+                storage.add(vc);
+            storage.close();
+            storage.mergeInto(target);
+        }
+        target.close();
+
+        expected.assertMatches();
+    }
+
+    @Test
+    public void testMergeIntoStreamTarget() throws IOException {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final StandardVCFWriter expectedWriter = new StandardVCFWriter(expected, dict, false);
+        expectedWriter.writeHeader(header);
+        for ( final VariantContext vc : vcs )
+            expectedWriter.add(vc);
+        expectedWriter.close();
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final VCFWriterStub stub = new TestVCFWriterStub(output);
+        final VCFWriterStorage target = new VCFWriterStorage(stub);
+        target.writeHeader(header);
+
+        // a spill threshold small enough that most of the records are merged from the spill file
+        final File tempFile = createTempFile("EncodedVCFWriterStorageUnitTest", ".tmp");
+        final EncodedVCFWriterStorage storage = new EncodedVCFWriterStorage(stub, tempFile, 1024);
+        for ( final VariantContext vc : vcs )
+            storage.add(vc);
+        storage.close();
+        storage.mergeInto(target);
+        target.close();
+
+        Assert.assertEquals(output.toString(), expected.toString());
+    }
+
+    /**
+     * The output and on-the-fly index StandardVCFWriter.add gives for the input.  It's written to the same file
+     * as the output under test will be, as Tribble indices only compare equal if they index the same file.
+     */
+    private class Expected {
+        private final File file;
+        private final String output;
+        private final Index index;
+
+        public Expected(final File file) throws IOException {
+            final StandardVCFWriter writer = new StandardVCFWriter(file, dict, true);
+            writer.writeHeader(header);
+            for ( final VariantContext vc : vcs )
+                writer.add(vc);
+            writer.close();
+
+            this.file = file;
+            this.output = FileUtils.readFileToString(file);
+            this.index = IndexFactory.loadIndex(Tribble.indexFile(file).getAbsolutePath());
+        }
+
+        /**
+         * Checks that the file has since been rewritten with the same output and index.
+         */
+        public void assertMatches() throws IOException {
+            Assert.assertEquals(FileUtils.readFileToString(file), output);
+            Assert.assertTrue(IndexFactory.loadIndex(Tribble.indexFile(file).getAbsolutePath()).equalsIgnoreProperties(index),
+                    "On-the-fly index differs from the one StandardVCFWriter.add builds");
+        }
+    }
+
+    private File createIndexedTempFile(final String name) throws IOException {
+        final File file = createTempFile("EncodedVCFWriterStorageUnitTest." + name, ".vcf");
+        Tribble.indexFile(file).deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Encodes a single record, as the storage does, and drops the header.
+     */
+    private byte[] encode(final VariantContext vc) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final StandardVCFWriter writer = new StandardVCFWriter(bytes, dict, false);
+        writer.writeHeader(header);
+        bytes.reset();
+        writer.add(vc);
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The extent at which StandardVCFWriter writes a record, with its indel alleles padded.
+     */
+    private static class EncodedLocation implements Feature {
+        private final VariantContext vc;
+
+        public EncodedLocation(final VariantContext vc) {
+            this.vc = VariantContextUtils.createVariantContextWithPaddedAlleles(vc, false);
+        }
+
+        public String getChr() { return vc.getChr(); }
+        public int getStart() { return vc.getStart(); }
+        public int getEnd() { return vc.getEnd(); }
+    }
+
+    /**
+     * A stub writing to the given file, with the test's header and dictionary in place of an engine's.
+     */
+    private class TestVCFWriterStub extends VCFWriterStub {
+        public TestVCFWriterStub(final File file) {
+            super(null, file, false, Collections.<Object>emptyList(), true, false);
+        }
+
+        public TestVCFWriterStub(final OutputStream stream) {
+            super(null, stream, false, Collections.<Object>emptyList(), true, false);
+        }
+
+        @Override
+        public SAMSequenceDictionary getMasterSequenceDictionary() {
+            return dict;
+        }
+
+        @Override
+        public VCFHeader getVCFHeader() {
+            return header;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.broadinstitute.sting.gatk.iterators;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import com.google.caliper.runner.CaliperMain;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMRecord;
+import org.broadinstitute.sting.gatk.ReadProperties;
+import org.broadinstitute.sting.gatk.arguments.ValidationExclusion;
+import org.broadinstitute.sting.gatk.contexts.AlignmentContext;
+import org.broadinstitute.sting.gatk.datasources.reads.SAMReaderID;
+import org.broadinstitute.sting.gatk.filters.ReadFilter;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.baq.BAQ;
+import org.broadinstitute.sting.utils.pileup.CompactPileupElementList;
+import org.broadinstitute.sting.utils.pileup.PileupElement;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Caliper microbenchmark of pileup construction in LocusIteratorByState.  Compares building a pileup
+ * from a list of eagerly created PileupElements (the old path) against a reused CompactPileupElementList
+ * builder, and times a full iteration over a deep stack of reads.  Run with the allocation instrument
+ * (-i allocation) to compare the allocation rates.
+ */
+public class LocusIteratorByStateBenchmark extends SimpleBenchmark {
+    private static final int READ_LENGTH = 100;
+    private static final int N_LOCI = 1000;
+
+    @Param({"30", "300", "1000"})
+    int depth; // set automatically by framework
+
+    private SAMFileHeader header;
+    private GenomeLocParser genomeLocParser;
+    private List<SAMRecord> reads;
+
+    @Override protected void setUp() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000000);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+
+        // depth reads starting at every locus, so every locus in the middle is covered depth * READ_LENGTH deep
+        reads = new ArrayList<SAMRecord>(depth * N_LOCI / READ_LENGTH);
+        for ( int start = 1; start <= N_LOCI; start += READ_LENGTH )
+            for ( int i = 0; i < depth; i++ )
+                reads.add(ArtificialSAMUtils.createArtificialRead(header, "read" + start + "_" + i, 0, start, READ_LENGTH));
+    }
+
+    public void timeEagerPileupElements(int rep) {
+        for ( int i = 0; i < rep; i++ ) {
+            for ( int offset = 0; offset < READ_LENGTH; offset++ ) {
+                final List<PileupElement> pile = new ArrayList<PileupElement>(reads.size());
+                for ( final SAMRecord read : reads )
+                    pile.add(new PileupElement((GATKSAMRecord) read, offset, false, false, false, false, false, false, null, -1));
+            }
+        }
+    }
+
+    public void timeCompactPileupElementList(int rep) {
+        final CompactPileupElementList.Builder builder = new CompactPileupElementList.Builder();
+        for ( int i = 0; i < rep; i++ ) {
+            for ( int offset = 0; offset < READ_LENGTH; offset++ ) {
+                for ( final SAMRecord read : reads )
+                    builder.add((GATKSAMRecord) read, offset, false, false, false, false, false, false, -1);
+                builder.build();
+            }
+        }
+    }
+
+    public void timeLocusIteratorByState(int rep) {
+        for ( int i = 0; i < rep; i++ ) {
+            final LocusIteratorByState libs = new LocusIteratorByState(new FakeCloseableIterator<SAMRecord>(reads.iterator()), createReadProperties(), genomeLocParser, LocusIteratorByState.sampleListForSAMWithoutReadGroups());
+            while ( libs.hasNext() ) {
+                final AlignmentContext context = libs.next();
+                context.getBasePileup().getNumberOfElements();
+            }
+        }
+    }
+
+    private static ReadProperties createReadProperties() {
+        return new ReadProperties(
+                Collections.<SAMReaderID>emptyList(),
+                new SAMFileHeader(),
+                false,
+                SAMFileReader.ValidationStringency.STRICT,
+                null,
+                new ValidationExclusion(),
+                Collections.<ReadFilter>emptyList(),
+                false,
+                BAQ.CalculationMode.OFF,
+                BAQ.QualityMode.DONT_MODIFY,
+                null, // no BAQ
+                null, // no BQSR
+                (byte) -1
+        );
+    }
+
+    public static void main(String[] args) {
+        CaliperMain.main(LocusIteratorByStateBenchmark.class, args);
+    }
+}
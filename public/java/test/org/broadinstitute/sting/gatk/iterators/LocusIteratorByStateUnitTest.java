@@ -11,6 +11,7 @@ import org.broadinstitute.sting.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 import org.testng.Assert;
 import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.gatk.DownsamplingMethod;
 import org.broadinstitute.sting.gatk.ReadProperties;
 import org.broadinstitute.sting.gatk.arguments.ValidationExclusion;
 import org.broadinstitute.sting.gatk.datasources.reads.SAMReaderID;
@@ -172,6 +173,166 @@ public class LocusIteratorByStateUnitTest extends BaseTest {
         Assert.assertEquals(numAlignmentContextsFound,2,"Found incorrect number of alignment contexts");
     }
 
+    /**
+     * Reads indexed by sample in an order other than that of the samples given to the iterator, or not indexed at
+     * all, should be stratified by their sample names either way.
+     */
+    @Test
+    public void testReadsStratifiedBySampleIndex() {
+        final SAMFileHeader sampleHeader = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        ArtificialSAMUtils.createEnumeratedReadGroups(sampleHeader, Arrays.asList("rgA", "rgB", "rgC", "rgD"), Arrays.asList("A", "B", "C", "D"));
+
+        // the engine numbers the samples D, C, B, A; sample D isn't one of the iterator's samples
+        final List<SAMRecord> reads = new ArrayList<SAMRecord>();
+        final String[] readGroups = {"rgA", "rgB", "rgC", "rgD"};
+        for (int i = 0; i < 20; i++) {
+            final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(sampleHeader, "read" + i, 0, 1 + i / 5, 10);
+            read.setAttribute("RG", readGroups[i % 4]);
+            if (i % 3 != 0)
+                read.setSampleIndex(3 - i % 4);
+            reads.add(read);
+        }
+
+        final List<String> samples = Arrays.asList("A", "B", "C");
+        li = new LocusIteratorByState(new FakeCloseableIterator<SAMRecord>(reads.iterator()), createTestReadProperties(), genomeLocParser, samples);
+
+        while (li.hasNext()) {
+            final AlignmentContext context = li.next();
+            final int position = context.getLocation().getStart();
+            for (final String sample : samples) {
+                final Set<String> expected = new HashSet<String>();
+                for (final SAMRecord read : reads)
+                    if (read.getReadGroup().getSample().equals(sample) && read.getAlignmentStart() <= position && read.getAlignmentEnd() >= position)
+                        expected.add(read.getReadName());
+
+                final Set<String> actual = new HashSet<String>();
+                for (final GATKSAMRecord read : context.getBasePileup().getPileupForSample(sample).getReads())
+                    actual.add(read.getReadName());
+                Assert.assertEquals(actual, expected, "Wrong reads for sample " + sample + " at " + position);
+            }
+            Assert.assertTrue(context.getBasePileup().getPileupForSample("D") == null || context.getBasePileup().getPileupForSample("D").isEmpty(), "Reads of an unrequested sample in the pileup");
+        }
+    }
+
+    @Test
+    public void testPerSampleReadStateManagerPurge() {
+        final List<List<SAMRecord>> readsByStart = makeReadsByAlignmentStart(3, 2, 4);
+        final LocusIteratorByState.ReadStateManager.PerSampleReadStateManager manager = makePerSampleReadStateManager(readsByStart);
+        final List<SAMRecord> reads = flatten(readsByStart);
+
+        // purge one read from the first alignment start, both from the second and one from the third
+        final BitSet toPurge = new BitSet();
+        for (final int i : new int[] {1, 3, 4, 7})
+            toPurge.set(i);
+        final int downsamplingExtent = manager.purge(toPurge);
+
+        Assert.assertEquals(downsamplingExtent, reads.get(7).getAlignmentEnd(), "Extent should run to the end of the last purged read");
+        Assert.assertEquals(manager.size(), 5);
+        assertReadStates(manager, Arrays.asList(reads.get(0), reads.get(2), reads.get(5), reads.get(6), reads.get(8)));
+        Assert.assertEquals(manager.getCountsPerAlignmentStart(), new int[] {2, 3}, "The emptied alignment start should have been dropped");
+
+        // nothing left to purge
+        Assert.assertEquals(manager.purge(new BitSet()), 0);
+        Assert.assertEquals(manager.size(), 5);
+    }
+
+    @Test
+    public void testPerSampleReadStateManagerCompaction() {
+        // more reads than the manager's initial capacity, so that its arrays have to grow
+        final List<List<SAMRecord>> readsByStart = makeReadsByAlignmentStart(40, 30, 20);
+        final LocusIteratorByState.ReadStateManager.PerSampleReadStateManager manager = makePerSampleReadStateManager(readsByStart);
+        final List<SAMRecord> reads = flatten(readsByStart);
+
+        // removals through the iterator are counted against the earliest alignment start, so remove every other read there
+        final List<SAMRecord> expected = new ArrayList<SAMRecord>();
+        final Iterator<LocusIteratorByState.SAMRecordState> it = manager.iterator();
+        for (int i = 0; it.hasNext(); i++) {
+            final SAMRecord read = it.next().getRead();
+            Assert.assertSame(read, reads.get(i));
+            if (i < 40 && i % 2 == 1)
+                it.remove();
+            else
+                expected.add(read);
+        }
+
+        Assert.assertEquals(manager.size(), 70);
+        Assert.assertSame(manager.peek().getRead(), reads.get(0));
+        assertReadStates(manager, expected);
+        Assert.assertEquals(manager.getCountsPerAlignmentStart(), new int[] {20, 30, 20});
+
+        // reads added after the removals go after the reads that were kept
+        final List<SAMRecord> added = makeReadsByAlignmentStart(5).get(0);
+        manager.addStatesAtNextAlignmentStart(makeReadStates(added));
+        expected.addAll(added);
+        assertReadStates(manager, expected);
+        Assert.assertEquals(manager.getCountsPerAlignmentStart(), new int[] {20, 30, 20, 5});
+
+        // purging the whole second alignment start leaves the rest in order
+        final BitSet toPurge = new BitSet();
+        toPurge.set(20, 50);
+        manager.purge(toPurge);
+        expected.subList(20, 50).clear();
+        assertReadStates(manager, expected);
+        Assert.assertEquals(manager.getCountsPerAlignmentStart(), new int[] {20, 20, 5});
+
+        // removing the rest of the first alignment start drops it from the counts
+        final Iterator<LocusIteratorByState.SAMRecordState> firstReads = manager.iterator();
+        for (int i = 0; i < 20; i++) {
+            firstReads.next();
+            firstReads.remove();
+        }
+        expected.subList(0, 20).clear();
+        Assert.assertSame(manager.peek().getRead(), reads.get(70));
+        assertReadStates(manager, expected);
+        Assert.assertEquals(manager.getCountsPerAlignmentStart(), new int[] {20, 5});
+    }
+
+    /**
+     * Reads in groups sharing an alignment start, with each read one base longer than the last, so that alignment ends
+     * increase with each read.
+     */
+    private List<List<SAMRecord>> makeReadsByAlignmentStart(final int... groupSizes) {
+        final List<List<SAMRecord>> readsByStart = new ArrayList<List<SAMRecord>>();
+        int readIndex = 0;
+        for (int start = 1; start <= groupSizes.length; start++) {
+            final List<SAMRecord> group = new ArrayList<SAMRecord>();
+            for (int i = 0; i < groupSizes[start - 1]; i++, readIndex++)
+                group.add(ArtificialSAMUtils.createArtificialRead(header, "read" + readIndex, 0, start, 10 + readIndex));
+            readsByStart.add(group);
+        }
+        return readsByStart;
+    }
+
+    private LocusIteratorByState.ReadStateManager.PerSampleReadStateManager makePerSampleReadStateManager(final List<List<SAMRecord>> readsByStart) {
+        final LocusIteratorByState libs = makeLTBS(Collections.<SAMRecord>emptyList(), createTestReadProperties());
+        final LocusIteratorByState.ReadStateManager readStateManager = libs.new ReadStateManager(Collections.<SAMRecord>emptyList().iterator(), DownsamplingMethod.NONE);
+        final LocusIteratorByState.ReadStateManager.PerSampleReadStateManager manager = readStateManager.new PerSampleReadStateManager();
+        for (final List<SAMRecord> group : readsByStart)
+            manager.addStatesAtNextAlignmentStart(makeReadStates(group));
+        return manager;
+    }
+
+    private static List<LocusIteratorByState.SAMRecordState> makeReadStates(final List<SAMRecord> reads) {
+        final List<LocusIteratorByState.SAMRecordState> states = new ArrayList<LocusIteratorByState.SAMRecordState>();
+        for (final SAMRecord read : reads)
+            states.add(new LocusIteratorByState.SAMRecordState(read, false));
+        return states;
+    }
+
+    private static List<SAMRecord> flatten(final List<List<SAMRecord>> readsByStart) {
+        final List<SAMRecord> reads = new ArrayList<SAMRecord>();
+        for (final List<SAMRecord> group : readsByStart)
+            reads.addAll(group);
+        return reads;
+    }
+
+    private static void assertReadStates(final Iterable<LocusIteratorByState.SAMRecordState> manager, final List<SAMRecord> expected) {
+        final List<SAMRecord> actual = new ArrayList<SAMRecord>();
+        for (final LocusIteratorByState.SAMRecordState state : manager)
+            actual.add(state.getRead());
+        Assert.assertEquals(actual, expected, "Read states are missing or out of order");
+    }
+
     private static ReadProperties createTestReadProperties() {
         return new ReadProperties(
                 Collections.<SAMReaderID>emptyList(),
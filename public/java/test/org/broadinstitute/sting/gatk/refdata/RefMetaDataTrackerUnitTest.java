@@ -34,6 +34,7 @@ import org.broadinstitute.sting.gatk.contexts.ReferenceContext;
 import org.broadinstitute.sting.utils.codecs.table.TableFeature;
 import org.broadinstitute.sting.gatk.refdata.utils.GATKFeature;
 import org.broadinstitute.sting.gatk.refdata.utils.RODRecordList;
+import org.broadinstitute.sting.gatk.refdata.utils.RODTrackSlots;
 import org.broadinstitute.sting.utils.GenomeLoc;
 import org.broadinstitute.sting.utils.GenomeLocParser;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFConstants;
@@ -259,6 +260,48 @@ public class RefMetaDataTrackerUnitTest {
         testGetter(nameAsString, Arrays.asList(v4), startingHere(test.expected(nameAsString)), false, tracker);
     }
 
+    @Test(enabled = true, dataProvider = "tests")
+    public void testGettersBySlot(MyTest test) {
+        logger.warn("Testing " + test + " for get() methods on a tracker of slots");
+        final RODTrackSlots slots = new RODTrackSlots(Arrays.asList("a", "B", "C"));
+        final RODRecordList[] tracks = new RODRecordList[slots.size()];
+        tracks[slots.getSlot("A")] = test.AValues;
+        tracks[slots.getSlot("B")] = test.BValues;
+        final RefMetaDataTracker tracker = new RefMetaDataTracker(slots, tracks, context);
+        Assert.assertEquals(tracker.getNTracksWithBoundFeatures(), test.nBoundTracks());
+
+        for ( String nameAsString : Arrays.asList("A", "B") ) {
+            final RodBinding<Feature> binding = new RodBinding<Feature>(Feature.class, nameAsString, "none", "vcf", new Tags());
+            testGetter(nameAsString, tracker.getValues(binding), test.expected(nameAsString), true, tracker);
+            testGetter(nameAsString, tracker.getValues(binding, locus), startingHere(test.expected(nameAsString)), true, tracker);
+            testGetter(nameAsString, Arrays.asList(tracker.getFirstValue(binding)), test.expected(nameAsString), false, tracker);
+            Assert.assertEquals(tracker.hasValues(binding), ! test.expected(nameAsString).isEmpty());
+        }
+
+        final RodBinding<Feature> unbound = new RodBinding<Feature>(Feature.class, "C", "none", "vcf", new Tags());
+        Assert.assertTrue(tracker.getValues(unbound).isEmpty());
+        Assert.assertNull(tracker.getFirstValue(unbound));
+        Assert.assertFalse(tracker.hasValues(unbound));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testValuesAreUnmodifiable() {
+        final MyTest test = new MyTest(Arrays.asList(AC_SNP), null);
+        final RodBinding<Feature> binding = new RodBinding<Feature>(Feature.class, "A", "none", "vcf", new Tags());
+        test.makeTracker().getValues(binding).add(AG_SNP);
+    }
+
+    @Test
+    public void testTrackSlots() {
+        final RODTrackSlots slots = new RODTrackSlots(Arrays.asList("x", "Y", "X"));
+        Assert.assertEquals(slots.size(), 2);
+        Assert.assertEquals(slots.getSlot("X"), slots.getSlot("x"));
+        Assert.assertEquals(slots.getSlot("y"), 1);
+        Assert.assertEquals(slots.getName(1), "y");
+        Assert.assertEquals(slots.getSlot("z"), RODTrackSlots.NO_SLOT);
+        Assert.assertEquals(slots.getSlot(new RodBinding<Feature>(Feature.class, "Y", "none", "vcf", new Tags())), 1);
+    }
+
     private List<GATKFeature> startingHere(List<GATKFeature> l) {
         List<GATKFeature> x = new ArrayList<GATKFeature>();
         for ( GATKFeature f : l ) if ( f.getStart() == locus.getStart() ) x.add(f);
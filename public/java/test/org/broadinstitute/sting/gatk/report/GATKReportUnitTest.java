@@ -32,6 +32,8 @@ import org.testng.annotations.Test;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 public class GATKReportUnitTest extends BaseTest {
     @Test
@@ -122,6 +124,93 @@ public class GATKReportUnitTest extends BaseTest {
         table.findPrimaryKeyByData((Object[]) null);
     }
 
+    @Test
+    public void testArithmeticKeepsTypes() {
+        GATKReportTable table = new GATKReportTable("Counts", "Counts of things");
+        table.addPrimaryKey("key");
+        table.addColumn("long", 0L);
+        table.addColumn("double", 0.0);
+        table.addColumn("int", 0, "%d");
+
+        for (int i = 0; i < 10; i++) {
+            table.increment("a", "long");
+            table.add("a", "double", 0.5);
+            table.increment("a", "int");
+        }
+        table.decrement("a", "long");
+        table.subtract("a", "double", 1.0);
+        table.add("b", "long", 5L);
+
+        Assert.assertEquals(table.get("a", "long"), 9L);
+        Assert.assertEquals(table.get("a", "double"), 4.0);
+        Assert.assertEquals(table.get("a", "int"), 10);
+        Assert.assertEquals(table.get("b", "long"), 5L);
+        Assert.assertEquals(table.get("b", "double"), 0.0);
+        Assert.assertEquals(table.getNumRows(), 2);
+    }
+
+    @Test
+    public void testColumnOfMixedTypes() {
+        GATKReportTable table = new GATKReportTable("Mixed", "Values of different types in one column");
+        table.addPrimaryKey("key");
+        table.addColumn("value", "");
+        table.set(1, "value", (byte) 3);
+        table.set(2, "value", 4L);
+        table.set(3, "value", "five");
+        table.set(4, "value", 6.5);
+
+        Assert.assertEquals(table.get(1, "value"), (byte) 3);
+        Assert.assertEquals(table.get(2, "value"), 4L);
+        Assert.assertEquals(table.get(3, "value"), "five");
+        Assert.assertEquals(table.get(4, "value"), 6.5);
+    }
+
+    @Test
+    public void testUnsortedRowsListedForEveryUse() {
+        GATKReportTable table = new GATKReportTable("Unsorted", "Rows in the order they were used", false);
+        table.addPrimaryKey("key");
+        table.addColumn("count", 0L);
+        for (String key : new String[]{"c", "a", "b"})
+            table.set(key, "count", 1L);
+        table.increment("a", "count");                                                                                  // reads and then sets the row
+
+        Assert.assertEquals(table.getNumRows(), 5);
+        Assert.assertEquals(new ArrayList<Object>(table.getPrimaryKeys()), Arrays.<Object>asList("c", "a", "b", "a", "a"));
+        Assert.assertEquals(table.get("a", "count"), 2L);
+        Assert.assertEquals(table.getNumRows(), 6);
+    }
+
+    @Test
+    public void testWriteAndReadBack() throws IOException {
+        GATKReport report = new GATKReport();
+        report.addTable("Counts", "Counts of things");
+        GATKReportTable table = report.getTable("Counts");
+        table.addPrimaryKey("key");
+        table.addColumn("count", 0L, "%d");
+        table.addColumn("fraction", 0.0, "%.4f");
+        table.addColumn("name", "", "%s");
+        for (int i = 0; i < 1000; i++) {
+            String key = String.valueOf(i % 37);                                                                       // keys are read back as Strings
+            table.increment(key, "count");
+            table.add(key, "fraction", 0.125);
+            table.set(key, "name", "name" + (i % 11));
+        }
+
+        File file = createTempFile("GATKReportTable-UnitTest", ".tbl");
+        PrintStream ps = new PrintStream(file);
+        report.print(ps);
+        ps.close();
+
+        GATKReport inputRead = new GATKReport(file);
+        Assert.assertTrue(report.isSameFormat(inputRead));
+        Assert.assertTrue(report.equals(inputRead));
+
+        GATKReportTable tableRead = inputRead.getTable("Counts");
+        Assert.assertEquals(tableRead.getNumRows(), 37);
+        Assert.assertEquals(tableRead.get("10", "count"), 27L);
+        Assert.assertEquals(tableRead.get("10", "fraction"), 3.375);
+    }
+
     @Test
     public void testSimpleGATKReport() {
         // Create a new simple GATK report named "TableName" with columns: Roger, is, and Awesome
@@ -0,0 +1,142 @@
+package org.broadinstitute.sting.gatk.traversals;
+
+import net.sf.samtools.SAMFileHeader;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.gatk.contexts.AlignmentContext;
+import org.broadinstitute.sting.gatk.contexts.ReferenceContext;
+import org.broadinstitute.sting.gatk.refdata.RefMetaDataTracker;
+import org.broadinstitute.sting.gatk.walkers.ActiveRegionWalker;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.activeregion.ActiveRegion;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests mapping active regions in parallel: results must be reduced in region order, the regions handed out
+ * but not yet reduced must stay within the read limit, and an exception thrown by map must reach the caller.
+ */
+public class TraverseActiveRegionsUnitTest extends BaseTest {
+    private static final int N_REGIONS = 40;
+    private static final int READS_PER_REGION = 10;
+    private static final int REGION_SIZE = 100;
+
+    private SAMFileHeader header;
+    private GenomeLocParser genomeLocParser;
+
+    @BeforeClass
+    public void setup() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, N_REGIONS * REGION_SIZE);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+    }
+
+    /**
+     * Maps each region to its start, after holding on to the early regions for longer so that maps finish out of
+     * order, and keeps track of how many regions have been mapped but not yet reduced.
+     */
+    private static class ParallelWalker extends ActiveRegionWalker<Integer, List<Integer>> {
+        private final int failOnRegion;
+        private final AtomicInteger unreduced = new AtomicInteger(0);
+        private final AtomicInteger maxUnreduced = new AtomicInteger(0);
+
+        private ParallelWalker( final int failOnRegion ) {
+            this.failOnRegion = failOnRegion;
+        }
+
+        @Override
+        public boolean isMapThreadSafe() {
+            return true;
+        }
+
+        @Override
+        public double isActive( final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context ) {
+            return 1.0;
+        }
+
+        @Override
+        public Integer map( final ActiveRegion activeRegion, final RefMetaDataTracker metaDataTracker ) {
+            final int n = unreduced.incrementAndGet();
+            synchronized( maxUnreduced ) {
+                maxUnreduced.set(Math.max(maxUnreduced.get(), n));
+            }
+
+            final int region = activeRegion.getLocation().getStart() / REGION_SIZE;
+            if( region == failOnRegion )
+                throw new MapFailure();
+            try {
+                Thread.sleep(region % 4 == 0 ? 20 : 1);
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            return region;
+        }
+
+        @Override
+        public List<Integer> reduceInit() {
+            return new ArrayList<Integer>();
+        }
+
+        @Override
+        public List<Integer> reduce( final Integer value, final List<Integer> sum ) {
+            unreduced.decrementAndGet();
+            sum.add(value);
+            return sum;
+        }
+    }
+
+    private static class MapFailure extends RuntimeException {}
+
+    private List<Integer> traverse( final ParallelWalker walker, final int nThreads, final int maxReadsInFlight ) {
+        final TraverseActiveRegions<Integer, List<Integer>> traversal = new TraverseActiveRegions<Integer, List<Integer>>();
+        traversal.mapInParallel(nThreads, maxReadsInFlight);
+
+        List<Integer> sum = walker.reduceInit();
+        for( int i = 0; i < N_REGIONS; i++ ) {
+            final ActiveRegion region = new ActiveRegion(genomeLocParser.createGenomeLoc("chr1", i * REGION_SIZE + 1, (i + 1) * REGION_SIZE), true, genomeLocParser, 0);
+            for( int j = 0; j < READS_PER_REGION; j++ )
+                region.add(ArtificialSAMUtils.createArtificialRead(header, "read" + i + "." + j, 0, i * REGION_SIZE + 1 + j, 50));
+            sum = traversal.processActiveRegion(region, sum, walker);
+        }
+        return traversal.endTraversal(walker, sum);
+    }
+
+    private static List<Integer> allRegions() {
+        final List<Integer> regions = new ArrayList<Integer>();
+        for( int i = 0; i < N_REGIONS; i++ )
+            regions.add(i);
+        return regions;
+    }
+
+    @Test
+    public void testReducedInRegionOrder() {
+        final ParallelWalker walker = new ParallelWalker(-1);
+        final List<Integer> result = traverse(walker, 4, TraverseActiveRegions.MAX_READS_IN_FLIGHT);
+        Assert.assertEquals(result, allRegions());
+        Assert.assertEquals(walker.unreduced.get(), 0);
+    }
+
+    @Test
+    public void testReadsInFlightBounded() {
+        // room for the reads of three regions, on more threads than that
+        final ParallelWalker walker = new ParallelWalker(-1);
+        final List<Integer> result = traverse(walker, 8, 3 * READS_PER_REGION);
+        Assert.assertEquals(result, allRegions());
+        Assert.assertTrue(walker.maxUnreduced.get() <= 3, "As many as " + walker.maxUnreduced.get() + " regions were mapped but not reduced at once");
+    }
+
+    @Test
+    public void testMapExceptionReachesCaller() {
+        final ParallelWalker walker = new ParallelWalker(N_REGIONS / 2);
+        try {
+            traverse(walker, 4, TraverseActiveRegions.MAX_READS_IN_FLIGHT);
+            Assert.fail("The exception thrown by map was lost");
+        } catch( MapFailure expected ) {
+            // the exception thrown on the map thread is rethrown as is
+        }
+    }
+}
@@ -9,7 +9,6 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -81,7 +80,7 @@ public class BQSRKeyManagerUnitTest {
     }
 
     private void runTestOnRead(GATKSAMRecord read, List<Covariate> covariateList, int nRequired) {
-        final BitSet[][][] covariateKeys = new BitSet[covariateList.size()][EventType.values().length][];
+        final long[][][] covariateKeys = new long[covariateList.size()][EventType.values().length][];
         int i = 0;
         for (Covariate cov : covariateList) {
             cov.initialize(RAC);
@@ -100,10 +99,11 @@ public class BQSRKeyManagerUnitTest {
             optionalCovariates.add(covariateList.get(j));
             
         BQSRKeyManager keyManager = new BQSRKeyManager(requiredCovariates, optionalCovariates);
+        final long[] hashKeys = new long[keyManager.maximumNumberOfKeys()];
 
         for (int l = 0; l < read.getReadLength(); l++) {
             for (int eventType = 0; eventType < EventType.values().length; eventType++) {
-                BitSet[] keySet = new BitSet[covariateList.size()];
+                long[] keySet = new long[covariateList.size()];
                 Object[] expectedRequired = new Object[covariateList.size()];
                 Object[] expectedCovariate = new Object[covariateList.size()];
 
@@ -111,15 +111,19 @@ public class BQSRKeyManagerUnitTest {
                     keySet[j] = covariateKeys[j][eventType][l];
 
                     if (j < nRequired)
-                        expectedRequired[j] = covariateList.get(j).keyFromBitSet(keySet[j]);
+                        expectedRequired[j] = covariateList.get(j).formatKey(keySet[j]);
                     else
-                        expectedCovariate[j - nRequired] = covariateList.get(j).keyFromBitSet(keySet[j]);
+                        expectedCovariate[j - nRequired] = covariateList.get(j).formatKey(keySet[j]);
                 }
 
-                List<BitSet> hashKeys = keyManager.bitSetsFromAllKeys(keySet, EventType.eventFrom(eventType));
+                final int nKeys = keyManager.keysFromAllKeys(keySet, EventType.eventFrom(eventType), hashKeys);
                 short cov = 0;
-                for (BitSet key : hashKeys) {
-                    Object[] actual = keyManager.keySetFrom(key).toArray();
+                for (int k = 0; k < nKeys; k++) {
+                    // optional covariates without a value for this base don't produce a key
+                    while (optionalCovariates.size() > 0 && keySet[nRequired + cov] == Covariate.NO_KEY)
+                        cov++;
+
+                    Object[] actual = keyManager.keySetFrom(hashKeys[k]).toArray();
 
                     // Build the expected array
                     Object[] expected = new Object[nRequired + (optionalCovariates.size() > 0 ? 3 : 1)];
@@ -134,8 +138,8 @@ public class BQSRKeyManagerUnitTest {
 //                    System.out.println("Expected: " + Utils.join(",", Arrays.asList(expected)));
 //                    System.out.println();
 
-                    for (int k = 0; k < expected.length; k++)
-                        Assert.assertEquals(actual[k], expected[k]);
+                    for (int m = 0; m < expected.length; m++)
+                        Assert.assertEquals(actual[m], expected[m]);
                 }
             }
         }
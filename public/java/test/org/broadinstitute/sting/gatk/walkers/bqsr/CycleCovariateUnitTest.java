@@ -7,7 +7,6 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
-import java.util.BitSet;
 
 /**
  * @author Mauricio Carneiro
@@ -48,9 +47,9 @@ public class CycleCovariateUnitTest {
         verifyCovariateArray(values.getMismatches(), (short) -1, (short) -1);
     }
 
-    private void verifyCovariateArray(BitSet[] values, short init, short increment) {
+    private void verifyCovariateArray(long[] values, short init, short increment) {
         for (short i = 0; i < values.length; i++) {
-            short actual = Short.decode(covariate.keyFromBitSet(values[i]));
+            short actual = Short.decode(covariate.formatKey(values[i]));
             int expected = init + (increment * i);
             //            System.out.println(String.format("%d: %d, %d", i, actual, expected));
             Assert.assertEquals(actual, expected);
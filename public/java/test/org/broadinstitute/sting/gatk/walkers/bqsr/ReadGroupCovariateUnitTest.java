@@ -7,7 +7,6 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
-import java.util.BitSet;
 
 /**
  * @author Mauricio Carneiro
@@ -39,6 +38,18 @@ public class ReadGroupCovariateUnitTest {
         runTest(rg, expected);
     }
 
+    @Test(enabled = true)
+    public void testReadGroupIdsPastShortMaxValue() {
+        final ReadGroupCovariate manyReadGroups = new ReadGroupCovariate();
+        manyReadGroups.initialize(RAC);
+        long key = 0;
+        for (int i = 0; i <= Short.MAX_VALUE + 1; i++)
+            key = manyReadGroups.longFromKey("RG" + i);
+
+        Assert.assertEquals(key, Short.MAX_VALUE + 1);                                                                  // the id wrapped negative as a short, but mustn't sign-extend
+        Assert.assertEquals(manyReadGroups.formatKey(key), "RG" + (Short.MAX_VALUE + 1));
+    }
+
     private void runTest(GATKSAMReadGroupRecord rg, String expected) {
         GATKSAMRecord read = ReadUtils.createRandomRead(10);
         read.setReadGroup(rg);
@@ -47,9 +58,9 @@ public class ReadGroupCovariateUnitTest {
 
     }
 
-    private void verifyCovariateArray(BitSet[] values, String expected) {
-        for (BitSet value : values) {
-            String actual = covariate.keyFromBitSet(value);
+    private void verifyCovariateArray(long[] values, String expected) {
+        for (long value : values) {
+            String actual = covariate.formatKey(value);
             Assert.assertEquals(actual, expected);
         }
     }
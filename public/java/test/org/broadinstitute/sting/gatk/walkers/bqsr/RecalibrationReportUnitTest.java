@@ -1,6 +1,7 @@
 package org.broadinstitute.sting.gatk.walkers.bqsr;
 
 import org.broadinstitute.sting.utils.QualityUtils;
+import org.broadinstitute.sting.utils.collections.LongHashMap;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.sam.GATKSAMReadGroupRecord;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
@@ -32,7 +33,7 @@ public class RecalibrationReportUnitTest {
 
         final QuantizationInfo quantizationInfo = new QuantizationInfo(quals, counts);
         final RecalibrationArgumentCollection RAC = new RecalibrationArgumentCollection();
-        final LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>> keysAndTablesMap = new LinkedHashMap<BQSRKeyManager, Map<BitSet, RecalDatum>>();
+        final LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>> keysAndTablesMap = new LinkedHashMap<BQSRKeyManager, LongHashMap<RecalDatum>>();
 
         quantizationInfo.noQuantization();
         final List<Covariate> requiredCovariates = new LinkedList<Covariate>();
@@ -43,13 +44,13 @@ public class RecalibrationReportUnitTest {
         rgCovariate.initialize(RAC);
         requiredCovariates.add(rgCovariate);
         final BQSRKeyManager rgKeyManager = new BQSRKeyManager(requiredCovariates, optionalCovariates);
-        keysAndTablesMap.put(rgKeyManager, new HashMap<BitSet, RecalDatum>());
+        keysAndTablesMap.put(rgKeyManager, new LongHashMap<RecalDatum>());
 
         final QualityScoreCovariate qsCovariate = new QualityScoreCovariate();
         qsCovariate.initialize(RAC);
         requiredCovariates.add(qsCovariate);
         final BQSRKeyManager qsKeyManager = new BQSRKeyManager(requiredCovariates, optionalCovariates);
-        keysAndTablesMap.put(qsKeyManager, new HashMap<BitSet, RecalDatum>());
+        keysAndTablesMap.put(qsKeyManager, new LongHashMap<RecalDatum>());
 
         final ContextCovariate cxCovariate = new ContextCovariate();
         cxCovariate.initialize(RAC);
@@ -58,7 +59,7 @@ public class RecalibrationReportUnitTest {
         cyCovariate.initialize(RAC);
         optionalCovariates.add(cyCovariate);
         BQSRKeyManager cvKeyManager = new BQSRKeyManager(requiredCovariates, optionalCovariates);
-        keysAndTablesMap.put(cvKeyManager, new HashMap<BitSet, RecalDatum>());
+        keysAndTablesMap.put(cvKeyManager, new LongHashMap<RecalDatum>());
 
         for (Covariate cov : requiredCovariates)
             requestedCovariates.add(cov);
@@ -79,23 +80,27 @@ public class RecalibrationReportUnitTest {
         int nKeys = 0;                                                                                                  // keep track of how many keys were produced
         final ReadCovariates rc = RecalDataManager.computeCovariates(read, requestedCovariates);
         for (int offset = 0; offset < length; offset++) {
-            for (Map.Entry<BQSRKeyManager, Map<BitSet, RecalDatum>> entry : keysAndTablesMap.entrySet()) {
+            for (Map.Entry<BQSRKeyManager, LongHashMap<RecalDatum>> entry : keysAndTablesMap.entrySet()) {
                 BQSRKeyManager keyManager = entry.getKey();
-                Map<BitSet, RecalDatum> table = entry.getValue();
+                LongHashMap<RecalDatum> table = entry.getValue();
+                final long[] keys = new long[keyManager.maximumNumberOfKeys()];
 
-                for (BitSet key : keyManager.bitSetsFromAllKeys(rc.getMismatchesKeySet(offset), EventType.BASE_SUBSTITUTION)) {
-                    table.put(key, RecalDatum.createRandomRecalDatum(10000, 10));
+                final int nMismatchKeys = keyManager.keysFromAllKeys(rc.getMismatchesKeySet(offset), EventType.BASE_SUBSTITUTION, keys);
+                for (int k = 0; k < nMismatchKeys; k++) {
+                    table.put(keys[k], RecalDatum.createRandomRecalDatum(10000, 10));
                     nKeys++;
                 }
 
-                for (BitSet key : keyManager.bitSetsFromAllKeys(rc.getInsertionsKeySet(offset), EventType.BASE_INSERTION)) {
-                    table.put(key, RecalDatum.createRandomRecalDatum(100000, 10));
+                final int nInsertionKeys = keyManager.keysFromAllKeys(rc.getInsertionsKeySet(offset), EventType.BASE_INSERTION, keys);
+                for (int k = 0; k < nInsertionKeys; k++) {
+                    table.put(keys[k], RecalDatum.createRandomRecalDatum(100000, 10));
                     nKeys++;
                 }
 
 
-                for (BitSet key : keyManager.bitSetsFromAllKeys(rc.getDeletionsKeySet(offset), EventType.BASE_DELETION)) {
-                    table.put(key,  RecalDatum.createRandomRecalDatum(100000, 10));
+                final int nDeletionKeys = keyManager.keysFromAllKeys(rc.getDeletionsKeySet(offset), EventType.BASE_DELETION, keys);
+                for (int k = 0; k < nDeletionKeys; k++) {
+                    table.put(keys[k],  RecalDatum.createRandomRecalDatum(100000, 10));
                     nKeys++;
                 }
 
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2012 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.walkers.coverage;
+
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks the histograms and locus counts of DepthOfCoverageStats against ones tabulated the long way
+ */
+public class DepthOfCoverageStatsUnitTest extends BaseTest {
+    private static final int N_SAMPLES = 10;
+    private static final int[] ENDPOINTS = DepthOfCoverageStats.calculateBinEndpoints(1,50,20);
+
+    /**
+     * Random depths by locus and sample, with most samples uncovered at most loci
+     */
+    private static int[][] makeDepths(final int nLoci) {
+        final Random random = new Random(42);
+        final int[][] depths = new int[nLoci][N_SAMPLES];
+        for ( int l = 0; l < nLoci; l++ )
+            for ( int s = 0; s < N_SAMPLES; s++ )
+                depths[l][s] = random.nextInt(3) == 0 ? random.nextInt(80) : 0;
+        return depths;
+    }
+
+    private static DepthOfCoverageStats makeStats() {
+        final DepthOfCoverageStats stats = new DepthOfCoverageStats(ENDPOINTS);
+        for ( int s = 0; s < N_SAMPLES; s++ )
+            stats.addSample("sample" + s);
+        stats.initializeLocusCounts();
+        return stats;
+    }
+
+    /**
+     * Updates stats with just the covered samples at each of the given loci
+     */
+    private static void updateSparsely(final DepthOfCoverageStats stats, final int[][] depths, final int from, final int to) {
+        final int[] samples = new int[N_SAMPLES];
+        final int[] sampleDepths = new int[N_SAMPLES];
+        for ( int l = from; l < to; l++ ) {
+            int n = 0;
+            for ( int s = 0; s < N_SAMPLES; s++ ) {
+                if ( depths[l][s] > 0 ) {
+                    samples[n] = stats.getSampleIndex("sample" + s);
+                    sampleDepths[n++] = depths[l][s];
+                }
+            }
+            stats.updateDepths(samples, sampleDepths, n);
+        }
+    }
+
+    private static int bin(final int depth) {
+        int b = 0;
+        while ( b < ENDPOINTS.length && ENDPOINTS[b] <= depth )
+            b++;
+        return b;
+    }
+
+    private static void assertStatsMatch(final DepthOfCoverageStats stats, final int[][] depths) {
+        final long[][] histograms = new long[N_SAMPLES][ENDPOINTS.length + 1];
+        final long[] totals = new long[N_SAMPLES];
+        final long[][] locusCounts = new long[N_SAMPLES][ENDPOINTS.length + 1];
+        long total = 0;
+        for ( final int[] locus : depths ) {
+            for ( int s = 0; s < N_SAMPLES; s++ ) {
+                histograms[s][bin(locus[s])]++;
+                totals[s] += locus[s];
+                total += locus[s];
+            }
+            for ( int b = 0; b < ENDPOINTS.length + 1; b++ ) {
+                int samplesAtOrAbove = 0;
+                for ( int s = 0; s < N_SAMPLES; s++ )
+                    if ( bin(locus[s]) >= b )
+                        samplesAtOrAbove++;
+                for ( int a = 0; a < samplesAtOrAbove; a++ )
+                    locusCounts[a][b]++;
+            }
+        }
+
+        Assert.assertEquals(stats.getTotalLoci(), depths.length);
+        Assert.assertEquals(stats.getTotalCoverage(), total);
+        for ( int s = 0; s < N_SAMPLES; s++ ) {
+            Assert.assertEquals(stats.getHistograms().get("sample" + s), histograms[s], "histogram of sample" + s);
+            Assert.assertEquals(stats.getTotals().get("sample" + s).longValue(), totals[s], "total of sample" + s);
+        }
+        for ( int a = 0; a < N_SAMPLES; a++ )
+            Assert.assertEquals(stats.getLocusCounts()[a], locusCounts[a], "locus counts of " + (a + 1) + " samples");
+    }
+
+    @Test
+    public void testSparseUpdates() {
+        final int[][] depths = makeDepths(1000);
+        final DepthOfCoverageStats stats = makeStats();
+        updateSparsely(stats, depths, 0, depths.length);
+        assertStatsMatch(stats, depths);
+    }
+
+    @Test
+    public void testUpdatesByName() {
+        final int[][] depths = makeDepths(1000);
+        final DepthOfCoverageStats stats = makeStats();
+        for ( final int[] locus : depths ) {
+            final Map<String,Integer> depthBySample = new HashMap<String,Integer>();
+            for ( int s = 0; s < N_SAMPLES; s++ )
+                if ( locus[s] > 0 || s % 2 == 0 ) // some samples given an explicit zero, others left out
+                    depthBySample.put("sample" + s, locus[s]);
+            depthBySample.put("notASample", 1000);
+            stats.updateDepths(depthBySample);
+        }
+        assertStatsMatch(stats, depths);
+    }
+
+    @Test
+    public void testMerge() {
+        final int[][] depths = makeDepths(1000);
+        final DepthOfCoverageStats left = makeStats();
+        final DepthOfCoverageStats right = makeStats();
+        updateSparsely(left, depths, 0, 300);
+        updateSparsely(right, depths, 300, depths.length);
+        left.merge(right);
+        assertStatsMatch(left, depths);
+
+        // the merged stats carry on counting uncovered loci after the merge
+        final int[][] moreDepths = makeDepths(1200);
+        updateSparsely(left, moreDepths, 1000, moreDepths.length);
+        assertStatsMatch(left, moreDepths);
+    }
+
+    @Test
+    public void testCloneKeepsHistograms() {
+        final int[][] depths = makeDepths(500);
+        final DepthOfCoverageStats stats = makeStats();
+        updateSparsely(stats, depths, 0, 200);
+        final DepthOfCoverageStats clone = new DepthOfCoverageStats(stats);
+        updateSparsely(clone, depths, 200, depths.length);
+
+        final DepthOfCoverageStats expected = makeStats();
+        updateSparsely(expected, depths, 0, depths.length);
+        Assert.assertEquals(clone.getTotalLoci(), expected.getTotalLoci());
+        for ( final String sample : expected.getAllSamples() ) {
+            Assert.assertEquals(clone.getHistograms().get(sample), expected.getHistograms().get(sample), "histogram of " + sample);
+            Assert.assertEquals(clone.getTotals().get(sample), expected.getTotals().get(sample), "total of " + sample);
+        }
+    }
+
+    @Test
+    public void testSampleIndices() {
+        final DepthOfCoverageStats stats = makeStats();
+        for ( int s = 0; s < N_SAMPLES; s++ )
+            Assert.assertEquals(stats.getSampleIndex("sample" + s), s);
+        Assert.assertEquals(stats.getSampleIndex("notASample"), -1);
+    }
+}
@@ -25,6 +25,7 @@
 package org.broadinstitute.sting.gatk.walkers.varianteval;
 
 import org.broadinstitute.sting.WalkerTest;
+import org.broadinstitute.sting.gatk.walkers.varianteval.evaluators.VariantEvaluator;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.testng.annotations.Test;
 
@@ -591,4 +592,45 @@ public class VariantEvalIntegrationTest extends WalkerTest {
     @Test public void testWithAC0() { testIncludingAC0(true, "0ed2c8e4b4e06973a06838bc930a132d"); }
     @Test public void testWithoutAC0() { testIncludingAC0(false, "79d28ddd0ab9584776b6cbefe48331df"); }
 
+    @Test
+    public void testMultiThreadedMatchesSingleThreaded() {
+        WalkerTestSpec spec = new WalkerTestSpec(
+                buildCommandLine(
+                        "-T VariantEval",
+                        "-R " + testDir + "exampleFASTA.fasta",
+                        "-eval " + testDir + "HiSeq.10000.vcf",
+                        "-comp " + testDir + "exampleDBSNP.vcf",
+                        "-D " + testDir + "exampleDBSNP.vcf",
+                        "-EV GenotypeConcordance -EV MendelianViolationEvaluator -EV ThetaVariantEvaluator",
+                        // one shard per interval, so that the threads evaluate different parts of the input
+                        "-L chr1:1-30000 -L chr1:30002-60000 -L chr1:60002-100000",
+                        "-o %s"
+                ),
+                1,
+                Arrays.asList("363ffd80239917f1a55b8973a7db6bd2"));
+        executeTest("testMultiThreadedMatchesSingleThreaded", spec, Arrays.asList(1, 2));
+    }
+
+    /**
+     * An evaluation module that can't combine the results of several threads
+     */
+    public static class UncombinableEval extends VariantEvaluator {
+        @Override public int getComparisonOrder() { return 1; }
+    }
+
+    @Test
+    public void testUncombinableEvalWithMultipleThreads() {
+        WalkerTestSpec spec = new WalkerTestSpec(
+                buildCommandLine(
+                        "-T VariantEval",
+                        "-R " + testDir + "exampleFASTA.fasta",
+                        "-eval " + testDir + "HiSeq.10000.vcf",
+                        "-noEV -EV UncombinableEval",
+                        "-L chr1:1-100000",
+                        "-nt 2"
+                ),
+                0,
+                UserException.BadArgumentValue.class);
+        executeTest("testUncombinableEvalWithMultipleThreads", spec);
+    }
 }
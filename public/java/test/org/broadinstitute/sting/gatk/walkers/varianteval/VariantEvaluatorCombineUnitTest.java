@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.walkers.varianteval;
+
+import org.broad.tribble.readers.AsciiLineReader;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.gatk.refdata.RefMetaDataTracker;
+import org.broadinstitute.sting.gatk.samples.PedigreeValidationType;
+import org.broadinstitute.sting.gatk.samples.SampleDB;
+import org.broadinstitute.sting.gatk.samples.SampleDBBuilder;
+import org.broadinstitute.sting.gatk.walkers.varianteval.evaluators.PrintMissingComp;
+import org.broadinstitute.sting.gatk.walkers.varianteval.evaluators.VariantEvaluator;
+import org.broadinstitute.sting.gatk.walkers.varianteval.util.DataPoint;
+import org.broadinstitute.sting.gatk.walkers.varianteval.util.Molten;
+import org.broadinstitute.sting.utils.classloader.PluginManager;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFCodec;
+import org.broadinstitute.sting.utils.variantcontext.Allele;
+import org.broadinstitute.sting.utils.variantcontext.Genotype;
+import org.broadinstitute.sting.utils.variantcontext.VariantContext;
+import org.broadinstitute.sting.utils.variantcontext.VariantContextBuilder;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * Every evaluation module that supports combine must give the same results when its input is split between two
+ * instances that are then combined, as VariantEval does with one set of evaluators per thread, as it does when
+ * it sees all of the input itself.
+ */
+public class VariantEvaluatorCombineUnitTest extends BaseTest {
+    private static final File VCF_FILE = new File(testDir + "HiSeq.10000.vcf");
+    private static final File PED_FILE = new File(testDir + "ceutrio.ped");
+    private static final List<String> SAMPLES = Arrays.asList("kid", "dad", "mom");
+
+    private VariantEvalWalker walker;
+    private final RefMetaDataTracker tracker = new RefMetaDataTracker();
+    private final List<VariantContext> evals = new ArrayList<VariantContext>();
+    private final List<VariantContext> comps = new ArrayList<VariantContext>();
+
+    @BeforeClass
+    public void setup() throws IOException {
+        final SampleDB sampleDB = new SampleDBBuilder(null, PedigreeValidationType.STRICT)
+                .addSamplesFromPedigreeFiles(Arrays.asList(PED_FILE)).getFinalSampleDB();
+        walker = new VariantEvalWalker() {
+            @Override
+            public SampleDB getSampleDB() {
+                return sampleDB;
+            }
+
+            @Override
+            public Set<String> getSampleNamesForEvaluation() {
+                return new HashSet<String>(SAMPLES);
+            }
+        };
+
+        final VCFCodec codec = new VCFCodec();
+        final AsciiLineReader reader = new AsciiLineReader(new FileInputStream(VCF_FILE));
+        codec.readHeader(reader);
+        final List<VariantContext> sites = new ArrayList<VariantContext>();
+        String line;
+        while ( (line = reader.readLine()) != null )
+            sites.add((VariantContext)codec.decode(line));
+        reader.close();
+        walker.nProcessedLoci = sites.get(sites.size() - 1).getEnd();
+
+        // a trio at every site, with NA12878's calls from elsewhere in the file, in the eval and comp tracks in turn
+        for ( int i = 0; i < sites.size(); i++ ) {
+            evals.add(i % 7 == 0 ? null : makeTrio(sites, i, 1));
+            comps.add(i % 5 == 0 ? null : makeTrio(sites, i, 2));
+        }
+    }
+
+    /**
+     * The site at i, with the trio given the types of the genotypes at the sites stride, 2 * stride and
+     * 3 * stride after it.
+     */
+    private static VariantContext makeTrio(final List<VariantContext> sites, final int i, final int stride) {
+        final VariantContext site = sites.get(i);
+        final Allele ref = site.getReference();
+        final Allele alt = site.getAlternateAllele(0);
+
+        final List<Genotype> genotypes = new ArrayList<Genotype>();
+        for ( int j = 0; j < SAMPLES.size(); j++ ) {
+            final Genotype source = sites.get((i + (j + 1) * stride) % sites.size()).getGenotype(0);
+            final List<Allele> alleles;
+            switch ( source.getType() ) {
+                case HOM_REF: alleles = Arrays.asList(ref, ref); break;
+                case HET:     alleles = Arrays.asList(ref, alt); break;
+                case HOM_VAR: alleles = Arrays.asList(alt, alt); break;
+                default:      alleles = Arrays.asList(Allele.NO_CALL, Allele.NO_CALL); break;
+            }
+            genotypes.add(Genotype.modifyAlleles(Genotype.modifyName(source, SAMPLES.get(j)), alleles));
+        }
+
+        return new VariantContextBuilder(site).genotypes(genotypes).make();
+    }
+
+    @DataProvider(name = "combinableEvaluators")
+    public Object[][] makeCombinableEvaluators() throws Exception {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        for ( final Class<? extends VariantEvaluator> c : new PluginManager<VariantEvaluator>(VariantEvaluator.class).getPlugins() ) {
+            // PrintMissingComp logs the eval record of each missing site, so it can't be given sites with no eval record
+            if ( c == PrintMissingComp.class )
+                continue;
+            if ( c.newInstance().supportsCombine() )
+                tests.add(new Object[]{c});
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "combinableEvaluators")
+    public void testCombineMatchesSinglePass(final Class<? extends VariantEvaluator> evaluatorClass) throws Exception {
+        final VariantEvaluator singlePass = evaluate(evaluatorClass, 0, evals.size());
+        singlePass.finalizeEvaluation();
+
+        final int split = evals.size() / 3;
+        final VariantEvaluator combined = evaluate(evaluatorClass, 0, split);
+        combined.combine(evaluate(evaluatorClass, split, evals.size()));
+        combined.finalizeEvaluation();
+
+        for ( final Field field : getResultFields(evaluatorClass) )
+            assertSameResult(field.get(combined), field.get(singlePass), evaluatorClass.getSimpleName() + "." + field.getName());
+    }
+
+    /**
+     * A new instance of the evaluator, updated with the sites in [start, stop) as EvaluationContext.apply would.
+     */
+    private VariantEvaluator evaluate(final Class<? extends VariantEvaluator> evaluatorClass, final int start, final int stop) throws Exception {
+        final VariantEvaluator evaluator = evaluatorClass.newInstance();
+        evaluator.initialize(walker);
+        for ( int i = start; i < stop; i++ ) {
+            final VariantContext eval = evals.get(i), comp = comps.get(i);
+            if ( evaluator.getComparisonOrder() == 1 ) {
+                if ( eval != null )
+                    evaluator.update1(eval, tracker, null, null);
+            } else {
+                evaluator.update2(eval, comp, tracker, null, null);
+            }
+        }
+        return evaluator;
+    }
+
+    private static List<Field> getResultFields(final Class<?> evaluatorClass) {
+        final List<Field> fields = new ArrayList<Field>();
+        for ( Class<?> c = evaluatorClass; c != null; c = c.getSuperclass() ) {
+            for ( final Field field : c.getDeclaredFields() ) {
+                if ( field.isAnnotationPresent(DataPoint.class) || field.isAnnotationPresent(Molten.class) ) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Compares results, allowing for the rounding of doubles summed in a different order.
+     */
+    private static void assertSameResult(final Object actual, final Object expected, final String name) {
+        if ( expected instanceof Double && actual instanceof Double ) {
+            final double e = (Double)expected, a = (Double)actual;
+            if ( ! (Double.isNaN(e) && Double.isNaN(a)) )
+                Assert.assertEquals(a, e, 1e-9 * Math.max(1.0, Math.abs(e)), name);
+        } else if ( expected instanceof Map && actual instanceof Map ) {
+            final Map<?, ?> e = (Map<?, ?>)expected, a = (Map<?, ?>)actual;
+            Assert.assertEquals(a.keySet(), e.keySet(), name);
+            for ( final Object key : e.keySet() )
+                assertSameResult(a.get(key), e.get(key), name + "[" + key + "]");
+        } else {
+            Assert.assertEquals(actual, expected, name);
+        }
+    }
+}
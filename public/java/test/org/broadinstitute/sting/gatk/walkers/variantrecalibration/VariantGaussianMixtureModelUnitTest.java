@@ -24,6 +24,7 @@
 
 package org.broadinstitute.sting.gatk.walkers.variantrecalibration;
 
+import org.broadinstitute.sting.gatk.GenomeAnalysisEngine;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.exceptions.StingException;
 import org.broadinstitute.sting.utils.text.XReadLines;
@@ -128,4 +129,40 @@ public final class VariantGaussianMixtureModelUnitTest extends BaseTest {
         ArrayList<VariantDatum> vd = readData();
         List<Tranche> tranches = findMyTranches(vd, new double[]{-1});
     }
+
+    private static ArrayList<VariantDatum> makeClusteredData(final int nVariants, final long seed) {
+        final Random random = new Random(seed);
+        final ArrayList<VariantDatum> data = new ArrayList<VariantDatum>(nVariants);
+        for ( int i = 0; i < nVariants; i++ ) {
+            final VariantDatum datum = new VariantDatum();
+            final double center = random.nextInt(4) - 1.5;
+            datum.annotations = new double[]{ center + random.nextGaussian(), -center + 0.5 * random.nextGaussian(), random.nextGaussian() };
+            datum.isNull = new boolean[datum.annotations.length];
+            data.add(datum);
+        }
+        return data;
+    }
+
+    private static double[] fitAndEvaluate(final List<VariantDatum> data, final int nThreads) {
+        GenomeAnalysisEngine.resetRandomGenerator();
+        final VariantRecalibratorArgumentCollection VRAC = new VariantRecalibratorArgumentCollection();
+        VRAC.MAX_GAUSSIANS = 4;
+        final VariantRecalibratorEngine engine = new VariantRecalibratorEngine(VRAC, nThreads);
+        final GaussianMixtureModel model = engine.generateModel(data);
+        engine.evaluateData(data, model, false);
+        Assert.assertFalse(model.failedToConverge);
+        final double[] lods = new double[data.size()];
+        for ( int i = 0; i < lods.length; i++ )
+            lods[i] = data.get(i).lod;
+        return lods;
+    }
+
+    @Test
+    public final void testModelDoesNotDependOnNumberOfThreads() {
+        // enough variants to be split across several tasks in the E step
+        final ArrayList<VariantDatum> data = makeClusteredData(25000, 42);
+        final double[] serialLods = fitAndEvaluate(data, 1);
+        final double[] parallelLods = fitAndEvaluate(data, 3);
+        Assert.assertTrue(Arrays.equals(serialLods, parallelLods), "Fitting the model on 3 threads gave different results than fitting it on 1");
+    }
 }
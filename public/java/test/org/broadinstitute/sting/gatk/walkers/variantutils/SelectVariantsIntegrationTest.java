@@ -162,6 +162,14 @@ public class SelectVariantsIntegrationTest extends WalkerTest {
         );
 
         executeTest("testParallelization (4 threads)--" + testfile, spec);
+
+        spec = new WalkerTestSpec(
+            baseTestString(" -sn A -se '[CDH]' -sf " + samplesFile + " -env -ef -select 'DP < 250' --variant " + testfile + " -nt 4 -dds"),
+            1,
+            Arrays.asList("d18516c1963802e92cb9e425c0b75fd6")
+        );
+
+        executeTest("testParallelization (4 threads, dependency-driven)--" + testfile, spec);
     }
 
     @Test
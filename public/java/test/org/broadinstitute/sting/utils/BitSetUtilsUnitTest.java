@@ -58,6 +58,19 @@ public class BitSetUtilsUnitTest {
             Assert.assertEquals(BitSetUtils.dnaFrom(BitSetUtils.bitSetFrom(d)), d);
     }
 
+    @Test(enabled = true)
+    public void testDNAAndLongConversion() {
+        String[] dna = {"A", "T", "AGGTGTTG", "CCCCCCCC", "GTAGACCGATCTCAGCTAGT", "TTTTTTTTTTTTTTTTTTTTTTTTTTTTTTT"};
+
+        for (long n = 0; n < RANDOM_NUMBERS_TO_TRY; n++)
+            Assert.assertEquals(BitSetUtils.longFrom(BitSetUtils.dnaFrom(n)), n);
+
+        for (String d : dna) {
+            Assert.assertEquals(BitSetUtils.dnaFrom(BitSetUtils.longFrom(d)), d);
+            Assert.assertEquals(BitSetUtils.longFrom(d), BitSetUtils.longFrom(BitSetUtils.bitSetFrom(d)));  // Make sure the long and BitSet encodings agree
+        }
+    }
+
     @Test(enabled = true)
     public void testNumberOfBitsToRepresent() {
         Assert.assertEquals(BitSetUtils.numberOfBitsToRepresent(0), 0); // Make sure 0 elements need 0 bits to be represented 
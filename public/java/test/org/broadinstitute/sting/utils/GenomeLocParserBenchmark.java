@@ -0,0 +1,70 @@
+package org.broadinstitute.sting.utils;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import com.google.caliper.runner.CaliperMain;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMRecord;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Caliper microbenchmark of GenomeLoc creation from reads, with all threads sharing a single parser.
+ * Each thread creates the same number of locs, so with a lock-free parser the time per rep should
+ * stay roughly flat as threads are added.
+ */
+public class GenomeLocParserBenchmark extends SimpleBenchmark {
+    private static final int N_CONTIGS = 25;
+    private static final int READS_PER_THREAD = 100000;
+
+    @Param({"1", "2", "4", "8"})
+    int nThreads; // set automatically by framework
+
+    private GenomeLocParser genomeLocParser;
+    private List<SAMRecord> reads;
+    private ExecutorService threadPool;
+
+    @Override protected void setUp() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(N_CONTIGS, 1, 1000000);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+
+        // spread the reads across contigs, so that a last-used cache wouldn't help
+        reads = new ArrayList<SAMRecord>(READS_PER_THREAD);
+        for ( int i = 0; i < READS_PER_THREAD; i++ )
+            reads.add(ArtificialSAMUtils.createArtificialRead(header, "read" + i, i % N_CONTIGS, 1 + (i % 10000), 100));
+
+        threadPool = Executors.newFixedThreadPool(nThreads);
+    }
+
+    @Override protected void tearDown() {
+        threadPool.shutdown();
+    }
+
+    public void timeCreateGenomeLocFromRead(int rep) throws Exception {
+        for ( int i = 0; i < rep; i++ ) {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>(nThreads);
+            for ( int t = 0; t < nThreads; t++ ) {
+                results.add(threadPool.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        int totalSize = 0;
+                        for ( final SAMRecord read : reads )
+                            totalSize += genomeLocParser.createGenomeLoc(read).size();
+                        return totalSize;
+                    }
+                }));
+            }
+            for ( final Future<Integer> result : results )
+                result.get();
+        }
+    }
+
+    public static void main(String[] args) {
+        CaliperMain.main(GenomeLocParserBenchmark.class, args);
+    }
+}
@@ -364,4 +364,77 @@ public class PairHMMUnitTest extends BaseTest {
             Assert.assertEquals(res1, -2.0, 1e-2);
         }
     }
-}
\ No newline at end of file
+
+    // --------------------------------------------------------------------------------
+    //
+    // Workspace reuse and caching
+    //
+    // --------------------------------------------------------------------------------
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            bases[i] = BaseUtils.BASES[random.nextInt(BaseUtils.BASES.length)];
+        return bases;
+    }
+
+    private static byte[] randomQuals(final Random random, final int length, final int min, final int max) {
+        final byte[] quals = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            quals[i] = (byte)(min + random.nextInt(max - min + 1));
+        return quals;
+    }
+
+    @Test
+    public void testReusedWorkspaceMatchesFreshOne() {
+        final Random random = new Random(1234);
+        final PairHMM reusedHMM = new PairHMM();
+        for ( int test = 0; test < 200; test++ ) {
+            final byte[] haplotype = randomBases(random, 20 + random.nextInt(60));
+            final int readStart = random.nextInt(10);
+            final byte[] read = Arrays.copyOfRange(haplotype, readStart, readStart + 5 + random.nextInt(haplotype.length - readStart - 5));
+            for ( int i = 0; i < read.length; i++ )
+                if ( random.nextInt(10) == 0 )
+                    read[i] = BaseUtils.BASES[random.nextInt(BaseUtils.BASES.length)];
+            final byte[] quals = randomQuals(random, read.length, 5, 60);
+            final byte[] gop = randomQuals(random, read.length, 30, 45);
+            final byte[] gcp = randomQuals(random, read.length, 10, 20);
+
+            final double expected = new PairHMM().computeReadLikelihoodGivenHaplotype(haplotype, read, quals, gop, gop, gcp);
+            final double actual = reusedHMM.computeReadLikelihoodGivenHaplotype(haplotype, read, quals, gop, gop, gcp);
+            Assert.assertEquals(actual, expected, 0.0, "for haplotype " + new String(haplotype) + " and read " + new String(read));
+        }
+    }
+
+    @Test
+    public void testCachedHaplotypePrefixes() {
+        final Random random = new Random(5678);
+        final PairHMM cachingHMM = new PairHMM();
+        for ( int test = 0; test < 50; test++ ) {
+            final byte[] haplotype = randomBases(random, 60);
+            final byte[] read = Arrays.copyOfRange(haplotype, 10, 50);
+            final byte[] quals = randomQuals(random, read.length, 20, 40);
+            final byte[] gop = randomQuals(random, read.length, 40, 45);
+            final byte[] gcp = randomQuals(random, read.length, 10, 10);
+
+            // score the read against a series of haplotypes sharing ever shorter prefixes, then the original again
+            final List<byte[]> haplotypes = new ArrayList<byte[]>();
+            haplotypes.add(haplotype);
+            for ( int i = haplotype.length - 1; i >= 0; i -= 7 ) {
+                final byte[] variant = haplotype.clone();
+                variant[i] = variant[i] == 'A' ? (byte)'C' : (byte)'A';
+                haplotypes.add(variant);
+            }
+            haplotypes.add(Arrays.copyOf(haplotype, 50)); // a different length can't use the cache
+            haplotypes.add(haplotype);
+
+            boolean first = true;
+            for ( final byte[] h : haplotypes ) {
+                final double cached = cachingHMM.computeReadLikelihoodGivenHaplotype(h, read, quals, gop, gop, gcp, first);
+                final double fresh = new PairHMM().computeReadLikelihoodGivenHaplotype(h, read, quals, gop, gop, gcp);
+                Assert.assertEquals(cached, fresh, 0.0);
+                first = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import com.google.caliper.runner.CaliperMain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Caliper microbenchmark of Smith-Waterman alignment of reads against a reference window, as done by the IndelRealigner
+ */
+public class SWPairwiseAlignerBenchmark extends SimpleBenchmark {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    @Param({"36", "100", "250"})
+    int readLength; // set automatically by framework
+
+    @Param({"300", "1000", "3000"})
+    int windowLength; // set automatically by framework
+
+    byte[] reference;
+    List<byte[]> reads;
+    List<Integer> starts;
+
+    @Override protected void setUp() {
+        final Random random = new Random(42);
+        reference = new byte[windowLength];
+        for ( int i = 0; i < windowLength; i++ )
+            reference[i] = BASES[random.nextInt(4)];
+
+        // reads from the window, with a few mismatches and a 5 base deletion in the middle
+        final int nReads = 20;
+        reads = new ArrayList<byte[]>(nReads);
+        starts = new ArrayList<Integer>(nReads);
+        for ( int n = 0; n < nReads; n++ ) {
+            final int start = random.nextInt(Math.max(windowLength - readLength - 5, 1));
+            final byte[] read = new byte[Math.min(readLength, windowLength - start - 5)];
+            for ( int i = 0; i < read.length; i++ ) {
+                final int refIndex = start + i + (i < read.length / 2 ? 0 : 5);
+                read[i] = random.nextInt(50) == 0 ? BASES[random.nextInt(4)] : reference[refIndex];
+            }
+            reads.add(read);
+            starts.add(start);
+        }
+    }
+
+    public void timeSWPairwiseAlignment(int rep) {
+        int total = 0;
+        for ( int i = 0; i < rep; i++ ) {
+            for ( final byte[] read : reads )
+                total += new SWPairwiseAlignment(reference, read, 30.0, -10.0, -10.0, -2.0).getAlignmentStart2wrt1();
+        }
+    }
+
+    public void timeSWPairwiseAligner(int rep) {
+        final SWPairwiseAligner aligner = new SWPairwiseAligner(30, -10, -10, -2);
+        int total = 0;
+        for ( int i = 0; i < rep; i++ ) {
+            for ( final byte[] read : reads ) {
+                aligner.align(reference, read);
+                total += aligner.getAlignmentStart2wrt1();
+            }
+        }
+    }
+
+    public void timeBandedSWPairwiseAligner(int rep) {
+        final SWPairwiseAligner aligner = new SWPairwiseAligner(30, -10, -10, -2);
+        int total = 0;
+        for ( int i = 0; i < rep; i++ ) {
+            for ( int j = 0; j < reads.size(); j++ ) {
+                aligner.align(reference, reads.get(j), starts.get(j), 20);
+                total += aligner.getAlignmentStart2wrt1();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        CaliperMain.main(SWPairwiseAlignerBenchmark.class, args);
+    }
+}
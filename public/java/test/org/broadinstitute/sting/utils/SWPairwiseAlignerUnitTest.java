@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2012 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils;
+
+import net.sf.samtools.CigarElement;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+/**
+ * Checks that SWPairwiseAligner gives the same alignments as SWPairwiseAlignment
+ */
+public class SWPairwiseAlignerUnitTest extends BaseTest {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            bases[i] = BASES[random.nextInt(BASES.length)];
+        return bases;
+    }
+
+    /**
+     * Makes a read from the part of ref starting at start, with a few mismatches and an indel thrown in
+     */
+    private static byte[] makeRead(final Random random, final byte[] ref, final int start, final int length, final int indelLength) {
+        final StringBuilder read = new StringBuilder();
+        final int indelPosition = length / 3 + random.nextInt(length / 3 + 1);
+        for ( int i = start; read.length() < length && i < ref.length; i++ ) {
+            if ( i - start == indelPosition ) {
+                if ( indelLength > 0 )
+                    read.append(new String(randomBases(random, indelLength)));
+                else
+                    i -= indelLength;
+            }
+            if ( i < ref.length )
+                read.append((char)(random.nextInt(20) == 0 ? BASES[random.nextInt(BASES.length)] : ref[i]));
+        }
+        return read.toString().getBytes();
+    }
+
+    private static void assertSameAlignment(final SWPairwiseAligner aligner, final SWPairwiseAlignment expected, final String message) {
+        Assert.assertEquals(aligner.getCigar(), expected.getCigar(), message);
+        Assert.assertEquals(aligner.getAlignmentStart2wrt1(), expected.getAlignmentStart2wrt1(), message);
+    }
+
+    /**
+     * @return how far the path of the alignment through the score matrix strays from the given diagonal
+     */
+    private static int maxDistanceFromDiagonal(final SWPairwiseAlignment alignment, final int diagonal) {
+        int refPos = alignment.getAlignmentStart2wrt1();
+        int readPos = 0;
+        int maxDistance = 0;
+        for ( final CigarElement e : alignment.getCigar().getCigarElements() ) {
+            switch ( e.getOperator() ) {
+                case S: if ( readPos == 0 ) readPos += e.getLength(); break;
+                case M: refPos += e.getLength(); readPos += e.getLength(); break;
+                case I: readPos += e.getLength(); break;
+                case D: refPos += e.getLength(); break;
+            }
+            maxDistance = Math.max(maxDistance, Math.abs(refPos - readPos - diagonal));
+        }
+        return maxDistance;
+    }
+
+    @DataProvider(name = "weights")
+    public Object[][] makeWeights() {
+        return new Object[][] {
+                {30, -10, -10, -2},          // the IndelRealigner's
+                {3, -1, -4, -1},
+                {1, -3, -5, -2}
+        };
+    }
+
+    @Test(dataProvider = "weights")
+    public void testSameAlignmentsAsSWPairwiseAlignment(final int match, final int mismatch, final int open, final int extend) {
+        final Random random = new Random(42);
+        final SWPairwiseAligner aligner = new SWPairwiseAligner(match, mismatch, open, extend);
+
+        // a single aligner, going back and forth between alignments of different sizes
+        for ( int i = 0; i < 500; i++ ) {
+            final byte[] ref = randomBases(random, 1 + random.nextInt(400));
+            final int readLength = 1 + random.nextInt(Math.min(ref.length, 120));
+            final byte[] read = random.nextInt(10) == 0
+                    ? randomBases(random, readLength)
+                    : makeRead(random, ref, random.nextInt(ref.length), readLength, random.nextInt(21) - 10);
+
+            aligner.align(ref, read);
+            final String message = "Different alignments of " + new String(read) + " against " + new String(ref);
+            assertSameAlignment(aligner, new SWPairwiseAlignment(ref, read, match, mismatch, open, extend), message);
+        }
+    }
+
+    @Test
+    public void testBandedAlignment() {
+        final Random random = new Random(42);
+        final SWPairwiseAligner aligner = new SWPairwiseAligner(30, -10, -10, -2);
+
+        for ( int i = 0; i < 500; i++ ) {
+            final byte[] ref = randomBases(random, 200 + random.nextInt(200));
+            final int start = random.nextInt(ref.length - 100);
+            final byte[] read = makeRead(random, ref, start, 50 + random.nextInt(50), random.nextInt(11) - 5);
+            final SWPairwiseAlignment expected = new SWPairwiseAlignment(ref, read, 30, -10, -10, -2);
+            final String message = "Different alignments of " + new String(read) + " against " + new String(ref);
+
+            // a band holding the whole matrix is the same as no band at all
+            aligner.align(ref, read, start, ref.length + read.length);
+            assertSameAlignment(aligner, expected, message);
+
+            // a band holding the whole alignment finds it too
+            if ( maxDistanceFromDiagonal(expected, start) <= 10 ) {
+                aligner.align(ref, read, start, 10);
+                assertSameAlignment(aligner, expected, message);
+            }
+        }
+    }
+
+    @Test
+    public void testBandAwayFromAlignment() {
+        final byte[] ref = "ACGTTGCAAGCTTAGCCATGGACTTACGATCGGATCCAGTAACGTTAGCATCGATGCATGCAGT".getBytes();
+        final byte[] read = "GACTTACGATCGGATCC".getBytes();
+        final SWPairwiseAligner aligner = new SWPairwiseAligner(30, -10, -10, -2);
+
+        aligner.align(ref, read);
+        Assert.assertEquals(aligner.getAlignmentStart2wrt1(), 20);
+        Assert.assertEquals(aligner.getCigar().toString(), "17M");
+
+        // the read can't be placed where it really belongs when the band is far from there
+        aligner.align(ref, read, 40, 2);
+        Assert.assertFalse(aligner.getAlignmentStart2wrt1() == 20);
+    }
+
+    @Test
+    public void testEmptyRead() {
+        final byte[] ref = "ACGTACGT".getBytes();
+        final SWPairwiseAligner aligner = new SWPairwiseAligner(30, -10, -10, -2);
+        aligner.align(ref, new byte[0]);
+        assertSameAlignment(aligner, new SWPairwiseAlignment(ref, new byte[0], 30, -10, -10, -2), "empty read");
+    }
+
+    @Test(expectedExceptions = ReviewedStingException.class)
+    public void testNegativeBandWidth() {
+        new SWPairwiseAligner(30, -10, -10, -2).align("ACGT".getBytes(), "ACGT".getBytes(), 0, -1);
+    }
+}
@@ -0,0 +1,103 @@
+package org.broadinstitute.sting.utils.activeregion;
+
+import net.sf.samtools.SAMFileHeader;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.GenomeLoc;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public class ActiveRegionReadBufferUnitTest extends BaseTest {
+    private SAMFileHeader header;
+    private GenomeLocParser genomeLocParser;
+
+    @BeforeClass
+    public void init() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(2, 1, 10000);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+    }
+
+    private GATKSAMRecord makeRead(final String name, final int contig, final int start, final int length) {
+        return ArtificialSAMUtils.createArtificialRead(header, name, contig, start, length);
+    }
+
+    private GenomeLoc makeLoc(final int contig, final int start, final int stop) {
+        return genomeLocParser.createGenomeLoc(header.getSequence(contig).getSequenceName(), start, stop);
+    }
+
+    @Test
+    public void testReadsAreReturnedInAdditionOrder() {
+        final ActiveRegionReadBuffer buffer = new ActiveRegionReadBuffer();
+        final GATKSAMRecord read1 = makeRead("read1", 0, 100, 50);
+        final GATKSAMRecord read2 = makeRead("read2", 0, 120, 50);
+        final GATKSAMRecord read3 = makeRead("read3", 0, 90, 50);            // arrives out of coordinate order
+        final GATKSAMRecord read4 = makeRead("read4", 0, 500, 50);
+
+        for ( final GATKSAMRecord read : Arrays.asList(read1, read2, read3, read4) )
+            Assert.assertTrue(buffer.add(read));
+
+        Assert.assertEquals(buffer.size(), 4);
+        Assert.assertEquals(buffer.getReadsOverlapping(makeLoc(0, 130, 140)), Arrays.asList(read1, read2, read3));
+        Assert.assertEquals(buffer.getReadsOverlapping(makeLoc(0, 150, 600)), Arrays.asList(read2, read4));
+    }
+
+    @Test
+    public void testEqualReadsAreOnlyAddedOnce() {
+        final ActiveRegionReadBuffer buffer = new ActiveRegionReadBuffer();
+        final GATKSAMRecord read = makeRead("read", 0, 100, 50);
+
+        Assert.assertTrue(buffer.add(read));
+        Assert.assertFalse(buffer.add(makeRead("read", 0, 100, 50)));
+        Assert.assertEquals(buffer.getReadsOverlapping(makeLoc(0, 1, 1000)), Arrays.asList(read));
+
+        // once it's been removed, an equal read can go back in
+        buffer.remove(read);
+        Assert.assertEquals(buffer.size(), 0);
+        Assert.assertTrue(buffer.getReadsOverlapping(makeLoc(0, 1, 1000)).isEmpty());
+        Assert.assertTrue(buffer.add(makeRead("read", 0, 100, 50)));
+        Assert.assertEquals(buffer.getReadsOverlapping(makeLoc(0, 1, 1000)).size(), 1);
+    }
+
+    @Test
+    public void testQueriesDropEarlierReads() {
+        final ActiveRegionReadBuffer buffer = new ActiveRegionReadBuffer();
+        final GATKSAMRecord read1 = makeRead("read1", 0, 100, 50);
+        final GATKSAMRecord read2 = makeRead("read2", 0, 200, 50);
+        final GATKSAMRecord read3 = makeRead("read3", 1, 100, 50);
+        for ( final GATKSAMRecord read : Arrays.asList(read1, read2, read3) )
+            buffer.add(read);
+
+        Assert.assertEquals(buffer.getReadsOverlapping(makeLoc(0, 150, 199)), Collections.<GATKSAMRecord>emptyList());
+        Assert.assertEquals(buffer.size(), 2);
+        Assert.assertFalse(buffer.add(makeRead("read2", 0, 200, 50)));
+
+        Assert.assertEquals(buffer.getReadsOverlapping(makeLoc(1, 1, 100)), Arrays.asList(read3));
+        Assert.assertEquals(buffer.size(), 1);
+    }
+
+    @Test
+    public void testManyReads() {
+        final ActiveRegionReadBuffer buffer = new ActiveRegionReadBuffer();
+        final Random random = new Random(42);
+        final List<GATKSAMRecord> reads = new ArrayList<GATKSAMRecord>();
+        for ( int i = 0; i < 5000; i++ ) {
+            final GATKSAMRecord read = makeRead("read" + i, 0, 1 + random.nextInt(9000), 1 + random.nextInt(100));
+            reads.add(read);
+            buffer.add(read);
+        }
+
+        for ( int start = 1; start <= 9000; start += 100 ) {
+            final GenomeLoc loc = makeLoc(0, start, start + 149);
+            final List<GATKSAMRecord> expected = new ArrayList<GATKSAMRecord>();
+            for ( final GATKSAMRecord read : reads )
+                if ( genomeLocParser.createGenomeLoc(read).overlapsP(loc) )
+                    expected.add(read);
+            Assert.assertEquals(buffer.getReadsOverlapping(loc), expected, "Wrong reads overlapping " + loc);
+        }
+    }
+}
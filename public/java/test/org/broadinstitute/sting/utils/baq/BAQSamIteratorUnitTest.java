@@ -0,0 +1,115 @@
+package org.broadinstitute.sting.utils.baq;
+
+import net.sf.picard.reference.IndexedFastaSequenceFile;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMRecord;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.gatk.iterators.StingSAMIterator;
+import org.broadinstitute.sting.gatk.iterators.StingSAMIteratorAdapter;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that BAQ'ing reads on other threads gives the same qualities as BAQ'ing them one at a time
+ */
+public class BAQSamIteratorUnitTest extends BaseTest {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private IndexedFastaSequenceFile fasta;
+    private SAMFileHeader header;
+
+    @BeforeClass
+    public void init() {
+        final File referenceFile = new File(testDir + "exampleFASTA.fasta");
+        try {
+            fasta = new IndexedFastaSequenceFile(referenceFile);
+        }
+        catch(FileNotFoundException ex) {
+            throw new UserException.CouldNotReadInputFile(referenceFile,ex);
+        }
+        header = new SAMFileHeader();
+        header.setSequenceDictionary(fasta.getSequenceDictionary());
+    }
+
+    /**
+     * Makes reads of various lengths along the reference, with some mismatches and low quality bases
+     */
+    private List<SAMRecord> makeReads(final int nReads) {
+        final Random random = new Random(42);
+        final int contigLength = fasta.getSequenceDictionary().getSequence(0).getSequenceLength();
+        final List<SAMRecord> reads = new ArrayList<SAMRecord>(nReads);
+        int start = 1;
+        for ( int i = 0; i < nReads; i++ ) {
+            final int length = 36 + random.nextInt(65);
+            start = Math.min(start + random.nextInt(50), contigLength - length + 1);
+            final byte[] bases = fasta.getSubsequenceAt("chr1", start, start + length - 1).getBases();
+            final byte[] quals = new byte[length];
+            for ( int j = 0; j < length; j++ ) {
+                if ( random.nextInt(10) == 0 )
+                    bases[j] = BASES[random.nextInt(BASES.length)];
+                quals[j] = (byte)(2 + random.nextInt(39));
+            }
+            reads.add(ArtificialSAMUtils.createArtificialRead(header, "read" + i, 0, start, bases, quals, length + "M"));
+        }
+        return reads;
+    }
+
+    private List<SAMRecord> baqReads(final List<SAMRecord> reads, final BAQ.QualityMode qmode, final ExecutorService executor, final int maxPendingBatches) {
+        final StingSAMIterator it = StingSAMIteratorAdapter.adapt(reads.iterator());
+        final BAQSamIterator baqIterator = new BAQSamIterator(fasta, it, BAQ.CalculationMode.RECALCULATE, qmode, executor, maxPendingBatches);
+        final List<SAMRecord> result = new ArrayList<SAMRecord>();
+        while ( baqIterator.hasNext() )
+            result.add(baqIterator.next());
+        baqIterator.close();
+        return result;
+    }
+
+    @DataProvider(name = "threads")
+    public Object[][] makeThreads() {
+        return new Object[][] {
+                {1, 1},
+                {2, 4},
+                {4, 8}
+        };
+    }
+
+    @Test(dataProvider = "threads")
+    public void testBAQOnOtherThreads(final int nThreads, final int maxPendingBatches) {
+        final List<SAMRecord> expected = baqReads(makeReads(1000), BAQ.QualityMode.ADD_TAG, null, 0);
+        final ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            final List<SAMRecord> actual = baqReads(makeReads(1000), BAQ.QualityMode.ADD_TAG, executor, maxPendingBatches);
+            Assert.assertEquals(actual.size(), expected.size());
+            for ( int i = 0; i < expected.size(); i++ ) {
+                Assert.assertEquals(actual.get(i).getReadName(), expected.get(i).getReadName());
+                Assert.assertNotNull(BAQ.getBAQTag(expected.get(i)));
+                Assert.assertEquals(BAQ.getBAQTag(actual.get(i)), BAQ.getBAQTag(expected.get(i)), "Different BAQ for " + expected.get(i).getReadName());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBAQChangesQualities() {
+        final List<SAMRecord> original = makeReads(100);
+        final List<SAMRecord> baqed = baqReads(makeReads(100), BAQ.QualityMode.OVERWRITE_QUALS, null, 0);
+        boolean changed = false;
+        for ( int i = 0; i < original.size(); i++ )
+            changed |= ! Arrays.equals(original.get(i).getBaseQualities(), baqed.get(i).getBaseQualities());
+        Assert.assertTrue(changed, "BAQ didn't change any qualities");
+    }
+}
@@ -29,13 +29,16 @@ package org.broadinstitute.sting.utils.codecs.vcf;
 // the imports for unit testing.
 
 
+import org.broad.tribble.readers.AsciiLineReader;
 import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.variantcontext.*;
 import org.testng.Assert;
 import org.testng.annotations.BeforeSuite;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
 import java.util.*;
 
 
@@ -88,4 +91,121 @@ public class VCFCodecUnitTest extends BaseTest {
         int result = AbstractVCFCodec.computeReverseClipping(cfg.alleles, cfg.ref.getBytes(), 0, false, 1);
         Assert.assertEquals(result, cfg.expectedClip);
     }
-}
\ No newline at end of file
+
+    // --------------------------------------------------------------------------------
+    //
+    // Decoding
+    //
+    // --------------------------------------------------------------------------------
+
+    private static final String SITES_HEADER =
+            "##fileformat=VCFv4.1\n" +
+            "##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Depth\">\n" +
+            "##INFO=<ID=AC,Number=A,Type=Integer,Description=\"Allele count\">\n" +
+            "##INFO=<ID=DB,Number=0,Type=Flag,Description=\"dbSNP\">\n" +
+            "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+
+    private static VCFCodec makeSitesCodec() {
+        final VCFCodec codec = new VCFCodec();
+        codec.readHeader(new AsciiLineReader(new ByteArrayInputStream(SITES_HEADER.getBytes())));
+        return codec;
+    }
+
+    @Test
+    public void testDecodeSite() {
+        final VCFCodec codec = makeSitesCodec();
+        final VariantContext vc = (VariantContext)codec.decode("20\t10\trs1\ta\tC,T\t50\tPASS\tDP=12;AC=1,2;DB");
+
+        Assert.assertEquals(vc.getChr(), "20");
+        Assert.assertEquals(vc.getStart(), 10);
+        Assert.assertEquals(vc.getID(), "rs1");
+        Assert.assertEquals(vc.getAlleles(), Arrays.asList(Allele.create("A", true), Allele.create("C"), Allele.create("T")));
+        Assert.assertEquals(vc.getPhredScaledQual(), 50.0, 1e-6);
+        Assert.assertTrue(vc.filtersWereApplied());
+        Assert.assertFalse(vc.isFiltered());
+
+        Assert.assertEquals(vc.getAttributes().size(), 3);
+        Assert.assertEquals(vc.getAttribute("DP"), "12");
+        Assert.assertEquals(vc.getAttribute("AC"), Arrays.asList("1", "2"));
+        Assert.assertEquals(vc.getAttribute("DB"), true);
+    }
+
+    @Test
+    public void testDecodeMissingFields() {
+        final VCFCodec codec = makeSitesCodec();
+        final VariantContext vc = (VariantContext)codec.decode("20\t10\t.\tA\tC\t.\t.\t.");
+
+        Assert.assertFalse(vc.hasID());
+        Assert.assertFalse(vc.hasLog10PError());
+        Assert.assertFalse(vc.filtersWereApplied());
+        Assert.assertTrue(vc.getAttributes().isEmpty());
+    }
+
+    @Test
+    public void testDecodedAttributesCanBeModified() {
+        final VCFCodec codec = makeSitesCodec();
+        final VariantContext vc = (VariantContext)codec.decode("20\t10\t.\tA\tC\t50\tPASS\tDP=12;DB");
+
+        final VariantContext modified = new VariantContextBuilder(vc).attribute("AC", 1).rmAttribute("DB").make();
+        Assert.assertEquals(modified.getAttributes().size(), 2);
+        Assert.assertEquals(modified.getAttribute("DP"), "12");
+        Assert.assertEquals(modified.getAttribute("AC"), 1);
+        Assert.assertEquals(vc.getAttributes().size(), 2, "modifying a copy changed the original's attributes");
+    }
+
+    @Test
+    public void testDecodedStringsAreShared() {
+        final VCFCodec codec = makeSitesCodec();
+        final VariantContext vc1 = (VariantContext)codec.decode("20\t10\t.\tA\tC\t50\tLowQual\t.");
+        final VariantContext vc2 = (VariantContext)codec.decode("20\t11\t.\tA\tC\t50\tLowQual\t.");
+
+        Assert.assertSame(vc1.getChr(), vc2.getChr());
+        Assert.assertEquals(vc2.getFilters(), Collections.singleton("LowQual"));
+    }
+
+    @Test
+    public void testInfoIsDecodedOnlyWhenAnAttributeIsAskedFor() {
+        final String line = "20\t10\t.\tA\tC\t50\tPASS\tDP=12;DB;DPX=3";
+        final LazyInfoAttributes info = new LazyInfoAttributes(line, line.indexOf("DP="), line.length());
+        final VariantContext vc = new VariantContextBuilder("test", "20", 10, 10, Arrays.asList(Allele.create("A", true), Allele.create("C")))
+                .attributes(info).make();
+        Assert.assertFalse(info.isDecoded(), "making the VariantContext decoded the INFO field");
+
+        Assert.assertTrue(vc.hasAttribute("DP"));
+        Assert.assertTrue(vc.hasAttribute("DB"));
+        Assert.assertTrue(vc.hasAttribute("DPX"));
+        Assert.assertFalse(vc.hasAttribute("D"));
+        Assert.assertFalse(vc.hasAttribute("AC"));
+        Assert.assertFalse(info.isDecoded(), "checking for a key decoded the INFO field");
+
+        Assert.assertEquals(vc.getAttribute("DP"), "12");
+        Assert.assertTrue(info.isDecoded());
+        Assert.assertEquals(vc.getAttributes().size(), 3);
+    }
+
+    @Test(expectedExceptions = UserException.MalformedVCF.class)
+    public void testBadPosition() {
+        makeSitesCodec().decode("20\t1O\t.\tA\tC\t50\tPASS\t.");
+    }
+
+    @Test(expectedExceptions = UserException.MalformedVCF.class)
+    public void testWhitespaceInInfo() {
+        makeSitesCodec().decode("20\t10\t.\tA\tC\t50\tPASS\tDP=1 2");
+    }
+
+    @Test
+    public void testStringCache() {
+        final VCFStringCache cache = new VCFStringCache();
+        final String line = "chr1\tchr2\tchr1";
+
+        final String chr1 = cache.get(line, 0, 4);
+        Assert.assertEquals(chr1, "chr1");
+        Assert.assertSame(cache.get(line, 10, 14), chr1);
+        Assert.assertEquals(cache.get(line, 5, 9), "chr2");
+
+        // fill the cache well past its initial capacity, and past the point where it starts over
+        for ( int i = 0; i < 100000; i++ )
+            Assert.assertEquals(cache.get("x" + i), "x" + i);
+        Assert.assertEquals(cache.get(line, 0, 4), "chr1");
+    }
+}
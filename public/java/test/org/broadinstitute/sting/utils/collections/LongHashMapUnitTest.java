@@ -0,0 +1,73 @@
+package org.broadinstitute.sting.utils.collections;
+
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class LongHashMapUnitTest extends BaseTest {
+
+    @Test
+    public void testPutAndGet() {
+        final LongHashMap<String> map = new LongHashMap<String>();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.get(0L));
+
+        Assert.assertNull(map.put(0L, "zero"));
+        Assert.assertNull(map.put(-1L, "minus one"));
+        Assert.assertNull(map.put(Long.MAX_VALUE, "max"));
+        Assert.assertEquals(map.size(), 3);
+
+        Assert.assertEquals(map.get(0L), "zero");
+        Assert.assertEquals(map.get(-1L), "minus one");
+        Assert.assertEquals(map.get(Long.MAX_VALUE), "max");
+        Assert.assertFalse(map.containsKey(1L));
+    }
+
+    @Test
+    public void testOverwrite() {
+        final LongHashMap<String> map = new LongHashMap<String>();
+        map.put(42L, "first");
+        Assert.assertEquals(map.put(42L, "second"), "first");
+        Assert.assertEquals(map.get(42L), "second");
+        Assert.assertEquals(map.size(), 1);
+    }
+
+    @Test
+    public void testGrowAndIterate() {
+        final LongHashMap<Long> map = new LongHashMap<Long>(1);
+        final Map<Long, Long> expected = new HashMap<Long, Long>();
+        final Random random = new Random(12345);
+        for (int i = 0; i < 10000; i++) {
+            final long key = (i % 2 == 0) ? random.nextLong() : ((long) i << 40);          // packed keys only differing in their high bits
+            map.put(key, (long) i);
+            expected.put(key, (long) i);
+        }
+
+        Assert.assertEquals(map.size(), expected.size());
+        Assert.assertEquals(map.values().size(), expected.size());
+
+        int nEntries = 0;
+        for (LongHashMap.Entry<Long> entry : map) {
+            Assert.assertEquals(entry.getValue(), expected.get(entry.getKey()));
+            nEntries++;
+        }
+        Assert.assertEquals(nEntries, expected.size());
+
+        final long[] sortedKeys = new long[expected.size()];
+        int i = 0;
+        for (long key : new TreeSet<Long>(expected.keySet()))
+            sortedKeys[i++] = key;
+        Assert.assertEquals(map.sortedKeys(), sortedKeys);
+    }
+
+    @Test(expectedExceptions = ReviewedStingException.class)
+    public void testNullValue() {
+        new LongHashMap<String>().put(1L, null);
+    }
+}
@@ -12,13 +12,21 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.BeforeMethod;
 import org.broadinstitute.sting.BaseTest;
+import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import net.sf.picard.reference.FastaSequenceIndex;
 import net.sf.picard.reference.IndexedFastaSequenceFile;
 import net.sf.picard.reference.ReferenceSequence;
 import net.sf.samtools.SAMSequenceRecord;
@@ -110,4 +118,89 @@ public class CachingIndexedFastaSequenceFileUnitTest extends BaseTest {
             }
         }
     }
+
+    @Test
+    public void testCacheMetrics() throws FileNotFoundException {
+        final CachingIndexedFastaSequenceFile caching = new CachingIndexedFastaSequenceFile(simpleFasta);
+        final SAMSequenceRecord contig = caching.getSequenceDictionary().getSequence(0);
+
+        // the first query maps the contig, and everything after that is read from the mapping
+        caching.getSubsequenceAt(contig.getSequenceName(), 1, 100);
+        Assert.assertEquals(caching.getCacheMisses(), 1);
+        Assert.assertEquals(caching.getCacheHits(), 0);
+
+        caching.getSubsequenceAt(contig.getSequenceName(), contig.getSequenceLength() - 100, contig.getSequenceLength());
+        caching.getSubsequenceAt(contig.getSequenceName(), 1000, 1000);
+        Assert.assertEquals(caching.getCacheMisses(), 1);
+        Assert.assertEquals(caching.getCacheHits(), 2);
+        Assert.assertEquals(caching.calcEfficiency(), 100.0 * 2 / 3, 1e-6);
+    }
+
+    // Tests that a reader given an index maps its contigs with that index, rather than needing one on disk.
+    @Test
+    public void testGivenIndex() throws IOException {
+        final File fasta = createTempFile("CachingIndexedFastaSequenceFileUnitTest", ".fasta");
+        FileUtils.copyFile(simpleFasta, fasta);
+        final FastaSequenceIndex index = new FastaSequenceIndex(new File(simpleFasta.getAbsolutePath() + ".fai"));
+
+        final CachingIndexedFastaSequenceFile caching = new CachingIndexedFastaSequenceFile(fasta, index);
+        final IndexedFastaSequenceFile uncached = new IndexedFastaSequenceFile(simpleFasta);
+        final SAMSequenceRecord contig = uncached.getSequenceDictionary().getSequence(0);
+
+        for ( int start = 1; start <= contig.getSequenceLength(); start += 997 ) {
+            final int stop = Math.min(start + 500, contig.getSequenceLength());
+            Assert.assertEquals(caching.getSubsequenceAt(contig.getSequenceName(), start, stop).getBases(),
+                    uncached.getSubsequenceAt(contig.getSequenceName(), start, stop).getBases());
+        }
+
+        // every query is answered from the one mapped window of the fasta
+        Assert.assertEquals(caching.getCacheMisses(), 1);
+    }
+
+    @Test(expectedExceptions = net.sf.picard.PicardException.class)
+    public void testQueryPastEndOfContig() throws FileNotFoundException {
+        final CachingIndexedFastaSequenceFile caching = new CachingIndexedFastaSequenceFile(simpleFasta);
+        final SAMSequenceRecord contig = caching.getSequenceDictionary().getSequence(0);
+        caching.getSubsequenceAt(contig.getSequenceName(), 1, contig.getSequenceLength() + 1);
+    }
+
+    // Tests that threads sharing a single reader all see the same bases as an uncached reader.
+    @Test
+    public void testCachingIndexedFastaReaderMultiThreaded() throws Exception {
+        final int nThreads = 4;
+        final CachingIndexedFastaSequenceFile caching = new CachingIndexedFastaSequenceFile(simpleFasta);
+        final IndexedFastaSequenceFile uncached = new IndexedFastaSequenceFile(simpleFasta);
+        final SAMSequenceRecord contig = uncached.getSequenceDictionary().getSequence(0);
+
+        final ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
+        try {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>(nThreads);
+            for ( int t = 0; t < nThreads; t++ ) {
+                final Random random = new Random(t);
+                results.add(threadPool.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        int nMismatches = 0;
+                        for ( int i = 0; i < 1000; i++ ) {
+                            final int start = 1 + random.nextInt(contig.getSequenceLength());
+                            final int stop = Math.min(start + random.nextInt(500), contig.getSequenceLength());
+                            final byte[] expected;
+                            synchronized ( uncached ) {
+                                expected = uncached.getSubsequenceAt(contig.getSequenceName(), start, stop).getBases();
+                            }
+                            if ( ! Arrays.equals(caching.getSubsequenceAt(contig.getSequenceName(), start, stop).getBases(), expected) )
+                                nMismatches++;
+                        }
+                        return nMismatches;
+                    }
+                }));
+            }
+
+            for ( final Future<Integer> result : results )
+                Assert.assertEquals(result.get().intValue(), 0);
+        } finally {
+            threadPool.shutdown();
+        }
+
+        Assert.assertEquals(caching.getCacheHits() + caching.getCacheMisses(), nThreads * 1000);
+    }
 }
@@ -0,0 +1,170 @@
+package org.broadinstitute.sting.utils.gcf;
+
+import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.SAMSequenceRecord;
+import org.broad.tribble.readers.AsciiLineReader;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.codecs.vcf.StandardVCFWriter;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFCodec;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFHeader;
+import org.broadinstitute.sting.utils.variantcontext.*;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.util.*;
+
+public class GCFUnitTest extends BaseTest {
+    private static final File VCF_FILE = new File(testDir + "HiSeq.10000.vcf");
+
+    private VCFHeader vcfHeader;
+    private List<VariantContext> vcs;
+    private File gcfFile;
+
+    @BeforeClass
+    public void writeGCF() throws IOException {
+        final VCFCodec codec = new VCFCodec();
+        final AsciiLineReader reader = new AsciiLineReader(new FileInputStream(VCF_FILE));
+        vcfHeader = (VCFHeader)codec.readHeader(reader);
+        vcs = new ArrayList<VariantContext>();
+        String line;
+        while ( (line = reader.readLine()) != null )
+            vcs.add((VariantContext)codec.decode(line));
+        reader.close();
+
+        gcfFile = createTempFile("GCFUnitTest", ".gcf");
+        GCFIndex.indexFile(gcfFile).deleteOnExit();
+        final GCFWriter writer = new GCFWriter(gcfFile, null, true, false);
+        writer.writeHeader(vcfHeader);
+        for ( final VariantContext vc : vcs )
+            writer.add(vc);
+        writer.close();
+    }
+
+    @Test
+    public void testCanDecode() {
+        Assert.assertTrue(new GCFCodec().canDecode(gcfFile.getPath()));
+        Assert.assertFalse(new GCFCodec().canDecode(VCF_FILE.getPath()));
+        Assert.assertFalse(new VCFCodec().canDecode(gcfFile.getPath()));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final GCFFeatureSource source = new GCFFeatureSource(gcfFile, "test");
+        Assert.assertEquals(((VCFHeader)source.getHeader()).getGenotypeSamples(), vcfHeader.getGenotypeSamples());
+        Assert.assertEquals(source.getSequenceNames(), Arrays.asList("chr1"));
+
+        int i = 0;
+        for ( final VariantContext vc : source.iterator() ) {
+            Assert.assertEquals(toVCF(vc), toVCF(vcs.get(i)), "Record " + i + " differs after a GCF round trip");
+            i++;
+        }
+        Assert.assertEquals(i, vcs.size());
+        source.close();
+    }
+
+    @Test
+    public void testTypedFieldsAndLazyGenotypes() throws IOException {
+        final GCFFeatureSource source = new GCFFeatureSource(gcfFile, "test");
+        final VariantContext vc = source.iterator().next();
+
+        Assert.assertEquals(vc.getAttribute("DP"), 1019);
+        Assert.assertEquals(vc.getAttribute("AF"), 0.5);
+        Assert.assertEquals(vc.getAttribute("AC"), 1);
+
+        final LazyGenotypesContext genotypes = (LazyGenotypesContext)vc.getGenotypes();
+        Assert.assertNotNull(genotypes.getUnparsedGenotypeData(), "Genotypes were decoded before they were used");
+        final Genotype g = vc.getGenotype("NA12878");
+        Assert.assertTrue(g.isHet());
+        Assert.assertEquals(g.getAttribute("DP"), 308);
+        Assert.assertEquals(g.getAttribute("AD"), Arrays.asList(610, 327));
+        Assert.assertEquals(g.getPhredScaledQual(), 99.0, 1e-6);
+        source.close();
+    }
+
+    @DataProvider(name = "queries")
+    public Object[][] makeQueries() {
+        return new Object[][]{
+                {"chr1", 1, 100},
+                {"chr1", 109, 109},
+                {"chr1", 110, 146},
+                {"chr1", 1, 50000},
+                {"chr1", 500000, 900000},
+                {"chr1", 1000000, 200000000},
+                {"chr2", 1, 1000}
+        };
+    }
+
+    @Test(dataProvider = "queries")
+    public void testQuery(final String contig, final int start, final int stop) throws IOException {
+        final List<String> expected = new ArrayList<String>();
+        for ( final VariantContext vc : vcs )
+            if ( vc.getChr().equals(contig) && vc.getStart() <= stop && vc.getEnd() >= start )
+                expected.add(vc.getChr() + ":" + vc.getStart());
+
+        final GCFFeatureSource source = new GCFFeatureSource(gcfFile, "test");
+        final List<String> actual = new ArrayList<String>();
+        for ( final VariantContext vc : source.query(contig, start, stop) )
+            actual.add(vc.getChr() + ":" + vc.getStart());
+        source.close();
+
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testSitesOnly() throws IOException {
+        final File sitesFile = createTempFile("GCFUnitTest.sites", ".gcf");
+        final GCFWriter writer = new GCFWriter(sitesFile, null, false, true);
+        writer.writeHeader(vcfHeader);
+        writer.add(vcs.get(0));
+        writer.close();
+
+        final GCFFeatureSource source = new GCFFeatureSource(sitesFile, "test");
+        final VariantContext vc = source.iterator().next();
+        Assert.assertFalse(vc.hasGenotypes());
+        Assert.assertEquals(vc.getStart(), vcs.get(0).getStart());
+        Assert.assertEquals(source.query("chr1", 109, 109).next().getStart(), 109);
+        source.close();
+    }
+
+    @Test
+    public void testSequenceDictionary() throws IOException {
+        final SAMSequenceDictionary refDict = new SAMSequenceDictionary();
+        refDict.addSequence(new SAMSequenceRecord("chr1", 247249719));
+        refDict.addSequence(new SAMSequenceRecord("chr2", 242951149));
+
+        final File dictFile = createTempFile("GCFUnitTest.dict", ".gcf");
+        final GCFWriter writer = new GCFWriter(dictFile, refDict, false, false);
+        writer.writeHeader(vcfHeader);
+        writer.add(vcs.get(0));
+        writer.close();
+
+        final GCFFeatureSource source = new GCFFeatureSource(dictFile, "test");
+        final SAMSequenceDictionary dict = source.getSequenceDictionary();
+        Assert.assertEquals(dict.size(), 2);
+        for ( final SAMSequenceRecord contig : refDict.getSequences() ) {
+            Assert.assertEquals(dict.getSequenceIndex(contig.getSequenceName()), contig.getSequenceIndex());
+            Assert.assertEquals(dict.getSequence(contig.getSequenceName()).getSequenceLength(), contig.getSequenceLength());
+        }
+        Assert.assertEquals(source.iterator().next().getStart(), vcs.get(0).getStart());
+        source.close();
+
+        final GCFFeatureSource noDictSource = new GCFFeatureSource(gcfFile, "test");
+        Assert.assertEquals(noDictSource.getSequenceDictionary().size(), 0);
+        noDictSource.close();
+    }
+
+    private String toVCF(final VariantContext vc) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final StandardVCFWriter writer = new StandardVCFWriter(bytes, null, false);
+        writer.writeHeader(vcfHeader);
+        bytes.reset();
+        if ( vc.getGenotypes() instanceof LazyGenotypesContext ) // decode the genotypes, so both are formatted the same way
+            ((LazyGenotypesContext)vc.getGenotypes()).decode();
+        writer.add(vc);
+        writer.close();
+        return bytes.toString();
+    }
+}
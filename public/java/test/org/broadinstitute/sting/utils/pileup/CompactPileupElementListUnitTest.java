@@ -0,0 +1,67 @@
+package org.broadinstitute.sting.utils.pileup;
+
+import net.sf.samtools.SAMFileHeader;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CompactPileupElementListUnitTest extends BaseTest {
+
+    @Test
+    public void testElementsMatchPileupElements() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read", 0, 1, 10);
+        read.setReadBases(new byte[] {'A','C','G','T','A','C','G','T','A','C'});
+        read.setCigarString("4M2I4M");
+
+        final CompactPileupElementList.Builder builder = new CompactPileupElementList.Builder();
+        builder.add(read, 3, false, false, false, true, false, false, 2);
+        builder.add(read, 7, true, true, true, false, false, true, 3);
+        final CompactPileupElementList list = builder.build();
+
+        Assert.assertEquals(list.size(), 2);
+        Assert.assertEquals(builder.size(), 0);
+
+        final PileupElement insertion = list.get(0);
+        Assert.assertSame(insertion.getRead(), read);
+        Assert.assertEquals(insertion.getOffset(), 3);
+        Assert.assertTrue(insertion.isBeforeInsertion());
+        Assert.assertFalse(insertion.isDeletion());
+        Assert.assertEquals(insertion.getEventLength(), 2);
+        Assert.assertEquals(insertion.getEventBases(), "AC");
+
+        final PileupElement deletion = list.get(1);
+        Assert.assertEquals(deletion.getOffset(), 7);
+        Assert.assertTrue(deletion.isDeletion());
+        Assert.assertTrue(deletion.isBeforeDeletedBase());
+        Assert.assertTrue(deletion.isAfterDeletedBase());
+        Assert.assertFalse(deletion.isBeforeInsertion());
+        Assert.assertTrue(deletion.isNextToSoftClip());
+        Assert.assertEquals(deletion.getEventLength(), 3);
+        Assert.assertNull(deletion.getEventBases());
+
+        // elements are materialized once and then reused
+        Assert.assertSame(list.get(0), insertion);
+    }
+
+    @Test
+    public void testBuilderReuse() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        final CompactPileupElementList.Builder builder = new CompactPileupElementList.Builder();
+
+        for (int locus = 0; locus < 3; locus++) {
+            final int depth = 100 * (locus + 1);                                 // grow past the builder's initial capacity
+            for (int i = 0; i < depth; i++)
+                builder.add(ArtificialSAMUtils.createArtificialRead(header, "read" + i, 0, 1, 10), i % 10, false, false, false, false, false, false, -1);
+
+            final CompactPileupElementList list = builder.build();
+            Assert.assertEquals(list.size(), depth);
+            for (int i = 0; i < depth; i++) {
+                Assert.assertEquals(list.get(i).getRead().getReadName(), "read" + i);
+                Assert.assertEquals(list.get(i).getOffset(), i % 10);
+            }
+        }
+    }
+}
@@ -194,4 +194,60 @@ public class ReadBackedPileupUnitTest {
         missingSamplePileup = pileup.getPileupForSample("not here");
         Assert.assertNull(missingSamplePileup,"Pileup for sample 'not here' should be null but isn't");
     }
+
+    /**
+     * Ensure that splitting by sample groups reads by their sample index where they have one, and by their
+     * sample name where they don't, for both unified and sample-split pileups.
+     */
+    @Test
+    public void testGetPileupsBySample() {
+        SAMReadGroupRecord readGroupOne = new SAMReadGroupRecord("rg1");
+        readGroupOne.setSample("sample1");
+        SAMReadGroupRecord readGroupTwo = new SAMReadGroupRecord("rg2");
+        readGroupTwo.setSample("sample2");
+        SAMReadGroupRecord readGroupThree = new SAMReadGroupRecord("rg3");
+        readGroupThree.setSample("sample1");
+
+        SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1,1,1000);
+        header.addReadGroup(readGroupOne);
+        header.addReadGroup(readGroupTwo);
+        header.addReadGroup(readGroupThree);
+
+        GATKSAMRecord read1 = ArtificialSAMUtils.createArtificialRead(header,"read1",0,1,10);
+        read1.setAttribute("RG",readGroupOne.getId());
+        read1.setSampleIndex(5);
+        GATKSAMRecord read2 = ArtificialSAMUtils.createArtificialRead(header,"read2",0,1,10);
+        read2.setAttribute("RG",readGroupTwo.getId());
+        read2.setSampleIndex(0);
+        GATKSAMRecord read3 = ArtificialSAMUtils.createArtificialRead(header,"read3",0,1,10);
+        read3.setAttribute("RG",readGroupThree.getId());
+        read3.setSampleIndex(5);
+        GATKSAMRecord read4 = ArtificialSAMUtils.createArtificialRead(header,"read4",0,1,10);
+        read4.setAttribute("RG",readGroupTwo.getId());
+        read4.setSampleIndex(0);
+        GATKSAMRecord read5 = ArtificialSAMUtils.createArtificialRead(header,"read5",0,1,10);
+        read5.setAttribute("RG",readGroupOne.getId());
+        GATKSAMRecord read6 = ArtificialSAMUtils.createArtificialRead(header,"read6",0,1,10);
+
+        ReadBackedPileup pileup = new ReadBackedPileupImpl(null,
+                                                           Arrays.asList(read1,read2,read3,read4,read5,read6),
+                                                           Arrays.asList(1,1,1,1,1,1));
+
+        Map<String,ReadBackedPileup> pileupsBySample = pileup.getPileupsBySample();
+        Assert.assertEquals(pileupsBySample.keySet(), new HashSet<String>(Arrays.asList("sample1","sample2",null)), "Wrong samples in split pileup");
+        Assert.assertEquals(pileupsBySample.get("sample1").getReads(), Arrays.asList(read1,read3,read5), "Wrong reads for sample1");
+        Assert.assertEquals(pileupsBySample.get("sample2").getReads(), Arrays.asList(read2,read4), "Wrong reads for sample2");
+        Assert.assertEquals(pileupsBySample.get(null).getReads(), Arrays.asList(read6), "Wrong reads without a sample");
+
+        Map<String,ReadBackedPileupImpl> sampleToPileupMap = new HashMap<String,ReadBackedPileupImpl>();
+        sampleToPileupMap.put("sample1",new ReadBackedPileupImpl(null,Arrays.asList(read1,read3),Arrays.asList(1,1)));
+        sampleToPileupMap.put("sample2",new ReadBackedPileupImpl(null,Arrays.asList(read2,read4),Arrays.asList(1,1)));
+        sampleToPileupMap.put("sample3",new ReadBackedPileupImpl(null,Collections.<GATKSAMRecord>emptyList(),Collections.<Integer>emptyList()));
+        ReadBackedPileup compositePileup = new ReadBackedPileupImpl(null,sampleToPileupMap);
+
+        pileupsBySample = compositePileup.getPileupsBySample();
+        Assert.assertEquals(pileupsBySample.keySet(), new HashSet<String>(Arrays.asList("sample1","sample2")), "Samples without reads should be left out of the split pileup");
+        Assert.assertEquals(pileupsBySample.get("sample1").getReads(), Arrays.asList(read1,read3), "Wrong reads for sample1");
+        Assert.assertEquals(pileupsBySample.get("sample2").getReads(), Arrays.asList(read2,read4), "Wrong reads for sample2");
+    }
 }
@@ -50,6 +50,17 @@ class FunctionEdge(val function: QFunction, val inputs: QNode, val outputs: QNod
    */
   var depth = -1
 
+  /**
+   * The function edges before and after this edge in the graph, once it's been filled in.
+   */
+  var previousFunctions: Seq[FunctionEdge] = _
+  var nextFunctions: Seq[FunctionEdge] = _
+
+  /**
+   * The number of previous function edges that aren't done yet, counted down as they finish.
+   */
+  var previousNotDone = 0
+
   val myRunInfo: JobRunInfo = JobRunInfo.default // purely for dryRun testing
 
   /**
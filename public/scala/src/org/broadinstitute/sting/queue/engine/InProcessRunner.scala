@@ -35,6 +35,7 @@ class InProcessRunner(val function: InProcessFunction) extends JobRunner[InProce
 
     runStatus = RunnerStatus.DONE
     getRunInfo.doneTime = new Date()
+    finished()
   }
 
   def status = runStatus
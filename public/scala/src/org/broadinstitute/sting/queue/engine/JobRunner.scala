@@ -69,6 +69,21 @@ trait JobRunner[TFunction <: QFunction] {
   def cleanup() {
   }
 
+  /**
+   * Called back once the job is DONE or FAILED, possibly from another thread.
+   * Set by the graph before the job is started.
+   */
+  var onFinished: () => Unit = _
+
+  /**
+   * Lets the graph know the job is DONE or FAILED without waiting for it to check.
+   */
+  protected def finished() {
+    val callback = onFinished
+    if (callback != null)
+      callback()
+  }
+
   /**
    * Must be overloaded
    */
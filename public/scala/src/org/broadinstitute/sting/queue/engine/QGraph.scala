@@ -62,7 +62,11 @@ class QGraph extends Logging {
   private var running = true
   private val runningLock = new Object
   private var runningJobs = Set.empty[FunctionEdge]
+  // Jobs that have called back to say they're finished, guarded by the runningLock.
+  private var finishedJobs = Set.empty[FunctionEdge]
   private var cleanupJobs = Set.empty[FunctionEdge]
+  // Intermediate jobs whose outputs may no longer be needed.
+  private var cleanupChecks = Set.empty[FunctionEdge]
 
   private val nl = "%n".format()
 
@@ -187,12 +191,36 @@ class QGraph extends Logging {
     }
   }
 
+  /**
+   * Returns the previous function edges, walking up the graph for them the first time.
+   * Only valid once the graph has been filled in.
+   * @param edge Function edge to examine for the previous functions.
+   * @return A list of prior function edges.
+   */
+  private def previousFunctions(edge: FunctionEdge): Seq[FunctionEdge] = {
+    if (edge.previousFunctions == null)
+      edge.previousFunctions = findPreviousFunctions(edge).distinct
+    edge.previousFunctions
+  }
+
+  /**
+   * Returns the next function edges, walking down the graph for them the first time.
+   * Only valid once the graph has been filled in.
+   * @param edge Function edge to examine for the next functions.
+   * @return A list of following function edges.
+   */
+  private def nextFunctions(edge: FunctionEdge): Seq[FunctionEdge] = {
+    if (edge.nextFunctions == null)
+      edge.nextFunctions = findNextFunctions(edge).distinct
+    edge.nextFunctions
+  }
+
   /**
    * Walks up the graph looking for the previous function edges.
    * @param edge Graph edge to examine for the previous functions.
    * @return A list of prior function edges.
    */
-  private def previousFunctions(edge: QEdge): Seq[FunctionEdge] = {
+  private def findPreviousFunctions(edge: QEdge): Seq[FunctionEdge] = {
     var previous = Seq.empty[FunctionEdge]
     val source = this.jobGraph.getEdgeSource(edge)
     for (incomingEdge <- this.jobGraph.incomingEdgesOf(source)) {
@@ -202,7 +230,7 @@ class QGraph extends Logging {
         case functionEdge: FunctionEdge => previous :+= functionEdge
 
         // For any other type of edge find the jobs preceding the edge
-        case edge: QEdge => previous ++= previousFunctions(edge)
+        case edge: QEdge => previous ++= findPreviousFunctions(edge)
       }
     }
     previous
@@ -213,7 +241,7 @@ class QGraph extends Logging {
    * @param edge Graph edge to examine for the next functions.
    * @return A list of prior function edges.
    */
-  private def nextFunctions(edge: QEdge): Seq[FunctionEdge] = {
+  private def findNextFunctions(edge: QEdge): Seq[FunctionEdge] = {
     var next = Seq.empty[FunctionEdge]
     val target = this.jobGraph.getEdgeTarget(edge)
     for (outgoingEdge <- this.jobGraph.outgoingEdgesOf(target)) {
@@ -223,7 +251,7 @@ class QGraph extends Logging {
         case functionEdge: FunctionEdge => next :+= functionEdge
 
         // For any other type of edge find the jobs following the edge
-        case edge: QEdge => next ++= nextFunctions(edge)
+        case edge: QEdge => next ++= findNextFunctions(edge)
       }
     }
     next
@@ -254,12 +282,30 @@ class QGraph extends Logging {
     })
   }
 
+  /**
+   * Counts the previous functions each function is waiting on.
+   * @return The pending functions that aren't waiting on any others.
+   */
   private def getReadyJobs: Set[FunctionEdge] = {
-    jobGraph.edgeSet.filter{
-      case f: FunctionEdge =>
-        this.previousFunctions(f).forall(_.status == RunnerStatus.DONE) && f.status == RunnerStatus.PENDING
-      case _ => false
-    }.toSet.asInstanceOf[Set[FunctionEdge]]
+    var readyJobs = Set.empty[FunctionEdge]
+    for (edge <- getFunctionEdges) {
+      edge.previousNotDone = previousFunctions(edge).count(_.status != RunnerStatus.DONE)
+      if (edge.previousNotDone == 0 && edge.status == RunnerStatus.PENDING)
+        readyJobs += edge
+    }
+    readyJobs
+  }
+
+  /**
+   * Counts down the functions waiting on a function that is now done.
+   * @param edge The function that is now done.
+   * @return The pending functions that are no longer waiting on any others.
+   */
+  private def getNextReadyJobs(edge: FunctionEdge): Seq[FunctionEdge] = {
+    nextFunctions(edge).filter(next => {
+      next.previousNotDone -= 1
+      next.previousNotDone == 0 && next.status == RunnerStatus.PENDING
+    })
   }
 
   /**
@@ -325,6 +371,7 @@ class QGraph extends Logging {
     var readyJobs = getReadyJobs
     while (running && readyJobs.size > 0) {
       logger.debug("+++++++")
+      var nextReadyJobs = Set.empty[FunctionEdge]
       foreachFunction(readyJobs.toSeq, edge => {
         if (running) {
           edge.myRunInfo.startTime = new Date()
@@ -332,9 +379,10 @@ class QGraph extends Logging {
           logEdge(edge)
           edge.myRunInfo.doneTime = new Date()
           edge.markAsDone()
+          nextReadyJobs ++= getNextReadyJobs(edge)
         }
       })
-      readyJobs = getReadyJobs
+      readyJobs = nextReadyJobs
     }
   }
 
@@ -405,8 +453,7 @@ class QGraph extends Logging {
 
         while (running && readyJobs.size > 0 && !readyRunningCheck(lastRunningCheck)) {
           val edge = readyJobs.head
-          edge.runner = newRunner(edge.function)
-          edge.start()
+          startJob(edge)
           startedJobs += edge
           readyJobs -= edge
           logNextStatusCounts = true
@@ -430,7 +477,7 @@ class QGraph extends Logging {
 
         if (readyJobs.size == 0 && runningJobs.size > 0) {
           runningLock.synchronized {
-            if (running) {
+            if (running && finishedJobs.isEmpty) {
               val timeout = nextRunningCheck(lastRunningCheck)
               if (timeout > 0)
                 runningLock.wait(timeout)
@@ -438,14 +485,24 @@ class QGraph extends Logging {
           }
         }
 
-        lastRunningCheck = System.currentTimeMillis
-        updateStatus()
+        var finished = takeFinishedJobs()
+
+        // Jobs call back as they finish, but the job managers still need to check on jobs running elsewhere,
+        // and any runners that don't call back are caught here.
+        if (readyRunningCheck(lastRunningCheck)) {
+          lastRunningCheck = System.currentTimeMillis
+          updateStatus()
+          finished ++= takeFinishedJobs()
+          finished ++= runningJobs.filter(_.status != RunnerStatus.RUNNING)
+        }
 
-        runningJobs.foreach(edge => edge.status match {
-          case RunnerStatus.DONE => doneJobs += edge
-          case RunnerStatus.FAILED => failedJobs += edge
-          case RunnerStatus.RUNNING => /* do nothing while still running */
-        })
+        for (edge <- finished if runningJobs.contains(edge)) {
+          edge.status match {
+            case RunnerStatus.DONE => doneJobs += edge
+            case RunnerStatus.FAILED => failedJobs += edge
+            case RunnerStatus.RUNNING => /* do nothing while still running */
+          }
+        }
 
         runningJobs --= doneJobs
         runningJobs --= failedJobs
@@ -462,12 +519,14 @@ class QGraph extends Logging {
         if (doneJobs.size > 0 || failedJobs.size > 0)
           logNextStatusCounts = true
 
+        for (edge <- doneJobs)
+          readyJobs ++= getNextReadyJobs(edge)
+        addCleanupChecks(doneJobs)
+
         if (running && failedJobs.size > 0) {
           emailFailedJobs(failedJobs)
-          checkRetryJobs(failedJobs)
+          readyJobs ++= checkRetryJobs(failedJobs)
         }
-
-        readyJobs ++= getReadyJobs
       }
 
       logStatusCounts()
@@ -481,6 +540,41 @@ class QGraph extends Logging {
     }
   }
 
+  /**
+   * Starts running a job, which will call back when it finishes.
+   * @param edge Function to run.
+   */
+  private def startJob(edge: FunctionEdge) {
+    edge.runner = newRunner(edge.function)
+    edge.runner.onFinished = () => jobFinished(edge)
+    edge.start()
+    // Jobs that fail to start don't call back.
+    if (edge.status != RunnerStatus.RUNNING)
+      jobFinished(edge)
+  }
+
+  /**
+   * Queues up a job that has finished, and wakes the graph if it's waiting on running jobs.
+   * @param edge Function that has finished.
+   */
+  private def jobFinished(edge: FunctionEdge) {
+    runningLock.synchronized {
+      finishedJobs += edge
+      runningLock.notify()
+    }
+  }
+
+  /**
+   * Returns the jobs that have called back since they were last taken.
+   */
+  private def takeFinishedJobs() = {
+    runningLock.synchronized {
+      val finished = finishedJobs
+      finishedJobs = Set.empty[FunctionEdge]
+      finished
+    }
+  }
+
   private def readyRunningCheck(lastRunningCheck: Long) =
     lastRunningCheck > 0 && nextRunningCheck(lastRunningCheck) <= 0
 
@@ -562,9 +656,22 @@ class QGraph extends Logging {
    * @param edge Function to check
    */
   private def addCleanup(edge: FunctionEdge) {
-    if (!settings.keepIntermediates)
-      if (edge.function.isIntermediate)
+    if (!settings.keepIntermediates) {
+      if (edge.function.isIntermediate) {
         cleanupJobs += edge
+        cleanupChecks += edge
+      }
+    }
+  }
+
+  /**
+   * Rechecks whether the intermediate functions before the done functions still need their outputs.
+   * @param doneJobs Functions that are now done.
+   */
+  private def addCleanupChecks(doneJobs: Traversable[FunctionEdge]) {
+    for (edge <- doneJobs; previous <- previousFunctions(edge))
+      if (cleanupJobs.contains(previous))
+        cleanupChecks += previous
   }
 
   /**
@@ -574,7 +681,7 @@ class QGraph extends Logging {
   private def deleteCleanup(lastRunningCheck: Long) {
     var doneJobs = Set.empty[FunctionEdge]
 
-    for (edge <- cleanupJobs) {
+    for (edge <- cleanupChecks) {
       val nextDone = nextFunctions(edge).forall(next => {
         val status = next.status
         (status == RunnerStatus.DONE || status == RunnerStatus.SKIPPED)
@@ -582,6 +689,8 @@ class QGraph extends Logging {
 
       if (nextDone)
         doneJobs += edge
+      else
+        cleanupChecks -= edge
     }
 
     for (edge <- doneJobs) {
@@ -589,6 +698,7 @@ class QGraph extends Logging {
         logger.debug("Deleting intermediates:" + edge.function.description)
         edge.function.deleteOutputs()
         cleanupJobs -= edge
+        cleanupChecks -= edge
       }
     }
   }
@@ -659,12 +769,19 @@ class QGraph extends Logging {
     }
   }
 
-  private def checkRetryJobs(failed: Set[FunctionEdge]) {
+  /**
+   * Resets the failed jobs that can be retried to pending.
+   * @param failed Functions that failed.
+   * @return The functions reset to pending.
+   */
+  private def checkRetryJobs(failed: Set[FunctionEdge]) = {
+    var retryJobs = Set.empty[FunctionEdge]
     if (settings.retries > 0) {
       for (failedJob <- failed) {
         if (failedJob.function.jobRestartable && failedJob.retries < settings.retries) {
           failedJob.retries += 1
           failedJob.resetToPending(true)
+          retryJobs += failedJob
           logger.info("Reset for retry attempt %d of %d: %s".format(
             failedJob.retries, settings.retries, failedJob.function.description))
           statusCounts.failed -= 1
@@ -675,6 +792,7 @@ class QGraph extends Logging {
         }
       }
     }
+    retryJobs
   }
 
   private def emailStatus() {
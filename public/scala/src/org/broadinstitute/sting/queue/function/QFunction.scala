@@ -287,7 +287,7 @@ trait QFunction extends Logging with QJobReport {
    * @return for the fields.
    */
   private def getFieldFiles(fields: Seq[ArgumentSource]): Seq[File] = {
-    var files: Seq[File] = Nil
+    var files: Seq[File] = Vector.empty
     for (field <- fields)
       files ++= getFieldFiles(field)
     files.distinct
@@ -299,7 +299,7 @@ trait QFunction extends Logging with QJobReport {
    * @return for the field.
    */
   def getFieldFiles(field: ArgumentSource): Seq[File] = {
-    var files: Seq[File] = Nil
+    var files: Seq[File] = Vector.empty
     CollectionUtils.foreach(getFieldValue(field), (fieldValue) => {
       val file = fieldValueToFile(field, fieldValue)
       if (file != null)
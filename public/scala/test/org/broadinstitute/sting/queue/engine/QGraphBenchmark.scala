@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.queue.engine
+
+import com.google.caliper.{Param, SimpleBenchmark}
+import com.google.caliper.runner.CaliperMain
+import java.io.File
+import org.apache.commons.io.FileUtils
+import org.apache.log4j.{Level, Logger}
+import org.broadinstitute.sting.commandline.{Input, Output, ParsingEngine}
+import org.broadinstitute.sting.queue.{QException, QCommandLine}
+import org.broadinstitute.sting.queue.function.{InProcessFunction, QFunction}
+import org.broadinstitute.sting.utils.io.IOUtils
+
+/**
+ * Caliper benchmark of running a synthetic scatter/gather graph of in process jobs through the QGraph,
+ * so that the time is mostly spent scheduling the jobs rather than running them.
+ */
+class QGraphBenchmark extends SimpleBenchmark {
+  @Param(Array("1000", "10000", "50000"))
+  var scatterCount: Int = _ // set automatically by framework
+
+  @Param(Array("1", "3"))
+  var chainLength: Int = _ // set automatically by framework
+
+  override protected def setUp() {
+    Logger.getRootLogger.setLevel(Level.WARN)
+  }
+
+  def timeRunScatterGather(reps: Int) {
+    for (i <- 0 until reps) {
+      val runDir = IOUtils.tempDir("QGraphBenchmark.", "")
+      try {
+        val graph = QGraphBenchmark.newGraph(runDir)
+        QGraphBenchmark.addScatterGather(graph, runDir, scatterCount, chainLength)
+        graph.run()
+        if (!graph.success)
+          throw new RuntimeException("Synthetic graph failed to run")
+      } finally {
+        FileUtils.deleteQuietly(runDir)
+      }
+    }
+  }
+}
+
+object QGraphBenchmark {
+  def main(args: Array[String]) {
+    CaliperMain.main(classOf[QGraphBenchmark], args)
+  }
+
+  /**
+   * Writes each of its output files, listing the names of its inputs.
+   * Fails if it's run before its inputs have been written.
+   */
+  class TouchFunction extends InProcessFunction {
+    @Input(doc="inputs", required=false) var inputFiles: Seq[File] = Nil
+    @Output(doc="outputs") var outputFiles: Seq[File] = Nil
+
+    def run() {
+      for (inputFile <- inputFiles)
+        if (!inputFile.exists)
+          throw new QException("Run before its input was written: " + inputFile)
+      for (outputFile <- outputFiles)
+        FileUtils.writeStringToFile(outputFile, inputFiles.map(_.getName + "\n").mkString)
+    }
+  }
+
+  /**
+   * Returns a new graph that runs its jobs in runDir.
+   * @param runDir Directory to run the jobs in.
+   * @return a new graph.
+   */
+  def newGraph(runDir: File) = {
+    // the function fields are looked up as they are for the Queue command line
+    if (QFunction.parsingEngine == null)
+      QFunction.parsingEngine = new ParsingEngine(new QCommandLine)
+    val graph = new QGraph
+    graph.settings = new QGraphSettings
+    graph.settings.run = true
+    graph.settings.qSettings.runName = runDir.getName
+    graph.settings.qSettings.runDirectory = runDir
+    graph.settings.qSettings.tempDirectory = runDir
+    graph
+  }
+
+  /**
+   * Adds a scatter job writing scatterCount parts, a chain of chainLength jobs run one after another on each part,
+   * and a gather job reading the ends of all of the chains.
+   * @param graph Graph to add the jobs to.
+   * @param runDir Directory to write the job outputs in.
+   * @param scatterCount Number of parts to scatter.
+   * @param chainLength Number of jobs run on each part.
+   * @return the jobs added, in the order they were added.
+   */
+  def addScatterGather(graph: QGraph, runDir: File, scatterCount: Int, chainLength: Int) = {
+    var functions = Vector.empty[TouchFunction]
+    def add(inputs: Seq[File], outputs: Seq[File]) {
+      val function = new TouchFunction
+      function.addOrder = Seq(functions.size + 1)
+      function.inputFiles = inputs
+      function.outputFiles = outputs
+      function.jobOutputFile = new File(runDir, outputs.head.getName + ".out")
+      graph.add(function)
+      functions :+= function
+    }
+
+    val parts = (1 to scatterCount).map(part => new File(runDir, "part" + part))
+    add(Nil, parts)
+    var chainEnds = Vector.empty[File]
+    for (part <- parts) {
+      var input = part
+      for (link <- 1 to chainLength) {
+        val output = new File(runDir, "%s.%d".format(part.getName, link))
+        add(Seq(input), Seq(output))
+        input = output
+      }
+      chainEnds :+= input
+    }
+    add(chainEnds, Seq(new File(runDir, "gathered")))
+    functions
+  }
+}
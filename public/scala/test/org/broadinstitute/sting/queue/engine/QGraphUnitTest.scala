@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.queue.engine
+
+import java.io.File
+import org.apache.commons.io.FileUtils
+import org.testng.Assert
+import org.testng.annotations.{AfterMethod, BeforeMethod, DataProvider, Test}
+import org.broadinstitute.sting.queue.QException
+import org.broadinstitute.sting.queue.engine.QGraphBenchmark.TouchFunction
+import org.broadinstitute.sting.utils.io.IOUtils
+
+class QGraphUnitTest {
+  private var runDir: File = _
+
+  @BeforeMethod
+  def makeRunDir() {
+    runDir = IOUtils.tempDir("QGraphUnitTest.", "")
+  }
+
+  @AfterMethod
+  def deleteRunDir() {
+    FileUtils.deleteQuietly(runDir)
+  }
+
+  /**
+   * Fails the first time it's run.
+   */
+  class FailOnceFunction extends TouchFunction {
+    override def run() {
+      val failedBefore = new File(runDir, outputFiles.head.getName + ".failedBefore")
+      if (!failedBefore.exists) {
+        FileUtils.touch(failedBefore)
+        throw new QException("Failing the first time: " + outputFiles.head)
+      }
+      super.run()
+    }
+  }
+
+  private def add(graph: QGraph, function: TouchFunction, inputs: Seq[String], outputs: Seq[String], addOrder: Int) {
+    function.addOrder = Seq(addOrder)
+    function.inputFiles = inputs.map(new File(runDir, _))
+    function.outputFiles = outputs.map(new File(runDir, _))
+    function.jobOutputFile = new File(runDir, outputs.head + ".out")
+    graph.add(function)
+  }
+
+  @DataProvider(name = "scatterGathers")
+  def scatterGathers = Array[Array[AnyRef]](
+    Array[AnyRef](1: java.lang.Integer, 1: java.lang.Integer),
+    Array[AnyRef](10: java.lang.Integer, 1: java.lang.Integer),
+    Array[AnyRef](10: java.lang.Integer, 3: java.lang.Integer),
+    Array[AnyRef](200: java.lang.Integer, 2: java.lang.Integer))
+
+  @Test(dataProvider = "scatterGathers")
+  def testScatterGather(scatterCount: Int, chainLength: Int) {
+    val graph = QGraphBenchmark.newGraph(runDir)
+    val functions = QGraphBenchmark.addScatterGather(graph, runDir, scatterCount, chainLength)
+    graph.run()
+
+    // each function fails if it's run before the functions it depends on
+    Assert.assertTrue(graph.success)
+    Assert.assertEquals(graph.getFunctionsAndStatus.size, functions.size)
+    Assert.assertEquals(FileUtils.readLines(new File(runDir, "gathered")).size, scatterCount)
+  }
+
+  @Test
+  def testRetry() {
+    val graph = QGraphBenchmark.newGraph(runDir)
+    graph.settings.retries = 1
+    add(graph, new TouchFunction, Nil, Seq("first"), 1)
+    add(graph, new FailOnceFunction, Seq("first"), Seq("second"), 2)
+    add(graph, new TouchFunction, Seq("second"), Seq("third"), 3)
+    graph.run()
+
+    Assert.assertTrue(graph.success)
+    Assert.assertTrue(new File(runDir, "third").exists)
+  }
+
+  @Test
+  def testFailureStopsNextFunctions() {
+    val graph = QGraphBenchmark.newGraph(runDir)
+    add(graph, new TouchFunction, Nil, Seq("first"), 1)
+    add(graph, new FailOnceFunction, Seq("first"), Seq("failed"), 2)
+    add(graph, new TouchFunction, Seq("failed"), Seq("afterFailed"), 3)
+    add(graph, new TouchFunction, Seq("first"), Seq("second"), 4)
+    add(graph, new TouchFunction, Seq("second"), Seq("third"), 5)
+    graph.run()
+
+    Assert.assertFalse(graph.success)
+    Assert.assertFalse(new File(runDir, "afterFailed").exists)
+    Assert.assertTrue(new File(runDir, "third").exists)
+  }
+
+  @Test
+  def testDoneFunctionsAreNotRerun() {
+    val first = QGraphBenchmark.newGraph(runDir)
+    add(first, new TouchFunction, Nil, Seq("first"), 1)
+    add(first, new TouchFunction, Seq("first"), Seq("second"), 2)
+    first.run()
+    Assert.assertTrue(first.success)
+
+    // the failing function would fail if it were run again
+    val second = QGraphBenchmark.newGraph(runDir)
+    add(second, new TouchFunction, Nil, Seq("first"), 1)
+    add(second, new FailOnceFunction, Seq("first"), Seq("second"), 2)
+    add(second, new TouchFunction, Seq("second"), Seq("third"), 3)
+    new File(runDir, "second.failedBefore").delete()
+    second.run()
+
+    Assert.assertTrue(second.success)
+    Assert.assertTrue(new File(runDir, "third").exists)
+  }
+}